@@ -18,21 +18,67 @@ import io.vertx.codegen.annotations.ProxyGen;
 import io.vertx.codegen.annotations.VertxGen;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonObject;
 
+import java.util.List;
+
 @ProxyGen
 @VertxGen
 public interface BackendService {
 
     public static BackendService create(Vertx vertx, JsonObject config) {
         String address = config.getString("address");
+        Long timeout = config.getLong("timeout");
+        if (timeout != null) {
+            return new BackendServiceVertxEBProxy(
+                    vertx, address, new DeliveryOptions().setSendTimeout(timeout));
+        }
         return new BackendServiceVertxEBProxy(vertx, address);
     }
 
     public Future<JsonObject> analyse(JsonObject spec);
 
+    public Future<JsonObject> analyseWithSchemas(JsonObject spec);
+
     public Future<JsonObject> schema(String metalId);
 
+    public Future<JsonObject> schemas(List<String> metalIds);
+
+    public Future<JsonObject> createSession(String session);
+
+    public Future<Void> dropSession(String session);
+
+    public Future<JsonObject> sessions();
+
+    public Future<JsonObject> analyseOfSession(String session, JsonObject spec);
+
+    public Future<JsonObject> analyseWithSchemasOfSession(String session, JsonObject spec);
+
+    public Future<JsonObject> schemaOfSession(String session, String metalId);
+
+    public Future<JsonObject> schemasOfSession(String session, List<String> metalIds);
+
+    public Future<JsonObject> explain(String metalId, String mode);
+
+    public Future<JsonObject> explainOfSession(String session, String metalId, String mode);
+
+    public Future<JsonObject> costs(int top);
+
+    public Future<JsonObject> costsOfSession(String session, int top);
+
+    /** Collect statistics of the given sources, or of all file sources when metalIds is empty. */
+    public Future<JsonObject> collectStats(List<String> metalIds);
+
+    public Future<JsonObject> collectStatsOfSession(String session, List<String> metalIds);
+
+    public Future<JsonObject> preview(String metalId, int limit, String format);
+
+    public Future<JsonObject> previewOfSession(
+            String session, String metalId, int limit, String format);
+
+    public Future<Void> execOfSession(String session, JsonObject exec);
+
     public Future<JsonObject> heart();
 
     public Future<JsonObject> status();
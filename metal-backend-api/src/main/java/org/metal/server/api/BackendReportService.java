@@ -37,9 +37,16 @@ public interface BackendReportService {
 
     public Future<Void> reportExecFailure(JsonObject failure);
 
+    public Future<Void> reportExecProgress(JsonObject progress);
+
     public Future<Void> reportBackendUp(JsonObject up);
 
     public Future<Void> reportBackendDown(JsonObject down);
 
     public Future<Void> reportBackendFailure(JsonObject failure);
+
+    public Future<Void> reportSourceStats(JsonObject stats);
+
+    /** Statistics of one source by fingerprint, one empty object if none is collected. */
+    public Future<JsonObject> getSourceStats(String fingerprint);
 }
@@ -59,11 +59,26 @@ public class BackendGateway extends AbstractVerticle {
         deployId = config().getString("deployId");
         epoch = config().getInteger("epoch");
         reportAddress = config().getString("reportServiceAddress");
+        int analyseQueueCapacity =
+                config().getInteger(
+                                "analyseQueueCapacity",
+                                BackendServiceImpl.DEFAULT_ANALYSE_QUEUE_CAPACITY);
+        long analyseWaitTimeout =
+                config().getLong(
+                                "analyseWaitTimeout",
+                                BackendServiceImpl.DEFAULT_ANALYSE_WAIT_TIMEOUT);
 
         WorkerExecutor workerExecutor = getVertx().createSharedWorkerExecutor("exec", 1);
         backendService =
                 BackendServiceImpl.concurrency(
-                        getVertx(), backend, workerExecutor, deployId, epoch, reportAddress);
+                        getVertx(),
+                        backend,
+                        workerExecutor,
+                        deployId,
+                        epoch,
+                        reportAddress,
+                        analyseQueueCapacity,
+                        analyseWaitTimeout);
         ServiceBinder binder = new ServiceBinder(getVertx());
 
         String address = deployId + "-" + epoch;
@@ -25,32 +25,79 @@ import org.metal.exception.MetalExecAcquireException;
 import org.metal.exception.MetalExecuteException;
 import org.metal.exception.MetalServiceException;
 import org.metal.exception.MetalSpecParseException;
-import org.metal.exception.MetalStatusAcquireException;
+import org.metal.lint.MetalLint;
 import org.metal.server.api.BackendReportService;
 import org.metal.server.api.BackendState;
 import org.metal.server.api.ExecState;
+import org.metal.service.BaseMetalService;
+import org.metal.service.MetalCost;
+import org.metal.service.MetalExplain;
 import org.metal.specs.Spec;
 import org.metal.specs.SpecFactoryOnJson;
+import org.metal.stats.ColumnStats;
+import org.metal.stats.IStatsStore;
+import org.metal.stats.ImmutableColumnStats;
+import org.metal.stats.ImmutableSourceStats;
+import org.metal.stats.SourceStats;
 
+import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.Schema;
 
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.WorkerExecutor;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.function.Supplier;
 
 public class BackendServiceImpl implements BackendService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BackendServiceImpl.class);
+    public static final int DEFAULT_ANALYSE_QUEUE_CAPACITY = 16;
+
+    /** Shorter than the default send timeout of proxies, so callers get the reason. */
+    public static final long DEFAULT_ANALYSE_WAIT_TIMEOUT = 20000L;
+
+    public static final int MAX_PREVIEW_LIMIT = 10000;
+    public static final String PREVIEW_FORMAT_JSON = "json";
+    public static final String PREVIEW_FORMAT_ARROW = "arrow";
+
+    /** Translation waits at most this long for statistics of one source. */
+    public static final long STATS_LOAD_TIMEOUT = 2000L;
+
+    /** Sources without statistics are not asked again for this long. */
+    public static final long STATS_MISS_TTL = 60000L;
+
+    public static final int STATS_MISS_MAX_SIZE = 4096;
 
     private String deployId;
     private int epoch;
@@ -58,8 +105,15 @@ public class BackendServiceImpl implements BackendService {
     private Vertx vertx;
     private IBackend backend;
     private WorkerExecutor workerExecutor;
+
+    /** Every session runs analyse and exec on its own thread, so sessions don't block others. */
+    private Map<String, WorkerExecutor> executors = new ConcurrentHashMap<>();
+
     private BackendReportService reportor;
 
+    /** Meters of translation and execution, reported along with status. */
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     public BackendServiceImpl(
             Vertx vertx,
             IBackend backend,
@@ -73,29 +127,175 @@ public class BackendServiceImpl implements BackendService {
         this.vertx = vertx;
         this.backend = backend;
         this.workerExecutor = workerExecutor;
+        this.executors.put(IBackend.DEFAULT_SESSION, workerExecutor);
         this.reportor =
                 BackendReportService.create(vertx, new JsonObject().put("address", reportAddress));
+        this.backend.progressReporter(
+                (String execId, Map<String, Object> progress) -> {
+                    JsonObject report = new JsonObject();
+                    report.put("id", execId)
+                            .put("deployId", deployId)
+                            .put("epoch", epoch)
+                            .put("progress", new JsonObject(progress))
+                            .put("progressTime", System.currentTimeMillis());
+                    reportor.reportExecProgress(report)
+                            .onFailure(
+                                    error -> {
+                                        LOGGER.error(
+                                                "Fail to report progress of exec " + execId, error);
+                                    });
+                });
+        this.backend.statsStore(new ReportedStatsStore());
+        this.backend.meterRegistry(meterRegistry);
+    }
+
+    private static String baseOf(String session) {
+        if (session != null && session.endsWith(IBackend.SAMPLED_SUFFIX)) {
+            return session.substring(0, session.length() - IBackend.SAMPLED_SUFFIX.length());
+        }
+        return session;
+    }
+
+    /** The sampled view of one session gets its own executor on first use. */
+    private WorkerExecutor executorOf(String session) throws IllegalArgumentException {
+        WorkerExecutor executor = executors.get(session);
+        if (executor == null && !session.equals(baseOf(session))) {
+            if (executors.containsKey(baseOf(session))) {
+                executor =
+                        executors.computeIfAbsent(
+                                session,
+                                (String name) -> {
+                                    return vertx.createSharedWorkerExecutor(
+                                            executorNameOf(name), 1);
+                                });
+            }
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException(
+                    String.format("Session[%s] is not found in backend.", session));
+        }
+        return executor;
+    }
+
+    private static String executorNameOf(String session) {
+        return "exec-" + session;
+    }
+
+    private void closeExecutor(String session) {
+        WorkerExecutor executor = executors.remove(session);
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    /** Statistics are kept by the server, so every backend reuses what others collected. */
+    private class ReportedStatsStore implements IStatsStore {
+
+        /** Expire time of fingerprints the server had no statistics of, or failed to answer. */
+        private Map<String, Long> misses = new ConcurrentHashMap<>();
+
+        private void miss(String fingerprint) {
+            long now = System.currentTimeMillis();
+            if (misses.size() >= STATS_MISS_MAX_SIZE) {
+                misses.values().removeIf(expireTime -> expireTime <= now);
+            }
+            if (misses.size() < STATS_MISS_MAX_SIZE) {
+                misses.put(fingerprint, now + STATS_MISS_TTL);
+            }
+        }
+
+        @Override
+        public Optional<SourceStats> load(String fingerprint) {
+            if (Context.isOnEventLoopThread()) {
+                // The reply is delivered on the event loop, waiting on it there never returns.
+                return Optional.empty();
+            }
+            Long expireTime = misses.get(fingerprint);
+            if (expireTime != null) {
+                if (expireTime > System.currentTimeMillis()) {
+                    return Optional.empty();
+                }
+                misses.remove(fingerprint, expireTime);
+            }
+            try {
+                JsonObject stats =
+                        reportor.getSourceStats(fingerprint)
+                                .toCompletionStage()
+                                .toCompletableFuture()
+                                .get(STATS_LOAD_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (stats == null || stats.isEmpty()) {
+                    miss(fingerprint);
+                    return Optional.empty();
+                }
+                return Optional.of(toSourceStats(stats));
+            } catch (Exception e) {
+                LOGGER.warn("Fail to load statistics of source " + fingerprint, e);
+                miss(fingerprint);
+                return Optional.empty();
+            }
+        }
+
+        @Override
+        public void save(SourceStats stats) {
+            misses.remove(stats.fingerprint());
+            reportor.reportSourceStats(toJson(stats))
+                    .onFailure(
+                            error -> {
+                                LOGGER.error(
+                                        "Fail to report statistics of source "
+                                                + stats.fingerprint(),
+                                        error);
+                            });
+        }
     }
 
     @Override
     public Future<JsonObject> analyse(JsonObject spec) {
+        return analyseOfSession(IBackend.DEFAULT_SESSION, spec);
+    }
+
+    @Override
+    public Future<JsonObject> analyseOfSession(String session, JsonObject spec) {
+        return analyseOfSession(session, spec, false);
+    }
+
+    @Override
+    public Future<JsonObject> analyseWithSchemas(JsonObject spec) {
+        return analyseWithSchemasOfSession(IBackend.DEFAULT_SESSION, spec);
+    }
+
+    @Override
+    public Future<JsonObject> analyseWithSchemasOfSession(String session, JsonObject spec) {
+        return analyseOfSession(session, spec, true);
+    }
+
+    private Future<JsonObject> analyseOfSession(
+            String session, JsonObject spec, boolean withSchemas) {
         try {
+            BaseMetalService service = backend.service(session);
             Spec specObj = new SpecFactoryOnJson().get(spec.toString());
             Draft draft = DraftMaster.draft(specObj);
-            return workerExecutor.executeBlocking(
-                    promise -> {
-                        try {
-                            backend.service().analyse(draft);
-                            List<String> analysed = backend.service().analysed();
-                            List<String> unAnalysed = backend.service().unAnalysed();
-                            JsonObject resp = new JsonObject();
-                            resp.put("analysed", analysed).put("unAnalysed", unAnalysed);
-                            promise.complete(resp);
-                        } catch (MetalAnalysedException e) {
-                            LOGGER.error(e);
-                            promise.fail(e);
-                        }
-                    });
+            return executorOf(session)
+                    .executeBlocking(
+                            promise -> {
+                                try {
+                                    service.analyse(draft);
+                                    List<String> analysed = service.analysed();
+                                    List<String> unAnalysed = service.unAnalysed();
+                                    JsonObject resp = new JsonObject();
+                                    resp.put("session", session)
+                                            .put("analysed", analysed)
+                                            .put("unAnalysed", unAnalysed)
+                                            .put("lints", toJson(service.lints()));
+                                    if (withSchemas) {
+                                        resp.put("schemas", toJson(service.schemas(List.of())));
+                                    }
+                                    promise.complete(resp);
+                                } catch (MetalAnalysedException | MetalServiceException e) {
+                                    LOGGER.error(e);
+                                    promise.fail(e);
+                                }
+                            });
         } catch (MetalSpecParseException e) {
             LOGGER.error(e);
             return Future.failedFuture(e);
@@ -105,25 +305,347 @@ public class BackendServiceImpl implements BackendService {
         } catch (MetalAnalysedException e) {
             LOGGER.error(e);
             return Future.failedFuture(e);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error(e);
+            return Future.failedFuture(e);
         }
     }
 
     @Override
     public Future<JsonObject> schema(String metalId) {
+        return schemaOfSession(IBackend.DEFAULT_SESSION, metalId);
+    }
+
+    @Override
+    public Future<JsonObject> schemaOfSession(String session, String metalId) {
+        // Schemas come from analysis of the platform, keep it off the event loop.
+        return vertx.executeBlocking(
+                (Promise<JsonObject> promise) -> {
+                    try {
+                        Schema schema = backend.service(session).schema(metalId);
+                        JsonObject resp = new JsonObject();
+                        resp.put("id", metalId).put("schema", new JsonObject(schema.toJson()));
+                        promise.complete(resp);
+                    } catch (MetalServiceException e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    } catch (Exception e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    }
+                },
+                false);
+    }
+
+    @Override
+    public Future<JsonObject> schemas(List<String> metalIds) {
+        return schemasOfSession(IBackend.DEFAULT_SESSION, metalIds);
+    }
+
+    @Override
+    public Future<JsonObject> schemasOfSession(String session, List<String> metalIds) {
+        return vertx.executeBlocking(
+                (Promise<JsonObject> promise) -> {
+                    try {
+                        Map<String, Schema> schemas = backend.service(session).schemas(metalIds);
+                        JsonObject resp = new JsonObject();
+                        resp.put("schemas", toJson(schemas));
+                        promise.complete(resp);
+                    } catch (MetalServiceException e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    } catch (Exception e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    }
+                },
+                false);
+    }
+
+    private static JsonObject toJson(Map<String, Schema> schemas) {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, Schema> kv : schemas.entrySet()) {
+            json.put(kv.getKey(), new JsonObject(kv.getValue().toJson()));
+        }
+        return json;
+    }
+
+    @Override
+    public Future<JsonObject> explain(String metalId, String mode) {
+        return explainOfSession(IBackend.DEFAULT_SESSION, metalId, mode);
+    }
+
+    @Override
+    public Future<JsonObject> explainOfSession(String session, String metalId, String mode) {
+        // Physical planning may list files of sources, keep it off the event loop.
+        return vertx.executeBlocking(
+                (Promise<JsonObject> promise) -> {
+                    try {
+                        MetalExplain explain = backend.service(session).explain(metalId, mode);
+                        JsonObject resp = new JsonObject();
+                        resp.put("id", metalId)
+                                .put("mode", explain.mode())
+                                .put("plans", new JsonObject(new HashMap<>(explain.plans())))
+                                .put("explain", explain.explain())
+                                .put("cost", toJson(explain.cost()));
+                        promise.complete(resp);
+                    } catch (MetalServiceException e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    } catch (Exception e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    }
+                },
+                false);
+    }
+
+    @Override
+    public Future<JsonObject> costs(int top) {
+        return costsOfSession(IBackend.DEFAULT_SESSION, top);
+    }
+
+    @Override
+    public Future<JsonObject> costsOfSession(String session, int top) {
+        return vertx.executeBlocking(
+                (Promise<JsonObject> promise) -> {
+                    try {
+                        List<MetalCost> costs = backend.service(session).costs(top);
+                        JsonArray items = new JsonArray();
+                        for (MetalCost cost : costs) {
+                            items.add(toJson(cost));
+                        }
+                        JsonObject resp = new JsonObject();
+                        resp.put("session", session).put("top", top).put("costs", items);
+                        promise.complete(resp);
+                    } catch (MetalServiceException e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    } catch (Exception e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    }
+                },
+                false);
+    }
+
+    @Override
+    public Future<JsonObject> collectStats(List<String> metalIds) {
+        return collectStatsOfSession(IBackend.DEFAULT_SESSION, metalIds);
+    }
+
+    @Override
+    public Future<JsonObject> collectStatsOfSession(String session, List<String> metalIds) {
+        WorkerExecutor executor = null;
+        try {
+            executor = executorOf(session);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error(e);
+            return Future.failedFuture(e);
+        }
+        // Collecting scans sources like one exec does, so it runs on the exec worker.
+        return executor.executeBlocking(
+                (Promise<JsonObject> promise) -> {
+                    try {
+                        List<SourceStats> collected =
+                                backend.service(session).collectStats(metalIds);
+                        JsonArray items = new JsonArray();
+                        for (SourceStats stats : collected) {
+                            items.add(toJson(stats));
+                        }
+                        JsonObject resp = new JsonObject();
+                        resp.put("session", session).put("stats", items);
+                        promise.complete(resp);
+                    } catch (MetalServiceException e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    } catch (Exception e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    }
+                },
+                true);
+    }
+
+    private static JsonObject toJson(SourceStats stats) {
+        JsonObject columns = new JsonObject();
+        for (Map.Entry<String, ColumnStats> kv : stats.columns().entrySet()) {
+            JsonObject column = new JsonObject();
+            column.put("distinctCount", kv.getValue().distinctCount())
+                    .put("nullCount", kv.getValue().nullCount());
+            kv.getValue().min().ifPresent(min -> column.put("min", min));
+            kv.getValue().max().ifPresent(max -> column.put("max", max));
+            columns.put(kv.getKey(), column);
+        }
+        JsonObject json = new JsonObject();
+        json.put("fingerprint", stats.fingerprint())
+                .put("path", stats.path())
+                .put("sizeInBytes", stats.sizeInBytes())
+                .put("rowCount", stats.rowCount())
+                .put("columns", columns)
+                .put("collectTime", stats.collectTime());
+        return json;
+    }
+
+    private static SourceStats toSourceStats(JsonObject json) {
+        ImmutableSourceStats.Builder builder =
+                ImmutableSourceStats.builder()
+                        .fingerprint(json.getString("fingerprint"))
+                        .path(json.getString("path"))
+                        .sizeInBytes(json.getLong("sizeInBytes"))
+                        .rowCount(json.getLong("rowCount"))
+                        .collectTime(json.getLong("collectTime"));
+        JsonObject columns = json.getJsonObject("columns", new JsonObject());
+        for (String name : columns.fieldNames()) {
+            JsonObject column = columns.getJsonObject(name);
+            builder.putColumns(
+                    name,
+                    ImmutableColumnStats.builder()
+                            .distinctCount(column.getLong("distinctCount"))
+                            .nullCount(column.getLong("nullCount"))
+                            .min(Optional.ofNullable(column.getString("min")))
+                            .max(Optional.ofNullable(column.getString("max")))
+                            .build());
+        }
+        return builder.build();
+    }
+
+    private static JsonArray toJson(List<MetalLint> lints) {
+        JsonArray json = new JsonArray();
+        for (MetalLint lint : lints) {
+            json.add(
+                    new JsonObject()
+                            .put("id", lint.metalId())
+                            .put("rule", lint.rule())
+                            .put("severity", lint.severity().toString())
+                            .put("message", lint.message())
+                            .put("suggestion", lint.suggestion()));
+        }
+        return json;
+    }
+
+    private static JsonObject toJson(MetalCost cost) {
+        JsonObject json = new JsonObject();
+        json.put("id", cost.metalId()).put("sizeInBytes", cost.sizeInBytes());
+        cost.rowCount()
+                .ifPresent(
+                        (Long rowCount) -> {
+                            json.put("rowCount", rowCount);
+                        });
+        return json;
+    }
+
+    @Override
+    public Future<JsonObject> preview(String metalId, int limit, String format) {
+        return previewOfSession(IBackend.DEFAULT_SESSION, metalId, limit, format);
+    }
+
+    @Override
+    public Future<JsonObject> previewOfSession(
+            String session, String metalId, int limit, String format) {
+        if (limit < 1 || limit > MAX_PREVIEW_LIMIT) {
+            return Future.failedFuture(
+                    new IllegalArgumentException(
+                            String.format(
+                                    "The limit[%d] of preview should be in [1, %d].",
+                                    limit, MAX_PREVIEW_LIMIT)));
+        }
+        if (!PREVIEW_FORMAT_JSON.equals(format) && !PREVIEW_FORMAT_ARROW.equals(format)) {
+            return Future.failedFuture(
+                    new IllegalArgumentException(
+                            String.format(
+                                    "The format[%s] of preview should be %s or %s.",
+                                    format, PREVIEW_FORMAT_JSON, PREVIEW_FORMAT_ARROW)));
+        }
+
+        BaseMetalService service = null;
+        try {
+            service = backend.service(session);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error(e);
+            return Future.failedFuture(e);
+        }
+
+        BaseMetalService sessionService = service;
+        // Preview is a small spark job, run it beside exec rather than queue behind it.
+        return vertx.executeBlocking(
+                (Promise<JsonObject> promise) -> {
+                    try {
+                        JsonObject resp = new JsonObject();
+                        resp.put("id", metalId).put("limit", limit).put("format", format);
+                        if (PREVIEW_FORMAT_ARROW.equals(format)) {
+                            resp.put("data", sessionService.previewAsArrow(metalId, limit));
+                        } else {
+                            Schema schema = sessionService.schema(metalId);
+                            List<String> rows = sessionService.previewAsJson(metalId, limit);
+                            resp.mergeIn(compactPreview(schema, rows));
+                        }
+                        promise.complete(resp);
+                    } catch (MetalServiceException e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    } catch (Exception e) {
+                        LOGGER.error(e);
+                        promise.fail(e);
+                    }
+                },
+                false);
+    }
+
+    /** Field names are sent once, every row is an array in the same order. */
+    private static JsonObject compactPreview(Schema schema, List<String> rows) {
+        JsonArray columns = new JsonArray();
+        for (Field field : schema.getFields()) {
+            columns.add(field.getName());
+        }
+        JsonArray values = new JsonArray();
+        for (String row : rows) {
+            JsonObject record = new JsonObject(row);
+            JsonArray value = new JsonArray();
+            for (int idx = 0; idx < columns.size(); idx++) {
+                value.add(record.getValue(columns.getString(idx)));
+            }
+            values.add(value);
+        }
+        return new JsonObject().put("columns", columns).put("rows", values);
+    }
+
+    @Override
+    public Future<JsonObject> createSession(String session) {
         try {
-            Schema schema = backend.service().schema(metalId);
+            backend.createSession(session);
+            executors.put(session, vertx.createSharedWorkerExecutor(executorNameOf(session), 1));
             JsonObject resp = new JsonObject();
-            resp.put("id", metalId).put("schema", new JsonObject(schema.toJson()));
+            resp.put("session", session);
             return Future.succeededFuture(resp);
-        } catch (MetalServiceException e) {
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
             LOGGER.error(e);
             return Future.failedFuture(e);
-        } catch (Exception e) {
-            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Future<Void> dropSession(String session) {
+        try {
+            backend.dropSession(session);
+            closeExecutor(session);
+            if (session.equals(baseOf(session))) {
+                closeExecutor(IBackend.sampled(session));
+            }
+            return Future.succeededFuture();
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            LOGGER.error(e);
             return Future.failedFuture(e);
         }
     }
 
+    @Override
+    public Future<JsonObject> sessions() {
+        JsonObject resp = new JsonObject();
+        resp.put("sessions", new JsonArray(new ArrayList<String>(backend.sessions())));
+        return Future.succeededFuture(resp);
+    }
+
     @Override
     public Future<JsonObject> heart() {
         JsonObject resp = new JsonObject();
@@ -131,6 +653,50 @@ public class BackendServiceImpl implements BackendService {
         return Future.succeededFuture(resp);
     }
 
+    private JsonArray meters() {
+        JsonArray meters = new JsonArray();
+        for (Meter meter : meterRegistry.getMeters()) {
+            JsonObject tags = new JsonObject();
+            for (Tag tag : meter.getId().getTags()) {
+                tags.put(tag.getKey(), tag.getValue());
+            }
+            JsonObject measurements = new JsonObject();
+            for (Measurement measurement : meter.measure()) {
+                measurements.put(
+                        measurement.getStatistic().getTagValueRepresentation(),
+                        measurement.getValue());
+            }
+            JsonObject json =
+                    new JsonObject()
+                            .put("name", meter.getId().getName())
+                            .put("tags", tags)
+                            .put("measurements", measurements);
+            if (meter instanceof Timer) {
+                json.put("histogram", histogram(((Timer) meter).takeSnapshot()));
+            }
+            meters.add(json);
+        }
+        return meters;
+    }
+
+    /** Buckets are cumulative counts of records not longer than {@code le} milliseconds. */
+    private static JsonObject histogram(HistogramSnapshot snapshot) {
+        JsonArray buckets = new JsonArray();
+        for (CountAtBucket bucket : snapshot.histogramCounts()) {
+            buckets.add(
+                    new JsonObject()
+                            .put("le", bucket.bucket(TimeUnit.MILLISECONDS))
+                            .put("count", bucket.count()));
+        }
+        JsonObject percentiles = new JsonObject();
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            percentiles.put(
+                    String.valueOf(percentile.percentile()),
+                    percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return new JsonObject().put("buckets", buckets).put("percentiles", percentiles);
+    }
+
     @Override
     public Future<JsonObject> status() {
         JsonObject resp = new JsonObject();
@@ -138,27 +704,56 @@ public class BackendServiceImpl implements BackendService {
         resp.put("epoch", epoch);
         resp.put("status", BackendState.UP.toString());
         resp.put("beatTime", System.currentTimeMillis());
+        resp.put("meters", meters());
         return Future.succeededFuture(resp);
     }
 
     @Override
     public Future<Void> exec(JsonObject exec) {
+        return execOfSession(IBackend.DEFAULT_SESSION, exec);
+    }
+
+    @Override
+    public Future<Void> execOfSession(String session, JsonObject exec) {
         String execId = exec.getString("id");
+        BaseMetalService service = null;
+        WorkerExecutor executor = null;
+        try {
+            service = backend.service(session);
+            executor = executorOf(session);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error(e);
+            return Future.failedFuture(e);
+        }
 
-        if (backend.service().analysed().isEmpty()) {
+        if (service.analysed().isEmpty()) {
             return Future.failedFuture("Not any analysed metal in context.");
         }
 
-        if (!backend.service().unAnalysed().isEmpty()) {
+        if (!service.unAnalysed().isEmpty()) {
             return Future.failedFuture("Some unAnalysed metals exist in context.");
         }
 
+        Set<String> sinkIds = new HashSet<>();
+        List<String> sinks = null;
+        try {
+            JsonArray sinksOfExec = exec.getJsonArray("sinks", new JsonArray());
+            for (int idx = 0; idx < sinksOfExec.size(); idx++) {
+                sinkIds.add(sinksOfExec.getString(idx));
+            }
+            sinks = service.execClosure(sinkIds);
+        } catch (ClassCastException | MetalExecuteException e) {
+            LOGGER.error(e);
+            return Future.failedFuture(e);
+        }
+
         JsonObject submit = new JsonObject();
         submit.put("id", execId)
                 .put("deployId", deployId)
                 .put("epoch", epoch)
                 .put("status", ExecState.SUBMIT.toString())
-                .put("submitTime", System.currentTimeMillis());
+                .put("submitTime", System.currentTimeMillis())
+                .put("sinks", new JsonArray(sinks));
 
         reportor.reportExecSubmit(submit)
                 .onFailure(
@@ -166,7 +761,8 @@ public class BackendServiceImpl implements BackendService {
                             LOGGER.error("Fail to report create exec " + execId, error);
                         });
 
-        return workerExecutor.executeBlocking(
+        BaseMetalService sessionService = service;
+        return executor.executeBlocking(
                 (promise) -> {
                     try {
                         JsonObject running = new JsonObject();
@@ -182,13 +778,14 @@ public class BackendServiceImpl implements BackendService {
                                                     "Fail to report running exec " + execId, error);
                                         });
 
-                        backend.service().exec();
+                        List<String> executed = sessionService.exec(execId, sinkIds);
                         JsonObject finish = new JsonObject();
                         finish.put("id", execId)
                                 .put("deployId", deployId)
                                 .put("epoch", epoch)
                                 .put("status", ExecState.FINISH.toString())
-                                .put("finishTime", System.currentTimeMillis());
+                                .put("finishTime", System.currentTimeMillis())
+                                .put("sinks", new JsonArray(executed));
                         reportor.reportExecFinish(finish)
                                 .onFailure(
                                         error -> {
@@ -201,9 +798,10 @@ public class BackendServiceImpl implements BackendService {
                         failure.put("id", execId)
                                 .put("deployId", deployId)
                                 .put("epoch", epoch)
-                                .put("status", ExecState.FAILURE)
+                                .put("status", ExecState.FAILURE.toString())
                                 .put("terminateTime", System.currentTimeMillis())
-                                .put("msg", e.getLocalizedMessage());
+                                .put("msg", e.getLocalizedMessage())
+                                .put("sinks", new JsonArray(e.executedSinks()));
 
                         reportor.reportExecFailure(failure)
                                 .onFailure(
@@ -240,64 +838,236 @@ public class BackendServiceImpl implements BackendService {
             String deployId,
             int epoch,
             String reportAddress) {
-        return new ConcurrencyService(
+        return concurrency(
+                vertx,
+                backend,
+                workerExecutor,
+                deployId,
+                epoch,
+                reportAddress,
+                DEFAULT_ANALYSE_QUEUE_CAPACITY);
+    }
+
+    public static BackendService concurrency(
+            Vertx vertx,
+            IBackend backend,
+            WorkerExecutor workerExecutor,
+            String deployId,
+            int epoch,
+            String reportAddress,
+            int analyseQueueCapacity) {
+        return concurrency(
+                vertx,
+                backend,
+                workerExecutor,
+                deployId,
+                epoch,
+                reportAddress,
+                analyseQueueCapacity,
+                DEFAULT_ANALYSE_WAIT_TIMEOUT);
+    }
+
+    public static BackendService concurrency(
+            Vertx vertx,
+            IBackend backend,
+            WorkerExecutor workerExecutor,
+            String deployId,
+            int epoch,
+            String reportAddress,
+            int analyseQueueCapacity,
+            long analyseWaitTimeout) {
+        return concurrency(
+                vertx,
                 new BackendServiceImpl(
-                        vertx, backend, workerExecutor, deployId, epoch, reportAddress));
+                        vertx, backend, workerExecutor, deployId, epoch, reportAddress),
+                analyseQueueCapacity,
+                analyseWaitTimeout);
     }
 
-    private static class ConcurrencyService implements BackendService {
+    static BackendService concurrency(
+            Vertx vertx,
+            BackendService backendService,
+            int analyseQueueCapacity,
+            long analyseWaitTimeout) {
+        return new ConcurrencyService(
+                vertx, backendService, analyseQueueCapacity, analyseWaitTimeout);
+    }
 
-        private BackendService innerService;
+    /** One request waiting for analyse, failed if it is still queued at its deadline. */
+    private static class AnalyseWaiter {
+        private final JsonObject spec;
+        private final boolean withSchemas;
+        private final Promise<JsonObject> promise = Promise.promise();
+        private long timerID = -1;
+
+        private AnalyseWaiter(JsonObject spec, boolean withSchemas) {
+            this.spec = spec;
+            this.withSchemas = withSchemas;
+        }
+    }
+
+    private static class PendingAnalyse {
+        private final long enqueueTime = System.currentTimeMillis();
+        private final List<AnalyseWaiter> waiters = new ArrayList<>();
+
+        /** The latest spec of waiters still waiting, expired callers never apply theirs. */
+        private JsonObject spec() {
+            return waiters.get(waiters.size() - 1).spec;
+        }
+
+        /** Waiters share one result, so schemas are sent if any of them asks for them. */
+        private boolean withSchemas() {
+            for (AnalyseWaiter waiter : waiters) {
+                if (waiter.withSchemas) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Locks and analyse queue of one session, sessions don't block each other on analyse. */
+    private static class SessionGuard {
+
+        private ReentrantReadWriteLock analyseLock;
         private ReadLock analyseReadLock;
         private WriteLock analyseWriteLock;
         private ReentrantLock execLock;
 
-        private ConcurrencyService(BackendService backendService) throws IllegalArgumentException {
+        private PendingAnalyse pendingAnalyse;
+        private long lastAnalyseWaitTime = 0L;
+        private long coalescedAnalyseCount = 0L;
+        private long rejectedAnalyseCount = 0L;
+        private long expiredAnalyseCount = 0L;
+
+        private SessionGuard() {
+            this.analyseLock = new ReentrantReadWriteLock();
+            this.analyseReadLock = analyseLock.readLock();
+            this.analyseWriteLock = analyseLock.writeLock();
+            this.execLock = new ReentrantLock();
+        }
+
+        private boolean tryAcquireAnalyse() {
+            // The write lock is reentrant and all requests arrive on the same event loop thread,
+            // so tryLock alone can't tell whether one analyse is still running.
+            return !analyseLock.isWriteLocked() && analyseWriteLock.tryLock();
+        }
+
+        private boolean tryAcquireRead() {
+            return !analyseLock.isWriteLocked() && analyseReadLock.tryLock();
+        }
+
+        private synchronized JsonObject analyseQueueStatus(
+                int analyseQueueCapacity, long analyseWaitTimeout) {
+            JsonObject queue = new JsonObject();
+            int depth = pendingAnalyse == null ? 0 : pendingAnalyse.waiters.size();
+            long waitTime =
+                    pendingAnalyse == null
+                            ? 0L
+                            : System.currentTimeMillis() - pendingAnalyse.enqueueTime;
+            queue.put("analysing", analyseLock.isWriteLocked())
+                    .put("depth", depth)
+                    .put("capacity", analyseQueueCapacity)
+                    .put("waitTimeout", analyseWaitTimeout)
+                    .put("waitTime", waitTime)
+                    .put("lastWaitTime", lastAnalyseWaitTime)
+                    .put("coalesced", coalescedAnalyseCount)
+                    .put("rejected", rejectedAnalyseCount)
+                    .put("expired", expiredAnalyseCount);
+            return queue;
+        }
+    }
+
+    private static class ConcurrencyService implements BackendService {
+
+        private Vertx vertx;
+        private BackendService innerService;
+        private Map<String, SessionGuard> guards;
+
+        /**
+         * Only the latest spec waiting for analyse is kept, all waiters share its result. The
+         * capacity bounds how many requests may wait on it.
+         */
+        private int analyseQueueCapacity;
+
+        /** How long one request waits in the queue before it fails. */
+        private long analyseWaitTimeout;
+
+        private ConcurrencyService(
+                Vertx vertx,
+                BackendService backendService,
+                int analyseQueueCapacity,
+                long analyseWaitTimeout)
+                throws IllegalArgumentException {
             if (backendService instanceof ConcurrencyService) {
                 throw new IllegalArgumentException(
                         String.format(
                                 "Fail to construct object, because the backendService is one instance of %s",
                                 ConcurrencyService.class));
             }
+            if (analyseQueueCapacity < 1) {
+                throw new IllegalArgumentException(
+                        String.format(
+                                "Fail to construct object, because the analyseQueueCapacity[%d] is less than 1.",
+                                analyseQueueCapacity));
+            }
+            if (analyseWaitTimeout < 1) {
+                throw new IllegalArgumentException(
+                        String.format(
+                                "Fail to construct object, because the analyseWaitTimeout[%d] is less than 1.",
+                                analyseWaitTimeout));
+            }
+            this.vertx = vertx;
             this.innerService = backendService;
-            ReentrantReadWriteLock analyseLock = new ReentrantReadWriteLock();
-            this.analyseReadLock = analyseLock.readLock();
-            this.analyseWriteLock = analyseLock.writeLock();
-            this.execLock = new ReentrantLock();
+            this.guards = new ConcurrentHashMap<>();
+            this.guards.put(IBackend.DEFAULT_SESSION, new SessionGuard());
+            this.analyseQueueCapacity = analyseQueueCapacity;
+            this.analyseWaitTimeout = analyseWaitTimeout;
         }
 
-        @Override
-        public Future<JsonObject> analyse(JsonObject spec) {
-            if (analyseWriteLock.tryLock()) {
-                return innerService
-                        .analyse(spec)
-                        .compose(
-                                ret -> {
-                                    analyseWriteLock.unlock();
-                                    return Future.succeededFuture(ret);
-                                },
-                                error -> {
-                                    analyseWriteLock.unlock();
-                                    return Future.failedFuture(error);
-                                });
+        /**
+         * Guards exist for created sessions only, and the sampled view of one of them, null for any
+         * other name.
+         */
+        private SessionGuard guard(String session) {
+            SessionGuard guard = session == null ? null : guards.get(session);
+            if (guard != null || session == null || !session.endsWith(IBackend.SAMPLED_SUFFIX)) {
+                return guard;
             }
+            String base = session.substring(0, session.length() - IBackend.SAMPLED_SUFFIX.length());
+            if (!guards.containsKey(base)) {
+                return null;
+            }
+            return guards.computeIfAbsent(
+                    session,
+                    (String name) -> {
+                        return new SessionGuard();
+                    });
+        }
+
+        private static <T> Future<T> notFound(String session) {
             return Future.failedFuture(
-                    new MetalAnalyseAcquireException(
-                            "Analyse has been acquired by other request, wait a moment."));
+                    new IllegalArgumentException(
+                            String.format("Session[%s] is not found in backend.", session)));
         }
 
-        @Override
-        public Future<JsonObject> schema(String metalId) {
-            if (analyseReadLock.tryLock()) {
-                return innerService
-                        .schema(metalId)
+        /** Run one call under the read lock of session, so no analyse replaces DFs under it. */
+        private <T> Future<T> onRead(String session, Supplier<Future<T>> call) {
+            SessionGuard guard = guard(session);
+            if (guard == null) {
+                return notFound(session);
+            }
+            if (guard.tryAcquireRead()) {
+                return call.get()
                         .compose(
                                 ret -> {
-                                    analyseReadLock.unlock();
+                                    guard.analyseReadLock.unlock();
+                                    drainPendingAnalyse(guard, session);
                                     return Future.succeededFuture(ret);
                                 },
                                 error -> {
-                                    analyseReadLock.unlock();
+                                    guard.analyseReadLock.unlock();
+                                    drainPendingAnalyse(guard, session);
                                     return Future.failedFuture(error);
                                 });
             }
@@ -306,50 +1076,354 @@ public class BackendServiceImpl implements BackendService {
                             "Now analyse has been acquired by other request, wait a moment."));
         }
 
+        private Future<JsonObject> analyseOnLock(
+                SessionGuard guard, String session, JsonObject spec, boolean withSchemas) {
+            Future<JsonObject> analysed =
+                    withSchemas
+                            ? innerService.analyseWithSchemasOfSession(session, spec)
+                            : innerService.analyseOfSession(session, spec);
+            return analysed.compose(
+                    ret -> {
+                        guard.analyseWriteLock.unlock();
+                        drainPendingAnalyse(guard, session);
+                        return Future.succeededFuture(ret);
+                    },
+                    error -> {
+                        guard.analyseWriteLock.unlock();
+                        drainPendingAnalyse(guard, session);
+                        return Future.failedFuture(error);
+                    });
+        }
+
+        private void drainPendingAnalyse(SessionGuard guard, String session) {
+            PendingAnalyse next = null;
+            synchronized (guard) {
+                if (guard.pendingAnalyse == null || !guard.tryAcquireAnalyse()) {
+                    return;
+                }
+                next = guard.pendingAnalyse;
+                guard.pendingAnalyse = null;
+                guard.lastAnalyseWaitTime = System.currentTimeMillis() - next.enqueueTime;
+                for (AnalyseWaiter waiter : next.waiters) {
+                    vertx.cancelTimer(waiter.timerID);
+                }
+            }
+
+            List<AnalyseWaiter> waiters = next.waiters;
+            analyseOnLock(guard, session, next.spec(), next.withSchemas())
+                    .onComplete(
+                            (AsyncResult<JsonObject> result) -> {
+                                for (AnalyseWaiter waiter : waiters) {
+                                    waiter.promise.handle(result);
+                                }
+                            });
+        }
+
+        private void expire(SessionGuard guard, String session, AnalyseWaiter waiter) {
+            synchronized (guard) {
+                if (guard.pendingAnalyse == null || !guard.pendingAnalyse.waiters.remove(waiter)) {
+                    return;
+                }
+                if (guard.pendingAnalyse.waiters.isEmpty()) {
+                    guard.pendingAnalyse = null;
+                }
+                guard.expiredAnalyseCount++;
+            }
+            waiter.promise.tryFail(
+                    new MetalAnalyseAcquireException(
+                            String.format(
+                                    "Analyse of session[%s] has waited for %dms in queue, give up.",
+                                    session, analyseWaitTimeout)));
+        }
+
+        @Override
+        public Future<JsonObject> analyse(JsonObject spec) {
+            return analyseOfSession(IBackend.DEFAULT_SESSION, spec);
+        }
+
+        @Override
+        public Future<JsonObject> analyseOfSession(String session, JsonObject spec) {
+            return analyseOfSession(session, spec, false);
+        }
+
+        @Override
+        public Future<JsonObject> analyseWithSchemas(JsonObject spec) {
+            return analyseWithSchemasOfSession(IBackend.DEFAULT_SESSION, spec);
+        }
+
+        @Override
+        public Future<JsonObject> analyseWithSchemasOfSession(String session, JsonObject spec) {
+            return analyseOfSession(session, spec, true);
+        }
+
+        private Future<JsonObject> analyseOfSession(
+                String session, JsonObject spec, boolean withSchemas) {
+            SessionGuard guard = guard(session);
+            if (guard == null) {
+                return notFound(session);
+            }
+            AnalyseWaiter waiter = new AnalyseWaiter(spec, withSchemas);
+            synchronized (guard) {
+                if (guard.pendingAnalyse == null && guard.tryAcquireAnalyse()) {
+                    guard.lastAnalyseWaitTime = 0L;
+                    return analyseOnLock(guard, session, spec, withSchemas);
+                }
+
+                if (guard.pendingAnalyse == null) {
+                    guard.pendingAnalyse = new PendingAnalyse();
+                } else if (guard.pendingAnalyse.waiters.size() >= analyseQueueCapacity) {
+                    guard.rejectedAnalyseCount++;
+                    return Future.failedFuture(
+                            new MetalAnalyseAcquireException(
+                                    String.format(
+                                            "Analyse queue of session[%s] is full[capacity=%d], wait a moment.",
+                                            session, analyseQueueCapacity)));
+                } else {
+                    guard.coalescedAnalyseCount++;
+                }
+                guard.pendingAnalyse.waiters.add(waiter);
+                waiter.timerID =
+                        vertx.setTimer(
+                                analyseWaitTimeout,
+                                (ID) -> {
+                                    expire(guard, session, waiter);
+                                });
+            }
+            // Readers may hold the lock without any analyse running, retry once they are gone.
+            drainPendingAnalyse(guard, session);
+            return waiter.promise.future();
+        }
+
+        @Override
+        public Future<JsonObject> schema(String metalId) {
+            return schemaOfSession(IBackend.DEFAULT_SESSION, metalId);
+        }
+
+        @Override
+        public Future<JsonObject> schemaOfSession(String session, String metalId) {
+            return onRead(
+                    session,
+                    () -> {
+                        return innerService.schemaOfSession(session, metalId);
+                    });
+        }
+
+        @Override
+        public Future<JsonObject> preview(String metalId, int limit, String format) {
+            return previewOfSession(IBackend.DEFAULT_SESSION, metalId, limit, format);
+        }
+
+        @Override
+        public Future<JsonObject> previewOfSession(
+                String session, String metalId, int limit, String format) {
+            return onRead(
+                    session,
+                    () -> {
+                        return innerService.previewOfSession(session, metalId, limit, format);
+                    });
+        }
+
+        @Override
+        public Future<JsonObject> schemas(List<String> metalIds) {
+            return schemasOfSession(IBackend.DEFAULT_SESSION, metalIds);
+        }
+
+        @Override
+        public Future<JsonObject> schemasOfSession(String session, List<String> metalIds) {
+            return onRead(
+                    session,
+                    () -> {
+                        return innerService.schemasOfSession(session, metalIds);
+                    });
+        }
+
+        @Override
+        public Future<JsonObject> explain(String metalId, String mode) {
+            return explainOfSession(IBackend.DEFAULT_SESSION, metalId, mode);
+        }
+
+        @Override
+        public Future<JsonObject> explainOfSession(String session, String metalId, String mode) {
+            return onRead(
+                    session,
+                    () -> {
+                        return innerService.explainOfSession(session, metalId, mode);
+                    });
+        }
+
+        @Override
+        public Future<JsonObject> costs(int top) {
+            return costsOfSession(IBackend.DEFAULT_SESSION, top);
+        }
+
+        @Override
+        public Future<JsonObject> costsOfSession(String session, int top) {
+            return onRead(
+                    session,
+                    () -> {
+                        return innerService.costsOfSession(session, top);
+                    });
+        }
+
+        @Override
+        public Future<JsonObject> collectStats(List<String> metalIds) {
+            return collectStatsOfSession(IBackend.DEFAULT_SESSION, metalIds);
+        }
+
+        /** Collecting translates sources again, so it holds the session like one analyse. */
+        @Override
+        public Future<JsonObject> collectStatsOfSession(String session, List<String> metalIds) {
+            SessionGuard guard = guard(session);
+            if (guard == null) {
+                return notFound(session);
+            }
+            synchronized (guard) {
+                if (guard.pendingAnalyse != null || !guard.tryAcquireAnalyse()) {
+                    return Future.failedFuture(
+                            new MetalAnalyseAcquireException(
+                                    "Now analyse has been acquired by other request, wait a moment."));
+                }
+            }
+            return innerService
+                    .collectStatsOfSession(session, metalIds)
+                    .compose(
+                            ret -> {
+                                guard.analyseWriteLock.unlock();
+                                drainPendingAnalyse(guard, session);
+                                return Future.succeededFuture(ret);
+                            },
+                            error -> {
+                                guard.analyseWriteLock.unlock();
+                                drainPendingAnalyse(guard, session);
+                                return Future.failedFuture(error);
+                            });
+        }
+
+        @Override
+        public Future<JsonObject> createSession(String session) {
+            return innerService
+                    .createSession(session)
+                    .onSuccess(
+                            ret -> {
+                                guards.putIfAbsent(session, new SessionGuard());
+                            });
+        }
+
+        @Override
+        public Future<Void> dropSession(String session) {
+            SessionGuard guard = guard(session);
+            if (guard == null) {
+                return notFound(session);
+            }
+            synchronized (guard) {
+                if (guard.pendingAnalyse != null || !guard.tryAcquireAnalyse()) {
+                    return Future.failedFuture(
+                            new MetalAnalyseAcquireException(
+                                    String.format(
+                                            "Session[%s] is in use by other request, wait a moment.",
+                                            session)));
+                }
+            }
+            return innerService
+                    .dropSession(session)
+                    .compose(
+                            ret -> {
+                                guards.remove(session);
+                                guards.remove(IBackend.sampled(session));
+                                guard.analyseWriteLock.unlock();
+                                return Future.succeededFuture(ret);
+                            },
+                            error -> {
+                                guard.analyseWriteLock.unlock();
+                                return Future.failedFuture(error);
+                            });
+        }
+
+        @Override
+        public Future<JsonObject> sessions() {
+            return innerService.sessions();
+        }
+
         @Override
         public Future<JsonObject> heart() {
             return innerService.heart();
         }
 
+        /** Queues of guards are synchronized on their own, they need no analyse lock. */
+        private JsonObject withQueues(JsonObject status) {
+            JsonObject queues = new JsonObject();
+            for (Map.Entry<String, SessionGuard> kv : guards.entrySet()) {
+                queues.put(
+                        kv.getKey(),
+                        kv.getValue().analyseQueueStatus(analyseQueueCapacity, analyseWaitTimeout));
+            }
+            status.put("analyseQueue", queues.getJsonObject(IBackend.DEFAULT_SESSION));
+            status.put("analyseQueueOfSessions", queues);
+            return status;
+        }
+
+        /**
+         * Only the inner status waits for the read lock. While one analyse runs on the default
+         * session, the status still reports the queues, which is when they have any depth.
+         */
         @Override
         public Future<JsonObject> status() {
-            if (analyseReadLock.tryLock()) {
-                return innerService
-                        .status()
-                        .compose(
-                                ret -> {
-                                    analyseReadLock.unlock();
-                                    return Future.succeededFuture(ret);
-                                },
-                                error -> {
-                                    analyseReadLock.unlock();
-                                    return Future.failedFuture(error);
-                                });
+            SessionGuard guard = guard(IBackend.DEFAULT_SESSION);
+            if (!guard.tryAcquireRead()) {
+                return Future.succeededFuture(
+                        withQueues(
+                                new JsonObject()
+                                        .put("analysing", true)
+                                        .put(
+                                                "msg",
+                                                "Now analyse has been acquired by other request, backend status is skipped.")));
             }
-            return Future.failedFuture(
-                    new MetalStatusAcquireException(
-                            "Now analyse has been acquired by other request, wait a moment."));
+            return innerService
+                    .status()
+                    .compose(
+                            ret -> {
+                                guard.analyseReadLock.unlock();
+                                drainPendingAnalyse(guard, IBackend.DEFAULT_SESSION);
+                                return Future.succeededFuture(withQueues(ret));
+                            },
+                            error -> {
+                                guard.analyseReadLock.unlock();
+                                drainPendingAnalyse(guard, IBackend.DEFAULT_SESSION);
+                                return Future.failedFuture(error);
+                            });
         }
 
         @Override
         public Future<Void> exec(JsonObject exec) {
-            if (analyseReadLock.tryLock()) {
-                if (execLock.tryLock()) {
+            return execOfSession(IBackend.DEFAULT_SESSION, exec);
+        }
+
+        @Override
+        public Future<Void> execOfSession(String session, JsonObject exec) {
+            SessionGuard guard = guard(session);
+            if (guard == null) {
+                return notFound(session);
+            }
+            if (guard.tryAcquireRead()) {
+                if (guard.execLock.tryLock()) {
                     return innerService
-                            .exec(exec)
+                            .execOfSession(session, exec)
                             .compose(
                                     ret -> {
-                                        execLock.unlock();
-                                        analyseReadLock.unlock();
+                                        guard.execLock.unlock();
+                                        guard.analyseReadLock.unlock();
+                                        drainPendingAnalyse(guard, session);
                                         return Future.succeededFuture(ret);
                                     },
                                     error -> {
-                                        execLock.unlock();
-                                        analyseReadLock.unlock();
+                                        guard.execLock.unlock();
+                                        guard.analyseReadLock.unlock();
+                                        drainPendingAnalyse(guard, session);
                                         return Future.failedFuture(error);
                                     });
                 }
-                analyseReadLock.unlock();
+                guard.analyseReadLock.unlock();
+                drainPendingAnalyse(guard, session);
                 return Future.failedFuture(
                         new MetalExecAcquireException(
                                 "Now executor has been acquired by other request, wait a moment."));
@@ -29,6 +29,8 @@ public interface IBackendRestEndApi {
 
     public void schemaAPI(RoutingContext ctx);
 
+    public void previewAPI(RoutingContext ctx);
+
     public void heartAPI(RoutingContext ctx);
 
     public void statusAPI(RoutingContext ctx);
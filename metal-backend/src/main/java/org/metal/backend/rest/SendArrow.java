@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.rest;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.RoutingContext;
+
+public class SendArrow {
+
+    public static final String CONTENT_TYPE = "application/vnd.apache.arrow.stream";
+
+    public static void send(RoutingContext ctx, byte[] payload) {
+        send(ctx, payload, 200);
+    }
+
+    public static void send(RoutingContext ctx, byte[] payload, int statusCode) {
+        ctx.response()
+                .setStatusCode(statusCode)
+                .putHeader("content-type", CONTENT_TYPE)
+                .putHeader("content-length", String.valueOf(payload.length))
+                .end(Buffer.buffer(payload));
+    }
+}
@@ -15,7 +15,9 @@
 package org.metal.backend.rest.impl;
 
 import org.metal.backend.api.BackendService;
+import org.metal.backend.api.impl.BackendServiceImpl;
 import org.metal.backend.rest.IBackendRestEndApi;
+import org.metal.backend.rest.SendArrow;
 import org.metal.backend.rest.SendJson;
 import org.metal.exception.MetalAnalyseAcquireException;
 import org.metal.exception.MetalAnalysedException;
@@ -105,6 +107,56 @@ public class BackendRestEndApiImpl implements IBackendRestEndApi {
                         });
     }
 
+    @Override
+    public void previewAPI(RoutingContext ctx) {
+        String mid = ctx.pathParam("mid");
+        JsonObject resp = new JsonObject();
+        int limit = 0;
+        try {
+            limit = Integer.parseInt(ctx.queryParams().get("limit"));
+        } catch (NumberFormatException e) {
+            resp.put("status", "FAIL").put("msg", "The limit of preview should be one integer.");
+            SendJson.send(ctx, resp, 400);
+            return;
+        }
+        String format = ctx.queryParams().get("format");
+        if (format == null) {
+            format = BackendServiceImpl.PREVIEW_FORMAT_JSON;
+        }
+
+        String previewFormat = format;
+        backendService
+                .preview(mid, limit, previewFormat)
+                .onSuccess(
+                        (JsonObject ret) -> {
+                            if (BackendServiceImpl.PREVIEW_FORMAT_ARROW.equals(previewFormat)) {
+                                SendArrow.send(ctx, ret.getBinary("data"));
+                                return;
+                            }
+                            resp.put("status", "OK").put("data", ret);
+                            SendJson.send(ctx, resp, 200);
+                        })
+                .onFailure(
+                        (Throwable error) -> {
+                            resp.put("status", "FAIL");
+                            if (error instanceof MetalServiceException
+                                    || error instanceof IllegalArgumentException) {
+                                resp.put("msg", error.getLocalizedMessage());
+                                SendJson.send(ctx, resp, 400);
+                                return;
+                            }
+
+                            if (error instanceof MetalAnalyseAcquireException) {
+                                resp.put("msg", error.getLocalizedMessage());
+                                SendJson.send(ctx, resp, 409);
+                                return;
+                            }
+
+                            resp.put("msg", error.getLocalizedMessage());
+                            SendJson.send(ctx, resp, 500);
+                        });
+    }
+
     @Override
     public void heartAPI(RoutingContext ctx) {
         JsonObject resp = new JsonObject();
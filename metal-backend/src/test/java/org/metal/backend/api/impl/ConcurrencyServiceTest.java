@@ -0,0 +1,234 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.api.impl;
+
+import org.metal.backend.IBackend;
+import org.metal.backend.api.BackendService;
+import org.metal.exception.MetalAnalyseAcquireException;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyServiceTest {
+
+    /** Analyse calls are recorded and only complete when the test completes them. */
+    private static class MockInner {
+        private final List<JsonObject> specs = Collections.synchronizedList(new ArrayList<>());
+        private final List<Promise<JsonObject>> analysing =
+                Collections.synchronizedList(new ArrayList<>());
+
+        private BackendService service() {
+            return (BackendService)
+                    Proxy.newProxyInstance(
+                            BackendService.class.getClassLoader(),
+                            new Class[] {BackendService.class},
+                            (proxy, method, args) -> {
+                                switch (method.getName()) {
+                                    case "analyseOfSession":
+                                    case "analyseWithSchemasOfSession":
+                                        Promise<JsonObject> promise = Promise.promise();
+                                        specs.add((JsonObject) args[1]);
+                                        analysing.add(promise);
+                                        return promise.future();
+                                    case "status":
+                                        return Future.succeededFuture(new JsonObject());
+                                    default:
+                                        return Future.succeededFuture();
+                                }
+                            });
+        }
+    }
+
+    private static JsonObject spec(int version) {
+        return new JsonObject().put("version", version);
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    private static Throwable causeOf(Future<?> future) throws Exception {
+        try {
+            await(future);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("The future should fail.");
+        return null;
+    }
+
+    @org.junit.Test
+    public void coalesceWaitersOnLatestSpec() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            MockInner inner = new MockInner();
+            BackendService service =
+                    BackendServiceImpl.concurrency(vertx, inner.service(), 16, 5000L);
+
+            Future<JsonObject> first = service.analyse(spec(1));
+            Future<JsonObject> second = service.analyse(spec(2));
+            Future<JsonObject> third = service.analyse(spec(3));
+            assertEquals(1, inner.specs.size());
+
+            JsonObject firstRet = new JsonObject().put("ret", 1);
+            inner.analysing.get(0).complete(firstRet);
+            assertSame(firstRet, await(first));
+
+            // Both waiters are served by one analyse of the latest spec.
+            assertEquals(List.of(spec(1), spec(3)), inner.specs);
+            JsonObject lastRet = new JsonObject().put("ret", 3);
+            inner.analysing.get(1).complete(lastRet);
+            assertSame(lastRet, await(second));
+            assertSame(lastRet, await(third));
+            assertEquals(2, inner.specs.size());
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @org.junit.Test
+    public void rejectWaitersOverCapacity() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            MockInner inner = new MockInner();
+            BackendService service =
+                    BackendServiceImpl.concurrency(vertx, inner.service(), 1, 5000L);
+
+            service.analyse(spec(1));
+            Future<JsonObject> queued = service.analyse(spec(2));
+            Future<JsonObject> rejected = service.analyse(spec(3));
+
+            assertTrue(causeOf(rejected) instanceof MetalAnalyseAcquireException);
+            inner.analysing.get(0).complete(new JsonObject());
+            assertEquals(List.of(spec(1), spec(2)), inner.specs);
+            inner.analysing.get(1).complete(new JsonObject());
+            await(queued);
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @org.junit.Test
+    public void expiredWaitersNeverApplyTheirSpec() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            MockInner inner = new MockInner();
+            BackendService service =
+                    BackendServiceImpl.concurrency(vertx, inner.service(), 16, 100L);
+
+            service.analyse(spec(1));
+            Future<JsonObject> expired = service.analyse(spec(2));
+
+            assertTrue(causeOf(expired) instanceof MetalAnalyseAcquireException);
+            inner.analysing.get(0).complete(new JsonObject());
+            assertEquals(List.of(spec(1)), inner.specs);
+
+            JsonObject status = await(service.status());
+            assertEquals(1L, (long) status.getJsonObject("analyseQueue").getLong("expired"));
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @org.junit.Test
+    public void statusReportsQueueWhileAnalysing() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            MockInner inner = new MockInner();
+            BackendService service =
+                    BackendServiceImpl.concurrency(vertx, inner.service(), 16, 5000L);
+
+            service.analyse(spec(1));
+            Future<JsonObject> waiter = service.analyse(spec(2));
+            Thread.sleep(50L);
+
+            JsonObject status = await(service.status());
+            assertTrue(status.getBoolean("analysing"));
+            JsonObject queue = status.getJsonObject("analyseQueue");
+            assertTrue(queue.getBoolean("analysing"));
+            assertEquals(1, (int) queue.getInteger("depth"));
+            assertTrue(queue.getLong("waitTime") >= 50L);
+            assertEquals(
+                    queue,
+                    status.getJsonObject("analyseQueueOfSessions")
+                            .getJsonObject(IBackend.DEFAULT_SESSION));
+
+            inner.analysing.get(0).complete(new JsonObject());
+            inner.analysing.get(1).complete(new JsonObject());
+            await(waiter);
+            status = await(service.status());
+            assertFalse(status.containsKey("analysing"));
+            queue = status.getJsonObject("analyseQueue");
+            assertFalse(queue.getBoolean("analysing"));
+            assertEquals(0, (int) queue.getInteger("depth"));
+            assertEquals(0L, (long) queue.getLong("waitTime"));
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @org.junit.Test
+    public void guardsOnlyOfCreatedSessions() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            MockInner inner = new MockInner();
+            BackendService service =
+                    BackendServiceImpl.concurrency(vertx, inner.service(), 16, 5000L);
+
+            assertTrue(
+                    causeOf(service.analyseOfSession("s0", spec(1)))
+                            instanceof IllegalArgumentException);
+            assertTrue(
+                    causeOf(service.schemaOfSession("s0@sampled", "m0"))
+                            instanceof IllegalArgumentException);
+            assertFalse(sessionsOfQueue(service).contains("s0"));
+
+            await(service.createSession("s0"));
+            await(service.schemaOfSession("s0@sampled", "m0"));
+            assertTrue(sessionsOfQueue(service).contains("s0"));
+            assertTrue(sessionsOfQueue(service).contains("s0@sampled"));
+
+            await(service.dropSession("s0"));
+            assertFalse(sessionsOfQueue(service).contains("s0"));
+            assertFalse(sessionsOfQueue(service).contains("s0@sampled"));
+            assertTrue(
+                    causeOf(service.analyseOfSession("s0", spec(2)))
+                            instanceof IllegalArgumentException);
+            assertTrue(inner.specs.isEmpty());
+        } finally {
+            vertx.close();
+        }
+    }
+
+    private static Set<String> sessionsOfQueue(BackendService service) throws Exception {
+        return await(service.status()).getJsonObject("analyseQueueOfSessions").fieldNames();
+    }
+}
@@ -16,15 +16,69 @@ package org.metal.backend;
 
 import org.metal.core.props.IMetalProps;
 import org.metal.service.BaseMetalService;
+import org.metal.stats.IStatsStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Set;
 
 public interface IBackend<D, S, P extends IMetalProps> {
 
+    public static final String DEFAULT_SESSION = "default";
+
+    /**
+     * Suffix of the sampled view of one session. The sampled view shares the session's resources,
+     * but has its own platform session and translator context, so quick results never mix with full
+     * ones.
+     */
+    public static final String SAMPLED_SUFFIX = "@sampled";
+
+    public static String sampled(String session) {
+        return session + SAMPLED_SUFFIX;
+    }
+
     public void start() throws IllegalArgumentException;
 
     public void stop();
 
     public <R extends BaseMetalService<D, S, P>> R service() throws IllegalArgumentException;
 
+    /**
+     * Each session owns one service with its own translator context. Backends without multi-session
+     * support only serve the {@link #DEFAULT_SESSION}.
+     */
+    public default <R extends BaseMetalService<D, S, P>> R service(String session)
+            throws IllegalArgumentException {
+        if (DEFAULT_SESSION.equals(session)) {
+            return service();
+        }
+        throw new IllegalArgumentException(
+                String.format("Session[%s] is not found in backend.", session));
+    }
+
+    public default void createSession(String session)
+            throws IllegalArgumentException, UnsupportedOperationException {
+        throw new UnsupportedOperationException("Backend doesn't support multi-session.");
+    }
+
+    public default void dropSession(String session)
+            throws IllegalArgumentException, UnsupportedOperationException {
+        throw new UnsupportedOperationException("Backend doesn't support multi-session.");
+    }
+
+    public default Set<String> sessions() {
+        return Set.of(DEFAULT_SESSION);
+    }
+
+    /** Backends without progress tracking ignore the reporter. */
+    public default void progressReporter(IExecProgressReporter reporter) {}
+
+    /** Backends without a statistics catalog ignore the store. */
+    public default void statsStore(IStatsStore store) {}
+
+    /** Backends without instrumentation ignore the registry. */
+    public default void meterRegistry(MeterRegistry registry) {}
+
     public static interface IBuilder<D, S, P extends IMetalProps> {
 
         public IBuilder conf(String key, Object value);
@@ -32,7 +32,11 @@ public abstract class MSink<D, S, P extends IMSinkProps> extends Metal<D, S, P>
             throws MetalTranslateException {
         D data = master.dependency(this, context).get(0);
         try {
-            master.stageIMProduct(this, sink(master.platform(), data), context);
+            IMExecutor product =
+                    master.sampler().isPresent()
+                            ? master.sampler().get().sink(this, master.platform(), data)
+                            : sink(master.platform(), data);
+            master.stageIMProduct(this, product, context);
         } catch (IOException e) {
             throw new MetalTranslateException(e);
         } catch (MetalTranslateException e) {
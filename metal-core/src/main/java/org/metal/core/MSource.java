@@ -31,7 +31,11 @@ public abstract class MSource<D, S, P extends IMSourceProps> extends Metal<D, S,
     public void translate(Translator<D, S> master, TranslatorContext<D, S> context)
             throws MetalTranslateException {
         try {
-            master.stageDF(this, this.source(master.platform()), context);
+            D df = this.source(master.platform());
+            if (master.sampler().isPresent()) {
+                df = master.sampler().get().sample(this, df);
+            }
+            master.stageDF(this, df, context);
         } catch (IOException e) {
             throw new MetalTranslateException(e);
         }
@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.core;
+
+import org.metal.core.props.IMSplitterProps;
+import org.metal.exception.MetalTranslateException;
+import org.metal.translator.Translator;
+import org.metal.translator.TranslatorContext;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * One input and several named outputs. The staged DF is the split prepared once, successors get the
+ * output their route names derived from it, so all outputs share one pass over the input.
+ */
+public abstract class MSplitter<D, S, P extends IMSplitterProps> extends Metal<D, S, P> {
+
+    public MSplitter(String id, String name, P props) {
+        super(id, name, props);
+    }
+
+    @Override
+    public void translate(Translator<D, S> master, TranslatorContext<D, S> context)
+            throws MetalTranslateException {
+        D data = master.dependency(this, context).get(0);
+        try {
+            master.stageDF(this, split(master.platform(), data), context);
+        } catch (IOException e) {
+            throw new MetalTranslateException(e);
+        }
+    }
+
+    public abstract Set<String> outputs();
+
+    public abstract D split(S platform, D data) throws MetalTranslateException;
+
+    public abstract D output(S platform, D split, String output) throws MetalTranslateException;
+
+    public D outputOf(S platform, D split, String successorId) throws MetalTranslateException {
+        String output = this.props().routes().get(successorId);
+        if (output == null || !outputs().contains(output)) {
+            String msg =
+                    String.format(
+                            "MSplitter{%s} has no route to Metal{%s} in outputs %s.",
+                            this.id(), successorId, outputs());
+            throw new MetalTranslateException(msg);
+        }
+        return output(platform, split, output);
+    }
+}
@@ -18,6 +18,7 @@ import org.metal.core.MFusion;
 import org.metal.core.MMapper;
 import org.metal.core.MSink;
 import org.metal.core.MSource;
+import org.metal.core.MSplitter;
 import org.metal.core.Metal;
 
 import com.google.common.graph.Graph;
@@ -29,6 +30,7 @@ import com.google.common.graph.Traverser;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
@@ -95,6 +97,7 @@ public class Draft {
             Set<MSource> mSources = new HashSet<>();
             Set<MMapper> mMappers = new HashSet<>();
             Set<MFusion> mFusions = new HashSet<>();
+            Set<MSplitter> mSplitters = new HashSet<>();
             Set<MSink> mSinks = new HashSet<>();
 
             inner.graph
@@ -107,6 +110,8 @@ public class Draft {
                                     mMappers.add((MMapper) metal);
                                 } else if (metal instanceof MFusion) {
                                     mFusions.add((MFusion) metal);
+                                } else if (metal instanceof MSplitter) {
+                                    mSplitters.add((MSplitter) metal);
                                 } else if (metal instanceof MSink) {
                                     mSinks.add((MSink) metal);
                                 }
@@ -146,9 +151,36 @@ public class Draft {
                 }
             }
 
+            for (MSplitter<?, ?, ?> mSplitter : mSplitters) {
+                if (inner.graph.inDegree(mSplitter) != 1) {
+                    String msg =
+                            String.format("MSplitter{%s} must have only one input!", mSplitter);
+                    throw new IllegalArgumentException(msg);
+                }
+
+                if (inner.graph.outDegree(mSplitter) == 0) {
+                    String msg = String.format("MSplitter{%s} don\'t have any output!", mSplitter);
+                    throw new IllegalArgumentException(msg);
+                }
+
+                Set<String> outputs = mSplitter.outputs();
+                Map<String, String> routes = mSplitter.props().routes();
+                for (Metal successor : inner.graph.successors(mSplitter)) {
+                    String output = routes.get(successor.id());
+                    if (output == null || !outputs.contains(output)) {
+                        String msg =
+                                String.format(
+                                        "MSplitter{%s} routes Metal{%s} to output[%s], which isn\'t one of %s!",
+                                        mSplitter, successor, output, outputs);
+                        throw new IllegalArgumentException(msg);
+                    }
+                }
+            }
+
             inner.sources = Collections.unmodifiableSet(mSources);
             inner.mappers = Collections.unmodifiableSet(mMappers);
             inner.fusions = Collections.unmodifiableSet(mFusions);
+            inner.splitters = Collections.unmodifiableSet(mSplitters);
             inner.sinks = Collections.unmodifiableSet(mSinks);
             return inner;
         }
@@ -206,6 +238,7 @@ public class Draft {
     private Set<MSource> sources;
     private Set<MMapper> mappers;
     private Set<MFusion> fusions;
+    private Set<MSplitter> splitters;
     private Set<MSink> sinks;
     private Graph<Metal> graph;
     private Graph<MSink> waitFor;
@@ -234,6 +267,10 @@ public class Draft {
         return fusions;
     }
 
+    public Set<MSplitter> getSplitters() {
+        return splitters;
+    }
+
     public Set<MSink> getSinks() {
         return sinks;
     }
@@ -14,8 +14,13 @@
 
 package org.metal.exception;
 
+import java.util.Collections;
+import java.util.List;
+
 public class MetalExecuteException extends MetalException {
 
+    private List<String> executedSinks = Collections.emptyList();
+
     public MetalExecuteException() {}
 
     public MetalExecuteException(String message) {
@@ -58,4 +63,14 @@ public class MetalExecuteException extends MetalException {
             boolean writableStackTrace) {
         super(message, cause, metal, enableSuppression, writableStackTrace);
     }
+
+    /** Ids of sinks which had been run before the exec failed, in exec order. */
+    public List<String> executedSinks() {
+        return executedSinks;
+    }
+
+    public MetalExecuteException executedSinks(List<String> executedSinks) {
+        this.executedSinks = executedSinks;
+        return this;
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.instrument;
+
+/**
+ * Instrumentation SPI of metal. Implementations registered in {@code
+ * META-INF/services/org.metal.instrument.IMetalListener} are loaded by every {@link
+ * org.metal.translator.Translator}, hosts add others through {@link
+ * org.metal.backend.IBackend#meterRegistry}. Callbacks run in the translating or executing thread,
+ * so they should be cheap and never throw.
+ */
+public interface IMetalListener {
+
+    public default void onDraftTranslate(DraftTranslateEvent event) {}
+
+    public default void onMetalTranslate(MetalTranslateEvent event) {}
+
+    public default void onMetalStage(MetalStageEvent event) {}
+
+    public default void onMetalExec(MetalExecEvent event) {}
+}
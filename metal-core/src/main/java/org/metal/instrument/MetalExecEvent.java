@@ -0,0 +1,41 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.instrument;
+
+import org.immutables.value.Value;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Value.Immutable
+public interface MetalExecEvent {
+
+    public Optional<String> execId();
+
+    /** All metals sharing the hashcode of the executed IMProduct. */
+    public List<String> metalIds();
+
+    public String hash();
+
+    public long startTime();
+
+    public long durationNanos();
+
+    public boolean success();
+
+    /** Counters supplied by backend, like records and bytes written. */
+    public Map<String, Long> counters();
+}
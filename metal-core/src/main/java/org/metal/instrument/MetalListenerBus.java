@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.instrument;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class MetalListenerBus implements IMetalListener {
+
+    private static final Logger LOGGER = Logger.getLogger(MetalListenerBus.class.getName());
+
+    private List<IMetalListener> listeners;
+
+    private MetalListenerBus() {
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    public static MetalListenerBus create() {
+        return new MetalListenerBus();
+    }
+
+    /** Create one bus with all listeners found by {@link ServiceLoader}. */
+    public static MetalListenerBus load() {
+        MetalListenerBus bus = new MetalListenerBus();
+        for (IMetalListener listener : ServiceLoader.load(IMetalListener.class)) {
+            bus.add(listener);
+        }
+        return bus;
+    }
+
+    public MetalListenerBus add(IMetalListener listener) {
+        this.listeners.add(listener);
+        return this;
+    }
+
+    public MetalListenerBus remove(IMetalListener listener) {
+        this.listeners.remove(listener);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return this.listeners.isEmpty();
+    }
+
+    private void post(Consumer<IMetalListener> callback) {
+        for (IMetalListener listener : listeners) {
+            try {
+                callback.accept(listener);
+            } catch (Exception e) {
+                // One broken listener should not fail translation or execution.
+                LOGGER.log(
+                        Level.WARNING,
+                        "Listener " + listener.getClass().getName() + " failed on event.",
+                        e);
+            }
+        }
+    }
+
+    @Override
+    public void onDraftTranslate(DraftTranslateEvent event) {
+        post(listener -> listener.onDraftTranslate(event));
+    }
+
+    @Override
+    public void onMetalTranslate(MetalTranslateEvent event) {
+        post(listener -> listener.onMetalTranslate(event));
+    }
+
+    @Override
+    public void onMetalStage(MetalStageEvent event) {
+        post(listener -> listener.onMetalStage(event));
+    }
+
+    @Override
+    public void onMetalExec(MetalExecEvent event) {
+        post(listener -> listener.onMetalExec(event));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.instrument;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes meters to the registry of the host. Meters of metals are tagged by metal id and publish
+ * latency histograms. Metal ids are unbounded, so the registry accepts at most {@code maxMetalIds}
+ * of them, meters of later ids are denied.
+ */
+public class MicrometerMetalListener implements IMetalListener {
+
+    public static final String DRAFT_TRANSLATE_TIMER = "metal.draft.translate";
+    public static final String TRANSLATE_TIMER = "metal.translate";
+    public static final String TRANSLATE_CACHE_COUNTER = "metal.translate.cache";
+    public static final String STAGE_TIMER = "metal.stage";
+    public static final String EXEC_TIMER = "metal.exec";
+    public static final String EXEC_COUNTER_SUMMARY = "metal.exec.counter";
+
+    public static final String METAL_ID_TAG = "metal.id";
+    public static final int DEFAULT_MAX_METAL_IDS = 256;
+
+    /** Bounds of histogram buckets, from one millisecond up to one hour. */
+    private static final Duration[] BUCKETS = {
+        Duration.ofMillis(1),
+        Duration.ofMillis(5),
+        Duration.ofMillis(10),
+        Duration.ofMillis(50),
+        Duration.ofMillis(100),
+        Duration.ofMillis(500),
+        Duration.ofSeconds(1),
+        Duration.ofSeconds(5),
+        Duration.ofSeconds(10),
+        Duration.ofSeconds(30),
+        Duration.ofMinutes(1),
+        Duration.ofMinutes(5),
+        Duration.ofMinutes(10),
+        Duration.ofMinutes(30),
+        Duration.ofHours(1)
+    };
+
+    private MeterRegistry registry;
+
+    public MicrometerMetalListener(MeterRegistry registry) {
+        this(registry, DEFAULT_MAX_METAL_IDS);
+    }
+
+    public MicrometerMetalListener(MeterRegistry registry, int maxMetalIds) {
+        this.registry = registry;
+        this.registry
+                .config()
+                .meterFilter(
+                        MeterFilter.maximumAllowableTags(
+                                "metal", METAL_ID_TAG, maxMetalIds, MeterFilter.deny()));
+    }
+
+    private static Tags metalTags(String metalId) {
+        return Tags.of(METAL_ID_TAG, metalId);
+    }
+
+    /**
+     * Fixed buckets instead of a percentile histogram, which some registries do not publish and
+     * others publish with dozens of buckets per timer.
+     */
+    private static Timer.Builder histogram(Timer.Builder builder) {
+        return builder.serviceLevelObjectives(BUCKETS).publishPercentiles(0.5, 0.95, 0.99);
+    }
+
+    private static String outcome(boolean success) {
+        return success ? "success" : "failure";
+    }
+
+    @Override
+    public void onDraftTranslate(DraftTranslateEvent event) {
+        histogram(Timer.builder(DRAFT_TRANSLATE_TIMER))
+                .tag("outcome", outcome(event.success()))
+                .register(registry)
+                .record(event.durationNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onMetalTranslate(MetalTranslateEvent event) {
+        registry.counter(
+                        TRANSLATE_CACHE_COUNTER,
+                        metalTags(event.metalId())
+                                .and(
+                                        "metal.type",
+                                        event.metalType(),
+                                        "result",
+                                        event.cacheHit() ? "hit" : "miss"))
+                .increment();
+        if (event.cacheHit()) {
+            return;
+        }
+        histogram(Timer.builder(TRANSLATE_TIMER))
+                .tags(metalTags(event.metalId()))
+                .tag("metal.type", event.metalType())
+                .tag("outcome", outcome(event.success()))
+                .register(registry)
+                .record(event.durationNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onMetalStage(MetalStageEvent event) {
+        histogram(Timer.builder(STAGE_TIMER))
+                .tags(metalTags(event.metalId()))
+                .tag("metal.type", event.metalType())
+                .tag("kind", event.kind().toString())
+                .register(registry)
+                .record(event.durationNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onMetalExec(MetalExecEvent event) {
+        // Metals sharing one IMProduct ran once, each of them records the product.
+        for (String metalId : event.metalIds()) {
+            recordExec(event, metalTags(metalId));
+        }
+    }
+
+    private void recordExec(MetalExecEvent event, Tags tags) {
+        histogram(Timer.builder(EXEC_TIMER))
+                .tags(tags)
+                .tag("outcome", outcome(event.success()))
+                .register(registry)
+                .record(event.durationNanos(), TimeUnit.NANOSECONDS);
+
+        for (Map.Entry<String, Long> counter : event.counters().entrySet()) {
+            DistributionSummary.builder(EXEC_COUNTER_SUMMARY)
+                    .tags(tags)
+                    .tag("counter", counter.getKey())
+                    .register(registry)
+                    .record(counter.getValue());
+        }
+    }
+}
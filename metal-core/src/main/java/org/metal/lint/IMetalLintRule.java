@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.lint;
+
+import org.metal.core.Metal;
+
+import java.util.List;
+
+/**
+ * Rule inspecting the staged DF of one metal after translation. Rules are found by {@link
+ * java.util.ServiceLoader}, and only run on DFs of their {@link #dataType()}.
+ */
+public interface IMetalLintRule<D> {
+
+    public String name();
+
+    public Class<D> dataType();
+
+    /**
+     * The DF includes plans of upstream metals, findings already reported on one predecessor are
+     * dropped, so messages should name the offending node.
+     */
+    public List<MetalLint> lint(Metal metal, D df);
+}
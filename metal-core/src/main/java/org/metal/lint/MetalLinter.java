@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.lint;
+
+import org.metal.core.Metal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class MetalLinter {
+
+    private static final Logger LOGGER = Logger.getLogger(MetalLinter.class.getName());
+
+    private List<IMetalLintRule<?>> rules;
+
+    private MetalLinter() {
+        this.rules = new CopyOnWriteArrayList<>();
+    }
+
+    public static MetalLinter create() {
+        return new MetalLinter();
+    }
+
+    /** Create one linter with all rules found by {@link ServiceLoader}. */
+    public static MetalLinter load() {
+        MetalLinter linter = new MetalLinter();
+        for (IMetalLintRule<?> rule : ServiceLoader.load(IMetalLintRule.class)) {
+            linter.add(rule);
+        }
+        return linter;
+    }
+
+    public MetalLinter add(IMetalLintRule<?> rule) {
+        this.rules.add(rule);
+        return this;
+    }
+
+    public MetalLinter remove(IMetalLintRule<?> rule) {
+        this.rules.remove(rule);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return this.rules.isEmpty();
+    }
+
+    public List<MetalLint> lint(Metal metal, Object df) {
+        List<MetalLint> lints = new ArrayList<>();
+        for (IMetalLintRule<?> rule : rules) {
+            if (!rule.dataType().isInstance(df)) {
+                continue;
+            }
+            try {
+                lints.addAll(lint(rule, metal, df));
+            } catch (Exception e) {
+                // One broken rule should not fail analyse, but it should not look like a clean one.
+                LOGGER.log(
+                        Level.WARNING,
+                        String.format("Lint rule %s failed on metal %s.", rule.name(), metal.id()),
+                        e);
+                lints.add(failureOf(rule, metal, e));
+            }
+        }
+        return lints;
+    }
+
+    private static MetalLint failureOf(IMetalLintRule<?> rule, Metal metal, Exception e) {
+        return ImmutableMetalLint.builder()
+                .metalId(metal.id())
+                .rule(rule.name())
+                .severity(LintSeverity.ERROR)
+                .message(String.format("Lint rule failed: %s", e))
+                .suggestion(
+                        "Report the failure to the rule's maintainer, findings of it are missing.")
+                .build();
+    }
+
+    private static <D> List<MetalLint> lint(IMetalLintRule<D> rule, Metal metal, Object df) {
+        return rule.lint(metal, rule.dataType().cast(df));
+    }
+}
@@ -15,6 +15,7 @@
 package org.metal.service;
 
 import org.metal.core.MSink;
+import org.metal.core.MSource;
 import org.metal.core.Metal;
 import org.metal.core.props.IMetalProps;
 import org.metal.draft.Draft;
@@ -22,6 +23,11 @@ import org.metal.exception.MetalAnalysedException;
 import org.metal.exception.MetalExecuteException;
 import org.metal.exception.MetalServiceException;
 import org.metal.exception.MetalTranslateException;
+import org.metal.instrument.ImmutableMetalExecEvent;
+import org.metal.lint.ImmutableMetalLint;
+import org.metal.lint.MetalLint;
+import org.metal.lint.MetalLinter;
+import org.metal.stats.SourceStats;
 import org.metal.translator.Translator;
 import org.metal.translator.TranslatorContext;
 
@@ -30,13 +36,22 @@ import org.apache.arrow.vector.types.pojo.Schema;
 import com.google.common.graph.EndpointPair;
 import com.google.common.graph.Graph;
 import com.google.common.graph.GraphBuilder;
+import com.google.common.graph.Graphs;
 import com.google.common.graph.MutableGraph;
 import com.google.common.graph.Traverser;
 import com.google.common.hash.HashCode;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -44,6 +59,12 @@ import java.util.stream.StreamSupport;
 public class BaseMetalService<D, S, P extends IMetalProps> implements IMetalService<D, S, P> {
 
     private Translator<D, S> translator;
+    private MetalLinter linter = MetalLinter.load();
+
+    /** Full findings of each DF by hash, unchanged metals are not linted again. */
+    private Map<String, List<MetalLint>> lintCache = new HashMap<>();
+
+    private List<MetalLint> lints = Collections.emptyList();
 
     protected BaseMetalService(Translator<D, S> translator) {
         this.translator = translator;
@@ -122,14 +143,108 @@ public class BaseMetalService<D, S, P extends IMetalProps> implements IMetalServ
             } catch (MetalTranslateException e) {
                 throw new MetalAnalysedException(e);
             }
+            this.lints = lint();
         } else {
             /** The Translator will not change context. */
             throw new MetalAnalysedException("Some metals has same id.");
         }
     }
 
+    @Override
+    public List<MetalLint> lints() {
+        return this.lints;
+    }
+
+    public MetalLinter linter() {
+        return this.linter;
+    }
+
+    private List<MetalLint> lint() {
+        if (linter.isEmpty()) {
+            this.lintCache = new HashMap<>();
+            return Collections.emptyList();
+        }
+
+        Map<Metal, List<MetalLint>> found = new HashMap<>();
+        Map<String, List<MetalLint>> nextCache = new HashMap<>();
+        List<MetalLint> lints = new ArrayList<>();
+        Draft draft = this.context().draft();
+        for (Metal metal : Traverser.forGraph(draft.getGraph()).breadthFirst(draft.getSources())) {
+            if (metal instanceof MSink) {
+                continue;
+            }
+            Set<String> upstream =
+                    draft.getGraph().predecessors(metal).stream()
+                            .flatMap(
+                                    (Metal pred) -> {
+                                        return lintOf(pred, found, nextCache).stream();
+                                    })
+                            .map(BaseMetalService::lintKey)
+                            .collect(Collectors.toSet());
+            for (MetalLint lint : lintOf(metal, found, nextCache)) {
+                if (!upstream.contains(lintKey(lint))) {
+                    lints.add(lint);
+                }
+            }
+        }
+        this.lintCache = nextCache;
+        return Collections.unmodifiableList(lints);
+    }
+
+    private List<MetalLint> lintOf(
+            Metal metal,
+            Map<Metal, List<MetalLint>> found,
+            Map<String, List<MetalLint>> nextCache) {
+        if (metal instanceof MSink) {
+            return Collections.emptyList();
+        }
+        if (found.containsKey(metal)) {
+            return found.get(metal);
+        }
+
+        HashCode hashCode = this.context().metal2hash().get(metal);
+        String hash = hashCode.toString();
+        List<MetalLint> ofHash = lintCache.get(hash);
+        if (ofHash == null) {
+            ofHash = linter.lint(metal, this.context().dfs().get(hashCode));
+        }
+        nextCache.put(hash, ofHash);
+        List<MetalLint> ofMetal =
+                ofHash.stream()
+                        .map(
+                                (MetalLint lint) -> {
+                                    return (MetalLint)
+                                            ImmutableMetalLint.copyOf(lint).withMetalId(metal.id());
+                                })
+                        .collect(Collectors.toList());
+        found.put(metal, ofMetal);
+        return ofMetal;
+    }
+
+    private static String lintKey(MetalLint lint) {
+        return lint.rule() + ":" + lint.message();
+    }
+
     @Override
     public void exec() throws MetalExecuteException {
+        exec(null);
+    }
+
+    @Override
+    public void exec(String execId) throws MetalExecuteException {
+        exec(execId, Collections.emptySet());
+    }
+
+    @Override
+    public List<String> execClosure(Set<String> sinkIds) throws MetalExecuteException {
+        return execOrder(sinkIds).stream().map(MSink::id).collect(Collectors.toList());
+    }
+
+    /**
+     * The sinks in exec order, which are the given sinks and all sinks they wait for. All sinks in
+     * draft are returned if sinkIds is empty.
+     */
+    private List<MSink> execOrder(Set<String> sinkIds) throws MetalExecuteException {
         Graph<MSink> wait = GraphBuilder.directed().build();
         for (MSink sink : this.context().draft().getWaitFor().nodes()) {
             ((MutableGraph<MSink>) wait).addNode(sink);
@@ -142,18 +257,44 @@ public class BaseMetalService<D, S, P extends IMetalProps> implements IMetalServ
             ((MutableGraph<MSink>) wait).addNode(sink);
         }
 
+        Graph<MSink> selected = wait;
+        if (sinkIds != null && !sinkIds.isEmpty()) {
+            Set<MSink> targets = new HashSet<>();
+            for (String sinkId : sinkIds) {
+                Metal metal = this.context().id2metal().get(sinkId);
+                if (!(metal instanceof MSink)) {
+                    String msg = String.format("Metal{id=%s} is not one MSink in context.", sinkId);
+                    throw new MetalExecuteException(msg, sinkId);
+                }
+                targets.add((MSink) metal);
+            }
+
+            Set<MSink> closure = new HashSet<>();
+            Traverser.<MSink>forGraph(wait::predecessors)
+                    .breadthFirst(targets)
+                    .forEach(closure::add);
+            selected = Graphs.inducedSubgraph(wait, closure);
+        }
+
+        Graph<MSink> execGraph = selected;
         Set<MSink> starters =
-                wait.nodes().stream()
+                execGraph.nodes().stream()
                         .filter(
                                 (MSink sink) -> {
-                                    return wait.inDegree(sink) == 0;
+                                    return execGraph.inDegree(sink) == 0;
                                 })
                         .collect(Collectors.toSet());
 
+        return StreamSupport.stream(
+                        Traverser.forGraph(execGraph).breadthFirst(starters).spliterator(), false)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> exec(String execId, Set<String> sinkIds) throws MetalExecuteException {
+        List<MSink> execSinks = execOrder(sinkIds);
         List<HashCode> execOrder =
-                StreamSupport.stream(
-                                Traverser.forGraph(wait).breadthFirst(starters).spliterator(),
-                                false)
+                execSinks.stream()
                         .map(
                                 (MSink sink) -> {
                                     return this.context().metal2hash().get(sink);
@@ -161,6 +302,7 @@ public class BaseMetalService<D, S, P extends IMetalProps> implements IMetalServ
                         .collect(Collectors.toList());
 
         LinkedHashSet<HashCode> execOrderDeDup = new LinkedHashSet<>(execOrder);
+        Set<HashCode> executed = new HashSet<>();
 
         for (HashCode code : execOrderDeDup) {
             if (!this.context().mProducts().containsKey(code)) {
@@ -176,17 +318,72 @@ public class BaseMetalService<D, S, P extends IMetalProps> implements IMetalServ
             }
         }
 
-        for (HashCode code : execOrderDeDup) {
-            try {
-                this.context().mProducts().get(code).exec();
-            } catch (Throwable t) {
-                String metals =
+        try {
+            for (HashCode code : execOrderDeDup) {
+                List<String> metalIds =
                         this.context().hash2metal().get(code).stream()
                                 .map(m -> m.id())
-                                .collect(Collectors.joining(",", "{", "}"));
-                throw new MetalExecuteException(t.getLocalizedMessage(), t, metals);
+                                .collect(Collectors.toList());
+                long startTime = System.currentTimeMillis();
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    beforeMProductExec(execId, metalIds);
+                    this.context().mProducts().get(code).exec();
+                    success = true;
+                    executed.add(code);
+                } catch (Throwable t) {
+                    String metals = metalIds.stream().collect(Collectors.joining(",", "{", "}"));
+                    throw new MetalExecuteException(t.getLocalizedMessage(), t, metals)
+                            .executedSinks(executedSinks(execSinks, executed));
+                } finally {
+                    long durationNanos = System.nanoTime() - start;
+                    afterMProductExec(execId, metalIds);
+                    this.translator()
+                            .listeners()
+                            .onMetalExec(
+                                    ImmutableMetalExecEvent.builder()
+                                            .execId(Optional.ofNullable(execId))
+                                            .metalIds(metalIds)
+                                            .hash(code.toString())
+                                            .startTime(startTime)
+                                            .durationNanos(durationNanos)
+                                            .success(success)
+                                            .counters(execCounters(execId, metalIds))
+                                            .build());
+                }
             }
+        } finally {
+            afterExec(execId);
         }
+        return executedSinks(execSinks, executed);
+    }
+
+    private List<String> executedSinks(List<MSink> execSinks, Set<HashCode> executed) {
+        return execSinks.stream()
+                .filter(sink -> executed.contains(this.context().metal2hash().get(sink)))
+                .map(MSink::id)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Called in the executing thread before one IMProduct runs. The metalIds are all metals sharing
+     * the same hashcode with the IMProduct.
+     */
+    protected void beforeMProductExec(String execId, List<String> metalIds) {}
+
+    protected void afterMProductExec(String execId, List<String> metalIds) {}
+
+    protected void afterExec(String execId) {}
+
+    /** Engine counters of one IMProduct in exec, published with the exec instrumentation. */
+    protected Map<String, Long> execCounters(String execId, List<String> metalIds) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public boolean sampled() {
+        return this.translator.sampler().isPresent();
     }
 
     @Override
@@ -194,6 +391,106 @@ public class BaseMetalService<D, S, P extends IMetalProps> implements IMetalServ
         throw new MetalServiceException("This method is not implemented.");
     }
 
+    @Override
+    public Map<String, Schema> schemas(List<String> ids) throws MetalServiceException {
+        List<String> targets = ids;
+        if (targets == null || targets.isEmpty()) {
+            targets = analysedWithDF();
+        }
+        Map<String, Schema> schemas = new LinkedHashMap<>();
+        for (String id : targets) {
+            schemas.put(id, schema(id));
+        }
+        return schemas;
+    }
+
+    @Override
+    public MetalExplain explain(String id, String mode) throws MetalServiceException {
+        throw new MetalServiceException("This method is not implemented.");
+    }
+
+    @Override
+    public List<MetalCost> costs(int top) throws MetalServiceException {
+        List<MetalCost> costs = new ArrayList<>();
+        for (String id : analysedWithDF()) {
+            costs.add(cost(id));
+        }
+        return costs.stream()
+                .sorted(Comparator.comparingLong(MetalCost::sizeInBytes).reversed())
+                .limit(Math.max(top, 0))
+                .collect(Collectors.toList());
+    }
+
+    /** Analysed metals except MSinks, which have no DF. */
+    protected List<String> analysedWithDF() {
+        return analysed().stream()
+                .filter(
+                        (String id) -> {
+                            return !(metal(id) instanceof MSink);
+                        })
+                .collect(Collectors.toList());
+    }
+
+    protected MetalCost cost(String id) throws MetalServiceException {
+        throw new MetalServiceException("This method is not implemented.");
+    }
+
+    @Override
+    public byte[] previewAsArrow(String id, int limit) throws MetalServiceException {
+        throw new MetalServiceException("This method is not implemented.");
+    }
+
+    @Override
+    public List<String> previewAsJson(String id, int limit) throws MetalServiceException {
+        throw new MetalServiceException("This method is not implemented.");
+    }
+
+    @Override
+    public List<SourceStats> collectStats(List<String> ids) throws MetalServiceException {
+        throw new MetalServiceException("This method is not implemented.");
+    }
+
+    /** Analysed MSources, or the given ids after checking each one is an MSource. */
+    protected List<String> sources(List<String> ids) throws MetalServiceException {
+        if (ids == null || ids.isEmpty()) {
+            return analysed().stream()
+                    .filter(
+                            (String id) -> {
+                                return metal(id) instanceof MSource;
+                            })
+                    .collect(Collectors.toList());
+        }
+        for (String id : ids) {
+            if (!(metal(id) instanceof MSource)) {
+                throw new MetalServiceException(
+                        String.format("Metal{id=%s} is not one MSource in context.", id));
+            }
+        }
+        return ids;
+    }
+
+    /** Translate the metals and all metals after them again, other metals are kept. */
+    protected void retranslate(List<String> ids) throws MetalAnalysedException {
+        Set<Metal> metals = ids.stream().map(this::metal).collect(Collectors.toSet());
+        this.translator.evict(metals);
+        analyse(this.context().draft());
+    }
+
+    /** Hash of the metal in context, empty if the metal isn't analysed. */
+    protected Optional<String> hashOf(String id) throws NoSuchElementException {
+        HashCode hashCode = this.context().metal2hash().get(metal(id));
+        if (hashCode == null) {
+            return Optional.empty();
+        }
+        return Optional.of(hashCode.toString());
+    }
+
+    protected Set<String> analysedHashes() {
+        return this.context().hash2metal().keySet().stream()
+                .map(HashCode::toString)
+                .collect(Collectors.toSet());
+    }
+
     protected TranslatorContext<D, S> context() {
         return this.translator.context();
     }
@@ -20,11 +20,15 @@ import org.metal.draft.Draft;
 import org.metal.exception.MetalAnalysedException;
 import org.metal.exception.MetalExecuteException;
 import org.metal.exception.MetalServiceException;
+import org.metal.lint.MetalLint;
+import org.metal.stats.SourceStats;
 
 import org.apache.arrow.vector.types.pojo.Schema;
 
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 public interface IMetalService<D, S, P extends IMetalProps> {
 
@@ -38,7 +42,40 @@ public interface IMetalService<D, S, P extends IMetalProps> {
 
     public void analyse(Draft draft) throws MetalAnalysedException, IllegalStateException;
 
+    /** Findings of lint rules on DFs of the last successful analyse. */
+    public List<MetalLint> lints();
+
     public void exec() throws MetalExecuteException;
 
+    public void exec(String execId) throws MetalExecuteException;
+
+    /** Only run the given sinks and sinks they wait for, return ids of sinks run in order. */
+    public List<String> exec(String execId, Set<String> sinkIds) throws MetalExecuteException;
+
+    public List<String> execClosure(Set<String> sinkIds) throws MetalExecuteException;
+
+    /** Whether the service runs on sampled sources with sinks replaced. */
+    public boolean sampled();
+
     public Schema schema(String id) throws MetalServiceException;
+
+    /** Schemas of the given metals, or of all analysed metals with DF when ids is empty. */
+    public Map<String, Schema> schemas(List<String> ids) throws MetalServiceException;
+
+    public MetalExplain explain(String id, String mode) throws MetalServiceException;
+
+    /** Cost estimates of analysed metals with DF, the most expensive first. */
+    public List<MetalCost> costs(int top) throws MetalServiceException;
+
+    /** Collect at most limit rows of the metal, encoded as one Arrow IPC stream. */
+    public byte[] previewAsArrow(String id, int limit) throws MetalServiceException;
+
+    /** Collect at most limit rows of the metal, one JSON object per row. */
+    public List<String> previewAsJson(String id, int limit) throws MetalServiceException;
+
+    /**
+     * Collect statistics of the given sources, or of all analysed sources when ids is empty. The
+     * sources and metals after them are translated again with the statistics.
+     */
+    public List<SourceStats> collectStats(List<String> ids) throws MetalServiceException;
 }
@@ -0,0 +1,31 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.service;
+
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+/** Optimizer estimates of one metal's DF, not measured values. */
+@Value.Immutable
+public interface MetalCost {
+
+    public String metalId();
+
+    /** Estimated output size, engines may report Long.MAX_VALUE when they know nothing. */
+    public long sizeInBytes();
+
+    public Optional<Long> rowCount();
+}
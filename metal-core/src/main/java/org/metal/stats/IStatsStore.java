@@ -0,0 +1,26 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.stats;
+
+import java.util.Optional;
+
+/** Durable home of source statistics, shared by all backends. */
+public interface IStatsStore {
+
+    /** Called while translating, implementations should bound how long they block. */
+    public Optional<SourceStats> load(String fingerprint);
+
+    public void save(SourceStats stats);
+}
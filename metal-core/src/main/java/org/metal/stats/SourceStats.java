@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.stats;
+
+import org.immutables.value.Value;
+
+import java.util.Map;
+
+/** Statistics of the data behind one source, keyed by the fingerprint of its files. */
+@Value.Immutable
+public interface SourceStats {
+
+    /** Changes whenever files of the source are added, removed or rewritten. */
+    public String fingerprint();
+
+    public String path();
+
+    public long sizeInBytes();
+
+    public long rowCount();
+
+    public Map<String, ColumnStats> columns();
+
+    public long collectTime();
+}
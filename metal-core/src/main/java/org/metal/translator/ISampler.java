@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.translator;
+
+import org.metal.core.IMExecutor;
+import org.metal.core.MSink;
+import org.metal.core.MSource;
+import org.metal.exception.MetalTranslateException;
+
+/** Turns one translation into a quick one, which runs on sampled sources and skips real sinks. */
+public interface ISampler<D, S> {
+
+    /** Sample the DF of one source, the same source and data should give the same sample. */
+    public D sample(MSource<D, S, ?> source, D df) throws MetalTranslateException;
+
+    /** Executor used instead of the sink's own one, sampled data never reaches real sinks. */
+    public IMExecutor sink(MSink<D, S, ?> sink, S platform, D data) throws MetalTranslateException;
+
+    /**
+     * Identity of the sampling, it goes into every hash so sampled DFs never mix with full ones.
+     */
+    public String fingerprint();
+}
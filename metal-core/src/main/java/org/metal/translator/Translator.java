@@ -15,22 +15,34 @@
 package org.metal.translator;
 
 import org.metal.core.IMExecutor;
+import org.metal.core.MSource;
+import org.metal.core.MSplitter;
 import org.metal.core.Metal;
 import org.metal.core.props.IMetalPropsUtil;
 import org.metal.draft.Draft;
 import org.metal.exception.MetalTranslateException;
+import org.metal.instrument.ImmutableDraftTranslateEvent;
+import org.metal.instrument.ImmutableMetalStageEvent;
+import org.metal.instrument.ImmutableMetalTranslateEvent;
+import org.metal.instrument.MetalListenerBus;
+import org.metal.instrument.MetalStageEvent;
+import org.metal.instrument.MetalTranslateEvent;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.graph.Traverser;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -39,6 +51,8 @@ public class Translator<D, S> {
 
     private volatile TranslatorContext<D, S> stagingContext;
     private S platform;
+    private Optional<ISampler<D, S>> sampler = Optional.empty();
+    private MetalListenerBus listeners = MetalListenerBus.load();
 
     public Translator(S platform) {
         this.stagingContext =
@@ -58,55 +72,164 @@ public class Translator<D, S> {
         this.platform = platform;
     }
 
+    public Translator(S platform, ISampler<D, S> sampler) {
+        this(platform);
+        this.sampler = Optional.of(sampler);
+    }
+
+    /** Sources are salted with the sampler's fingerprint, the salt flows down through prevs. */
+    private HashCode hash(Metal metal, List<HashCode> prevs) throws IOException {
+        if (sampler.isPresent() && metal instanceof MSource) {
+            List<HashCode> salted = new ArrayList<>(prevs);
+            salted.add(
+                    Hashing.sha256()
+                            .hashString(sampler.get().fingerprint(), StandardCharsets.UTF_8));
+            return IMetalPropsUtil.sha256WithPrev(metal.props(), salted);
+        }
+        return IMetalPropsUtil.sha256WithPrev(metal.props(), prevs);
+    }
+
+    /**
+     * Hashes of the predecessors. One splitter's hash is salted with the output routed to the
+     * metal, otherwise successors taking different outputs could share one hash.
+     */
+    private List<HashCode> prevs(Draft draft, Metal metal, Map<Metal, HashCode> metal2hash) {
+        List<HashCode> prevs = new ArrayList<>();
+        for (Metal prev : draft.getGraph().predecessors(metal)) {
+            HashCode code = metal2hash.get(prev);
+            if (prev instanceof MSplitter) {
+                String output =
+                        ((MSplitter<?, ?, ?>) prev).props().routes().getOrDefault(metal.id(), "");
+                code =
+                        Hashing.combineOrdered(
+                                List.of(
+                                        code,
+                                        Hashing.sha256()
+                                                .hashString(output, StandardCharsets.UTF_8)));
+            }
+            prevs.add(code);
+        }
+        prevs.sort(Comparator.comparing(HashCode::toString));
+        return prevs;
+    }
+
+    /** Hash of the metal in the context, empty if the context doesn't contain it. */
+    public Optional<String> hashOf(Metal metal, TranslatorContext<D, S> context) {
+        return Optional.ofNullable(context.metal2hash().get(metal)).map(HashCode::toString);
+    }
+
     public D stagingDF(Metal metal, TranslatorContext<D, S> context) {
         return context.dfs().get(context.metal2hash().get(metal));
     }
 
     public void stageDF(Metal metal, D df, TranslatorContext<D, S> context) throws IOException {
-        HashCode hashCode =
-                IMetalPropsUtil.sha256WithPrev(
-                        metal.props(),
-                        context.draft().getGraph().predecessors(metal).stream()
-                                .map(context.metal2hash()::get)
-                                .sorted(Comparator.comparing(HashCode::toString))
-                                .collect(Collectors.toList()));
+        long start = System.nanoTime();
+        HashCode hashCode = hash(metal, prevs(context.draft(), metal, context.metal2hash()));
         context.dfs().put(hashCode, df);
+        listeners.onMetalStage(
+                ImmutableMetalStageEvent.builder()
+                        .metalId(metal.id())
+                        .metalType(metal.getClass().getName())
+                        .hash(hashCode.toString())
+                        .kind(MetalStageEvent.Kind.DF)
+                        .durationNanos(System.nanoTime() - start)
+                        .build());
     }
 
     public void stageIMProduct(Metal metal, IMExecutor product, TranslatorContext<D, S> context)
             throws IOException {
-        HashCode hashCode =
-                IMetalPropsUtil.sha256WithPrev(
-                        metal.props(),
-                        context.draft().getGraph().predecessors(metal).stream()
-                                .map(context.metal2hash()::get)
-                                .sorted(Comparator.comparing(HashCode::toString))
-                                .collect(Collectors.toList()));
+        long start = System.nanoTime();
+        HashCode hashCode = hash(metal, prevs(context.draft(), metal, context.metal2hash()));
         context.metal2hash().put(metal, hashCode);
         context.hash2metal().put(hashCode, metal);
         context.mProducts().put(hashCode, product);
+        listeners.onMetalStage(
+                ImmutableMetalStageEvent.builder()
+                        .metalId(metal.id())
+                        .metalType(metal.getClass().getName())
+                        .hash(hashCode.toString())
+                        .kind(MetalStageEvent.Kind.MPRODUCT)
+                        .durationNanos(System.nanoTime() - start)
+                        .build());
     }
 
-    public List<D> dependency(Metal metal, TranslatorContext<D, S> context) {
-        return context.draft().getGraph().predecessors(metal).stream()
-                .map(context.metal2hash()::get)
-                .sorted(Comparator.comparing(HashCode::toString))
-                .map(context.dfs()::get)
-                .collect(Collectors.toList());
+    public List<D> dependency(Metal metal, TranslatorContext<D, S> context)
+            throws MetalTranslateException {
+        List<Metal> dependency =
+                context.draft().getGraph().predecessors(metal).stream()
+                        .sorted(
+                                Comparator.comparing(
+                                        (Metal dep) -> context.metal2hash().get(dep).toString()))
+                        .collect(Collectors.toList());
+        List<D> ret = new ArrayList<>();
+        for (Metal dep : dependency) {
+            ret.add(dependencyOf(dep, metal, context));
+        }
+        return ret;
     }
 
-    public Map<String, D> dependencyWithId(Metal metal, TranslatorContext<D, S> context) {
+    public Map<String, D> dependencyWithId(Metal metal, TranslatorContext<D, S> context)
+            throws MetalTranslateException {
         Set<Metal> dependency = context.draft().getGraph().predecessors(metal);
         Map<String, D> ret = new HashMap<>();
         for (Metal dep : dependency) {
-            HashCode code = context.metal2hash().get(dep);
-            D df = context.dfs().get(code);
-            ret.put(dep.id(), df);
+            ret.put(dep.id(), dependencyOf(dep, metal, context));
         }
         return Collections.unmodifiableMap(ret);
     }
 
+    /** DF of one dependency, a splitter hands each successor only the output routed to it. */
+    private D dependencyOf(Metal dep, Metal metal, TranslatorContext<D, S> context)
+            throws MetalTranslateException {
+        HashCode code = context.metal2hash().get(dep);
+        D df = context.dfs().get(code);
+        if (dep instanceof MSplitter) {
+            return ((MSplitter<D, S, ?>) dep).outputOf(platform(), df, metal.id());
+        }
+        return df;
+    }
+
+    /**
+     * Drop staged DFs and IMProducts of the metals and all metals after them, so the next translate
+     * of the same draft builds them again.
+     */
+    public void evict(Set<Metal> metals) {
+        TranslatorContext<D, S> context = this.stagingContext;
+        Set<Metal> starters =
+                metals.stream()
+                        .filter(context.draft().getGraph().nodes()::contains)
+                        .collect(Collectors.toSet());
+        for (Metal metal : Traverser.forGraph(context.draft().getGraph()).breadthFirst(starters)) {
+            HashCode hashCode = context.metal2hash().get(metal);
+            if (hashCode != null) {
+                context.dfs().remove(hashCode);
+                context.mProducts().remove(hashCode);
+            }
+        }
+    }
+
     public void translate(Draft draft) throws MetalTranslateException {
+        long start = System.nanoTime();
+        int metals = draft.getGraph().nodes().size();
+        int cacheHits = 0;
+        boolean success = false;
+        try {
+            cacheHits = doTranslate(draft);
+            success = true;
+        } finally {
+            // Cache hits are unknown when translation failed.
+            listeners.onDraftTranslate(
+                    ImmutableDraftTranslateEvent.builder()
+                            .metals(metals)
+                            .cacheHits(cacheHits)
+                            .cacheMisses(metals - cacheHits)
+                            .durationNanos(System.nanoTime() - start)
+                            .success(success)
+                            .build());
+        }
+    }
+
+    private int doTranslate(Draft draft) throws MetalTranslateException {
         HashMultimap<HashCode, Metal> hash2metal = HashMultimap.create();
         HashMap<Metal, HashCode> metal2hash = new HashMap<>();
 
@@ -115,13 +238,7 @@ public class Translator<D, S> {
 
         for (Metal metal : dependencyTrace) {
             try {
-                HashCode hashCode =
-                        IMetalPropsUtil.sha256WithPrev(
-                                metal.props(),
-                                draft.getGraph().predecessors(metal).stream()
-                                        .map(metal2hash::get)
-                                        .sorted(Comparator.comparing(HashCode::toString))
-                                        .collect(Collectors.toList()));
+                HashCode hashCode = hash(metal, prevs(draft, metal, metal2hash));
                 metal2hash.put(metal, hashCode);
                 hash2metal.put(hashCode, metal);
             } catch (IOException e) {
@@ -178,13 +295,43 @@ public class Translator<D, S> {
                                 })
                         .collect(Collectors.toList());
 
+        int cacheHits = 0;
+        for (Metal metal : metal2hash.keySet()) {
+            if (retain.contains(metal2hash.get(metal))) {
+                cacheHits++;
+                listeners.onMetalTranslate(translateEvent(metal, metal2hash, true, 0L, true));
+            }
+        }
+
         for (Metal metal : unStagingDependencyTrace) {
+            long start = System.nanoTime();
             try {
                 metal.translate(this, nextContext);
+                listeners.onMetalTranslate(
+                        translateEvent(metal, metal2hash, false, System.nanoTime() - start, true));
             } catch (MetalTranslateException e) {
+                listeners.onMetalTranslate(
+                        translateEvent(metal, metal2hash, false, System.nanoTime() - start, false));
                 throw new MetalTranslateException(e.getLocalizedMessage(), e, metal.id());
             }
         }
+        return cacheHits;
+    }
+
+    private static MetalTranslateEvent translateEvent(
+            Metal metal,
+            Map<Metal, HashCode> metal2hash,
+            boolean cacheHit,
+            long durationNanos,
+            boolean success) {
+        return ImmutableMetalTranslateEvent.builder()
+                .metalId(metal.id())
+                .metalType(metal.getClass().getName())
+                .hash(metal2hash.get(metal).toString())
+                .cacheHit(cacheHit)
+                .durationNanos(durationNanos)
+                .success(success)
+                .build();
     }
 
     public TranslatorContext<D, S> context() {
@@ -194,4 +341,12 @@ public class Translator<D, S> {
     public S platform() {
         return this.platform;
     }
+
+    public Optional<ISampler<D, S>> sampler() {
+        return this.sampler;
+    }
+
+    public MetalListenerBus listeners() {
+        return this.listeners;
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.core;
+
+import org.metal.draft.Draft;
+import org.metal.exception.MetalTranslateException;
+import org.metal.translator.Translator;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class MSplitterTest {
+
+    private Mock.MSourceImpl source() {
+        return new Mock.MSourceImpl(
+                "00-00", "source-00", ImmutableMSourcePropsFoo.builder().schema("").build());
+    }
+
+    private Mock.MSplitterImpl splitter(Map<String, String> routes) {
+        return new Mock.MSplitterImpl(
+                "01-00",
+                "splitter-00",
+                ImmutableMSplitterPropsFoo.builder().putAllRoutes(routes).build());
+    }
+
+    private Mock.MMapperImpl mapper(String id) {
+        return new Mock.MMapperImpl(id, "mapper-" + id, ImmutableMMapperPropsFoo.builder().build());
+    }
+
+    private Mock.MSinkImpl sink(String id) {
+        return new Mock.MSinkImpl(id, "sink-" + id, ImmutableMSinkPropsFoo.builder().build());
+    }
+
+    private Draft draft(Map<String, String> routes) {
+        Mock.MSourceImpl source = source();
+        Mock.MSplitterImpl splitter = splitter(routes);
+        Mock.MMapperImpl left = mapper("02-00");
+        Mock.MMapperImpl right = mapper("02-01");
+        Mock.MSinkImpl leftSink = sink("03-00");
+        Mock.MSinkImpl rightSink = sink("03-01");
+        return Draft.builder()
+                .add(source)
+                .add(splitter)
+                .add(left)
+                .add(right)
+                .add(leftSink)
+                .add(rightSink)
+                .addEdge(source, splitter)
+                .addEdge(splitter, left)
+                .addEdge(splitter, right)
+                .addEdge(left, leftSink)
+                .addEdge(right, rightSink)
+                .build();
+    }
+
+    private Metal metal(Draft draft, String id) {
+        return draft.getGraph().nodes().stream()
+                .filter(metal -> metal.id().equals(id))
+                .findFirst()
+                .get();
+    }
+
+    @org.junit.Test
+    public void splitterWithTwoInputs() {
+        Mock.MSourceImpl source = source();
+        Mock.MSourceImpl other =
+                new Mock.MSourceImpl(
+                        "00-01",
+                        "source-01",
+                        ImmutableMSourcePropsFoo.builder().schema("").build());
+        Mock.MSplitterImpl splitter = splitter(Map.of("02-00", "left"));
+        Mock.MMapperImpl mapper = mapper("02-00");
+        Mock.MSinkImpl sink = sink("03-00");
+        Draft.Builder builder =
+                Draft.builder()
+                        .add(source)
+                        .add(other)
+                        .add(splitter)
+                        .add(mapper)
+                        .add(sink)
+                        .addEdge(source, splitter)
+                        .addEdge(other, splitter)
+                        .addEdge(splitter, mapper)
+                        .addEdge(mapper, sink);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, builder::build);
+        assertTrue(e.getMessage().contains("must have only one input!"));
+    }
+
+    @org.junit.Test
+    public void splitterWithoutOutput() {
+        Mock.MSourceImpl source = source();
+        Mock.MSplitterImpl splitter = splitter(Map.of());
+        Draft.Builder builder = Draft.builder().add(source).add(splitter).addEdge(source, splitter);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, builder::build);
+        assertTrue(e.getMessage().contains("don't have any output!"));
+    }
+
+    @org.junit.Test
+    public void splitterWithoutRoute() {
+        IllegalArgumentException e =
+                assertThrows(IllegalArgumentException.class, () -> draft(Map.of("02-00", "left")));
+        assertTrue(e.getMessage().contains("routes Metal{"));
+        assertTrue(e.getMessage().contains("to output[null]"));
+    }
+
+    @org.junit.Test
+    public void splitterWithUnknownOutput() {
+        IllegalArgumentException e =
+                assertThrows(
+                        IllegalArgumentException.class,
+                        () -> draft(Map.of("02-00", "left", "02-01", "middle")));
+        assertTrue(e.getMessage().contains("to output[middle]"));
+    }
+
+    @org.junit.Test
+    public void saltHashWithRoutedOutput() throws MetalTranslateException {
+        Draft draft = draft(Map.of("02-00", "left", "02-01", "right"));
+        Translator<String, Thread> master = new Translator<>(Thread.currentThread());
+        master.translate(draft);
+
+        Metal left = metal(draft, "02-00");
+        Metal right = metal(draft, "02-01");
+        assertNotEquals(
+                master.context().metal2hash().get(left), master.context().metal2hash().get(right));
+        assertEquals("left of I am source.", master.dependency(left, master.context()).get(0));
+        assertEquals("right of I am source.", master.dependency(right, master.context()).get(0));
+    }
+
+    @org.junit.Test
+    public void shareHashOnSameOutput() throws MetalTranslateException {
+        Draft draft = draft(Map.of("02-00", "left", "02-01", "left"));
+        Translator<String, Thread> master = new Translator<>(Thread.currentThread());
+        master.translate(draft);
+
+        assertEquals(
+                master.context().metal2hash().get(metal(draft, "02-00")),
+                master.context().metal2hash().get(metal(draft, "02-01")));
+    }
+
+    @org.junit.Test
+    public void stableHashAcrossTranslate() throws MetalTranslateException {
+        Draft draft = draft(Map.of("02-00", "left", "02-01", "right"));
+        Translator<String, Thread> master = new Translator<>(Thread.currentThread());
+        master.translate(draft);
+        Object left = master.context().metal2hash().get(metal(draft, "02-00"));
+
+        Draft again = draft(Map.of("02-00", "left", "02-01", "right"));
+        Translator<String, Thread> other = new Translator<>(Thread.currentThread());
+        other.translate(again);
+        assertEquals(left, other.context().metal2hash().get(metal(again, "02-00")));
+    }
+}
@@ -18,6 +18,7 @@ import org.metal.core.props.IMFusionProps;
 import org.metal.core.props.IMMapperProps;
 import org.metal.core.props.IMSinkProps;
 import org.metal.core.props.IMSourceProps;
+import org.metal.core.props.IMSplitterProps;
 import org.metal.exception.MetalTranslateException;
 
 import org.immutables.value.Value;
@@ -28,6 +29,7 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import java.util.Map;
+import java.util.Set;
 
 public class Mock {
 
@@ -116,4 +118,35 @@ public class Mock {
     @JsonDeserialize(as = ImmutableMSourcePropsFoo.class)
     @JsonSerialize(as = ImmutableMSourcePropsFoo.class)
     public static interface MSourcePropsFoo extends IMSourceProps {}
+
+    public static class MSplitterImpl extends MSplitter<String, Thread, MSplitterPropsFoo> {
+
+        @JsonCreator
+        public MSplitterImpl(
+                @JsonProperty("id") String id,
+                @JsonProperty("name") String name,
+                @JsonProperty("props") MSplitterPropsFoo props) {
+            super(id, name, props);
+        }
+
+        @Override
+        public Set<String> outputs() {
+            return Set.of("left", "right");
+        }
+
+        @Override
+        public String split(Thread platform, String data) {
+            return data;
+        }
+
+        @Override
+        public String output(Thread platform, String split, String output) {
+            return output + " of " + split;
+        }
+    }
+
+    @Value.Immutable
+    @JsonDeserialize(as = ImmutableMSplitterPropsFoo.class)
+    @JsonSerialize(as = ImmutableMSplitterPropsFoo.class)
+    public static interface MSplitterPropsFoo extends IMSplitterProps {}
 }
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.instrument;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MicrometerMetalListenerTest {
+
+    private static MetalExecEvent exec(String metalId, long millis) {
+        return ImmutableMetalExecEvent.builder()
+                .addMetalIds(metalId)
+                .hash("h-" + metalId)
+                .startTime(System.currentTimeMillis())
+                .durationNanos(TimeUnit.MILLISECONDS.toNanos(millis))
+                .success(true)
+                .putCounters("records", 10L)
+                .build();
+    }
+
+    @org.junit.Test
+    public void execTimerOfMetalPublishesHistogram() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerMetalListener listener = new MicrometerMetalListener(registry);
+        for (int i = 1; i <= 100; i++) {
+            listener.onMetalExec(exec("m-0", i));
+        }
+
+        Timer timer =
+                registry.find(MicrometerMetalListener.EXEC_TIMER)
+                        .tag(MicrometerMetalListener.METAL_ID_TAG, "m-0")
+                        .timer();
+        assertNotNull(timer);
+        assertEquals(100, timer.count());
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        assertEquals(15, snapshot.histogramCounts().length);
+        assertEquals(3, snapshot.percentileValues().length);
+        assertEquals(
+                100,
+                (long) snapshot.histogramCounts()[snapshot.histogramCounts().length - 1].count());
+    }
+
+    @org.junit.Test
+    public void metalIdsAreBounded() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerMetalListener listener = new MicrometerMetalListener(registry, 2);
+        for (int i = 0; i < 5; i++) {
+            listener.onMetalExec(exec("m-" + i, 10));
+        }
+
+        assertNotNull(
+                registry.find(MicrometerMetalListener.EXEC_TIMER)
+                        .tag(MicrometerMetalListener.METAL_ID_TAG, "m-1")
+                        .timer());
+        assertNull(
+                registry.find(MicrometerMetalListener.EXEC_TIMER)
+                        .tag(MicrometerMetalListener.METAL_ID_TAG, "m-2")
+                        .timer());
+        assertEquals(2, registry.find(MicrometerMetalListener.EXEC_TIMER).timers().size());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.lint;
+
+import org.metal.core.ImmutableMSourcePropsFoo;
+import org.metal.core.Metal;
+import org.metal.core.Mock;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetalLinterTest {
+
+    private static Metal metal() {
+        return new Mock.MSourceImpl(
+                "00-00", "source-00", ImmutableMSourcePropsFoo.builder().schema("{}").build());
+    }
+
+    private static class StringRule implements IMetalLintRule<String> {
+
+        private String name;
+        private boolean broken;
+
+        private StringRule(String name, boolean broken) {
+            this.name = name;
+            this.broken = broken;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public Class<String> dataType() {
+            return String.class;
+        }
+
+        @Override
+        public List<MetalLint> lint(Metal metal, String df) {
+            if (broken) {
+                throw new IllegalStateException("broken rule");
+            }
+            return List.of(
+                    ImmutableMetalLint.builder()
+                            .metalId(metal.id())
+                            .rule(name())
+                            .severity(LintSeverity.INFO)
+                            .message(df)
+                            .suggestion("none")
+                            .build());
+        }
+    }
+
+    @org.junit.Test
+    public void brokenRuleIsReported() {
+        MetalLinter linter =
+                MetalLinter.create()
+                        .add(new StringRule("broken", true))
+                        .add(new StringRule("fine", false));
+        List<MetalLint> lints = linter.lint(metal(), "df");
+
+        assertEquals(2, lints.size());
+        assertEquals("broken", lints.get(0).rule());
+        assertEquals(LintSeverity.ERROR, lints.get(0).severity());
+        assertEquals("00-00", lints.get(0).metalId());
+        assertTrue(lints.get(0).message().contains("broken rule"));
+        assertEquals("fine", lints.get(1).rule());
+        assertEquals(LintSeverity.INFO, lints.get(1).severity());
+    }
+
+    @org.junit.Test
+    public void rulesOfOtherDataTypeAreSkipped() {
+        MetalLinter linter = MetalLinter.create().add(new StringRule("broken", true));
+        assertTrue(linter.lint(metal(), 1L).isEmpty());
+    }
+}
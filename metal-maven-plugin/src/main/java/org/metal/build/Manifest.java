@@ -120,6 +120,7 @@ public class Manifest extends AbstractMojo {
         metalTypes.put("sources", "org.metal.core.MSource");
         metalTypes.put("mappers", "org.metal.core.MMapper");
         metalTypes.put("fusions", "org.metal.core.MFusion");
+        metalTypes.put("splitters", "org.metal.core.MSplitter");
         metalTypes.put("sinks", "org.metal.core.MSink");
         metalTypes.put("setups", "org.metal.backend.ISetup");
 
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.expressions.Attribute;
+import org.apache.spark.sql.catalyst.expressions.BloomFilterMightContain;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.expressions.Literal;
+import org.apache.spark.sql.catalyst.expressions.NamedExpression;
+import org.apache.spark.sql.catalyst.expressions.ScalarSubquery;
+import org.apache.spark.sql.catalyst.expressions.XxHash64;
+import org.apache.spark.sql.catalyst.expressions.aggregate.BloomFilterAggregate;
+import org.apache.spark.sql.catalyst.plans.logical.Filter;
+import org.apache.spark.sql.catalyst.plans.logical.Join;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+import org.apache.spark.sql.catalyst.plans.logical.Statistics;
+import org.apache.spark.sql.types.DataTypes;
+
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prefilter the larger side of one inner equi-join with one bloom filter of the smaller side's
+ * keys, so rows without any match are dropped before the shuffle. The filter is built the way
+ * Spark's runtime filters are: one scalar subquery aggregates xxhash64 of the keys with {@link
+ * BloomFilterAggregate}, and {@link BloomFilterMightContain} probes it. The subquery runs with each
+ * execution, so the filter always matches the current data and translation runs no job.
+ */
+class BloomFilterRewriter extends JoinRewriter {
+
+    private long creationThreshold;
+    private long applicationThreshold;
+    private double minRatio;
+    private double fpp;
+    private long maxItems;
+
+    BloomFilterRewriter(
+            SparkSession platform,
+            long broadcastThreshold,
+            long creationThreshold,
+            long applicationThreshold,
+            double minRatio,
+            double fpp,
+            long maxItems) {
+        super(platform, broadcastThreshold);
+        this.creationThreshold = creationThreshold;
+        this.applicationThreshold = applicationThreshold;
+        this.minRatio = minRatio;
+        this.fpp = fpp;
+        this.maxItems = maxItems;
+    }
+
+    @Override
+    protected LogicalPlan rewriteJoin(Join join, Attribute leftKey, Attribute rightKey) {
+        // Broadcast joins shuffle neither side, there is nothing to save.
+        if (broadcastable(join.left()) || broadcastable(join.right())) {
+            return join;
+        }
+
+        boolean applyLeft = sizeOf(join.left()) >= sizeOf(join.right());
+        LogicalPlan creation = applyLeft ? join.right() : join.left();
+        LogicalPlan application = applyLeft ? join.left() : join.right();
+        long creationSize = sizeOf(creation);
+        long applicationSize = sizeOf(application);
+        if (creationSize > creationThreshold
+                || applicationSize < applicationThreshold
+                || applicationSize < creationSize * minRatio) {
+            return join;
+        }
+
+        long expectedItems = expectedItems(creation);
+        Expression mightContain =
+                new BloomFilterMightContain(
+                        bloomFilterOf(creation, applyLeft ? rightKey : leftKey, expectedItems),
+                        xxhash64(applyLeft ? leftKey : rightKey));
+        LogicalPlan filtered = new Filter(mightContain, application);
+        decide(
+                String.format(
+                        "Prefilter the %s side of join on %s = %s with one bloom filter of %d expected keys and fpp %s, estimated %d bytes against %d bytes.",
+                        applyLeft ? "left" : "right",
+                        leftKey.sql(),
+                        rightKey.sql(),
+                        expectedItems,
+                        fpp,
+                        applicationSize,
+                        creationSize));
+        return new Join(
+                applyLeft ? filtered : join.left(),
+                applyLeft ? join.right() : filtered,
+                join.joinType(),
+                join.condition(),
+                join.hint());
+    }
+
+    /** Row count estimate if any, else one key per 8 bytes, bounded by maxItems. */
+    private long expectedItems(LogicalPlan creation) {
+        Statistics stats = creation.stats();
+        long items =
+                stats.rowCount().isDefined()
+                        ? toLong(stats.rowCount().get())
+                        : toLong(stats.sizeInBytes()) / 8;
+        return Math.max(1L, Math.min(items, maxItems));
+    }
+
+    /** One row of one column, the serialized filter of all keys of the creation side. */
+    private Expression bloomFilterOf(LogicalPlan creation, Attribute key, long expectedItems) {
+        BloomFilterAggregate aggregate =
+                new BloomFilterAggregate(
+                        xxhash64(key),
+                        Literal.create(expectedItems, DataTypes.LongType),
+                        Literal.create(numBits(expectedItems, fpp), DataTypes.LongType));
+        LogicalPlan subquery =
+                Dataset.ofRows(platform, creation)
+                        .agg(new Column(aggregate.toAggregateExpression()).as("bloomFilter"))
+                        .queryExecution()
+                        .analyzed();
+        return new ScalarSubquery(
+                subquery,
+                JavaConverters.asScalaBuffer(new ArrayList<Expression>()).toSeq(),
+                NamedExpression.newExprId(),
+                JavaConverters.asScalaBuffer(new ArrayList<Expression>()).toSeq());
+    }
+
+    private static Expression xxhash64(Attribute key) {
+        return new XxHash64(JavaConverters.asScalaBuffer(List.<Expression>of(key)).toSeq());
+    }
+
+    /** Bits of one optimal filter, the same formula as BloomFilter.create. */
+    static long numBits(long expectedItems, double fpp) {
+        return Math.max(64L, (long) (-expectedItems * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+    }
+}
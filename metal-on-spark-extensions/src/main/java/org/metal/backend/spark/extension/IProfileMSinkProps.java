@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.metal.core.props.IMSinkProps;
+
+import org.immutables.value.Value;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.List;
+import java.util.Optional;
+
+@Value.Immutable
+@JsonDeserialize(as = ImmutableIProfileMSinkProps.class)
+@JsonSerialize(as = ImmutableIProfileMSinkProps.class)
+public interface IProfileMSinkProps extends IMSinkProps {
+
+    /** Directory of profiles, one json file per profile key. */
+    public String path();
+
+    /** Columns to profile, all columns by default. */
+    public Optional<List<String>> columns();
+
+    public Optional<Integer> topK();
+
+    /** Quantiles of numeric columns, 0.25, 0.5 and 0.75 by default. */
+    public Optional<List<Double>> quantiles();
+
+    /** Accuracy of approximate quantiles, relative error is 1.0 / accuracy. */
+    public Optional<Integer> quantileAccuracy();
+
+    /** Relative standard deviation of distinct counts. */
+    public Optional<Double> distinctRsd();
+
+    /** Profile again even if one profile of the same key exists, false by default. */
+    public Optional<Boolean> force();
+}
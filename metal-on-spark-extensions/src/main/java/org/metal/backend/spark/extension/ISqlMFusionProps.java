@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import java.util.Map;
+import java.util.Optional;
 
 @Value.Immutable
 @JsonDeserialize(as = ImmutableISqlMFusionProps.class)
@@ -32,4 +33,43 @@ public interface ISqlMFusionProps extends IMFusionProps {
     public Map<String, String> tableAlias();
 
     public String sql();
+
+    /** Hint inputs estimated under the broadcast threshold as broadcast, true by default. */
+    public Optional<Boolean> autoBroadcast();
+
+    /** Bytes, spark.sql.autoBroadcastJoinThreshold by default. */
+    public Optional<Long> broadcastThreshold();
+
+    /**
+     * Split inner equi-joins on heavy hitter keys found in one sample, false by default. Skipped
+     * when AQE skew join is enabled, which splits skewed partitions at runtime.
+     */
+    public Optional<Boolean> skewJoin();
+
+    /** Rows of each join side read to find heavy hitters. */
+    public Optional<Integer> skewSampleRows();
+
+    /** Minimal share of sampled rows for one key to be one heavy hitter. */
+    public Optional<Double> skewShare();
+
+    public Optional<Integer> skewKeys();
+
+    /**
+     * Prefilter the larger side of inner equi-joins with one bloom filter of the smaller side's
+     * keys when estimates pass the thresholds below, false by default.
+     */
+    public Optional<Boolean> bloomFilter();
+
+    /** Bytes, the smaller side builds one filter only under it. */
+    public Optional<Long> bloomFilterCreationThreshold();
+
+    /** Bytes, the larger side is only prefiltered above it. */
+    public Optional<Long> bloomFilterApplicationThreshold();
+
+    /** Minimal ratio of the larger side's size to the smaller side's size. */
+    public Optional<Double> bloomFilterMinRatio();
+
+    public Optional<Double> bloomFilterFpp();
+
+    public Optional<Long> bloomFilterMaxItems();
 }
@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.metal.core.props.IMSplitterProps;
+
+import org.immutables.value.Value;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Map;
+import java.util.Optional;
+
+@Value.Immutable
+@JsonDeserialize(as = ImmutableISqlMSplitterProps.class)
+@JsonSerialize(as = ImmutableISqlMSplitterProps.class)
+public interface ISqlMSplitterProps extends IMSplitterProps {
+
+    /** SQL predicate of each output, one row goes to every output whose predicate holds. */
+    public Map<String, String> conditions();
+
+    /** Output of rows matching none of the conditions, absent by default. */
+    public Optional<String> otherwise();
+
+    /** One of cache, localCheckpoint or none, cache by default. */
+    public Optional<String> persist();
+
+    /** Storage level used by cache, MEMORY_AND_DISK by default. */
+    public Optional<String> storageLevel();
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.expressions.And;
+import org.apache.spark.sql.catalyst.expressions.Attribute;
+import org.apache.spark.sql.catalyst.expressions.EqualTo;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.plans.Inner$;
+import org.apache.spark.sql.catalyst.plans.logical.Join;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+
+import scala.Function1;
+import scala.math.BigInt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/** Rewrites inner equi-joins in the analyzed plan of one fusion, bottom up. */
+abstract class JoinRewriter {
+
+    protected SparkSession platform;
+    protected long broadcastThreshold;
+    private List<String> decisions = new ArrayList<>();
+
+    protected JoinRewriter(SparkSession platform, long broadcastThreshold) {
+        this.platform = platform;
+        this.broadcastThreshold = broadcastThreshold;
+    }
+
+    Dataset<Row> rewrite(Dataset<Row> df) {
+        LogicalPlan plan = df.queryExecution().analyzed();
+        LogicalPlan rewritten = rewrite(plan);
+        if (rewritten == plan) {
+            return df;
+        }
+        return Dataset.ofRows(platform, rewritten);
+    }
+
+    List<String> decisions() {
+        return decisions;
+    }
+
+    protected void decide(String decision) {
+        decisions.add(decision);
+    }
+
+    /** The keys are one attribute of the left side and one of the right side, in order. */
+    protected abstract LogicalPlan rewriteJoin(Join join, Attribute leftKey, Attribute rightKey);
+
+    private LogicalPlan rewrite(LogicalPlan plan) {
+        LogicalPlan mapped =
+                plan.mapChildren(
+                        (Function1<LogicalPlan, LogicalPlan>)
+                                (LogicalPlan child) -> {
+                                    return rewrite(child);
+                                });
+        if (!(mapped instanceof Join)) {
+            return mapped;
+        }
+        Join join = (Join) mapped;
+        if (join.joinType() != Inner$.MODULE$ || join.condition().isEmpty()) {
+            return join;
+        }
+        Optional<Attribute[]> keys = keysOf(join, join.condition().get());
+        if (keys.isEmpty()) {
+            return join;
+        }
+        return rewriteJoin(join, keys.get()[0], keys.get()[1]);
+    }
+
+    /** Keys of the first equality between one attribute of each side. */
+    private static Optional<Attribute[]> keysOf(Join join, Expression condition) {
+        if (condition instanceof And) {
+            Optional<Attribute[]> keys = keysOf(join, ((And) condition).left());
+            return keys.isPresent() ? keys : keysOf(join, ((And) condition).right());
+        }
+        if (!(condition instanceof EqualTo)) {
+            return Optional.empty();
+        }
+        Expression left = ((EqualTo) condition).left();
+        Expression right = ((EqualTo) condition).right();
+        if (!(left instanceof Attribute) || !(right instanceof Attribute)) {
+            return Optional.empty();
+        }
+        Attribute a = (Attribute) left;
+        Attribute b = (Attribute) right;
+        if (join.left().outputSet().contains(a) && join.right().outputSet().contains(b)) {
+            return Optional.of(new Attribute[] {a, b});
+        }
+        if (join.left().outputSet().contains(b) && join.right().outputSet().contains(a)) {
+            return Optional.of(new Attribute[] {b, a});
+        }
+        return Optional.empty();
+    }
+
+    protected static long sizeOf(LogicalPlan plan) {
+        return toLong(plan.stats().sizeInBytes());
+    }
+
+    protected static long toLong(BigInt value) {
+        return value.isValidLong() ? value.toLong() : Long.MAX_VALUE;
+    }
+
+    /** A side under the threshold is broadcast, the join then shuffles neither side. */
+    protected boolean broadcastable(LogicalPlan plan) {
+        return broadcastThreshold > 0 && sizeOf(plan) <= broadcastThreshold;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.metal.backend.spark.SparkMSink;
+import org.metal.backend.spark.stats.SparkStatsCatalog;
+import org.metal.core.FormJsonSchema;
+import org.metal.core.FormSchemaMethod;
+import org.metal.core.IMExecutor;
+import org.metal.exception.MetalExecuteException;
+import org.metal.exception.MetalTranslateException;
+import org.metal.translator.Translator;
+import org.metal.translator.TranslatorContext;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.expressions.UserDefinedFunction;
+import org.apache.spark.sql.functions;
+import org.apache.spark.sql.types.ArrayType;
+import org.apache.spark.sql.types.BinaryType;
+import org.apache.spark.sql.types.CalendarIntervalType;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.MapType;
+import org.apache.spark.sql.types.NullType;
+import org.apache.spark.sql.types.NumericType;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.apache.spark.sql.functions.approx_count_distinct;
+import static org.apache.spark.sql.functions.array;
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.max;
+import static org.apache.spark.sql.functions.min;
+import static org.apache.spark.sql.functions.percentile_approx;
+
+/**
+ * Profiles columns of the input in one aggregation with mergeable sketches: HLL++ distinct counts,
+ * approximate quantiles, null counts, min/max and Misra-Gries top-K. The profile is written once
+ * per key, which covers the metal hash and the files the input reads, so profiles of unchanged
+ * inputs are never computed again.
+ */
+public class ProfileMSink extends SparkMSink<IProfileMSinkProps> {
+
+    public static final int DEFAULT_TOP_K = 10;
+    public static final List<Double> DEFAULT_QUANTILES = List.of(0.25, 0.5, 0.75);
+    public static final int DEFAULT_QUANTILE_ACCURACY = 10000;
+    public static final double DEFAULT_DISTINCT_RSD = 0.05;
+
+    /** Summary capacity per top-K item, more capacity tightens the count error. */
+    private static final int TOP_K_CAPACITY_FACTOR = 10;
+
+    private volatile String hash;
+
+    @JsonCreator
+    public ProfileMSink(
+            @JsonProperty("id") String id,
+            @JsonProperty("name") String name,
+            @JsonProperty("props") IProfileMSinkProps props) {
+        super(id, name, props);
+    }
+
+    @Override
+    public void translate(
+            Translator<Dataset<Row>, SparkSession> master,
+            TranslatorContext<Dataset<Row>, SparkSession> context)
+            throws MetalTranslateException {
+        this.hash =
+                master.hashOf(this, context)
+                        .orElseThrow(
+                                () ->
+                                        new MetalTranslateException(
+                                                "Profile key needs the metal hash.", id()));
+        super.translate(master, context);
+    }
+
+    @Override
+    public IMExecutor sink(SparkSession platform, Dataset<Row> data)
+            throws MetalTranslateException {
+        String key = key(data);
+        return () -> {
+            try {
+                Path file = new Path(this.props().path(), key + ".json");
+                FileSystem fs = file.getFileSystem(platform.sparkContext().hadoopConfiguration());
+                if (!this.props().force().orElse(false) && fs.exists(file)) {
+                    return;
+                }
+                ObjectNode profile = profile(data);
+                profile.put("key", key).put("metalId", id()).put("hash", hash);
+
+                Path tmp = new Path(this.props().path(), "." + key + ".json.tmp");
+                try (OutputStream out = fs.create(tmp, true)) {
+                    new ObjectMapper().writeValue(out, profile);
+                }
+                fs.delete(file, false);
+                if (!fs.rename(tmp, file)) {
+                    throw new MetalExecuteException(
+                            String.format("Fail to write profile %s.", file));
+                }
+            } catch (MetalExecuteException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new MetalExecuteException(e);
+            }
+        };
+    }
+
+    private String key(Dataset<Row> data) {
+        List<String> parts = new ArrayList<>();
+        parts.add(hash);
+        parts.addAll(SparkStatsCatalog.leafFingerprints(data));
+        return SparkStatsCatalog.sha256(String.join("\n", parts));
+    }
+
+    private ObjectNode profile(Dataset<Row> data) throws IllegalArgumentException {
+        List<StructField> fields = fields(data.schema());
+        int topK = this.props().topK().orElse(DEFAULT_TOP_K);
+        List<Double> quantiles = this.props().quantiles().orElse(DEFAULT_QUANTILES);
+        UserDefinedFunction topKOf =
+                functions.udaf(
+                        new TopKAggregator(Math.max(1, topK) * TOP_K_CAPACITY_FACTOR),
+                        Encoders.STRING());
+        Column percentages = array(quantiles.stream().map(functions::lit).toArray(Column[]::new));
+
+        List<Column> aggs = new ArrayList<>();
+        for (int idx = 0; idx < fields.size(); idx++) {
+            DataType dataType = fields.get(idx).dataType();
+            Column column = col(quote(fields.get(idx).name()));
+            aggs.add(count(column).as(alias(idx, "count")));
+            if (!atomic(dataType)) {
+                continue;
+            }
+            aggs.add(
+                    approx_count_distinct(
+                                    column, this.props().distinctRsd().orElse(DEFAULT_DISTINCT_RSD))
+                            .as(alias(idx, "distinct")));
+            aggs.add(min(column).cast("string").as(alias(idx, "min")));
+            aggs.add(max(column).cast("string").as(alias(idx, "max")));
+            aggs.add(topKOf.apply(column.cast("string")).as(alias(idx, "topK")));
+            if (dataType instanceof NumericType && !quantiles.isEmpty()) {
+                aggs.add(
+                        percentile_approx(
+                                        column.cast("double"),
+                                        percentages,
+                                        lit(
+                                                this.props()
+                                                        .quantileAccuracy()
+                                                        .orElse(DEFAULT_QUANTILE_ACCURACY)))
+                                .as(alias(idx, "quantiles")));
+            }
+        }
+        Row row =
+                data.agg(count(lit(1)).as("rows"), aggs.toArray(new Column[0]))
+                        .collectAsList()
+                        .get(0);
+
+        ObjectMapper mapper = new ObjectMapper();
+        long rows = row.getLong(row.fieldIndex("rows"));
+        ObjectNode profile = mapper.createObjectNode();
+        profile.put("createTime", System.currentTimeMillis()).put("rows", rows);
+        ArrayNode fingerprints = profile.putArray("fingerprints");
+        SparkStatsCatalog.leafFingerprints(data).forEach(fingerprints::add);
+
+        ObjectNode columns = profile.putObject("columns");
+        for (int idx = 0; idx < fields.size(); idx++) {
+            StructField field = fields.get(idx);
+            ObjectNode column = columns.putObject(field.name());
+            long nulls = rows - row.getLong(row.fieldIndex(alias(idx, "count")));
+            column.put("type", field.dataType().simpleString())
+                    .put("nulls", nulls)
+                    .put("nullRatio", rows == 0 ? 0.0 : (double) nulls / rows);
+            if (!atomic(field.dataType())) {
+                continue;
+            }
+            column.put("distinct", row.getLong(row.fieldIndex(alias(idx, "distinct"))))
+                    .put("min", row.<String>getAs(alias(idx, "min")))
+                    .put("max", row.<String>getAs(alias(idx, "max")));
+
+            if (Arrays.asList(row.schema().fieldNames()).contains(alias(idx, "quantiles"))) {
+                List<Double> values = row.getList(row.fieldIndex(alias(idx, "quantiles")));
+                ObjectNode quantileNode = column.putObject("quantiles");
+                for (int q = 0; q < quantiles.size() && values != null; q++) {
+                    quantileNode.put(String.valueOf(quantiles.get(q)), values.get(q));
+                }
+            }
+
+            Row summary = row.getStruct(row.fieldIndex(alias(idx, "topK")));
+            Map<String, Long> counts = summary.getJavaMap(summary.fieldIndex("counts"));
+            ArrayNode topKNode = column.putArray("topK");
+            counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                    .limit(topK)
+                    .forEach(
+                            (Map.Entry<String, Long> kv) -> {
+                                topKNode.addObject()
+                                        .put("value", kv.getKey())
+                                        .put("count", kv.getValue());
+                            });
+        }
+        return profile;
+    }
+
+    private List<StructField> fields(StructType schema) throws IllegalArgumentException {
+        if (this.props().columns().isEmpty()) {
+            return Arrays.asList(schema.fields());
+        }
+        return this.props().columns().get().stream()
+                .map(
+                        (String name) -> {
+                            if (!Arrays.asList(schema.fieldNames()).contains(name)) {
+                                throw new IllegalArgumentException(
+                                        String.format(
+                                                "Column[%s] isn't in schema %s.",
+                                                name, schema.simpleString()));
+                            }
+                            return schema.apply(name);
+                        })
+                .collect(Collectors.toList());
+    }
+
+    /** Types with one ordering and one useful string form. */
+    private static boolean atomic(DataType dataType) {
+        return !(dataType instanceof StructType
+                || dataType instanceof ArrayType
+                || dataType instanceof MapType
+                || dataType instanceof BinaryType
+                || dataType instanceof CalendarIntervalType
+                || dataType instanceof NullType);
+    }
+
+    private static String alias(int idx, String kind) {
+        return "c" + idx + "_" + kind;
+    }
+
+    private static String quote(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+
+    @FormSchemaMethod
+    public static String formSchema() {
+        return FormJsonSchema.formSchema(IProfileMSinkProps.class);
+    }
+}
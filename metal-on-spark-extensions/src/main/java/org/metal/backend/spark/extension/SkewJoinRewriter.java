@@ -0,0 +1,187 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.expressions.Attribute;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.expressions.In;
+import org.apache.spark.sql.catalyst.expressions.Literal;
+import org.apache.spark.sql.catalyst.expressions.Not;
+import org.apache.spark.sql.catalyst.plans.logical.BROADCAST$;
+import org.apache.spark.sql.catalyst.plans.logical.Filter;
+import org.apache.spark.sql.catalyst.plans.logical.HintInfo;
+import org.apache.spark.sql.catalyst.plans.logical.Join;
+import org.apache.spark.sql.catalyst.plans.logical.JoinHint;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+import org.apache.spark.sql.catalyst.plans.logical.ResolvedHint;
+import org.apache.spark.sql.catalyst.plans.logical.Union;
+
+import scala.Option;
+import scala.collection.JavaConverters;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Split one skewed inner equi-join into two joins unioned together: rows with heavy hitter keys
+ * join against the other side broadcast, all other rows join as before. Heavy hitters are the most
+ * frequent keys in the first rows of the larger side. Each side is read by one limited collect, so
+ * one checked join never scans its inputs. The split is skipped when the heavy rows of the other
+ * side are estimated over the broadcast threshold.
+ */
+class SkewJoinRewriter extends JoinRewriter {
+
+    public static final String SAMPLE_KEY = "__metal_skew_key";
+
+    private int sampleRows;
+    private double share;
+    private int keys;
+
+    SkewJoinRewriter(
+            SparkSession platform,
+            long broadcastThreshold,
+            int sampleRows,
+            double share,
+            int keys) {
+        super(platform, broadcastThreshold);
+        this.sampleRows = sampleRows;
+        this.share = share;
+        this.keys = keys;
+    }
+
+    @Override
+    protected LogicalPlan rewriteJoin(Join join, Attribute leftKey, Attribute rightKey) {
+        // One small side is broadcast anyway, skew doesn't hurt broadcast joins.
+        if (broadcastThreshold <= 0 || broadcastable(join.left()) || broadcastable(join.right())) {
+            return join;
+        }
+
+        boolean leftSkewed = sizeOf(join.left()) >= sizeOf(join.right());
+        LogicalPlan skewedSide = leftSkewed ? join.left() : join.right();
+        LogicalPlan otherSide = leftSkewed ? join.right() : join.left();
+        List<Object> heavy = heavyHitters(sample(skewedSide, leftSkewed ? leftKey : rightKey));
+        if (heavy.isEmpty()) {
+            return join;
+        }
+
+        // The other side's heavy rows are broadcast, keep them as small as one broadcast join.
+        List<Object> otherSample = sample(otherSide, leftSkewed ? rightKey : leftKey);
+        Set<Object> heavySet = new HashSet<>(heavy);
+        long otherHeavy = otherSample.stream().filter(heavySet::contains).count();
+        long broadcastSize =
+                otherSample.isEmpty()
+                        ? 0L
+                        : (long) ((double) sizeOf(otherSide) * otherHeavy / otherSample.size());
+        if (broadcastSize > broadcastThreshold) {
+            decide(
+                    String.format(
+                            "Keep join on %s = %s, rows of %d heavy hitter keys in the %s side are estimated %d bytes over broadcast threshold %d bytes.",
+                            leftKey.sql(),
+                            rightKey.sql(),
+                            heavy.size(),
+                            leftSkewed ? "right" : "left",
+                            broadcastSize,
+                            broadcastThreshold));
+            return join;
+        }
+
+        Expression leftIn = in(leftKey, heavy);
+        Expression rightIn = in(rightKey, heavy);
+        Join common =
+                new Join(
+                        new Filter(new Not(leftIn), join.left()),
+                        new Filter(new Not(rightIn), join.right()),
+                        join.joinType(),
+                        join.condition(),
+                        join.hint());
+        LogicalPlan heavyLeft = new Filter(leftIn, join.left());
+        LogicalPlan heavyRight = new Filter(rightIn, join.right());
+        HintInfo broadcast = new HintInfo(Option.apply(BROADCAST$.MODULE$));
+        Join split =
+                new Join(
+                        leftSkewed ? heavyLeft : new ResolvedHint(heavyLeft, broadcast),
+                        leftSkewed ? new ResolvedHint(heavyRight, broadcast) : heavyRight,
+                        join.joinType(),
+                        join.condition(),
+                        JoinHint.NONE());
+        decide(
+                String.format(
+                        "Split join on %s = %s, %d heavy hitter keys %s of the %s side join with the other side broadcast.",
+                        leftKey.sql(),
+                        rightKey.sql(),
+                        heavy.size(),
+                        heavy,
+                        leftSkewed ? "left" : "right"));
+        return new Union(
+                JavaConverters.asScalaBuffer(List.<LogicalPlan>of(common, split)).toSeq(),
+                false,
+                false);
+    }
+
+    /** Keys of the first rows, collect with limit only reads partitions until it has them. */
+    private List<Object> sample(LogicalPlan side, Attribute key) {
+        return Dataset.ofRows(platform, side)
+                .select(new Column(key).as(SAMPLE_KEY))
+                .limit(sampleRows)
+                .collectAsList()
+                .stream()
+                .map(
+                        (Row row) -> {
+                            return row.get(0);
+                        })
+                .collect(Collectors.toList());
+    }
+
+    private List<Object> heavyHitters(List<Object> sample) {
+        if (sample.isEmpty()) {
+            return List.of();
+        }
+        long minCount = (long) Math.ceil(sample.size() * share);
+        Map<Object, Long> counts =
+                sample.stream()
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        return counts.entrySet().stream()
+                .filter(
+                        (Map.Entry<Object, Long> kv) -> {
+                            return kv.getValue() >= minCount;
+                        })
+                .sorted(Map.Entry.<Object, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(keys)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static Expression in(Attribute key, List<Object> values) {
+        List<Expression> literals =
+                values.stream()
+                        .map(
+                                (Object value) -> {
+                                    return (Expression) Literal.create(value, key.dataType());
+                                })
+                        .collect(Collectors.toList());
+        return new In(key, JavaConverters.asScalaBuffer(literals).toSeq());
+    }
+}
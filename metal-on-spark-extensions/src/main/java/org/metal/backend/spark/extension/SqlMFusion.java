@@ -25,13 +25,32 @@ import org.apache.spark.sql.SparkSession;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import scala.math.BigInt;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class SqlMFusion extends SparkMFusion<ISqlMFusionProps> {
 
+    public static final int DEFAULT_SKEW_SAMPLE_ROWS = 100000;
+    public static final double DEFAULT_SKEW_SHARE = 0.05;
+    public static final int DEFAULT_SKEW_KEYS = 8;
+    public static final long DEFAULT_BLOOM_FILTER_CREATION_THRESHOLD = 256L * 1024 * 1024;
+    public static final long DEFAULT_BLOOM_FILTER_APPLICATION_THRESHOLD = 1024L * 1024 * 1024;
+    public static final double DEFAULT_BLOOM_FILTER_MIN_RATIO = 10.0;
+    public static final double DEFAULT_BLOOM_FILTER_FPP = 0.03;
+    public static final long DEFAULT_BLOOM_FILTER_MAX_ITEMS = 4000000L;
+
+    public static final String ADAPTIVE_CONF = "spark.sql.adaptive.enabled";
+    public static final String ADAPTIVE_SKEW_JOIN_CONF = "spark.sql.adaptive.skewJoin.enabled";
+
+    /** Join decisions of the last fusion, reported as lints of this metal. */
+    private volatile List<String> decisions = Collections.emptyList();
+
     @JsonCreator
     public SqlMFusion(
             @JsonProperty("id") String id,
@@ -74,19 +93,101 @@ public class SqlMFusion extends SparkMFusion<ISqlMFusionProps> {
             throw new MetalTranslateException(msg);
         }
 
+        List<String> fusionDecisions = new ArrayList<>();
+        long threshold =
+                this.props()
+                        .broadcastThreshold()
+                        .orElse(platform.sessionState().conf().autoBroadcastJoinThreshold());
+        String largest = largestInput(datas);
         for (Map.Entry<String, Dataset<Row>> data : datas.entrySet()) {
             String id = data.getKey();
             Dataset<Row> dataset = data.getValue();
             String tempTableName = this.props().tableAlias().get(id);
+            // The largest input streams through the join, so it never gets one broadcast hint.
+            if (this.props().autoBroadcast().orElse(true) && threshold > 0 && !id.equals(largest)) {
+                long size = sizeOf(dataset);
+                if (size <= threshold) {
+                    dataset = dataset.hint("broadcast");
+                    fusionDecisions.add(
+                            String.format(
+                                    "Broadcast %s of metal[%s], estimated %d bytes is under threshold %d bytes.",
+                                    tempTableName, id, size, threshold));
+                }
+            }
             dataset.createOrReplaceTempView(tempTableName);
         }
         try {
-            return platform.sql(this.props().sql());
+            Dataset<Row> fusion = platform.sql(this.props().sql());
+            if (this.props().bloomFilter().orElse(false)) {
+                BloomFilterRewriter rewriter =
+                        new BloomFilterRewriter(
+                                platform,
+                                threshold,
+                                this.props()
+                                        .bloomFilterCreationThreshold()
+                                        .orElse(DEFAULT_BLOOM_FILTER_CREATION_THRESHOLD),
+                                this.props()
+                                        .bloomFilterApplicationThreshold()
+                                        .orElse(DEFAULT_BLOOM_FILTER_APPLICATION_THRESHOLD),
+                                this.props()
+                                        .bloomFilterMinRatio()
+                                        .orElse(DEFAULT_BLOOM_FILTER_MIN_RATIO),
+                                this.props().bloomFilterFpp().orElse(DEFAULT_BLOOM_FILTER_FPP),
+                                this.props()
+                                        .bloomFilterMaxItems()
+                                        .orElse(DEFAULT_BLOOM_FILTER_MAX_ITEMS));
+                fusion = rewriter.rewrite(fusion);
+                fusionDecisions.addAll(rewriter.decisions());
+            }
+            if (this.props().skewJoin().orElse(false) && adaptiveSkewJoin(platform)) {
+                fusionDecisions.add(
+                        "Skewed joins are left to AQE skew join, which splits skewed partitions at runtime.");
+            } else if (this.props().skewJoin().orElse(false)) {
+                SkewJoinRewriter rewriter =
+                        new SkewJoinRewriter(
+                                platform,
+                                threshold,
+                                this.props().skewSampleRows().orElse(DEFAULT_SKEW_SAMPLE_ROWS),
+                                this.props().skewShare().orElse(DEFAULT_SKEW_SHARE),
+                                this.props().skewKeys().orElse(DEFAULT_SKEW_KEYS));
+                fusion = rewriter.rewrite(fusion);
+                fusionDecisions.addAll(rewriter.decisions());
+            }
+            this.decisions = Collections.unmodifiableList(fusionDecisions);
+            return fusion;
         } catch (Exception e) {
             throw new MetalTranslateException(e);
         }
     }
 
+    public List<String> decisions() {
+        return this.decisions;
+    }
+
+    /** Both are on by default since Spark 3.2. */
+    private static boolean adaptiveSkewJoin(SparkSession platform) {
+        return Boolean.parseBoolean(platform.conf().get(ADAPTIVE_CONF))
+                && Boolean.parseBoolean(platform.conf().get(ADAPTIVE_SKEW_JOIN_CONF));
+    }
+
+    private static long sizeOf(Dataset<Row> dataset) {
+        BigInt size = dataset.queryExecution().optimizedPlan().stats().sizeInBytes();
+        return size.isValidLong() ? size.toLong() : Long.MAX_VALUE;
+    }
+
+    private static String largestInput(Map<String, Dataset<Row>> datas) {
+        String largest = null;
+        long largestSize = -1L;
+        for (Map.Entry<String, Dataset<Row>> data : datas.entrySet()) {
+            long size = sizeOf(data.getValue());
+            if (size > largestSize) {
+                largest = data.getKey();
+                largestSize = size;
+            }
+        }
+        return largest;
+    }
+
     private static boolean isTablesOutRange(Set<String> tables, Set<String> alias) {
         for (String table : tables) {
             if (!alias.contains(table)) {
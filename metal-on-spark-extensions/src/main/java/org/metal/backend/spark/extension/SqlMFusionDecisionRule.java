@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.metal.core.Metal;
+import org.metal.lint.IMetalLintRule;
+import org.metal.lint.ImmutableMetalLint;
+import org.metal.lint.LintSeverity;
+import org.metal.lint.MetalLint;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the broadcast, bloom filter and skew decisions SqlMFusion made, so they show up in
+ * analyse.
+ */
+public class SqlMFusionDecisionRule implements IMetalLintRule<Dataset<Row>> {
+
+    @Override
+    public String name() {
+        return "sql-fusion-decision";
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<Dataset<Row>> dataType() {
+        return (Class<Dataset<Row>>) (Class<?>) Dataset.class;
+    }
+
+    @Override
+    public List<MetalLint> lint(Metal metal, Dataset<Row> df) {
+        if (!(metal instanceof SqlMFusion)) {
+            return List.of();
+        }
+        return ((SqlMFusion) metal)
+                .decisions().stream()
+                        .map(
+                                (String decision) -> {
+                                    return (MetalLint)
+                                            ImmutableMetalLint.builder()
+                                                    .metalId(metal.id())
+                                                    .rule(name())
+                                                    .severity(LintSeverity.INFO)
+                                                    .message(decision)
+                                                    .suggestion(
+                                                            "Set autoBroadcast, broadcastThreshold, bloomFilter or skewJoin in props to change it.")
+                                                    .build();
+                                })
+                        .collect(Collectors.toList());
+    }
+}
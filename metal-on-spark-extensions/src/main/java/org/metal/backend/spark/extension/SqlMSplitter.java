@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.metal.backend.spark.SparkMSplitter;
+import org.metal.core.FormJsonSchema;
+import org.metal.core.FormSchemaMethod;
+import org.metal.exception.MetalTranslateException;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.storage.StorageLevel;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.apache.spark.sql.functions.coalesce;
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.expr;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.not;
+
+/**
+ * Routes rows of one input to named outputs. Every condition is evaluated once into one route
+ * column, the result is persisted, and each output only filters on its route column, so the input
+ * is scanned once whatever the number of outputs.
+ */
+public class SqlMSplitter extends SparkMSplitter<ISqlMSplitterProps> {
+
+    public static final String PERSIST_CACHE = "cache";
+    public static final String PERSIST_LOCAL_CHECKPOINT = "localCheckpoint";
+    public static final String PERSIST_NONE = "none";
+    public static final String DEFAULT_STORAGE_LEVEL = "MEMORY_AND_DISK";
+    private static final String ROUTE_COLUMN_PREFIX = "__route_";
+
+    @JsonCreator
+    public SqlMSplitter(
+            @JsonProperty("id") String id,
+            @JsonProperty("name") String name,
+            @JsonProperty("props") ISqlMSplitterProps props) {
+        super(id, name, props);
+    }
+
+    @Override
+    public Set<String> outputs() {
+        Set<String> outputs = new HashSet<>(this.props().conditions().keySet());
+        this.props().otherwise().ifPresent(outputs::add);
+        return Collections.unmodifiableSet(outputs);
+    }
+
+    @Override
+    public Dataset<Row> split(SparkSession platform, Dataset<Row> data)
+            throws MetalTranslateException {
+        if (this.props().otherwise().map(this.props().conditions()::containsKey).orElse(false)) {
+            String msg =
+                    String.format(
+                            "Otherwise output[%s] conflicts with one conditional output.",
+                            this.props().otherwise().get());
+            throw new MetalTranslateException(msg, id());
+        }
+
+        try {
+            List<Column> columns = new ArrayList<>();
+            columns.add(col("*"));
+            Column any = lit(false);
+            for (String output : new TreeSet<>(this.props().conditions().keySet())) {
+                Column matched = coalesce(expr(this.props().conditions().get(output)), lit(false));
+                columns.add(matched.as(routeColumn(output)));
+                any = any.or(matched);
+            }
+            if (this.props().otherwise().isPresent()) {
+                columns.add(not(any).as(routeColumn(this.props().otherwise().get())));
+            }
+            Dataset<Row> split = data.select(columns.toArray(new Column[0]));
+            return persist(split);
+        } catch (MetalTranslateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MetalTranslateException(e);
+        }
+    }
+
+    private Dataset<Row> persist(Dataset<Row> split) throws MetalTranslateException {
+        String persist = this.props().persist().orElse(PERSIST_CACHE);
+        if (PERSIST_CACHE.equals(persist)) {
+            return split.persist(
+                    StorageLevel.fromString(
+                            this.props().storageLevel().orElse(DEFAULT_STORAGE_LEVEL)));
+        } else if (PERSIST_LOCAL_CHECKPOINT.equals(persist)) {
+            // Lazy, the first exec reading any output materializes it.
+            return split.localCheckpoint(false);
+        } else if (PERSIST_NONE.equals(persist)) {
+            return split;
+        }
+        String msg =
+                String.format(
+                        "Persist[%s] is not one of %s, %s and %s.",
+                        persist, PERSIST_CACHE, PERSIST_LOCAL_CHECKPOINT, PERSIST_NONE);
+        throw new MetalTranslateException(msg, id());
+    }
+
+    @Override
+    public Dataset<Row> output(SparkSession platform, Dataset<Row> split, String output)
+            throws MetalTranslateException {
+        try {
+            String[] routeColumns =
+                    outputs().stream().map(SqlMSplitter::routeColumn).toArray(String[]::new);
+            return split.where(col("`" + routeColumn(output) + "`")).drop(routeColumns);
+        } catch (Exception e) {
+            throw new MetalTranslateException(e);
+        }
+    }
+
+    private static String routeColumn(String output) {
+        return ROUTE_COLUMN_PREFIX + output;
+    }
+
+    @FormSchemaMethod
+    public static String formSchema() {
+        return FormJsonSchema.formSchema(ISqlMSplitterProps.class);
+    }
+}
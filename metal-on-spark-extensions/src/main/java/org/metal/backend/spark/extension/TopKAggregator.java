@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.expressions.Aggregator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frequent items by one Misra-Gries summary of bounded capacity. Summaries of partitions merge into
+ * one summary with the same error bound, counts are under-estimated by at most rows / (capacity +
+ * 1).
+ */
+public class TopKAggregator
+        extends Aggregator<String, TopKAggregator.Summary, TopKAggregator.Summary> {
+
+    public static class Summary {
+
+        private Map<String, Long> counts = new HashMap<>();
+
+        public Map<String, Long> getCounts() {
+            return counts;
+        }
+
+        public void setCounts(Map<String, Long> counts) {
+            this.counts = counts;
+        }
+    }
+
+    private final int capacity;
+
+    public TopKAggregator(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public Summary zero() {
+        return new Summary();
+    }
+
+    @Override
+    public Summary reduce(Summary summary, String value) {
+        if (value == null) {
+            return summary;
+        }
+        summary.counts.merge(value, 1L, Long::sum);
+        // Shrinking only at twice the capacity keeps updates amortized constant.
+        if (summary.counts.size() > 2 * capacity) {
+            shrink(summary);
+        }
+        return summary;
+    }
+
+    @Override
+    public Summary merge(Summary left, Summary right) {
+        for (Map.Entry<String, Long> kv : right.counts.entrySet()) {
+            left.counts.merge(kv.getKey(), kv.getValue(), Long::sum);
+        }
+        if (left.counts.size() > capacity) {
+            shrink(left);
+        }
+        return left;
+    }
+
+    @Override
+    public Summary finish(Summary summary) {
+        if (summary.counts.size() > capacity) {
+            shrink(summary);
+        }
+        return summary;
+    }
+
+    /** Subtracts the (capacity + 1)-th largest count from all counts and drops the ones left. */
+    private void shrink(Summary summary) {
+        List<Long> counts = new ArrayList<>(summary.counts.values());
+        counts.sort(Collections.reverseOrder());
+        long cut = counts.get(capacity);
+        summary.counts.replaceAll((String value, Long count) -> count - cut);
+        summary.counts.values().removeIf((Long count) -> count <= 0);
+    }
+
+    @Override
+    public Encoder<Summary> bufferEncoder() {
+        return Encoders.bean(Summary.class);
+    }
+
+    @Override
+    public Encoder<Summary> outputEncoder() {
+        return Encoders.bean(Summary.class);
+    }
+}
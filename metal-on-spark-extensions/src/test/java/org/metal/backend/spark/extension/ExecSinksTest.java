@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.metal.backend.spark.SparkMetalService;
+import org.metal.backend.spark.SparkTranslator;
+import org.metal.core.Pair;
+import org.metal.core.props.IMetalProps;
+import org.metal.draft.Draft;
+import org.metal.draft.DraftMaster;
+import org.metal.exception.MetalExecuteException;
+import org.metal.specs.Spec;
+
+import org.apache.spark.sql.SparkSession;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ExecSinksTest {
+
+    /** The failing sink waits for the other one, so one sink has been run when exec fails. */
+    private static SparkMetalService<IMetalProps> analysed() {
+        JsonFileMSource source =
+                new JsonFileMSource(
+                        "00-00",
+                        "source-00",
+                        ImmutableIJsonFileMSourceProps.builder()
+                                .path("src/test/resources/test.json")
+                                .schema("")
+                                .build());
+        SqlMMapper ok =
+                new SqlMMapper(
+                        "01-00",
+                        "mapper-00",
+                        ImmutableISqlMMapperProps.builder()
+                                .tableAlias("source")
+                                .sql("select 1 as one from source")
+                                .build());
+        SqlMMapper bad =
+                new SqlMMapper(
+                        "01-01",
+                        "mapper-01",
+                        ImmutableISqlMMapperProps.builder()
+                                .tableAlias("source")
+                                .sql("select assert_true(rand() < 0) from source")
+                                .build());
+        ConsoleMSink okSink =
+                new ConsoleMSink(
+                        "02-00",
+                        "sink-00",
+                        ImmutableIConsoleMSinkProps.builder().numRows(10).build());
+        ConsoleMSink badSink =
+                new ConsoleMSink(
+                        "02-01",
+                        "sink-01",
+                        ImmutableIConsoleMSinkProps.builder().numRows(10).build());
+
+        Spec spec = new Spec("1.0");
+        spec.getMetals().add(source);
+        spec.getMetals().add(ok);
+        spec.getMetals().add(bad);
+        spec.getMetals().add(okSink);
+        spec.getMetals().add(badSink);
+        spec.getEdges().add(Pair.of("00-00", "01-00"));
+        spec.getEdges().add(Pair.of("00-00", "01-01"));
+        spec.getEdges().add(Pair.of("01-00", "02-00"));
+        spec.getEdges().add(Pair.of("01-01", "02-01"));
+        spec.getWaitFor().add(Pair.of("02-01", "02-00"));
+
+        Draft draft = DraftMaster.draft(spec);
+        SparkSession platform =
+                SparkSession.builder().appName("test").master("local[*]").getOrCreate();
+        SparkMetalService<IMetalProps> service =
+                SparkMetalService.<IMetalProps>of(new SparkTranslator(platform));
+        service.analyse(draft);
+        return service;
+    }
+
+    @org.junit.Test
+    public void execReturnsSinksRun() {
+        SparkMetalService<IMetalProps> service = analysed();
+        List<String> executed = service.exec("exec-0", Set.of("02-00"));
+        assertEquals(List.of("02-00"), executed);
+    }
+
+    @org.junit.Test
+    public void failureCarriesSinksRunBefore() {
+        SparkMetalService<IMetalProps> service = analysed();
+        assertEquals(List.of("02-00", "02-01"), service.execClosure(Collections.emptySet()));
+        try {
+            service.exec("exec-1", Collections.emptySet());
+            fail("Sink 02-01 should fail.");
+        } catch (MetalExecuteException e) {
+            assertEquals(List.of("02-00"), e.executedSinks());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.metal.backend.spark.SparkMetalService;
+import org.metal.backend.spark.SparkTranslator;
+import org.metal.core.Pair;
+import org.metal.core.props.IMetalProps;
+import org.metal.draft.Draft;
+import org.metal.draft.DraftMaster;
+import org.metal.specs.Spec;
+
+import org.apache.spark.sql.SparkSession;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class ProfileMSinkTest {
+
+    /** Ids 1 to 10, names are five a, three b and two nulls. */
+    private static Path input(Path dir) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            String name = id <= 5 ? "\"a\"" : id <= 8 ? "\"b\"" : "null";
+            lines.add(String.format("{\"id\": %d, \"name\": %s}", id, name));
+        }
+        Path file = dir.resolve("input.json");
+        Files.write(file, lines);
+        return file;
+    }
+
+    private static SparkMetalService<IMetalProps> analysed(
+            Path input, Path profiles, boolean force) {
+        JsonFileMSource source =
+                new JsonFileMSource(
+                        "00-00",
+                        "source-00",
+                        ImmutableIJsonFileMSourceProps.builder()
+                                .path(input.toString())
+                                .schema("")
+                                .build());
+        ProfileMSink sink =
+                new ProfileMSink(
+                        "01-00",
+                        "sink-00",
+                        ImmutableIProfileMSinkProps.builder()
+                                .path(profiles.toString())
+                                .topK(2)
+                                .quantiles(List.of(0.5))
+                                .force(force)
+                                .build());
+
+        Spec spec = new Spec("1.0");
+        spec.getMetals().add(source);
+        spec.getMetals().add(sink);
+        spec.getEdges().add(Pair.of("00-00", "01-00"));
+
+        Draft draft = DraftMaster.draft(spec);
+        SparkSession platform =
+                SparkSession.builder().appName("test").master("local[*]").getOrCreate();
+        SparkMetalService<IMetalProps> service =
+                SparkMetalService.<IMetalProps>of(new SparkTranslator(platform));
+        service.analyse(draft);
+        return service;
+    }
+
+    private static List<File> profilesIn(Path profiles) throws IOException {
+        try (Stream<Path> files = Files.list(profiles)) {
+            return files.map(Path::toFile)
+                    .filter(file -> !file.getName().startsWith("."))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static JsonNode profileIn(Path profiles) throws IOException {
+        List<File> files = profilesIn(profiles);
+        assertEquals(1, files.size());
+        return new ObjectMapper().readTree(files.get(0));
+    }
+
+    @org.junit.Test
+    public void profileColumns() throws IOException {
+        Path dir = Files.createTempDirectory("profile");
+        Path profiles = dir.resolve("profiles");
+        analysed(input(dir), profiles, false).exec();
+
+        JsonNode profile = profileIn(profiles);
+        assertEquals("01-00", profile.get("metalId").asText());
+        assertEquals(10, profile.get("rows").asLong());
+
+        JsonNode id = profile.get("columns").get("id");
+        assertEquals(0, id.get("nulls").asLong());
+        assertEquals(10, id.get("distinct").asLong());
+        assertEquals("1", id.get("min").asText());
+        assertEquals("10", id.get("max").asText());
+        assertEquals(5.0, id.get("quantiles").get("0.5").asDouble(), 0.0);
+
+        JsonNode name = profile.get("columns").get("name");
+        assertEquals(2, name.get("nulls").asLong());
+        assertEquals(0.2, name.get("nullRatio").asDouble(), 1e-9);
+        assertEquals(2, name.get("distinct").asLong());
+        assertEquals("a", name.get("min").asText());
+        assertEquals("b", name.get("max").asText());
+        assertNull(name.get("quantiles"));
+        assertEquals("a", name.get("topK").get(0).get("value").asText());
+        assertEquals(5, name.get("topK").get(0).get("count").asLong());
+        assertEquals("b", name.get("topK").get(1).get("value").asText());
+        assertEquals(3, name.get("topK").get(1).get("count").asLong());
+    }
+
+    @org.junit.Test
+    public void sameKeyIsNotProfiledAgain() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("profile");
+        Path profiles = dir.resolve("profiles");
+        SparkMetalService<IMetalProps> service = analysed(input(dir), profiles, false);
+        service.exec();
+        long createTime = profileIn(profiles).get("createTime").asLong();
+
+        Thread.sleep(10);
+        service.exec();
+        assertEquals(createTime, profileIn(profiles).get("createTime").asLong());
+
+        Thread.sleep(10);
+        analysed(dir.resolve("input.json"), profiles, false).exec();
+        assertEquals(createTime, profileIn(profiles).get("createTime").asLong());
+    }
+
+    @org.junit.Test
+    public void forceProfilesAgain() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("profile");
+        Path profiles = dir.resolve("profiles");
+        SparkMetalService<IMetalProps> service = analysed(input(dir), profiles, true);
+        service.exec();
+        long createTime = profileIn(profiles).get("createTime").asLong();
+
+        Thread.sleep(10);
+        service.exec();
+        assertNotEquals(createTime, profileIn(profiles).get("createTime").asLong());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import org.metal.exception.MetalTranslateException;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SqlMFusionJoinTest {
+
+    private static final String SQL = "select * from tbl0 join tbl1 on tbl0.k = tbl1.id";
+
+    /** Every test runs on its own session, so confs set by one never leak into others. */
+    private static SparkSession platform() {
+        return SparkSession.builder().appName("test").master("local[2]").getOrCreate().newSession();
+    }
+
+    private static Dataset<Row> table(SparkSession platform, String key, List<Long> keys) {
+        StructType schema =
+                DataTypes.createStructType(
+                        List.of(DataTypes.createStructField(key, DataTypes.LongType, true)));
+        List<Row> rows =
+                keys.stream()
+                        .map(
+                                (Long k) -> {
+                                    return RowFactory.create(k);
+                                })
+                        .collect(Collectors.toList());
+        return platform.createDataFrame(rows, schema);
+    }
+
+    private static List<Long> range(long n) {
+        List<Long> keys = new ArrayList<>();
+        for (long i = 0; i < n; i++) {
+            keys.add(i);
+        }
+        return keys;
+    }
+
+    /** Half of the rows share key 1. */
+    private static List<Long> skewed(long n) {
+        List<Long> keys = new ArrayList<>();
+        for (long i = 0; i < n; i++) {
+            keys.add(i % 2 == 0 ? 1L : i);
+        }
+        return keys;
+    }
+
+    private static Map<String, Dataset<Row>> inputs(Dataset<Row> tbl0, Dataset<Row> tbl1) {
+        return Map.of("00-00", tbl0, "00-01", tbl1);
+    }
+
+    private static ImmutableISqlMFusionProps.Builder props() {
+        return ImmutableISqlMFusionProps.builder()
+                .putTableAlias("00-00", "tbl0")
+                .putTableAlias("00-01", "tbl1")
+                .sql(SQL);
+    }
+
+    private static List<String> rows(Dataset<Row> df) {
+        return df.collectAsList().stream().map(Row::toString).sorted().collect(Collectors.toList());
+    }
+
+    private static List<String> plain(Dataset<Row> tbl0, Dataset<Row> tbl1) {
+        return rows(tbl0.join(tbl1, tbl0.col("k").equalTo(tbl1.col("id"))));
+    }
+
+    private static boolean decided(SqlMFusion fusion, String prefix) {
+        return fusion.decisions().stream().anyMatch(decision -> decision.startsWith(prefix));
+    }
+
+    @org.junit.Test
+    public void broadcastSmallerInput() throws MetalTranslateException {
+        SparkSession platform = platform();
+        Dataset<Row> tbl0 = table(platform, "k", range(1000));
+        Dataset<Row> tbl1 = table(platform, "id", range(10));
+
+        SqlMFusion fusion = new SqlMFusion("01-00", "fusion-00", props().build());
+        Dataset<Row> joined = fusion.fusion(platform, inputs(tbl0, tbl1));
+
+        assertTrue(decided(fusion, "Broadcast tbl1 of metal[00-01]"));
+        assertFalse(decided(fusion, "Broadcast tbl0"));
+        assertTrue(joined.queryExecution().optimizedPlan().toString().contains("broadcast"));
+        assertEquals(plain(tbl0, tbl1), rows(joined));
+
+        SqlMFusion off = new SqlMFusion("01-00", "fusion-00", props().autoBroadcast(false).build());
+        off.fusion(platform, inputs(tbl0, tbl1));
+        assertTrue(off.decisions().isEmpty());
+    }
+
+    @org.junit.Test
+    public void splitSkewedJoin() throws MetalTranslateException {
+        SparkSession platform = platform();
+        platform.conf().set(SqlMFusion.ADAPTIVE_SKEW_JOIN_CONF, "false");
+        Dataset<Row> tbl0 = table(platform, "k", skewed(2000));
+        Dataset<Row> tbl1 = table(platform, "id", range(1000));
+
+        SqlMFusion fusion =
+                new SqlMFusion(
+                        "01-00",
+                        "fusion-00",
+                        props().broadcastThreshold(100L).skewJoin(true).build());
+        Dataset<Row> joined = fusion.fusion(platform, inputs(tbl0, tbl1));
+
+        assertTrue(fusion.decisions().toString(), decided(fusion, "Split join"));
+        assertEquals(plain(tbl0, tbl1), rows(joined));
+    }
+
+    @org.junit.Test
+    public void keepSkewedJoinOverBroadcastThreshold() throws MetalTranslateException {
+        SparkSession platform = platform();
+        platform.conf().set(SqlMFusion.ADAPTIVE_SKEW_JOIN_CONF, "false");
+        // Key 1 is heavy on both sides, broadcasting its rows of tbl1 would be no small join.
+        Dataset<Row> tbl0 = table(platform, "k", skewed(2000));
+        Dataset<Row> tbl1 = table(platform, "id", skewed(1000));
+
+        SqlMFusion fusion =
+                new SqlMFusion(
+                        "01-00",
+                        "fusion-00",
+                        props().broadcastThreshold(100L).skewJoin(true).build());
+        Dataset<Row> joined = fusion.fusion(platform, inputs(tbl0, tbl1));
+
+        assertTrue(fusion.decisions().toString(), decided(fusion, "Keep join"));
+        assertFalse(decided(fusion, "Split join"));
+        assertEquals(plain(tbl0, tbl1), rows(joined));
+    }
+
+    @org.junit.Test
+    public void skewLeftToAdaptiveExecution() throws MetalTranslateException {
+        SparkSession platform = platform();
+        platform.conf().set(SqlMFusion.ADAPTIVE_CONF, "true");
+        platform.conf().set(SqlMFusion.ADAPTIVE_SKEW_JOIN_CONF, "true");
+        Dataset<Row> tbl0 = table(platform, "k", skewed(2000));
+        Dataset<Row> tbl1 = table(platform, "id", range(1000));
+
+        SqlMFusion fusion =
+                new SqlMFusion(
+                        "01-00",
+                        "fusion-00",
+                        props().broadcastThreshold(100L).skewJoin(true).build());
+        fusion.fusion(platform, inputs(tbl0, tbl1));
+
+        assertTrue(decided(fusion, "Skewed joins are left to AQE skew join"));
+        assertFalse(decided(fusion, "Split join"));
+    }
+
+    @org.junit.Test
+    public void prefilterWithBloomFilter() throws MetalTranslateException {
+        SparkSession platform = platform();
+        Dataset<Row> tbl0 = table(platform, "k", range(20000));
+        Dataset<Row> tbl1 = table(platform, "id", range(100));
+
+        SqlMFusion fusion =
+                new SqlMFusion(
+                        "01-00",
+                        "fusion-00",
+                        props().broadcastThreshold(100L)
+                                .bloomFilter(true)
+                                .bloomFilterApplicationThreshold(1024L)
+                                .build());
+        Dataset<Row> joined = fusion.fusion(platform, inputs(tbl0, tbl1));
+
+        assertTrue(fusion.decisions().toString(), decided(fusion, "Prefilter the left side"));
+        // The filter is aggregated by one subquery of each execution, never frozen at translation.
+        String plan = joined.queryExecution().analyzed().toString();
+        assertTrue(plan, plan.contains("might_contain(scalar-subquery"));
+        assertTrue(plan, plan.contains("bloom_filter_agg"));
+        assertEquals(plain(tbl0, tbl1), rows(joined));
+    }
+
+    @org.junit.Test
+    public void bloomFilterKeepsEveryMatch() throws MetalTranslateException {
+        SparkSession platform = platform();
+        // tbl1 is the larger side here, with duplicates, null keys and keys tbl0 doesn't have.
+        List<Long> larger = new ArrayList<>();
+        for (long i = 0; i < 20000; i++) {
+            larger.add(i % 7 == 0 ? null : i % 5000);
+        }
+        List<Long> smaller = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            smaller.add(i % 10 == 0 ? null : i * 97);
+        }
+        smaller.add(97L);
+        Dataset<Row> tbl0 = table(platform, "k", smaller);
+        Dataset<Row> tbl1 = table(platform, "id", larger);
+
+        SqlMFusion fusion =
+                new SqlMFusion(
+                        "01-00",
+                        "fusion-00",
+                        props().broadcastThreshold(100L)
+                                .bloomFilter(true)
+                                .bloomFilterApplicationThreshold(1024L)
+                                .bloomFilterFpp(0.5)
+                                .build());
+        Dataset<Row> joined = fusion.fusion(platform, inputs(tbl0, tbl1));
+
+        assertTrue(fusion.decisions().toString(), decided(fusion, "Prefilter the right side"));
+        List<String> expected = plain(tbl0, tbl1);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, rows(joined));
+    }
+}
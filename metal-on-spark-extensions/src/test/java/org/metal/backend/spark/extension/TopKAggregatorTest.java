@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.extension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TopKAggregatorTest {
+
+    /** Reduces the values into one summary of one partition, counting them exactly aside. */
+    private static TopKAggregator.Summary partition(
+            TopKAggregator aggregator, Map<String, Long> exact, String... values) {
+        TopKAggregator.Summary summary = aggregator.zero();
+        for (String value : values) {
+            summary = aggregator.reduce(summary, value);
+            if (value != null) {
+                exact.merge(value, 1L, Long::sum);
+            }
+        }
+        return summary;
+    }
+
+    /** The heavy hitter shuffled among unique values, so it sees many shrinks on its way. */
+    private static String[] values(String heavy, int heavyCount, String prefix, int uniques) {
+        List<String> values = new ArrayList<>();
+        for (int idx = 0; idx < heavyCount; idx++) {
+            values.add(heavy);
+        }
+        for (int idx = 0; idx < uniques; idx++) {
+            values.add(prefix + idx);
+        }
+        Collections.shuffle(values, new Random(heavyCount));
+        return values.toArray(new String[0]);
+    }
+
+    private static void assertBounded(
+            TopKAggregator.Summary summary, Map<String, Long> exact, long rows, int capacity) {
+        assertTrue(summary.getCounts().size() <= capacity);
+        for (Map.Entry<String, Long> kv : exact.entrySet()) {
+            long estimate = summary.getCounts().getOrDefault(kv.getKey(), 0L);
+            assertTrue(kv.getKey(), estimate <= kv.getValue());
+            assertTrue(kv.getKey(), kv.getValue() - estimate <= rows / (capacity + 1));
+        }
+    }
+
+    @org.junit.Test
+    public void reduceKeepsHeavyHitter() {
+        int capacity = 4;
+        TopKAggregator aggregator = new TopKAggregator(capacity);
+        Map<String, Long> exact = new HashMap<>();
+        TopKAggregator.Summary summary =
+                aggregator.finish(partition(aggregator, exact, values("h", 60, "u", 100)));
+
+        assertTrue(summary.getCounts().containsKey("h"));
+        assertBounded(summary, exact, 160, capacity);
+    }
+
+    @org.junit.Test
+    public void heavyHittersSurviveMerges() {
+        // Both heavy hitters exceed rows / (capacity + 1), so neither can be dropped.
+        int capacity = 8;
+        TopKAggregator aggregator = new TopKAggregator(capacity);
+        Map<String, Long> exact = new HashMap<>();
+        TopKAggregator.Summary left = partition(aggregator, exact, values("h", 50, "l", 100));
+        TopKAggregator.Summary middle = partition(aggregator, exact, values("g", 60, "m", 100));
+        TopKAggregator.Summary right = partition(aggregator, exact, values("h", 30, "r", 100));
+
+        TopKAggregator.Summary merged =
+                aggregator.finish(
+                        aggregator.merge(aggregator.merge(aggregator.zero(), left), middle));
+        merged = aggregator.finish(aggregator.merge(merged, right));
+
+        assertTrue(merged.getCounts().containsKey("h"));
+        assertTrue(merged.getCounts().containsKey("g"));
+        assertBounded(merged, exact, 440, capacity);
+    }
+
+    @org.junit.Test
+    public void smallInputIsExact() {
+        TopKAggregator aggregator = new TopKAggregator(4);
+        Map<String, Long> exact = new HashMap<>();
+        TopKAggregator.Summary summary =
+                aggregator.finish(partition(aggregator, exact, "a", "b", "a", null, "c", "a"));
+
+        assertEquals(exact, summary.getCounts());
+        assertEquals(Long.valueOf(3L), summary.getCounts().get("a"));
+    }
+}
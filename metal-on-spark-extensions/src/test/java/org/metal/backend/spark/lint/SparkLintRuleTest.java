@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.lint;
+
+import org.metal.backend.spark.extension.ImmutableIJsonFileMSourceProps;
+import org.metal.backend.spark.extension.JsonFileMSource;
+import org.metal.backend.spark.extension.SqlMFusionDecisionRule;
+import org.metal.core.Metal;
+import org.metal.lint.LintSeverity;
+import org.metal.lint.MetalLint;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.api.java.UDF1;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.spark.sql.functions.callUDF;
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.rand;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SparkLintRuleTest {
+
+    private static SparkSession platform() {
+        return SparkSession.builder().appName("test").master("local[1]").getOrCreate();
+    }
+
+    private static Metal metal() {
+        return new JsonFileMSource(
+                "00-00",
+                "source-00",
+                ImmutableIJsonFileMSourceProps.builder()
+                        .path("src/test/resources/test.json")
+                        .schema("")
+                        .build());
+    }
+
+    private static Dataset<Row> table(SparkSession platform, String prefix, int columns) {
+        List<StructField> fields = new ArrayList<>();
+        Object[] values = new Object[columns];
+        for (int i = 0; i < columns; i++) {
+            fields.add(DataTypes.createStructField(prefix + i, DataTypes.LongType, false));
+            values[i] = (long) i;
+        }
+        return platform.createDataFrame(
+                List.of(RowFactory.create(values)), DataTypes.createStructType(fields));
+    }
+
+    @org.junit.Test
+    public void cartesianJoin() {
+        SparkSession platform = platform();
+        Dataset<Row> left = table(platform, "l", 2);
+        Dataset<Row> right = table(platform, "r", 2);
+
+        List<MetalLint> lints = new CartesianJoinRule().lint(metal(), left.crossJoin(right));
+        assertEquals(1, lints.size());
+        assertEquals("cartesian-join", lints.get(0).rule());
+        assertEquals(LintSeverity.ERROR, lints.get(0).severity());
+        assertEquals("00-00", lints.get(0).metalId());
+
+        Dataset<Row> joined = left.join(right, col("l0").equalTo(col("r0")));
+        assertTrue(new CartesianJoinRule().lint(metal(), joined).isEmpty());
+    }
+
+    @org.junit.Test
+    public void udfInFilter() {
+        SparkSession platform = platform();
+        platform.udf()
+                .register(
+                        "lint_test_positive",
+                        (UDF1<Long, Boolean>) (Long value) -> value > 0,
+                        DataTypes.BooleanType);
+        // Filters over local relations are folded by the optimizer, so scan one range.
+        Dataset<Row> df = platform.range(10).toDF("c0");
+
+        List<MetalLint> lints =
+                new UdfInFilterRule()
+                        .lint(metal(), df.filter(callUDF("lint_test_positive", col("c0"))));
+        assertEquals(1, lints.size());
+        assertEquals(LintSeverity.WARN, lints.get(0).severity());
+
+        assertTrue(new UdfInFilterRule().lint(metal(), df.filter(col("c0").gt(0))).isEmpty());
+    }
+
+    @org.junit.Test
+    public void wideScan() {
+        SparkSession platform = platform();
+
+        List<MetalLint> lints =
+                new WideScanRule()
+                        .lint(metal(), table(platform, "c", WideScanRule.WIDE_COLUMNS + 1));
+        assertEquals(1, lints.size());
+        assertEquals(LintSeverity.WARN, lints.get(0).severity());
+        assertTrue(lints.get(0).message().contains(String.valueOf(WideScanRule.WIDE_COLUMNS + 1)));
+
+        assertTrue(
+                new WideScanRule()
+                        .lint(metal(), table(platform, "c", WideScanRule.WIDE_COLUMNS))
+                        .isEmpty());
+    }
+
+    @org.junit.Test
+    public void unpushedFilter() {
+        SparkSession platform = platform();
+        Dataset<Row> left = table(platform, "l", 2);
+        Dataset<Row> right = table(platform, "r", 2);
+        Dataset<Row> joined = left.join(right, col("l0").equalTo(col("r0")));
+
+        // Non-deterministic predicates are never pushed through the join.
+        List<MetalLint> lints =
+                new UnpushedFilterRule().lint(metal(), joined.filter(col("l1").plus(rand()).gt(0)));
+        assertEquals(1, lints.size());
+        assertEquals(LintSeverity.INFO, lints.get(0).severity());
+
+        assertTrue(
+                new UnpushedFilterRule().lint(metal(), joined.filter(col("l1").gt(0))).isEmpty());
+    }
+
+    @org.junit.Test
+    public void decisionsOfOtherMetals() {
+        Dataset<Row> df = table(platform(), "c", 2);
+        assertTrue(new SqlMFusionDecisionRule().lint(metal(), df).isEmpty());
+    }
+}
@@ -16,21 +16,43 @@ package org.metal.backend.spark;
 
 import org.metal.backend.BackendDeployOptions;
 import org.metal.backend.IBackend;
+import org.metal.backend.IExecProgressReporter;
 import org.metal.backend.ISetup;
+import org.metal.backend.spark.stats.SparkStatsCatalog;
 import org.metal.core.props.IMetalProps;
+import org.metal.instrument.MetalListenerBus;
+import org.metal.instrument.MicrometerMetalListener;
+import org.metal.stats.IStatsStore;
 
 import org.apache.spark.sql.Dataset;
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.SparkSession;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SparkBackend implements IBackend<Dataset<Row>, SparkSession, IMetalProps> {
 
+    /** Minimal interval in milliseconds between two progress reports of one exec. */
+    public static final String PROGRESS_INTERVAL_CONF = "metal.exec.progress.interval";
+
+    public static final String SAMPLE_FRACTION_CONF = "metal.sample.fraction";
+    public static final String SAMPLE_LIMIT_CONF = "metal.sample.limit";
+    public static final String SAMPLE_SEED_CONF = "metal.sample.seed";
+
+    /** Collect statistics of file sources without any after each exec, false by default. */
+    public static final String STATS_AFTER_EXEC_CONF = "metal.stats.afterExec";
+
+    /** Metal ids tagged on meters at most, later ids are not metered. */
+    public static final String METRICS_MAX_METAL_IDS_CONF = "metal.metrics.maxMetalIds";
+
     @Override
     public void start() throws IllegalArgumentException {
         SparkSession.Builder builder = SparkSession.builder();
@@ -65,16 +87,81 @@ public class SparkBackend implements IBackend<Dataset<Row>, SparkSession, IMetal
             setup.setup(platform);
         }
 
-        SparkTranslator translator = new SparkTranslator(platform);
-        this.service = SparkMetalService.of(translator);
+        long progressInterval = SparkMetalProgressListener.DEFAULT_REPORT_INTERVAL;
+        if (confs.containsKey(PROGRESS_INTERVAL_CONF)) {
+            progressInterval = Long.parseLong(confs.get(PROGRESS_INTERVAL_CONF).toString());
+        }
+        this.progressListener = new SparkMetalProgressListener(progressInterval);
+        this.progressListener.reporter(this.progressReporter);
+        this.platform.sparkContext().addSparkListener(this.progressListener);
+
+        double sampleFraction = SparkSampler.DEFAULT_FRACTION;
+        if (confs.containsKey(SAMPLE_FRACTION_CONF)) {
+            sampleFraction = Double.parseDouble(confs.get(SAMPLE_FRACTION_CONF).toString());
+        }
+        int sampleLimit = SparkSampler.DEFAULT_LIMIT;
+        if (confs.containsKey(SAMPLE_LIMIT_CONF)) {
+            sampleLimit = Integer.parseInt(confs.get(SAMPLE_LIMIT_CONF).toString());
+        }
+        long sampleSeed = SparkSampler.DEFAULT_SEED;
+        if (confs.containsKey(SAMPLE_SEED_CONF)) {
+            sampleSeed = Long.parseLong(confs.get(SAMPLE_SEED_CONF).toString());
+        }
+        this.sampler = new SparkSampler(sampleFraction, sampleLimit, sampleSeed);
+
+        if (confs.containsKey(STATS_AFTER_EXEC_CONF)) {
+            this.statsAfterExec = Boolean.parseBoolean(confs.get(STATS_AFTER_EXEC_CONF).toString());
+        }
+
+        this.service = sessionService(platform);
+        this.sessions.put(DEFAULT_SESSION, this.service);
     }
 
     @Override
     public void stop() {
+        this.sessions.clear();
+        this.sampledSessions.clear();
         this.service = null;
+        this.platform.sparkContext().removeSparkListener(this.progressListener);
         this.platform.stop();
     }
 
+    @Override
+    public void progressReporter(IExecProgressReporter reporter) {
+        this.progressReporter = reporter;
+        if (this.progressListener != null) {
+            this.progressListener.reporter(reporter);
+        }
+    }
+
+    @Override
+    public void statsStore(IStatsStore store) {
+        this.statsCatalog.store(store);
+    }
+
+    @Override
+    public void meterRegistry(MeterRegistry registry) {
+        int maxMetalIds = MicrometerMetalListener.DEFAULT_MAX_METAL_IDS;
+        if (confs.containsKey(METRICS_MAX_METAL_IDS_CONF)) {
+            maxMetalIds = Integer.parseInt(confs.get(METRICS_MAX_METAL_IDS_CONF).toString());
+        }
+        this.meters.add(new MicrometerMetalListener(registry, maxMetalIds));
+    }
+
+    private SparkTranslator translator(SparkTranslator translator) {
+        translator.listeners().add(meters);
+        return translator;
+    }
+
+    private SparkMetalService<IMetalProps> sessionService(SparkSession sessionPlatform) {
+        SparkMetalService<IMetalProps> sessionService =
+                SparkMetalService.of(
+                        translator(new SparkTranslator(sessionPlatform, statsCatalog)),
+                        progressListener);
+        sessionService.statsAfterExec(statsAfterExec);
+        return sessionService;
+    }
+
     @Override
     public SparkMetalService service() throws IllegalArgumentException {
         if (this.platform != null && this.service != null) {
@@ -84,15 +171,132 @@ public class SparkBackend implements IBackend<Dataset<Row>, SparkSession, IMetal
         }
     }
 
+    @Override
+    public SparkMetalService service(String session) throws IllegalArgumentException {
+        service();
+        if (session != null && session.endsWith(SAMPLED_SUFFIX)) {
+            return sampledService(session.substring(0, session.length() - SAMPLED_SUFFIX.length()));
+        }
+        SparkMetalService<IMetalProps> sessionService = this.sessions.get(session);
+        if (sessionService == null) {
+            throw new IllegalArgumentException(
+                    String.format("Session[%s] is not found in backend.", session));
+        }
+        return sessionService;
+    }
+
+    /**
+     * The sampled view is created on first use. It runs on a child SparkSession of its session, so
+     * temporary views registered by quick translation never replace those of the full one.
+     */
+    private SparkMetalService sampledService(String session) throws IllegalArgumentException {
+        SparkMetalService<IMetalProps> sessionService = this.sessions.get(session);
+        if (sessionService == null) {
+            throw new IllegalArgumentException(
+                    String.format("Session[%s] is not found in backend.", session));
+        }
+        return this.sampledSessions.computeIfAbsent(
+                session,
+                (String name) -> {
+                    SparkSession sampledPlatform = sessionService.platform().newSession();
+                    for (ISetup<SparkSession> setup : setups) {
+                        setup.setup(sampledPlatform);
+                    }
+                    return SparkMetalService.of(
+                            translator(new SparkTranslator(sampledPlatform, sampler)),
+                            progressListener);
+                });
+    }
+
+    /**
+     * The new session shares SparkContext and cached data with others, but has its own SQL conf,
+     * temporary views, UDFs and {@link org.metal.translator.TranslatorContext}.
+     */
+    @Override
+    public void createSession(String session) throws IllegalArgumentException {
+        service();
+        if (session == null || session.isBlank()) {
+            throw new IllegalArgumentException("Session name should not be blank.");
+        }
+        if (session.endsWith(SAMPLED_SUFFIX)) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "Session name should not end with %s, which is kept for sampled views.",
+                            SAMPLED_SUFFIX));
+        }
+        if (this.sessions.containsKey(session)) {
+            throw new IllegalArgumentException(
+                    String.format("Session[%s] has existed in backend.", session));
+        }
+
+        SparkSession sessionPlatform = this.platform.newSession();
+        for (ISetup<SparkSession> setup : setups) {
+            setup.setup(sessionPlatform);
+        }
+        if (this.sessions.putIfAbsent(session, sessionService(sessionPlatform)) != null) {
+            throw new IllegalArgumentException(
+                    String.format("Session[%s] has existed in backend.", session));
+        }
+    }
+
+    @Override
+    public void dropSession(String session) throws IllegalArgumentException {
+        service();
+        if (DEFAULT_SESSION.equals(session)) {
+            throw new IllegalArgumentException(
+                    String.format("Session[%s] is default session and can't be dropped.", session));
+        }
+        if (session != null && session.endsWith(SAMPLED_SUFFIX)) {
+            release(
+                    this.sampledSessions.remove(
+                            session.substring(0, session.length() - SAMPLED_SUFFIX.length())));
+            return;
+        }
+        SparkMetalService<IMetalProps> dropped = this.sessions.remove(session);
+        if (dropped == null) {
+            throw new IllegalArgumentException(
+                    String.format("Session[%s] is not found in backend.", session));
+        }
+        release(dropped);
+        release(this.sampledSessions.remove(session));
+    }
+
+    /** Splits persisted by one dropped session would stay in the shared cache forever. */
+    private static void release(SparkMetalService<IMetalProps> dropped) {
+        if (dropped != null) {
+            dropped.release();
+        }
+    }
+
+    @Override
+    public Set<String> sessions() {
+        return Collections.unmodifiableSet(new TreeSet<>(this.sessions.keySet()));
+    }
+
     private Set<ISetup<SparkSession>> setups;
     private Map<String, Object> confs;
 
     private SparkSession platform;
     private SparkMetalService<IMetalProps> service;
+    private ConcurrentHashMap<String, SparkMetalService<IMetalProps>> sessions;
+    private ConcurrentHashMap<String, SparkMetalService<IMetalProps>> sampledSessions;
+    private SparkSampler sampler;
+    private SparkMetalProgressListener progressListener;
+    private IExecProgressReporter progressReporter;
+    private SparkStatsCatalog statsCatalog;
+
+    /** Shared by translators of all sessions, registries may come after they are created. */
+    private MetalListenerBus meters;
+
+    private boolean statsAfterExec = false;
 
     private SparkBackend() {
+        this.statsCatalog = new SparkStatsCatalog();
+        this.meters = MetalListenerBus.create();
         this.setups = new HashSet<>();
         this.confs = new HashMap<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.sampledSessions = new ConcurrentHashMap<>();
     }
 
     public static Builder builder() {
@@ -0,0 +1,328 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark;
+
+import org.metal.backend.IExecProgressReporter;
+
+import org.apache.spark.executor.TaskMetrics;
+import org.apache.spark.scheduler.JobFailed;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerJobEnd;
+import org.apache.spark.scheduler.SparkListenerJobStart;
+import org.apache.spark.scheduler.SparkListenerStageCompleted;
+import org.apache.spark.scheduler.SparkListenerStageSubmitted;
+import org.apache.spark.scheduler.SparkListenerTaskEnd;
+import org.apache.spark.scheduler.StageInfo;
+
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregates job, stage and task metrics of every IMProduct in one exec. Jobs are related to the
+ * exec and metals by the local properties set in {@link SparkMetalService} before one IMProduct
+ * runs. Progress is pushed to the reporter at most once per interval, except when one job ends or
+ * the exec finishes.
+ */
+public class SparkMetalProgressListener extends SparkListener {
+
+    public static final String EXEC_ID_PROPERTY = "metal.exec.id";
+    public static final String METAL_IDS_PROPERTY = "metal.metal.ids";
+    public static final long DEFAULT_REPORT_INTERVAL = 2000L;
+
+    private static class JobTag {
+        private String execId;
+        private String metalIds;
+
+        /** Tasks of every stage in the job, and the stages really submitted in it. */
+        private Map<Integer, Integer> stageTasks = new HashMap<>();
+
+        private Set<Integer> submitted = new HashSet<>();
+
+        private JobTag(String execId, String metalIds) {
+            this.execId = execId;
+            this.metalIds = metalIds;
+        }
+    }
+
+    private static class MetalProgress {
+        private List<String> metalIds;
+        private long jobs = 0L;
+        private long jobsCompleted = 0L;
+        private long jobsFailed = 0L;
+        private long stages = 0L;
+        private long stagesCompleted = 0L;
+        private long stagesFailed = 0L;
+        private long stagesSkipped = 0L;
+        private long tasks = 0L;
+        private long tasksCompleted = 0L;
+        private long tasksFailed = 0L;
+        private long tasksSkipped = 0L;
+        private long recordsRead = 0L;
+        private long bytesRead = 0L;
+        private long recordsWritten = 0L;
+        private long bytesWritten = 0L;
+        private long shuffleBytesRead = 0L;
+        private long shuffleBytesWritten = 0L;
+        private long executorRunTime = 0L;
+
+        private MetalProgress(List<String> metalIds) {
+            this.metalIds = metalIds;
+        }
+
+        private Map<String, Long> counters() {
+            Map<String, Long> ret = new LinkedHashMap<>();
+            ret.put("jobs", jobs);
+            ret.put("jobsCompleted", jobsCompleted);
+            ret.put("jobsFailed", jobsFailed);
+            ret.put("stages", stages);
+            ret.put("stagesCompleted", stagesCompleted);
+            ret.put("stagesFailed", stagesFailed);
+            ret.put("stagesSkipped", stagesSkipped);
+            ret.put("tasks", tasks);
+            ret.put("tasksCompleted", tasksCompleted);
+            ret.put("tasksFailed", tasksFailed);
+            ret.put("tasksSkipped", tasksSkipped);
+            ret.put("recordsRead", recordsRead);
+            ret.put("bytesRead", bytesRead);
+            ret.put("recordsWritten", recordsWritten);
+            ret.put("bytesWritten", bytesWritten);
+            ret.put("shuffleBytesRead", shuffleBytesRead);
+            ret.put("shuffleBytesWritten", shuffleBytesWritten);
+            ret.put("executorRunTime", executorRunTime);
+            return ret;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> ret = new LinkedHashMap<>();
+            ret.put("metals", new ArrayList<>(metalIds));
+            ret.putAll(counters());
+            return ret;
+        }
+    }
+
+    private static class ExecProgress {
+        private Map<String, MetalProgress> metals = new LinkedHashMap<>();
+        private String runningMetalIds;
+        private long lastReportTime = 0L;
+
+        private MetalProgress metal(String metalIds) {
+            return metals.computeIfAbsent(
+                    metalIds,
+                    (String ids) -> {
+                        return new MetalProgress(Arrays.asList(ids.split(",")));
+                    });
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> ret = new HashMap<>();
+            List<Object> metalsProgress = new ArrayList<>();
+            for (MetalProgress progress : metals.values()) {
+                metalsProgress.add(progress.toMap());
+            }
+            ret.put("metals", metalsProgress);
+            ret.put(
+                    "running",
+                    runningMetalIds == null
+                            ? Collections.emptyList()
+                            : Arrays.asList(runningMetalIds.split(",")));
+            return ret;
+        }
+    }
+
+    private IExecProgressReporter reporter;
+    private long reportInterval;
+    private Map<String, ExecProgress> execs = new ConcurrentHashMap<>();
+    private Map<Integer, JobTag> jobs = new ConcurrentHashMap<>();
+    private Map<Integer, JobTag> stages = new ConcurrentHashMap<>();
+
+    public SparkMetalProgressListener(long reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+
+    public void reporter(IExecProgressReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    public synchronized void start(String execId, List<String> metalIds) {
+        ExecProgress exec = execs.computeIfAbsent(execId, (String id) -> new ExecProgress());
+        exec.runningMetalIds = String.join(",", metalIds);
+        exec.metal(exec.runningMetalIds);
+    }
+
+    public synchronized Map<String, Long> counters(String execId, List<String> metalIds) {
+        ExecProgress exec = execs.get(execId);
+        if (exec == null) {
+            return Collections.emptyMap();
+        }
+        MetalProgress metal = exec.metals.get(String.join(",", metalIds));
+        if (metal == null) {
+            return Collections.emptyMap();
+        }
+        return metal.counters();
+    }
+
+    public synchronized void finish(String execId) {
+        ExecProgress exec = execs.remove(execId);
+        if (exec == null) {
+            return;
+        }
+        exec.runningMetalIds = null;
+        report(execId, exec);
+        jobs.values().removeIf(tag -> tag.execId.equals(execId));
+        stages.values().removeIf(tag -> tag.execId.equals(execId));
+    }
+
+    @Override
+    public synchronized void onJobStart(SparkListenerJobStart jobStart) {
+        Properties properties = jobStart.properties();
+        if (properties == null) {
+            return;
+        }
+        String execId = properties.getProperty(EXEC_ID_PROPERTY);
+        String metalIds = properties.getProperty(METAL_IDS_PROPERTY);
+        if (execId == null || metalIds == null) {
+            return;
+        }
+        ExecProgress exec = execs.get(execId);
+        if (exec == null) {
+            return;
+        }
+
+        JobTag tag = new JobTag(execId, metalIds);
+        jobs.put(jobStart.jobId(), tag);
+        MetalProgress metal = exec.metal(metalIds);
+        metal.jobs++;
+        for (StageInfo stageInfo : JavaConverters.seqAsJavaList(jobStart.stageInfos())) {
+            stages.put(stageInfo.stageId(), tag);
+            tag.stageTasks.put(stageInfo.stageId(), stageInfo.numTasks());
+            metal.stages++;
+            metal.tasks += stageInfo.numTasks();
+        }
+        maybeReport(execId, exec, false);
+    }
+
+    @Override
+    public synchronized void onStageSubmitted(SparkListenerStageSubmitted stageSubmitted) {
+        JobTag tag = stages.get(stageSubmitted.stageInfo().stageId());
+        if (tag != null) {
+            tag.submitted.add(stageSubmitted.stageInfo().stageId());
+        }
+    }
+
+    @Override
+    public synchronized void onStageCompleted(SparkListenerStageCompleted stageCompleted) {
+        StageInfo stageInfo = stageCompleted.stageInfo();
+        JobTag tag = stages.get(stageInfo.stageId());
+        ExecProgress exec = tag == null ? null : execs.get(tag.execId);
+        if (exec == null) {
+            return;
+        }
+
+        MetalProgress metal = exec.metal(tag.metalIds);
+        if (stageInfo.failureReason().isDefined()) {
+            metal.stagesFailed++;
+        } else {
+            metal.stagesCompleted++;
+        }
+        maybeReport(tag.execId, exec, false);
+    }
+
+    @Override
+    public synchronized void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+        JobTag tag = stages.get(taskEnd.stageId());
+        ExecProgress exec = tag == null ? null : execs.get(tag.execId);
+        if (exec == null) {
+            return;
+        }
+
+        MetalProgress metal = exec.metal(tag.metalIds);
+        if (taskEnd.taskInfo() != null && taskEnd.taskInfo().successful()) {
+            metal.tasksCompleted++;
+        } else {
+            metal.tasksFailed++;
+        }
+
+        TaskMetrics metrics = taskEnd.taskMetrics();
+        if (metrics != null) {
+            metal.recordsRead += metrics.inputMetrics().recordsRead();
+            metal.bytesRead += metrics.inputMetrics().bytesRead();
+            metal.recordsWritten += metrics.outputMetrics().recordsWritten();
+            metal.bytesWritten += metrics.outputMetrics().bytesWritten();
+            metal.shuffleBytesRead += metrics.shuffleReadMetrics().totalBytesRead();
+            metal.shuffleBytesWritten += metrics.shuffleWriteMetrics().bytesWritten();
+            metal.executorRunTime += metrics.executorRunTime();
+        }
+        maybeReport(tag.execId, exec, false);
+    }
+
+    @Override
+    public synchronized void onJobEnd(SparkListenerJobEnd jobEnd) {
+        JobTag tag = jobs.remove(jobEnd.jobId());
+        ExecProgress exec = tag == null ? null : execs.get(tag.execId);
+        if (exec == null) {
+            return;
+        }
+
+        MetalProgress metal = exec.metal(tag.metalIds);
+        if (jobEnd.jobResult() instanceof JobFailed) {
+            metal.jobsFailed++;
+        } else {
+            metal.jobsCompleted++;
+            // Stages whose shuffle output is reused are never submitted. Like Spark UI, they leave
+            // the totals, so completed stages and tasks reach the totals once the job succeeds.
+            for (Map.Entry<Integer, Integer> kv : tag.stageTasks.entrySet()) {
+                if (!tag.submitted.contains(kv.getKey())) {
+                    metal.stages--;
+                    metal.stagesSkipped++;
+                    metal.tasks -= kv.getValue();
+                    metal.tasksSkipped += kv.getValue();
+                }
+            }
+        }
+        stages.values().removeIf(stageTag -> stageTag == tag);
+        maybeReport(tag.execId, exec, true);
+    }
+
+    private void maybeReport(String execId, ExecProgress exec, boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - exec.lastReportTime < reportInterval) {
+            return;
+        }
+        report(execId, exec);
+    }
+
+    private void report(String execId, ExecProgress exec) {
+        exec.lastReportTime = System.currentTimeMillis();
+        if (reporter == null) {
+            return;
+        }
+        try {
+            reporter.report(execId, exec.toMap());
+        } catch (Exception e) {
+            // Progress is best effort and must never break the listener bus.
+        }
+    }
+}
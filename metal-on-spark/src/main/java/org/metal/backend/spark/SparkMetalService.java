@@ -14,40 +14,331 @@
 
 package org.metal.backend.spark;
 
+import org.metal.backend.spark.stats.SparkStatsCatalog;
+import org.metal.core.MSplitter;
 import org.metal.core.props.IMetalProps;
 import org.metal.dataset.spark.SchemaConvertorWithSpark;
+import org.metal.draft.Draft;
+import org.metal.exception.MetalAnalysedException;
 import org.metal.exception.MetalServiceException;
 import org.metal.service.BaseMetalService;
+import org.metal.service.ImmutableMetalCost;
+import org.metal.service.ImmutableMetalExplain;
+import org.metal.service.MetalCost;
+import org.metal.service.MetalExplain;
+import org.metal.stats.SourceStats;
 import org.metal.translator.Translator;
 
+import org.apache.spark.SparkContext;
 import org.apache.spark.sql.Dataset;
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.plans.logical.Statistics;
+import org.apache.spark.sql.execution.ExplainMode;
+import org.apache.spark.sql.execution.QueryExecution;
+import org.apache.spark.sql.execution.arrow.ArrowBatchStreamWriter;
 import org.apache.spark.sql.types.StructType;
 
 import org.apache.arrow.vector.types.pojo.Schema;
 
+import scala.collection.JavaConverters;
+import scala.math.BigInt;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class SparkMetalService<P extends IMetalProps>
         extends BaseMetalService<Dataset<Row>, SparkSession, P> {
 
+    private SparkMetalProgressListener progressListener;
+
+    /** Schema only depends on the metal hash, unchanged metals never recompute it. */
+    private Map<String, Schema> schemaCache = new ConcurrentHashMap<>();
+
+    private String schemaTimeZoneId;
+
+    /** Persisted splits of splitters by hash, released once no analysed draft stages them. */
+    private Map<String, Dataset<Row>> splits = new ConcurrentHashMap<>();
+
+    /** Collect statistics of sources without any after each exec. */
+    private boolean statsAfterExec = false;
+
     protected SparkMetalService(Translator<Dataset<Row>, SparkSession> translator) {
         super(translator);
     }
 
+    protected SparkMetalService(
+            Translator<Dataset<Row>, SparkSession> translator,
+            SparkMetalProgressListener progressListener) {
+        super(translator);
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public void analyse(Draft draft) throws MetalAnalysedException, IllegalStateException {
+        super.analyse(draft);
+        Set<String> hashes = analysedHashes();
+        schemaCache.keySet().retainAll(hashes);
+        releaseSplits(draft, hashes);
+    }
+
+    private void releaseSplits(Draft draft, Set<String> hashes) {
+        for (MSplitter<?, ?, ?> splitter : draft.getSplitters()) {
+            Optional<String> hash = hashOf(splitter.id());
+            if (hash.isPresent()) {
+                // One evicted splitter is staged again under the same hash with a new split.
+                Dataset<Row> split = df(splitter.id());
+                Dataset<Row> previous = splits.put(hash.get(), split);
+                if (previous != null && previous != split) {
+                    previous.unpersist(false);
+                }
+            }
+        }
+        Iterator<Map.Entry<String, Dataset<Row>>> iterator = splits.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Dataset<Row>> kv = iterator.next();
+            if (!hashes.contains(kv.getKey())) {
+                kv.getValue().unpersist(false);
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Unpersist all splits, called once the service is dropped. */
+    void release() {
+        Iterator<Map.Entry<String, Dataset<Row>>> iterator = splits.entrySet().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().getValue().unpersist(false);
+            iterator.remove();
+        }
+    }
+
     @Override
     public Schema schema(String id) throws MetalServiceException {
         try {
-            StructType schema = df(id).schema();
             String timeZoneId =
                     translator().platform().sessionState().conf().sessionLocalTimeZone();
+            if (!timeZoneId.equals(schemaTimeZoneId)) {
+                schemaCache.clear();
+                schemaTimeZoneId = timeZoneId;
+            }
+
+            Optional<String> hash = hashOf(id);
+            if (hash.isPresent() && schemaCache.containsKey(hash.get())) {
+                return schemaCache.get(hash.get());
+            }
+
+            StructType schema = df(id).schema();
             Schema target = new SchemaConvertorWithSpark().from(schema, timeZoneId);
+            if (hash.isPresent()) {
+                schemaCache.put(hash.get(), target);
+            }
             return target;
         } catch (Exception e) {
             throw new MetalServiceException(e);
         }
     }
 
+    @Override
+    public MetalExplain explain(String id, String mode) throws MetalServiceException {
+        try {
+            QueryExecution execution = df(id).queryExecution();
+            Map<String, String> plans = new LinkedHashMap<>();
+            plans.put("logical", execution.logical().treeString());
+            plans.put("analyzed", execution.analyzed().treeString());
+            plans.put("optimized", execution.optimizedPlan().treeString());
+            plans.put("physical", execution.executedPlan().treeString());
+            return ImmutableMetalExplain.builder()
+                    .metalId(id)
+                    .mode(mode)
+                    .plans(plans)
+                    .explain(execution.explainString(ExplainMode.fromString(mode)))
+                    .cost(cost(id))
+                    .build();
+        } catch (Exception e) {
+            throw new MetalServiceException(e);
+        }
+    }
+
+    /** Catalyst estimates of the optimized plan, nothing is executed. */
+    @Override
+    protected MetalCost cost(String id) throws MetalServiceException {
+        try {
+            Statistics stats = df(id).queryExecution().optimizedPlan().stats();
+            ImmutableMetalCost.Builder builder =
+                    ImmutableMetalCost.builder()
+                            .metalId(id)
+                            .sizeInBytes(toLong(stats.sizeInBytes()));
+            if (stats.rowCount().isDefined()) {
+                builder.rowCount(toLong(stats.rowCount().get()));
+            }
+            return builder.build();
+        } catch (Exception e) {
+            throw new MetalServiceException(e);
+        }
+    }
+
+    private static long toLong(BigInt value) {
+        return value.isValidLong() ? value.toLong() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public byte[] previewAsArrow(String id, int limit) throws MetalServiceException {
+        try {
+            // The limit goes into the plan, so only limit rows are computed and shipped.
+            Dataset<Row> preview = df(id).limit(limit);
+            String timeZoneId =
+                    translator().platform().sessionState().conf().sessionLocalTimeZone();
+            byte[][] batches = (byte[][]) preview.toArrowBatchRdd().collect();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ArrowBatchStreamWriter writer =
+                    new ArrowBatchStreamWriter(preview.schema(), out, timeZoneId);
+            writer.writeBatches(JavaConverters.asScalaIterator(Arrays.asList(batches).iterator()));
+            writer.end();
+            return out.toByteArray();
+        } catch (Exception e) {
+            throw new MetalServiceException(e);
+        }
+    }
+
+    @Override
+    public List<String> previewAsJson(String id, int limit) throws MetalServiceException {
+        try {
+            return df(id).limit(limit).toJSON().collectAsList();
+        } catch (Exception e) {
+            throw new MetalServiceException(e);
+        }
+    }
+
+    @Override
+    public List<SourceStats> collectStats(List<String> ids) throws MetalServiceException {
+        SparkStatsCatalog catalog = statsCatalog();
+        List<SourceStats> collected = new ArrayList<>();
+        List<String> collectedIds = new ArrayList<>();
+        boolean all = ids == null || ids.isEmpty();
+        for (String id : sources(ids)) {
+            Dataset<Row> df = df(id);
+            if (all && catalog.fingerprint(df).isEmpty()) {
+                continue;
+            }
+            try {
+                collected.add(catalog.collect(df));
+                collectedIds.add(id);
+            } catch (Exception e) {
+                throw new MetalServiceException(e.getLocalizedMessage(), id);
+            }
+        }
+        try {
+            retranslate(collectedIds);
+        } catch (MetalAnalysedException e) {
+            throw new MetalServiceException(e);
+        }
+        return collected;
+    }
+
+    private SparkStatsCatalog statsCatalog() throws MetalServiceException {
+        if (translator() instanceof SparkTranslator) {
+            Optional<SparkStatsCatalog> catalog = ((SparkTranslator) translator()).statsCatalog();
+            if (catalog.isPresent()) {
+                return catalog.get();
+            }
+        }
+        throw new MetalServiceException("Statistics catalog is not enabled in this service.");
+    }
+
+    void statsAfterExec(boolean statsAfterExec) {
+        this.statsAfterExec = statsAfterExec;
+    }
+
+    /**
+     * Statistics collected after exec don't change DFs already staged, they are used when sources
+     * are translated again, e.g. by another session or after the spec changed.
+     */
+    private void collectMissingStats() {
+        SparkStatsCatalog catalog = null;
+        List<String> sources = null;
+        try {
+            catalog = statsCatalog();
+            sources = sources(Collections.emptyList());
+        } catch (MetalServiceException e) {
+            return;
+        }
+        for (String id : sources) {
+            try {
+                Dataset<Row> df = df(id);
+                Optional<String> fingerprint = catalog.fingerprint(df);
+                if (fingerprint.isPresent() && catalog.stats(fingerprint.get()).isEmpty()) {
+                    catalog.collect(df);
+                }
+            } catch (Exception e) {
+                continue;
+            }
+        }
+    }
+
+    @Override
+    protected void beforeMProductExec(String execId, List<String> metalIds) {
+        if (execId == null) {
+            return;
+        }
+        SparkContext sparkContext = translator().platform().sparkContext();
+        sparkContext.setLocalProperty(SparkMetalProgressListener.EXEC_ID_PROPERTY, execId);
+        sparkContext.setLocalProperty(
+                SparkMetalProgressListener.METAL_IDS_PROPERTY, String.join(",", metalIds));
+        sparkContext.setJobDescription(String.format("Exec[%s] on Metals%s", execId, metalIds));
+        if (progressListener != null) {
+            progressListener.start(execId, metalIds);
+        }
+    }
+
+    @Override
+    protected void afterMProductExec(String execId, List<String> metalIds) {
+        if (execId == null) {
+            return;
+        }
+        SparkContext sparkContext = translator().platform().sparkContext();
+        sparkContext.setLocalProperty(SparkMetalProgressListener.EXEC_ID_PROPERTY, null);
+        sparkContext.setLocalProperty(SparkMetalProgressListener.METAL_IDS_PROPERTY, null);
+        sparkContext.setJobDescription(null);
+    }
+
+    @Override
+    protected Map<String, Long> execCounters(String execId, List<String> metalIds) {
+        if (execId == null || progressListener == null) {
+            return Collections.emptyMap();
+        }
+        return progressListener.counters(execId, metalIds);
+    }
+
+    @Override
+    protected void afterExec(String execId) {
+        if (execId != null && progressListener != null) {
+            progressListener.finish(execId);
+        }
+        if (statsAfterExec && !sampled()) {
+            collectMissingStats();
+        }
+    }
+
+    SparkSession platform() {
+        return translator().platform();
+    }
+
     public static <P extends IMetalProps> SparkMetalService<P> of(SparkTranslator translator) {
         return new SparkMetalService<P>(translator);
     }
+
+    public static <P extends IMetalProps> SparkMetalService<P> of(
+            SparkTranslator translator, SparkMetalProgressListener progressListener) {
+        return new SparkMetalService<P>(translator, progressListener);
+    }
 }
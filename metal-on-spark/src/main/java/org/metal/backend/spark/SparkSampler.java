@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark;
+
+import org.metal.core.IMExecutor;
+import org.metal.core.MSink;
+import org.metal.core.MSource;
+import org.metal.translator.ISampler;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+
+/**
+ * Sources keep a seeded Bernoulli sample capped by limit, sinks write to Spark's noop format so the
+ * whole plan still runs without touching real outputs.
+ */
+public class SparkSampler implements ISampler<Dataset<Row>, SparkSession> {
+
+    public static final double DEFAULT_FRACTION = 1.0d;
+    public static final int DEFAULT_LIMIT = 1000;
+    public static final long DEFAULT_SEED = 0L;
+
+    private double fraction;
+    private int limit;
+    private long seed;
+
+    public SparkSampler(double fraction, int limit, long seed) throws IllegalArgumentException {
+        if (fraction <= 0.0d || fraction > 1.0d) {
+            throw new IllegalArgumentException(
+                    String.format("The fraction[%s] of sample should be in (0, 1].", fraction));
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException(
+                    String.format("The limit[%d] of sample should be positive.", limit));
+        }
+        this.fraction = fraction;
+        this.limit = limit;
+        this.seed = seed;
+    }
+
+    @Override
+    public Dataset<Row> sample(MSource<Dataset<Row>, SparkSession, ?> source, Dataset<Row> df) {
+        Dataset<Row> sampled = df;
+        if (fraction < 1.0d) {
+            sampled = sampled.sample(false, fraction, seed);
+        }
+        return sampled.limit(limit);
+    }
+
+    @Override
+    public IMExecutor sink(
+            MSink<Dataset<Row>, SparkSession, ?> sink, SparkSession platform, Dataset<Row> data) {
+        return () -> {
+            data.write().format("noop").mode(SaveMode.Overwrite).save();
+        };
+    }
+
+    @Override
+    public String fingerprint() {
+        return String.format("SparkSampler(fraction=%s, limit=%d, seed=%d)", fraction, limit, seed);
+    }
+}
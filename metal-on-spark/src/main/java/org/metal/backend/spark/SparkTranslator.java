@@ -14,6 +14,10 @@
 
 package org.metal.backend.spark;
 
+import org.metal.backend.spark.stats.SparkStatsCatalog;
+import org.metal.core.MSource;
+import org.metal.core.Metal;
+import org.metal.translator.ISampler;
 import org.metal.translator.Translator;
 import org.metal.translator.TranslatorContext;
 
@@ -21,8 +25,13 @@ import org.apache.spark.sql.Dataset;
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.SparkSession;
 
+import java.io.IOException;
+import java.util.Optional;
+
 public class SparkTranslator extends Translator<Dataset<Row>, SparkSession> {
 
+    private Optional<SparkStatsCatalog> statsCatalog = Optional.empty();
+
     public SparkTranslator(SparkSession platform) {
         super(platform);
     }
@@ -31,4 +40,33 @@ public class SparkTranslator extends Translator<Dataset<Row>, SparkSession> {
             SparkSession platform, TranslatorContext<Dataset<Row>, SparkSession> context) {
         super(platform, context);
     }
+
+    public SparkTranslator(SparkSession platform, ISampler<Dataset<Row>, SparkSession> sampler) {
+        super(platform, sampler);
+    }
+
+    public SparkTranslator(SparkSession platform, SparkStatsCatalog statsCatalog) {
+        super(platform);
+        this.statsCatalog = Optional.of(statsCatalog);
+    }
+
+    public Optional<SparkStatsCatalog> statsCatalog() {
+        return this.statsCatalog;
+    }
+
+    /** Sources get collected statistics before they are staged, a failure leaves them as is. */
+    @Override
+    public void stageDF(
+            Metal metal, Dataset<Row> df, TranslatorContext<Dataset<Row>, SparkSession> context)
+            throws IOException {
+        Dataset<Row> staged = df;
+        if (metal instanceof MSource && statsCatalog.isPresent()) {
+            try {
+                staged = statsCatalog.get().inject(platform(), df);
+            } catch (RuntimeException e) {
+                staged = df;
+            }
+        }
+        super.stageDF(metal, staged, context);
+    }
 }
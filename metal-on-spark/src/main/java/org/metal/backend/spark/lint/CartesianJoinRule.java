@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.lint;
+
+import org.metal.core.Metal;
+import org.metal.lint.LintSeverity;
+import org.metal.lint.MetalLint;
+
+import org.apache.spark.sql.catalyst.plans.InnerLike;
+import org.apache.spark.sql.catalyst.plans.logical.Join;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+
+import java.util.List;
+
+public class CartesianJoinRule extends SparkLintRule {
+
+    @Override
+    public String name() {
+        return "cartesian-join";
+    }
+
+    @Override
+    protected void lint(Metal metal, LogicalPlan node, List<MetalLint> lints) {
+        if (!(node instanceof Join)) {
+            return;
+        }
+        Join join = (Join) node;
+        if (join.joinType() instanceof InnerLike && join.condition().isEmpty()) {
+            lints.add(
+                    lintOf(
+                            metal,
+                            LintSeverity.ERROR,
+                            node,
+                            "Join without condition produces a cartesian product",
+                            "Add an equi-join condition in ON, or filter one side to a few rows and broadcast it."));
+        }
+    }
+}
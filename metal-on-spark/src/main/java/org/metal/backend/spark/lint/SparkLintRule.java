@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.lint;
+
+import org.metal.core.Metal;
+import org.metal.lint.IMetalLintRule;
+import org.metal.lint.ImmutableMetalLint;
+import org.metal.lint.LintSeverity;
+import org.metal.lint.MetalLint;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Rules walking the optimized logical plan, so findings reflect what the optimizer left over. */
+public abstract class SparkLintRule implements IMetalLintRule<Dataset<Row>> {
+
+    /** Plan strings in messages are cut, the whole plan is available through explain. */
+    public static final int MAX_NODE_STRING = 200;
+
+    public static final int MAX_FIELDS = 25;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<Dataset<Row>> dataType() {
+        return (Class<Dataset<Row>>) (Class<?>) Dataset.class;
+    }
+
+    @Override
+    public List<MetalLint> lint(Metal metal, Dataset<Row> df) {
+        List<MetalLint> lints = new ArrayList<>();
+        for (LogicalPlan node : nodes(df.queryExecution().optimizedPlan())) {
+            lint(metal, node, lints);
+        }
+        return lints;
+    }
+
+    protected abstract void lint(Metal metal, LogicalPlan node, List<MetalLint> lints);
+
+    protected MetalLint lintOf(
+            Metal metal, LintSeverity severity, LogicalPlan node, String msg, String suggestion) {
+        String nodeString = node.simpleString(MAX_FIELDS);
+        if (nodeString.length() > MAX_NODE_STRING) {
+            nodeString = nodeString.substring(0, MAX_NODE_STRING) + "...";
+        }
+        return ImmutableMetalLint.builder()
+                .metalId(metal.id())
+                .rule(name())
+                .severity(severity)
+                .message(String.format("%s: %s", msg, nodeString))
+                .suggestion(suggestion)
+                .build();
+    }
+
+    protected static List<LogicalPlan> nodes(LogicalPlan plan) {
+        List<LogicalPlan> nodes = new ArrayList<>();
+        collect(plan, nodes);
+        return nodes;
+    }
+
+    private static void collect(LogicalPlan plan, List<LogicalPlan> nodes) {
+        nodes.add(plan);
+        for (LogicalPlan child : JavaConverters.seqAsJavaList(plan.children())) {
+            collect(child, nodes);
+        }
+    }
+
+    protected static List<Expression> expressions(Expression expression) {
+        List<Expression> expressions = new ArrayList<>();
+        collect(expression, expressions);
+        return expressions;
+    }
+
+    private static void collect(Expression expression, List<Expression> expressions) {
+        expressions.add(expression);
+        for (Expression child : JavaConverters.seqAsJavaList(expression.children())) {
+            collect(child, expressions);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.lint;
+
+import org.metal.core.Metal;
+import org.metal.lint.LintSeverity;
+import org.metal.lint.MetalLint;
+
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.expressions.ScalaUDF;
+import org.apache.spark.sql.catalyst.expressions.UserDefinedExpression;
+import org.apache.spark.sql.catalyst.plans.logical.Filter;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+
+import java.util.List;
+
+public class UdfInFilterRule extends SparkLintRule {
+
+    @Override
+    public String name() {
+        return "udf-in-filter";
+    }
+
+    @Override
+    protected void lint(Metal metal, LogicalPlan node, List<MetalLint> lints) {
+        if (!(node instanceof Filter)) {
+            return;
+        }
+        for (Expression expression : expressions(((Filter) node).condition())) {
+            if (expression instanceof ScalaUDF || expression instanceof UserDefinedExpression) {
+                lints.add(
+                        lintOf(
+                                metal,
+                                LintSeverity.WARN,
+                                node,
+                                "Filter calls one UDF, which blocks pushdown and codegen",
+                                "Rewrite the predicate with built-in functions, or filter on plain columns first."));
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.lint;
+
+import org.metal.core.Metal;
+import org.metal.lint.LintSeverity;
+import org.metal.lint.MetalLint;
+
+import org.apache.spark.sql.catalyst.plans.logical.Filter;
+import org.apache.spark.sql.catalyst.plans.logical.Join;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+
+import java.util.List;
+
+/**
+ * A filter on one side of a join is normally pushed below it, if it stays the optimizer gave up.
+ */
+public class UnpushedFilterRule extends SparkLintRule {
+
+    @Override
+    public String name() {
+        return "unpushed-filter";
+    }
+
+    @Override
+    protected void lint(Metal metal, LogicalPlan node, List<MetalLint> lints) {
+        if (!(node instanceof Filter) || !(((Filter) node).child() instanceof Join)) {
+            return;
+        }
+        Filter filter = (Filter) node;
+        Join join = (Join) filter.child();
+        if (filter.condition().references().subsetOf(join.left().outputSet())
+                || filter.condition().references().subsetOf(join.right().outputSet())) {
+            lints.add(
+                    lintOf(
+                            metal,
+                            LintSeverity.INFO,
+                            node,
+                            "Filter on one join side stays above the join",
+                            "Move the filter into the source or the side's subquery, and avoid non-deterministic expressions in it."));
+        }
+    }
+}
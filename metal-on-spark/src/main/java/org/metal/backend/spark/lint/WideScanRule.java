@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.lint;
+
+import org.metal.core.Metal;
+import org.metal.lint.LintSeverity;
+import org.metal.lint.MetalLint;
+
+import org.apache.spark.sql.catalyst.plans.logical.LeafNode;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+
+import java.util.List;
+
+/** Column pruning already ran, a leaf still this wide means the columns are really selected. */
+public class WideScanRule extends SparkLintRule {
+
+    public static final int WIDE_COLUMNS = 100;
+
+    @Override
+    public String name() {
+        return "wide-scan";
+    }
+
+    @Override
+    protected void lint(Metal metal, LogicalPlan node, List<MetalLint> lints) {
+        if (node instanceof LeafNode && node.output().size() > WIDE_COLUMNS) {
+            lints.add(
+                    lintOf(
+                            metal,
+                            LintSeverity.WARN,
+                            node,
+                            String.format("Source reads %d columns", node.output().size()),
+                            "Select only needed columns instead of SELECT *, or give the source one explicit schema."));
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.backend.spark.stats;
+
+import org.metal.stats.ColumnStats;
+import org.metal.stats.IStatsStore;
+import org.metal.stats.ImmutableColumnStats;
+import org.metal.stats.ImmutableSourceStats;
+import org.metal.stats.SourceStats;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.TableIdentifier;
+import org.apache.spark.sql.catalyst.catalog.CatalogColumnStat;
+import org.apache.spark.sql.catalyst.catalog.CatalogStatistics;
+import org.apache.spark.sql.catalyst.catalog.CatalogStorageFormat;
+import org.apache.spark.sql.catalyst.catalog.CatalogTable;
+import org.apache.spark.sql.catalyst.catalog.CatalogTableType;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+import org.apache.spark.sql.execution.datasources.FileIndex;
+import org.apache.spark.sql.execution.datasources.HadoopFsRelation;
+import org.apache.spark.sql.execution.datasources.LogicalRelation;
+import org.apache.spark.sql.execution.datasources.PartitioningAwareFileIndex;
+import org.apache.spark.sql.functions;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DateType;
+import org.apache.spark.sql.types.NumericType;
+import org.apache.spark.sql.types.StructField;
+
+import org.apache.hadoop.fs.FileStatus;
+
+import scala.Option;
+import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.collection.immutable.Map$;
+import scala.math.BigInt;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Statistics of file sources, keyed by a fingerprint of their files. Statistics are injected as one
+ * {@link CatalogTable} of the source relation, so the optimizer sees them like statistics of an
+ * analyzed table. Row count and column statistics only take effect with {@code
+ * spark.sql.cbo.enabled} or {@code spark.sql.cbo.planStats.enabled}.
+ */
+public class SparkStatsCatalog {
+
+    /** Wide sources only get column statistics of their first columns. */
+    public static final int MAX_COLUMNS = 64;
+
+    public static final String TABLE_PREFIX = "metal_source_";
+
+    private Map<String, SourceStats> cache = new ConcurrentHashMap<>();
+    private volatile IStatsStore store;
+
+    public void store(IStatsStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Only plain file relations have a fingerprint, which covers path, length and mtime of files.
+     */
+    public Optional<String> fingerprint(Dataset<Row> df) {
+        return relationOf(df.queryExecution().analyzed()).map(SparkStatsCatalog::fingerprintOf);
+    }
+
+    /** Fingerprints of all file relations the df reads, in plan order. */
+    public static List<String> leafFingerprints(Dataset<Row> df) {
+        List<String> fingerprints = new ArrayList<>();
+        for (LogicalPlan leaf :
+                JavaConverters.seqAsJavaList(df.queryExecution().analyzed().collectLeaves())) {
+            relationOf(leaf).map(SparkStatsCatalog::fingerprintOf).ifPresent(fingerprints::add);
+        }
+        return fingerprints;
+    }
+
+    private static String fingerprintOf(HadoopFsRelation relation) {
+        FileIndex location = relation.location();
+        List<String> files = new ArrayList<>();
+        if (location instanceof PartitioningAwareFileIndex) {
+            for (FileStatus file :
+                    JavaConverters.seqAsJavaList(
+                            ((PartitioningAwareFileIndex) location).allFiles())) {
+                files.add(
+                        String.format(
+                                "%s:%d:%d",
+                                file.getPath(), file.getLen(), file.getModificationTime()));
+            }
+        } else {
+            Collections.addAll(files, location.inputFiles());
+            files.add(String.valueOf(location.sizeInBytes()));
+        }
+        Collections.sort(files);
+        return sha256(String.join("\n", files));
+    }
+
+    public Optional<SourceStats> stats(String fingerprint) {
+        SourceStats stats = cache.get(fingerprint);
+        if (stats != null) {
+            return Optional.of(stats);
+        }
+        IStatsStore current = store;
+        if (current == null) {
+            return Optional.empty();
+        }
+        Optional<SourceStats> loaded = current.load(fingerprint);
+        loaded.ifPresent(
+                (SourceStats s) -> {
+                    cache.put(fingerprint, s);
+                });
+        return loaded;
+    }
+
+    /** The df is returned unchanged if it isn't one file relation or has no statistics. */
+    public Dataset<Row> inject(SparkSession platform, Dataset<Row> df) {
+        Optional<String> fingerprint = fingerprint(df);
+        if (fingerprint.isEmpty()) {
+            return df;
+        }
+        Optional<SourceStats> stats = stats(fingerprint.get());
+        if (stats.isEmpty()) {
+            return df;
+        }
+
+        LogicalRelation relation = (LogicalRelation) df.queryExecution().analyzed();
+        scala.collection.immutable.Map<String, CatalogColumnStat> colStats = Map$.MODULE$.empty();
+        for (Map.Entry<String, ColumnStats> kv : stats.get().columns().entrySet()) {
+            colStats = colStats.$plus(new Tuple2<>(kv.getKey(), columnStatOf(kv.getValue())));
+        }
+        CatalogStatistics catalogStats =
+                new CatalogStatistics(
+                        BigInt.apply(stats.get().sizeInBytes()),
+                        Option.apply(BigInt.apply(stats.get().rowCount())),
+                        colStats);
+        // Arguments after the schema are the defaults of CatalogTable, spelled out since the
+        // synthetic default getters of Scala are not an API.
+        CatalogTable table =
+                new CatalogTable(
+                        new TableIdentifier(TABLE_PREFIX + fingerprint.get().substring(0, 16)),
+                        CatalogTableType.EXTERNAL(),
+                        CatalogStorageFormat.empty(),
+                        relation.schema(),
+                        Option.empty(),
+                        emptySeq(),
+                        Option.empty(),
+                        "",
+                        System.currentTimeMillis(),
+                        -1L,
+                        "",
+                        Map$.MODULE$.empty(),
+                        Option.apply(catalogStats),
+                        Option.empty(),
+                        Option.empty(),
+                        emptySeq(),
+                        false,
+                        true,
+                        Map$.MODULE$.empty(),
+                        Option.empty());
+        LogicalPlan withStats =
+                relation.copy(
+                        relation.relation(),
+                        relation.output(),
+                        Option.apply(table),
+                        relation.isStreaming());
+        return Dataset.ofRows(platform, withStats);
+    }
+
+    /**
+     * Run one aggregation job over the source and keep the result. Distinct counts are approximate,
+     * min and max are only collected for numeric and date columns.
+     */
+    public SourceStats collect(Dataset<Row> df) throws IllegalArgumentException {
+        Optional<String> fingerprint = fingerprint(df);
+        if (fingerprint.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Statistics are only collected on sources reading files directly.");
+        }
+        HadoopFsRelation relation = relationOf(df.queryExecution().analyzed()).get();
+
+        List<StructField> fields =
+                Arrays.stream(df.schema().fields()).limit(MAX_COLUMNS).collect(Collectors.toList());
+        List<Column> aggs = new ArrayList<>();
+        for (StructField field : fields) {
+            Column column = functions.col(quote(field.name()));
+            aggs.add(functions.approx_count_distinct(column));
+            aggs.add(functions.count(column));
+            if (ordered(field.dataType())) {
+                aggs.add(functions.min(column));
+                aggs.add(functions.max(column));
+            }
+        }
+        Row row = df.agg(functions.count(functions.lit(1)), aggs.toArray(new Column[0])).head();
+
+        long rowCount = row.getLong(0);
+        ImmutableSourceStats.Builder builder =
+                ImmutableSourceStats.builder()
+                        .fingerprint(fingerprint.get())
+                        .path(
+                                JavaConverters.seqAsJavaList(relation.location().rootPaths())
+                                        .stream()
+                                        .map(Object::toString)
+                                        .collect(Collectors.joining(",")))
+                        .sizeInBytes(relation.sizeInBytes())
+                        .rowCount(rowCount)
+                        .collectTime(System.currentTimeMillis());
+        int index = 1;
+        for (StructField field : fields) {
+            ImmutableColumnStats.Builder column =
+                    ImmutableColumnStats.builder()
+                            .distinctCount(row.getLong(index))
+                            .nullCount(rowCount - row.getLong(index + 1));
+            index += 2;
+            if (ordered(field.dataType())) {
+                column.min(Optional.ofNullable(row.get(index)).map(SparkStatsCatalog::external));
+                column.max(
+                        Optional.ofNullable(row.get(index + 1)).map(SparkStatsCatalog::external));
+                index += 2;
+            }
+            builder.putColumns(field.name(), column.build());
+        }
+
+        SourceStats stats = builder.build();
+        cache.put(stats.fingerprint(), stats);
+        IStatsStore current = store;
+        if (current != null) {
+            current.save(stats);
+        }
+        return stats;
+    }
+
+    private static Optional<HadoopFsRelation> relationOf(LogicalPlan plan) {
+        if (!(plan instanceof LogicalRelation)) {
+            return Optional.empty();
+        }
+        LogicalRelation relation = (LogicalRelation) plan;
+        if (relation.isStreaming() || !(relation.relation() instanceof HadoopFsRelation)) {
+            return Optional.empty();
+        }
+        return Optional.of((HadoopFsRelation) relation.relation());
+    }
+
+    private static CatalogColumnStat columnStatOf(ColumnStats stats) {
+        return new CatalogColumnStat(
+                Option.apply(BigInt.apply(stats.distinctCount())),
+                Option.apply(stats.min().orElse(null)),
+                Option.apply(stats.max().orElse(null)),
+                Option.apply(BigInt.apply(stats.nullCount())),
+                Option.empty(),
+                Option.empty(),
+                Option.empty(),
+                CatalogColumnStat.VERSION());
+    }
+
+    private static <T> scala.collection.Seq<T> emptySeq() {
+        return JavaConverters.asScalaBuffer(new ArrayList<T>()).toList();
+    }
+
+    private static boolean ordered(DataType dataType) {
+        return dataType instanceof NumericType || dataType instanceof DateType;
+    }
+
+    /** The string form CatalogColumnStat parses back, dates as yyyy-MM-dd. */
+    private static String external(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        return value.toString();
+    }
+
+    private static String quote(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+
+    public static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, hash));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
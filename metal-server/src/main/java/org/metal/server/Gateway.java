@@ -14,9 +14,10 @@
 
 package org.metal.server;
 
-import org.metal.server.auth.AttachRoles;
 import org.metal.server.auth.Auth;
 import org.metal.server.auth.Roles;
+import org.metal.server.db.SlowQueries;
+import org.metal.server.detector.Detector;
 import org.metal.server.exec.Exec;
 import org.metal.server.project.Project;
 import org.metal.server.repo.MetalRepo;
@@ -24,6 +25,7 @@ import org.metal.server.repo.Repo;
 import org.metal.server.user.UserDB;
 import org.metal.server.util.BodyJsonValid;
 import org.metal.server.util.RestServiceEnd;
+import org.metal.server.util.SendArrow;
 
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
@@ -31,10 +33,16 @@ import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
 import io.vertx.ext.auth.User;
 import io.vertx.ext.auth.authorization.RoleBasedAuthorization;
 import io.vertx.ext.mongo.MongoClient;
@@ -61,6 +69,9 @@ public class Gateway extends AbstractVerticle {
     public static final String METAL_REPO_SERVICE_CONF = "metalRepoService";
     public static final String METAL_REPO_SERVICE_ADDRESS_CONF = "address";
     public static final String EXEC_SERVICE_ADDRESS_CONF = "address";
+    public static final String GATEWAY_INSTANCES_CONF = "instances";
+    private static final String SHARED_MAP = "metal.server.gateway";
+    private static final String SHARED_KEY = "shared";
 
     private HttpServer httpServer;
     private int gatewayPort = 19000;
@@ -74,6 +85,82 @@ public class Gateway extends AbstractVerticle {
 
     private Gateway() {}
 
+    /**
+     * Clients shared by all gateway instances in one vertx, created by the first instance started
+     * and closed by the last one stopped. Auth, proxies and rest apis hold no per request state.
+     */
+    private static class Shared implements Shareable {
+        private final MongoClient mongo;
+        private final Auth auth;
+        private final Project.RestApi project;
+        private final MetalRepo.RestApi metalRepo;
+        private final Exec.RestApi exec;
+        private int refs = 0;
+
+        private Shared(
+                Vertx vertx,
+                JsonObject gatewayConf,
+                JsonObject mongoConf,
+                String projectServiceAddress,
+                String metalRepoServiceAddress,
+                String execServiceAddress) {
+            this.mongo = MongoClient.createShared(vertx, mongoConf);
+            this.auth = Auth.createOnMigrated(mongo, gatewayConf);
+            this.project = Project.createRestApi(vertx, projectServiceAddress, mongo);
+            this.metalRepo = MetalRepo.createRestApi(vertx, metalRepoServiceAddress);
+            this.exec = Exec.createRestApi(vertx, execServiceAddress, mongo);
+        }
+    }
+
+    /** The default is one instance per core, all instances share the port. */
+    public static int instancesOf(JsonObject gatewayConf) {
+        int defaultInstances = Runtime.getRuntime().availableProcessors();
+        if (gatewayConf == null) {
+            return defaultInstances;
+        }
+        return gatewayConf.getInteger(GATEWAY_INSTANCES_CONF, defaultInstances);
+    }
+
+    private static Shared acquireShared(
+            Vertx vertx,
+            JsonObject gatewayConf,
+            JsonObject mongoConf,
+            String projectServiceAddress,
+            String metalRepoServiceAddress,
+            String execServiceAddress) {
+        LocalMap<String, Shared> sharedMap = vertx.sharedData().getLocalMap(SHARED_MAP);
+        return sharedMap.compute(
+                SHARED_KEY,
+                (String key, Shared shared) -> {
+                    if (shared == null) {
+                        shared =
+                                new Shared(
+                                        vertx,
+                                        gatewayConf,
+                                        mongoConf,
+                                        projectServiceAddress,
+                                        metalRepoServiceAddress,
+                                        execServiceAddress);
+                    }
+                    shared.refs++;
+                    return shared;
+                });
+    }
+
+    /** Return true if the caller released the last reference. */
+    private static boolean releaseShared(Vertx vertx) {
+        LocalMap<String, Shared> sharedMap = vertx.sharedData().getLocalMap(SHARED_MAP);
+        boolean[] isLast = {false};
+        sharedMap.computeIfPresent(
+                SHARED_KEY,
+                (String key, Shared shared) -> {
+                    shared.refs--;
+                    isLast[0] = shared.refs == 0;
+                    return isLast[0] ? null : shared;
+                });
+        return isLast[0];
+    }
+
     public static Gateway create() {
         return new Gateway();
     }
@@ -86,6 +173,13 @@ public class Gateway extends AbstractVerticle {
                 .handler(AuthorizationHandler.create(this.auth.adminAuthor()))
                 .handler(this.auth::registerUser);
 
+        router.put("/api/v1/users/:userId/roles")
+                .produces("application/json")
+                .handler(BodyHandler.create())
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(AuthorizationHandler.create(this.auth.adminAuthor()))
+                .handler(this.auth::updateUserRoles);
+
         router.post("/api/v1/tokens")
                 .produces("application/json")
                 .handler(BodyHandler.create())
@@ -114,7 +208,7 @@ public class Gateway extends AbstractVerticle {
         router.route("/api/v1/something")
                 .produces("application/json")
                 .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
-                .handler(AttachRoles.create(mongo)::attach)
+                .handler(this.auth.getAttachRoles()::attach)
                 .handler(this::something);
 
         repo.createRepoProxy(router, getVertx());
@@ -229,6 +323,17 @@ public class Gateway extends AbstractVerticle {
                 .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
                 .handler(project::getAllOfUser);
 
+        router.get("/api/v1/projects/page")
+                .produces("application/json")
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(project::pageOfUser);
+
+        router.get("/api/v1/projects/all/page")
+                .produces("application/json")
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(AuthorizationHandler.create(Auth.adminAuthor()))
+                .handler(project::page);
+
         router.get("/api/v1/projects/all")
                 .produces("application/json")
                 .handler(BodyHandler.create())
@@ -242,12 +347,43 @@ public class Gateway extends AbstractVerticle {
                 .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
                 .handler(project::getSpecOfName);
 
+        router.get("/api/v1/projects/deploy/:deployId/spec/schemas")
+                .produces("application/json")
+                .handler(BodyHandler.create())
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(project::getSpecSchemasOfDeployId);
+
         router.get("/api/v1/projects/deploy/:deployId/spec/metals/:metalId")
                 .produces("application/json")
                 .handler(BodyHandler.create())
                 .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
                 .handler(project::getSpecSchemaOfMetalId);
 
+        router.get("/api/v1/projects/deploy/:deployId/spec/metals/:metalId/explain")
+                .produces("application/json")
+                .handler(BodyHandler.create())
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(project::explainOfMetalId);
+
+        router.get("/api/v1/projects/deploy/:deployId/spec/costs")
+                .produces("application/json")
+                .handler(BodyHandler.create())
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(project::costsOfDeployId);
+
+        router.post("/api/v1/projects/deploy/:deployId/spec/stats")
+                .produces("application/json")
+                .handler(BodyHandler.create())
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(project::collectStatsOfDeployId);
+
+        router.get("/api/v1/projects/deploy/:deployId/spec/metals/:metalId/preview")
+                .produces("application/json")
+                .produces(SendArrow.CONTENT_TYPE)
+                .handler(BodyHandler.create())
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(project::previewOfMetalId);
+
         router.get("/api/v1/projects/deploy/:deployId/service/status")
                 .produces("application/json")
                 .handler(BodyHandler.create())
@@ -411,6 +547,12 @@ public class Gateway extends AbstractVerticle {
                 .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
                 .handler(exec::getOfId);
 
+        router.get("/api/v1/execs/id/:execId/progress")
+                .produces("application/json")
+                .handler(BodyHandler.create())
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(exec::getProgress);
+
         router.get("/api/v1/execs")
                 .produces("application/json")
                 .handler(BodyHandler.create())
@@ -435,6 +577,22 @@ public class Gateway extends AbstractVerticle {
                 .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
                 .handler(exec::getAllOfProject);
 
+        router.get("/api/v1/execs/page")
+                .produces("application/json")
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(exec::pageOfUser);
+
+        router.get("/api/v1/execs/project/:projectId/page")
+                .produces("application/json")
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(exec::pageOfProject);
+
+        router.get("/api/v1/execs/all/page")
+                .produces("application/json")
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(AuthorizationHandler.create(Auth.adminAuthor()))
+                .handler(exec::page);
+
         router.get("/api/v1/execs/all")
                 .produces("application/json")
                 .handler(BodyHandler.create())
@@ -499,6 +657,19 @@ public class Gateway extends AbstractVerticle {
                 .handler(AuthorizationHandler.create(Auth.adminAuthor()))
                 .handler(exec::forceRemoveAll);
 
+        router.get("/api/v1/admin/db/slowQueries")
+                .produces("application/json")
+                .handler(BodyHandler.create())
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(AuthorizationHandler.create(Auth.adminAuthor()))
+                .handler(this::slowQueries);
+
+        router.get("/api/v1/admin/detector/metrics")
+                .produces("application/json")
+                .handler(JWTAuthHandler.create(this.auth.getJwtAuth()))
+                .handler(AuthorizationHandler.create(Auth.adminAuthor()))
+                .handler(this::detectorMetrics);
+
         router.route("/*").handler(StaticHandler.create());
 
         return Future.succeededFuture(router);
@@ -613,23 +784,24 @@ public class Gateway extends AbstractVerticle {
                             }
 
                             gatewayPort = gatewayConf.getInteger(GATEWAY_PORT_CONF);
-                            mongo = MongoClient.createShared(getVertx(), mongoConf);
-
+                            Shared shared =
+                                    acquireShared(
+                                            getVertx(),
+                                            gatewayConf,
+                                            mongoConf,
+                                            projectServiceAddress,
+                                            metalRepoServiceAddress,
+                                            execServiceAddress);
+                            mongo = shared.mongo;
+                            auth = shared.auth;
+                            project = shared.project;
+                            metalRepo = shared.metalRepo;
+                            exec = shared.exec;
+
+                            // Every instance listens on the same port, vertx balances connections
+                            // over the event loops of these instances.
                             httpServer = getVertx().createHttpServer();
                             repo = new Repo();
-                            project = Project.createRestApi(getVertx(), projectServiceAddress);
-                            metalRepo =
-                                    MetalRepo.createRestApi(getVertx(), metalRepoServiceAddress);
-                            exec = Exec.createRestApi(getVertx(), execServiceAddress);
-                            return Auth.create(mongo);
-                        })
-                .compose(
-                        (Auth auth) -> {
-                            this.auth = auth;
-                            return Future.succeededFuture(auth);
-                        })
-                .compose(
-                        (Auth auth) -> {
                             Router router = Router.router(getVertx());
                             return Future.succeededFuture(router);
                         })
@@ -650,17 +822,27 @@ public class Gateway extends AbstractVerticle {
                 .onFailure(
                         error -> {
                             LOGGER.error(error);
+                            if (mongo != null && releaseShared(getVertx())) {
+                                mongo.close();
+                            }
                             startPromise.fail(error);
                         });
     }
 
+    private Future<Void> closeShared() {
+        if (!releaseShared(getVertx())) {
+            return Future.succeededFuture();
+        }
+        return mongo.close();
+    }
+
     @Override
     public void stop(Promise<Void> stopPromise) throws Exception {
         httpServer
                 .close()
                 .compose(
                         ret -> {
-                            return mongo.close();
+                            return closeShared();
                         },
                         error -> {
                             LOGGER.error(
@@ -668,15 +850,17 @@ public class Gateway extends AbstractVerticle {
                                             "Fail to stop Server[%s] on port[%d].",
                                             Gateway.class, gatewayPort),
                                     error);
-                            return mongo.close();
+                            return closeShared();
                         })
                 .onSuccess(
                         ret -> {
                             LOGGER.info(String.format("Success to close mongoDB connection."));
+                            stopPromise.complete();
                         })
                 .onFailure(
                         error -> {
                             LOGGER.info(String.format("Fail to close mongoDB connection."), error);
+                            stopPromise.fail(error);
                         });
     }
 
@@ -686,6 +870,41 @@ public class Gateway extends AbstractVerticle {
         ctx.response().end(ctx.user().get("username").toString() + ":" + isRole + ":" + author);
     }
 
+    private void slowQueries(RoutingContext ctx) {
+        String slowMs = ctx.request().getParam("slowMs");
+        String limit = ctx.request().getParam("limit");
+        Future<JsonObject> result;
+        try {
+            result =
+                    SlowQueries.report(
+                            mongo,
+                            slowMs == null ? SlowQueries.DEFAULT_SLOW_MS : Integer.parseInt(slowMs),
+                            limit == null ? SlowQueries.DEFAULT_LIMIT : Integer.parseInt(limit));
+        } catch (NumberFormatException e) {
+            result = Future.failedFuture(e);
+        }
+        RestServiceEnd.end(ctx, result, LOGGER);
+    }
+
+    private void detectorMetrics(RoutingContext ctx) {
+        Future<JsonObject> result =
+                getVertx()
+                        .eventBus()
+                        .<JsonObject>request(Detector.METRICS_ADDRESS, new JsonObject())
+                        .map(Message::body)
+                        .recover(
+                                error -> {
+                                    if (error instanceof ReplyException
+                                            && ((ReplyException) error).failureType()
+                                                    == ReplyFailure.NO_HANDLERS) {
+                                        return Future.failedFuture(
+                                                "No detector holds the lease at the moment.");
+                                    }
+                                    return Future.failedFuture(error);
+                                });
+        RestServiceEnd.end(ctx, result, LOGGER);
+    }
+
     private void userInfo(RoutingContext ctx) {
         User user = ctx.user();
         Future<JsonObject> result = UserDB.getWithoutPassword(mongo, user.get("username"));
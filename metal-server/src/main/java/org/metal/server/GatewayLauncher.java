@@ -14,12 +14,17 @@
 
 package org.metal.server;
 
+import org.metal.server.db.IndexMigration;
+import org.metal.server.db.SlowQueries;
 import org.metal.server.detector.Detector;
 import org.metal.server.exec.Exec;
 import org.metal.server.project.Project;
 import org.metal.server.repo.MetalRepo;
 import org.metal.server.report.BackendReport;
 
+import io.vertx.config.ConfigRetriever;
+import io.vertx.config.ConfigRetrieverOptions;
+import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
@@ -27,7 +32,9 @@ import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.ext.mongo.MongoClient;
 import io.vertx.spi.cluster.zookeeper.ZookeeperClusterManager;
 
 import java.util.List;
@@ -40,8 +47,31 @@ public class GatewayLauncher {
         ClusterManager clusterManager = new ZookeeperClusterManager("zookeeper.json");
         VertxOptions options = new VertxOptions().setClusterManager(clusterManager);
         DeploymentOptions deploymentOptions = new DeploymentOptions();
+        DeploymentOptions gatewayOptions = new DeploymentOptions();
 
         Vertx.clusteredVertx(options)
+                .compose(
+                        (Vertx vertx) -> {
+                            return loadConf(vertx)
+                                    .compose(
+                                            (JsonObject conf) -> {
+                                                int instances =
+                                                        Gateway.instancesOf(
+                                                                conf.getJsonObject(
+                                                                        Gateway.GATEWAY_CONF));
+                                                if (instances < 1) {
+                                                    return Future.failedFuture(
+                                                            String.format(
+                                                                    "%s[%d] of %s is less than 1.",
+                                                                    Gateway.GATEWAY_INSTANCES_CONF,
+                                                                    instances,
+                                                                    Gateway.GATEWAY_CONF));
+                                                }
+                                                gatewayOptions.setInstances(instances);
+                                                return migrate(vertx, conf);
+                                            })
+                                    .map(vertx);
+                        })
                 .compose(
                         (Vertx vertx) -> {
                             MetalRepo metalRepo = MetalRepo.create();
@@ -49,7 +79,6 @@ public class GatewayLauncher {
                             Project project = Project.create();
                             Detector detector = Detector.create();
                             BackendReport backendReport = BackendReport.create();
-                            Gateway gateway = Gateway.create();
 
                             vertx.exceptionHandler(
                                     t -> {
@@ -167,14 +196,16 @@ public class GatewayLauncher {
                                     prepared.compose(
                                                     ret -> {
                                                         return vertx.deployVerticle(
-                                                                gateway, deploymentOptions);
+                                                                Gateway::create, gatewayOptions);
                                                     })
                                             .compose(
                                                     deployID -> {
                                                         LOGGER.info(
                                                                 String.format(
-                                                                        "Success to deploy %s:%s.",
-                                                                        gateway.getClass(),
+                                                                        "Success to deploy %d instances of %s:%s.",
+                                                                        gatewayOptions
+                                                                                .getInstances(),
+                                                                        Gateway.class,
                                                                         deployID));
                                                         return Future.succeededFuture();
                                                     },
@@ -182,7 +213,7 @@ public class GatewayLauncher {
                                                         LOGGER.error(
                                                                 String.format(
                                                                         "Fail to deploy %s.",
-                                                                        gateway.getClass()),
+                                                                        Gateway.class),
                                                                 t);
                                                         return Future.failedFuture(t);
                                                     });
@@ -194,7 +225,73 @@ public class GatewayLauncher {
                         })
                 .onFailure(
                         t -> {
-                            LOGGER.error("FAIL to deploy");
+                            LOGGER.error("FAIL to deploy", t);
+                        });
+    }
+
+    private static Future<JsonObject> loadConf(Vertx vertx) {
+        ConfigStoreOptions fileConfigStoreOptions =
+                new ConfigStoreOptions()
+                        .setType("file")
+                        .setConfig(new JsonObject().put("path", Gateway.CONF_METAL_SERVER_PATH))
+                        .setOptional(true);
+        ConfigRetriever retriever =
+                ConfigRetriever.create(
+                        vertx, new ConfigRetrieverOptions().addStore(fileConfigStoreOptions));
+        return retriever
+                .getConfig()
+                .onComplete(
+                        ret -> {
+                            retriever.close();
+                        });
+    }
+
+    /** Apply index migrations, and set the profiler for slow queries when it is configured. */
+    private static Future<Void> migrate(Vertx vertx, JsonObject conf) {
+        JsonObject mongoConf = conf.getJsonObject(Gateway.MONGO_CONF);
+        if (mongoConf == null) {
+            return Future.failedFuture(
+                    String.format(
+                            "%s is not configured in %s.",
+                            Gateway.MONGO_CONF, Gateway.CONF_METAL_SERVER_PATH));
+        }
+        MongoClient mongo = MongoClient.create(vertx, mongoConf);
+        JsonObject profileConf = conf.getJsonObject(SlowQueries.PROFILE_CONF);
+        return IndexMigration.migrate(mongo)
+                .compose(
+                        (Integer version) -> {
+                            LOGGER.info(
+                                    String.format("Indexes are migrated to version[%d].", version));
+                            int level =
+                                    profileConf == null
+                                            ? SlowQueries.DEFAULT_PROFILE_LEVEL
+                                            : profileConf.getInteger(
+                                                    SlowQueries.PROFILE_LEVEL_CONF,
+                                                    SlowQueries.DEFAULT_PROFILE_LEVEL);
+                            // Level 0 leaves the profiler of the database as it is.
+                            if (level <= 0) {
+                                return Future.succeededFuture();
+                            }
+                            return SlowQueries.profile(
+                                            mongo,
+                                            level,
+                                            profileConf.getInteger(
+                                                    SlowQueries.PROFILE_SLOW_MS_CONF,
+                                                    SlowQueries.DEFAULT_SLOW_MS))
+                                    .compose(
+                                            ret -> {
+                                                return Future.<Void>succeededFuture();
+                                            },
+                                            error -> {
+                                                LOGGER.warn(
+                                                        "Fail to set profiler of slow queries.",
+                                                        error);
+                                                return Future.succeededFuture();
+                                            });
+                        })
+                .eventually(
+                        v -> {
+                            return mongo.close();
                         });
     }
 }
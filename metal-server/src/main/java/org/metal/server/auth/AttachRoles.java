@@ -14,6 +14,8 @@
 
 package org.metal.server.auth;
 
+import org.metal.server.user.UserDB;
+
 import io.vertx.core.Future;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
@@ -24,10 +26,49 @@ import io.vertx.ext.auth.authorization.RoleBasedAuthorization;
 import io.vertx.ext.mongo.MongoClient;
 import io.vertx.ext.web.RoutingContext;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Attach roles to authenticated users. Tokens created by {@link Auth#createJWT} carry the roles as
+ * one signed claim, so no lookup is needed. Roles of older tokens are read from mongo and cached by
+ * user id for one ttl.
+ */
 public class AttachRoles {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AttachRoles.class);
+    public static final String ROLES_CLAIM = "roles";
+    public static final long DEFAULT_TTL = 30000L;
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private static class Entry {
+
+        private final JsonArray roles;
+        private final long loadTime;
+
+        private Entry(JsonArray roles) {
+            this.roles = roles;
+            this.loadTime = System.currentTimeMillis();
+        }
+    }
+
     private MongoClient mongo;
+    private long ttl = DEFAULT_TTL;
+    private int maxSize = DEFAULT_MAX_SIZE;
+
+    /** Gateway instances on different event loops share one instance. */
+    private Map<String, Entry> rolesOfUserId = new ConcurrentHashMap<>();
+
+    /** Bumped by every invalidation. */
+    private long generation = 0L;
+
+    /** Last invalidation generation per user id, loads started before it don't fill the cache. */
+    private Map<String, Long> invalidated = new HashMap<>();
+
+    /** Generations loads in flight started at, older invalidations can't reject any of them. */
+    private TreeMap<Long, Integer> loading = new TreeMap<>();
 
     private AttachRoles(MongoClient client) {
         this.mongo = client;
@@ -37,6 +78,98 @@ public class AttachRoles {
         return new AttachRoles(client);
     }
 
+    /** Drop the cached roles of one user, after its roles are changed. */
+    public synchronized void invalidate(String userId) {
+        generation++;
+        if (!loading.isEmpty()) {
+            invalidated.put(userId, generation);
+        }
+        rolesOfUserId.remove(userId);
+    }
+
+    private Future<JsonArray> rolesOf(User user) {
+        JsonArray claimed = user.principal().getJsonArray(ROLES_CLAIM);
+        if (claimed != null) {
+            return Future.succeededFuture(claimed);
+        }
+
+        String userId = user.get(UserDB.FIELD_ID);
+        if (userId == null) {
+            return findRoles(new JsonObject().put(UserDB.FIELD_USER_NAME, user.get("username")));
+        }
+        Entry entry = rolesOfUserId.get(userId);
+        if (entry != null && System.currentTimeMillis() - entry.loadTime < ttl) {
+            return Future.succeededFuture(entry.roles);
+        }
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+            loading.merge(loadGeneration, 1, Integer::sum);
+        }
+        return findRoles(new JsonObject().put(UserDB.FIELD_ID, userId))
+                .onComplete(
+                        result -> {
+                            put(
+                                    loadGeneration,
+                                    userId,
+                                    result.succeeded() ? result.result() : null);
+                        });
+    }
+
+    /** Keep the roles unless the user was invalidated after the load started. */
+    private synchronized void put(long loadGeneration, String userId, JsonArray roles) {
+        boolean invalidatedAfter =
+                invalidated.getOrDefault(userId, Long.MIN_VALUE) > loadGeneration;
+        loaded(loadGeneration);
+        if (roles == null || invalidatedAfter) {
+            return;
+        }
+        if (rolesOfUserId.size() >= maxSize) {
+            rolesOfUserId.clear();
+        }
+        rolesOfUserId.put(userId, new Entry(roles));
+    }
+
+    /** Forget invalidations no load in flight started before. */
+    private void loaded(long loadGeneration) {
+        loading.computeIfPresent(
+                loadGeneration,
+                (Long key, Integer count) -> {
+                    return count > 1 ? count - 1 : null;
+                });
+        if (loading.isEmpty()) {
+            invalidated.clear();
+        } else {
+            long oldest = loading.firstKey();
+            invalidated.values().removeIf(at -> at <= oldest);
+        }
+    }
+
+    private Future<JsonArray> findRoles(JsonObject matcher) {
+        return mongo.findOne(UserDB.DB, matcher, new JsonObject().put(UserDB.FIELD_ROLES, true))
+                .compose(
+                        json -> {
+                            JsonArray roles =
+                                    json == null ? null : json.getJsonArray(UserDB.FIELD_ROLES);
+                            if (roles == null) {
+                                return Future.failedFuture(
+                                        new NullPointerException(
+                                                String.format(
+                                                        "Fail to found roles of user[%s].",
+                                                        matcher)));
+                            }
+                            return Future.succeededFuture(roles);
+                        });
+    }
+
+    private static void attachTo(User user, JsonArray roles) {
+        for (int idx = 0; idx < roles.size(); idx++) {
+            RoleBasedAuthorization authorization =
+                    RoleBasedAuthorization.create(roles.getString(idx));
+            user.authorizations().add(authorization.getRole(), authorization);
+        }
+    }
+
     public Future<User> roles(User user) {
         if (user == null) {
             LOGGER.warn("Fail to attach any roles for user, because no user has been set.");
@@ -45,25 +178,15 @@ public class AttachRoles {
                             "Fail to attach any roles for user, because user is null."));
         }
 
-        return mongo.findOne(
-                        "user",
-                        new JsonObject().put("username", user.get("username")),
-                        new JsonObject().put("roles", true))
+        return rolesOf(user)
                 .compose(
-                        json -> {
-                            try {
-                                JsonArray roles = json.getJsonArray("roles");
-                                for (int idx = 0; idx < roles.size(); idx++) {
-                                    RoleBasedAuthorization authorization =
-                                            RoleBasedAuthorization.create(roles.getString(idx));
-                                    user.authorizations()
-                                            .add(authorization.getRole(), authorization);
-                                }
-                                return Future.succeededFuture(user);
-                            } catch (NullPointerException error) {
-                                LOGGER.error("Fail to attach any roles for user.", error);
-                                return Future.failedFuture(error);
-                            }
+                        (JsonArray roles) -> {
+                            attachTo(user, roles);
+                            return Future.succeededFuture(user);
+                        },
+                        error -> {
+                            LOGGER.error("Fail to attach any roles for user.", error);
+                            return Future.failedFuture(error);
                         });
     }
 
@@ -73,31 +196,16 @@ public class AttachRoles {
             LOGGER.warn("Fail to attach any roles for user, because no user has been set.");
         }
 
-        mongo.findOne(
-                        "user",
-                        new JsonObject().put("username", user.get("username")),
-                        new JsonObject().put("roles", true))
+        rolesOf(user)
                 .onSuccess(
-                        json -> {
-                            try {
-                                JsonArray roles = json.getJsonArray("roles");
-                                for (int idx = 0; idx < roles.size(); idx++) {
-                                    RoleBasedAuthorization authorization =
-                                            RoleBasedAuthorization.create(roles.getString(idx));
-                                    user.authorizations()
-                                            .add(authorization.getRole(), authorization);
-                                }
-                                ctx.setUser(user);
-                            } catch (NullPointerException error) {
-                                LOGGER.error("Fail to attach any roles for user.", error);
-                            } finally {
-                                ctx.next();
-                            }
+                        (JsonArray roles) -> {
+                            attachTo(user, roles);
+                            ctx.setUser(user);
+                            ctx.next();
                         })
                 .onFailure(
                         error -> {
                             LOGGER.error("Fail to attach any roles for user.", error);
-                            LOGGER.error(error);
                             ctx.next();
                         });
     }
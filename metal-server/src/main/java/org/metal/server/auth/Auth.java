@@ -26,6 +26,7 @@ import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
 import io.vertx.ext.auth.PubSecKeyOptions;
 import io.vertx.ext.auth.User;
 import io.vertx.ext.auth.authorization.RoleBasedAuthorization;
@@ -39,9 +40,15 @@ import io.vertx.ext.mongo.IndexOptions;
 import io.vertx.ext.mongo.MongoClient;
 import io.vertx.ext.web.RoutingContext;
 
+import java.util.List;
+
 public class Auth extends AbstractVerticle {
 
     public static final String HASH_ALGO = "sha256";
+    public static final String CONF = "auth";
+    /** Roles are signed into tokens, so one role change reaches old tokens once they expire. */
+    public static final int DEFAULT_TOKEN_EXPIRES_IN_MINUTES = 60;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(Auth.class);
     private MongoClient mongo;
     private MongoAuthentication authenticationProvider;
@@ -49,6 +56,7 @@ public class Auth extends AbstractVerticle {
     private JWTAuth jwtAuth;
     private HttpServer server;
     private AttachRoles attachRoles;
+    private int tokenExpiresInMinutes = DEFAULT_TOKEN_EXPIRES_IN_MINUTES;
 
     public MongoAuthentication getAuthenticationProvider() {
         return authenticationProvider;
@@ -62,8 +70,18 @@ public class Auth extends AbstractVerticle {
         return jwtAuth;
     }
 
+    public AttachRoles getAttachRoles() {
+        return attachRoles;
+    }
+
     private Auth(MongoClient client) {
+        this(client, new JsonObject());
+    }
+
+    private Auth(MongoClient client, JsonObject conf) {
         this.mongo = client;
+        this.tokenExpiresInMinutes =
+                conf.getInteger("tokenExpiresInMinutes", DEFAULT_TOKEN_EXPIRES_IN_MINUTES);
         MongoAuthenticationOptions options = new MongoAuthenticationOptions();
         authenticationProvider = MongoAuthentication.create(mongo, options);
         authorizationProvider =
@@ -91,6 +109,18 @@ public class Auth extends AbstractVerticle {
                         });
     }
 
+    /** The unique index of user is applied by IndexMigration when the server launches. */
+    public static Auth createOnMigrated(MongoClient client) {
+        return new Auth(client);
+    }
+
+    /** The conf is the auth object of the gateway conf, defaults if absent. */
+    public static Auth createOnMigrated(MongoClient client, JsonObject conf) {
+        return new Auth(
+                client,
+                conf == null ? new JsonObject() : conf.getJsonObject(CONF, new JsonObject()));
+    }
+
     private static boolean checkRole(String role) {
         try {
             Roles.valueOf(role);
@@ -177,6 +207,34 @@ public class Auth extends AbstractVerticle {
         RestServiceEnd.end(ctx, result, LOGGER);
     }
 
+    /** Tokens created before keep their signed roles until they expire. */
+    public void updateUserRoles(RoutingContext ctx) {
+        String userId = ctx.pathParam("userId");
+        JsonObject body = ctx.body().asJsonObject();
+        JsonArray roles = body == null ? null : body.getJsonArray("roles");
+        if (OnFailure.doTry(
+                ctx,
+                () -> {
+                    return roles == null || roles.isEmpty() || !checkRoles(roles);
+                },
+                String.format(
+                        "Fail to found legal roles of %s in request.", List.of(Roles.values())),
+                400)) {
+            return;
+        }
+
+        JsonObject matcher = new JsonObject().put(UserDB.FIELD_ID, userId);
+        JsonObject update =
+                new JsonObject().put("$set", new JsonObject().put(UserDB.FIELD_ROLES, roles));
+        Future<JsonObject> result =
+                UserDB.update(mongo, matcher, update)
+                        .onSuccess(
+                                ret -> {
+                                    attachRoles.invalidate(userId);
+                                });
+        RestServiceEnd.end(ctx, result, LOGGER);
+    }
+
     public void registerUser(RoutingContext ctx) {
         JsonObject body = ctx.body().asJsonObject();
         String username = body.getString("username");
@@ -226,11 +284,17 @@ public class Auth extends AbstractVerticle {
             return;
         }
 
+        JsonObject claims =
+                new JsonObject().put("username", user.get("username")).put("_id", user.get("_id"));
+        // Roles are signed into the token, so authorization needs no lookup per request. The
+        // principal of one user authenticated by mongo is its user document.
+        JsonArray roles = user.principal().getJsonArray(UserDB.FIELD_ROLES);
+        if (roles != null) {
+            claims.put(AttachRoles.ROLES_CLAIM, roles);
+        }
         String jwt =
                 jwtAuth.generateToken(
-                        new JsonObject()
-                                .put("username", user.get("username"))
-                                .put("_id", user.get("_id")));
+                        claims, new JWTOptions().setExpiresInMinutes(tokenExpiresInMinutes));
 
         JsonObject resp = new JsonObject().put("status", "OK").put("jwt", jwt);
         SendJson.send(ctx, resp, 201);
@@ -0,0 +1,356 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.db;
+
+import org.metal.server.api.BackendState;
+import org.metal.server.api.ExecState;
+import org.metal.server.exec.ExecDB;
+import org.metal.server.project.service.ProjectDB;
+import org.metal.server.repo.MetalRepoDB;
+import org.metal.server.repo.MetalRepoDB.MetalScope;
+import org.metal.server.user.UserDB;
+
+import io.vertx.core.Future;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.IndexOptions;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.UpdateOptions;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Versioned indexes of the access paths used by ExecDB, ProjectDB, MetalRepoDB and UserDB.
+ *
+ * <p>The applied version is recorded in {@link #DB}, only versions above it are applied. Never
+ * change one released version, append a new one instead.
+ */
+public class IndexMigration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexMigration.class);
+
+    public static final String DB = "migrations";
+    public static final String MIGRATION_ID = "indexes";
+    public static final String FIELD_ID = "_id";
+    public static final String FIELD_VERSION = "version";
+    public static final String FIELD_UPDATE_TIME = "updateTime";
+
+    /** One index and a probe filter shaped like the query it serves, used to explain the plan. */
+    public static class Index {
+        private final String collection;
+        private final JsonObject keys;
+        private final boolean unique;
+        private final String path;
+        private final JsonObject probe;
+
+        private Index(
+                String collection, JsonObject keys, boolean unique, String path, JsonObject probe) {
+            this.collection = collection;
+            this.keys = keys;
+            this.unique = unique;
+            this.path = path;
+            this.probe = probe;
+        }
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public JsonObject getKeys() {
+            return keys;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public JsonObject getProbe() {
+            return probe;
+        }
+    }
+
+    public static class Migration {
+        private final int version;
+        private final String description;
+        private final List<Index> indexes;
+
+        private Migration(int version, String description, List<Index> indexes) {
+            this.version = version;
+            this.description = description;
+            this.indexes = indexes;
+        }
+    }
+
+    private static Index index(
+            String collection, JsonObject keys, boolean unique, String path, JsonObject probe) {
+        return new Index(collection, keys, unique, path, probe);
+    }
+
+    private static JsonObject ofMetalAccess(JsonObject query) {
+        return query.put(
+                "$or",
+                new JsonArray()
+                        .add(new JsonObject().put("userId", ""))
+                        .add(new JsonObject().put("scope", MetalScope.PUBLIC.toString())));
+    }
+
+    private static JsonObject terminated() {
+        return new JsonObject()
+                .put(
+                        "$in",
+                        new JsonArray()
+                                .add(ExecState.FINISH.toString())
+                                .add(ExecState.FAILURE.toString()));
+    }
+
+    private static final List<Migration> MIGRATIONS =
+            List.of(
+                    new Migration(
+                            1,
+                            "Indexes of user, project, execs and metals access paths.",
+                            List.of(
+                                    index(
+                                            UserDB.DB,
+                                            new JsonObject().put("username", 1),
+                                            true,
+                                            "UserDB.get",
+                                            new JsonObject().put("username", "")),
+                                    index(
+                                            ProjectDB.DB,
+                                            new JsonObject().put(ProjectDB.deployIdPath(), 1),
+                                            false,
+                                            "ProjectDB.getOfDeployId",
+                                            new JsonObject().put(ProjectDB.deployIdPath(), "")),
+                                    index(
+                                            ProjectDB.DB,
+                                            new JsonObject()
+                                                    .put(ProjectDB.userIdPath(), 1)
+                                                    .put(ProjectDB.NAME, 1),
+                                            false,
+                                            "ProjectDB.getOfName",
+                                            new JsonObject()
+                                                    .put(ProjectDB.userIdPath(), "")
+                                                    .put(ProjectDB.NAME, "")),
+                                    index(
+                                            ProjectDB.DB,
+                                            new JsonObject()
+                                                    .put(ProjectDB.backendStatusCurrentPath(), 1)
+                                                    .put(
+                                                            ProjectDB.backendStatusCreateTimePath(),
+                                                            1),
+                                            false,
+                                            "Detector.deployIsInActive.created",
+                                            new JsonObject()
+                                                    .put(
+                                                            ProjectDB.backendStatusCurrentPath(),
+                                                            BackendState.CREATED.toString())
+                                                    .put(
+                                                            ProjectDB.backendStatusCreateTimePath(),
+                                                            new JsonObject().put("$lt", 0L))),
+                                    index(
+                                            ProjectDB.DB,
+                                            new JsonObject()
+                                                    .put(ProjectDB.backendStatusCurrentPath(), 1)
+                                                    .put(ProjectDB.backendStatusUpTimePath(), 1),
+                                            false,
+                                            "Detector.deployIsInActive.up",
+                                            new JsonObject()
+                                                    .put(
+                                                            ProjectDB.backendStatusCurrentPath(),
+                                                            BackendState.UP.toString())
+                                                    .put(
+                                                            ProjectDB.backendStatusUpTimePath(),
+                                                            new JsonObject().put("$lt", 0L))),
+                                    index(
+                                            ExecDB.DB,
+                                            new JsonObject()
+                                                    .put(ExecDB.FIELD_USER_ID, 1)
+                                                    .put(ExecDB.FIELD_STATUS, 1),
+                                            false,
+                                            "ExecDB.removeAllOfUser",
+                                            new JsonObject()
+                                                    .put(ExecDB.FIELD_USER_ID, "")
+                                                    .put(ExecDB.FIELD_STATUS, terminated())),
+                                    index(
+                                            ExecDB.DB,
+                                            new JsonObject()
+                                                    .put(ExecDB.FIELD_FROM_PROJECT, 1)
+                                                    .put(ExecDB.FIELD_STATUS, 1),
+                                            false,
+                                            "ExecDB.getAllOfProject",
+                                            new JsonObject().put(ExecDB.FIELD_FROM_PROJECT, "")),
+                                    index(
+                                            MetalRepoDB.DB,
+                                            new JsonObject().put("userId", 1).put("scope", 1),
+                                            false,
+                                            "MetalRepoDB.getAllOfUserScope",
+                                            new JsonObject()
+                                                    .put("userId", "")
+                                                    .put("scope", MetalScope.PRIVATE.toString())),
+                                    index(
+                                            MetalRepoDB.DB,
+                                            new JsonObject().put("scope", 1).put("class", 1),
+                                            false,
+                                            "MetalRepoDB.getOfClass.public",
+                                            new JsonObject()
+                                                    .put("scope", MetalScope.PUBLIC.toString())
+                                                    .put("class", "")),
+                                    index(
+                                            MetalRepoDB.DB,
+                                            new JsonObject().put("class", 1).put("userId", 1),
+                                            false,
+                                            "MetalRepoDB.getOfClass",
+                                            ofMetalAccess(new JsonObject().put("class", ""))),
+                                    index(
+                                            MetalRepoDB.DB,
+                                            new JsonObject()
+                                                    .put("groupId", 1)
+                                                    .put("artifactId", 1)
+                                                    .put("version", 1),
+                                            false,
+                                            "MetalRepoDB.getAllOfPkg",
+                                            ofMetalAccess(new JsonObject().put("groupId", ""))))),
+                    new Migration(
+                            2,
+                            "Indexes of keyset pages over execs and projects.",
+                            List.of(
+                                    index(
+                                            ExecDB.DB,
+                                            new JsonObject()
+                                                    .put(ExecDB.FIELD_USER_ID, 1)
+                                                    .put(ExecDB.FIELD_ID, 1),
+                                            false,
+                                            "ExecDB.pageOfUser",
+                                            new JsonObject()
+                                                    .put(ExecDB.FIELD_USER_ID, "")
+                                                    .put(
+                                                            ExecDB.FIELD_ID,
+                                                            new JsonObject().put("$gt", ""))),
+                                    index(
+                                            ExecDB.DB,
+                                            new JsonObject()
+                                                    .put(ExecDB.FIELD_FROM_PROJECT, 1)
+                                                    .put(ExecDB.FIELD_USER_ID, 1)
+                                                    .put(ExecDB.FIELD_ID, 1),
+                                            false,
+                                            "ExecDB.pageOfProject",
+                                            new JsonObject()
+                                                    .put(ExecDB.FIELD_FROM_PROJECT, "")
+                                                    .put(ExecDB.FIELD_USER_ID, "")
+                                                    .put(
+                                                            ExecDB.FIELD_ID,
+                                                            new JsonObject().put("$gt", ""))),
+                                    index(
+                                            ProjectDB.DB,
+                                            new JsonObject()
+                                                    .put(ProjectDB.userIdPath(), 1)
+                                                    .put(ProjectDB.ID, 1),
+                                            false,
+                                            "ProjectDB.pageOfUser",
+                                            new JsonObject()
+                                                    .put(ProjectDB.userIdPath(), "")
+                                                    .put(
+                                                            ProjectDB.ID,
+                                                            new JsonObject().put("$gt", ""))))));
+
+    public static List<Index> indexes() {
+        return MIGRATIONS.stream().flatMap(m -> m.indexes.stream()).collect(Collectors.toList());
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    public static Future<Integer> version(MongoClient mongo) {
+        return mongo.findOne(DB, new JsonObject().put(FIELD_ID, MIGRATION_ID), new JsonObject())
+                .compose(
+                        (JsonObject doc) -> {
+                            if (doc == null) {
+                                return Future.succeededFuture(0);
+                            }
+                            return Future.succeededFuture(doc.getInteger(FIELD_VERSION, 0));
+                        });
+    }
+
+    /**
+     * Create the indexes of versions not applied yet. Creating one existing index is a no-op, so
+     * gateways starting together may run it concurrently.
+     */
+    public static Future<Integer> migrate(MongoClient mongo) {
+        return version(mongo)
+                .compose(
+                        (Integer current) -> {
+                            Future<Integer> applied = Future.succeededFuture(current);
+                            for (Migration migration : MIGRATIONS) {
+                                if (migration.version <= current) {
+                                    continue;
+                                }
+                                applied = applied.compose(ret -> apply(mongo, migration));
+                            }
+                            return applied;
+                        });
+    }
+
+    private static Future<Integer> apply(MongoClient mongo, Migration migration) {
+        Future<Void> created = Future.succeededFuture();
+        for (Index index : migration.indexes) {
+            created =
+                    created.compose(
+                            ret -> {
+                                return mongo.createIndexWithOptions(
+                                        index.collection,
+                                        index.keys,
+                                        new IndexOptions().unique(index.unique).background(true));
+                            });
+        }
+        return created.compose(
+                        ret -> {
+                            return mongo.updateCollectionWithOptions(
+                                    DB,
+                                    new JsonObject().put(FIELD_ID, MIGRATION_ID),
+                                    new JsonObject()
+                                            .put(
+                                                    "$max",
+                                                    new JsonObject()
+                                                            .put(FIELD_VERSION, migration.version))
+                                            .put(
+                                                    "$set",
+                                                    new JsonObject()
+                                                            .put(
+                                                                    FIELD_UPDATE_TIME,
+                                                                    System.currentTimeMillis())),
+                                    new UpdateOptions().setUpsert(true));
+                        })
+                .compose(
+                        ret -> {
+                            LOGGER.info(
+                                    String.format(
+                                            "Success to apply index migration[%d]: %s",
+                                            migration.version, migration.description));
+                            return Future.succeededFuture(migration.version);
+                        },
+                        error -> {
+                            LOGGER.error(
+                                    String.format(
+                                            "Fail to apply index migration[%d].",
+                                            migration.version),
+                                    error);
+                            return Future.failedFuture(error);
+                        });
+    }
+}
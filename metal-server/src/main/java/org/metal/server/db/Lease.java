@@ -0,0 +1,223 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.db;
+
+import com.mongodb.MongoException;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.FindOptions;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.UpdateOptions;
+
+import java.util.UUID;
+
+/**
+ * Lease kept in mongo, at most one holder of one name at a time across server instances. The holder
+ * renews it every renewInterval, others take it over once it is not renewed within ttl.
+ *
+ * <p>The holder stops being leader locally at ttl after its last successful renew request was sent,
+ * so it gives up before any other instance may take over, as long as clocks are roughly in sync.
+ */
+public class Lease {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Lease.class);
+
+    public static final String DB = "leases";
+    public static final String CONF = "lease";
+    public static final String FIELD_ID = "_id";
+    public static final String FIELD_OWNER = "owner";
+    public static final String FIELD_EXPIRE_TIME = "expireTime";
+    public static final String FIELD_RENEW_TIME = "renewTime";
+    public static final long DEFAULT_TTL = 15000L;
+    public static final long DEFAULT_RENEW_INTERVAL = 5000L;
+    private static final int DUPLICATE_KEY = 11000;
+
+    private Vertx vertx;
+    private MongoClient mongo;
+    private String name;
+    private String owner;
+    private long ttl;
+    private long renewInterval;
+    private long leaderUntil = 0L;
+    private long acquireTime = 0L;
+    private long timerID = -1;
+    private boolean renewing = false;
+    private boolean leading = false;
+    private Handler<Boolean> leadershipHandler = (Boolean leader) -> {};
+
+    private Lease(Vertx vertx, MongoClient mongo, String name, JsonObject conf) {
+        this.vertx = vertx;
+        this.mongo = mongo;
+        this.name = conf.getString("name", name);
+        this.owner = UUID.randomUUID().toString();
+        this.ttl = conf.getLong("ttl", DEFAULT_TTL);
+        this.renewInterval = conf.getLong("renewInterval", DEFAULT_RENEW_INTERVAL);
+    }
+
+    /** The conf is the service conf holding one lease object, defaults if absent. */
+    public static Lease create(Vertx vertx, MongoClient mongo, String name, JsonObject conf)
+            throws IllegalArgumentException {
+        Lease lease =
+                new Lease(
+                        vertx,
+                        mongo,
+                        name,
+                        conf == null
+                                ? new JsonObject()
+                                : conf.getJsonObject(CONF, new JsonObject()));
+        if (lease.renewInterval >= lease.ttl) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "renewInterval[%d] of lease[%s] should be less than ttl[%d].",
+                            lease.renewInterval, lease.name, lease.ttl));
+        }
+        return lease;
+    }
+
+    /** Told true once the lease is acquired and false once it is lost, on the event loop. */
+    public Lease leadershipHandler(Handler<Boolean> handler) {
+        this.leadershipHandler = handler;
+        return this;
+    }
+
+    public void start() {
+        renew();
+        timerID =
+                vertx.setPeriodic(
+                        renewInterval,
+                        (ID) -> {
+                            renew();
+                        });
+    }
+
+    public boolean isLeader() {
+        return System.currentTimeMillis() < leaderUntil;
+    }
+
+    private void renew() {
+        if (renewing) {
+            return;
+        }
+        renewing = true;
+        long now = System.currentTimeMillis();
+        JsonObject matcher =
+                new JsonObject()
+                        .put(FIELD_ID, name)
+                        .put(
+                                "$or",
+                                new JsonArray()
+                                        .add(new JsonObject().put(FIELD_OWNER, owner))
+                                        .add(
+                                                new JsonObject()
+                                                        .put(
+                                                                FIELD_EXPIRE_TIME,
+                                                                new JsonObject().put("$lt", now))));
+        JsonObject updater =
+                new JsonObject()
+                        .put(
+                                "$set",
+                                new JsonObject()
+                                        .put(FIELD_OWNER, owner)
+                                        .put(FIELD_EXPIRE_TIME, now + ttl)
+                                        .put(FIELD_RENEW_TIME, now));
+        // The upsert inserts the lease if nobody ever held it, and fails on duplicate key if it is
+        // held by another one.
+        mongo.findOneAndUpdateWithOptions(
+                        DB,
+                        matcher,
+                        updater,
+                        new FindOptions(),
+                        new UpdateOptions().setUpsert(true).setReturningNewDocument(true))
+                .onSuccess(
+                        ret -> {
+                            if (!isLeader()) {
+                                acquireTime = now;
+                                LOGGER.info(
+                                        String.format(
+                                                "Success to acquire lease[%s] as %s.",
+                                                name, owner));
+                            }
+                            leaderUntil = now + ttl;
+                            // Expire locally even if no later renew completes in time.
+                            vertx.setTimer(
+                                    Math.max(1L, leaderUntil - System.currentTimeMillis() + 1L),
+                                    (ID) -> {
+                                        report();
+                                    });
+                        })
+                .onFailure(
+                        error -> {
+                            if (error instanceof MongoException
+                                    && ((MongoException) error).getCode() == DUPLICATE_KEY) {
+                                if (isLeader()) {
+                                    LOGGER.warn(
+                                            String.format(
+                                                    "Lease[%s] has been taken over from %s.",
+                                                    name, owner));
+                                }
+                                leaderUntil = 0L;
+                                return;
+                            }
+                            // Keep the local deadline, the lease is lost by itself if mongo stays
+                            // unreachable.
+                            LOGGER.error(
+                                    String.format("Fail to renew lease[%s] as %s.", name, owner),
+                                    error);
+                        })
+                .onComplete(
+                        ret -> {
+                            renewing = false;
+                            report();
+                        });
+    }
+
+    private void report() {
+        boolean leader = isLeader();
+        if (leader != leading) {
+            leading = leader;
+            leadershipHandler.handle(leader);
+        }
+    }
+
+    public JsonObject status() {
+        return new JsonObject()
+                .put("name", name)
+                .put("owner", owner)
+                .put("leader", isLeader())
+                .put("leaderUntil", leaderUntil)
+                .put("acquireTime", acquireTime)
+                .put("ttl", ttl)
+                .put("renewInterval", renewInterval);
+    }
+
+    /** Release the lease if held, so another instance takes over at once. */
+    public Future<Void> close() {
+        vertx.cancelTimer(timerID);
+        if (!isLeader()) {
+            return Future.succeededFuture();
+        }
+        leaderUntil = 0L;
+        report();
+        return mongo.removeDocument(
+                        DB, new JsonObject().put(FIELD_ID, name).put(FIELD_OWNER, owner))
+                .<Void>mapEmpty()
+                .otherwiseEmpty();
+    }
+}
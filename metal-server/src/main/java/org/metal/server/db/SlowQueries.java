@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.db;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.FindOptions;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Report of slow queries from the database profiler and the winning plans of the access paths
+ * declared in {@link IndexMigration}.
+ */
+public class SlowQueries {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowQueries.class);
+
+    public static final String PROFILE_CONF = "mongoProfile";
+    public static final String PROFILE_LEVEL_CONF = "level";
+    public static final String PROFILE_SLOW_MS_CONF = "slowMs";
+    public static final String PROFILE_DB = "system.profile";
+    /** The profiler costs one write per slow query, it is off unless one level is configured. */
+    public static final int DEFAULT_PROFILE_LEVEL = 0;
+
+    public static final int DEFAULT_SLOW_MS = 100;
+    public static final int DEFAULT_LIMIT = 50;
+
+    public static Future<JsonObject> profile(MongoClient mongo, int level, int slowMs) {
+        return mongo.runCommand(
+                "profile", new JsonObject().put("profile", level).put("slowms", slowMs));
+    }
+
+    public static Future<JsonObject> profileStatus(MongoClient mongo) {
+        return mongo.runCommand("profile", new JsonObject().put("profile", -1));
+    }
+
+    public static Future<List<JsonObject>> slowest(MongoClient mongo, int slowMs, int limit) {
+        FindOptions options =
+                new FindOptions()
+                        .setSort(new JsonObject().put("millis", -1))
+                        .setLimit(limit)
+                        .setFields(
+                                new JsonObject()
+                                        .put("_id", false)
+                                        .put("op", true)
+                                        .put("ns", true)
+                                        .put("millis", true)
+                                        .put("planSummary", true)
+                                        .put("keysExamined", true)
+                                        .put("docsExamined", true)
+                                        .put("nreturned", true)
+                                        .put("command.filter", true)
+                                        .put("ts", true));
+        return mongo.findWithOptions(
+                PROFILE_DB,
+                new JsonObject().put("millis", new JsonObject().put("$gte", slowMs)),
+                options);
+    }
+
+    /** Explain one declared access path without executing it. */
+    public static Future<JsonObject> plan(MongoClient mongo, IndexMigration.Index index) {
+        JsonObject explain =
+                new JsonObject()
+                        .put(
+                                "explain",
+                                new JsonObject()
+                                        .put("find", index.getCollection())
+                                        .put("filter", index.getProbe()))
+                        .put("verbosity", "queryPlanner");
+        return mongo.runCommand("explain", explain)
+                .compose(
+                        (JsonObject ret) -> {
+                            JsonObject winningPlan =
+                                    ret.getJsonObject("queryPlanner", new JsonObject())
+                                            .getJsonObject("winningPlan", new JsonObject());
+                            if (winningPlan.containsKey("queryPlan")) {
+                                winningPlan = winningPlan.getJsonObject("queryPlan");
+                            }
+                            List<String> stages = new ArrayList<>();
+                            List<String> indexNames = new ArrayList<>();
+                            walk(winningPlan, stages, indexNames);
+                            return Future.succeededFuture(
+                                    new JsonObject()
+                                            .put("path", index.getPath())
+                                            .put("collection", index.getCollection())
+                                            .put("keys", index.getKeys())
+                                            .put("stages", new JsonArray(stages))
+                                            .put("indexes", new JsonArray(indexNames))
+                                            .put("collectionScan", stages.contains("COLLSCAN")));
+                        },
+                        error -> {
+                            LOGGER.warn(
+                                    String.format(
+                                            "Fail to explain %s on %s.",
+                                            index.getPath(), index.getCollection()),
+                                    error);
+                            return Future.succeededFuture(
+                                    new JsonObject()
+                                            .put("path", index.getPath())
+                                            .put("collection", index.getCollection())
+                                            .put("error", error.getLocalizedMessage()));
+                        });
+    }
+
+    private static void walk(JsonObject stage, List<String> stages, List<String> indexNames) {
+        if (stage == null) {
+            return;
+        }
+        if (stage.getString("stage") != null) {
+            stages.add(stage.getString("stage"));
+        }
+        if (stage.getString("indexName") != null) {
+            indexNames.add(stage.getString("indexName"));
+        }
+        walk(stage.getJsonObject("inputStage"), stages, indexNames);
+        JsonArray inputStages = stage.getJsonArray("inputStages");
+        if (inputStages != null) {
+            for (int idx = 0; idx < inputStages.size(); idx++) {
+                walk(inputStages.getJsonObject(idx), stages, indexNames);
+            }
+        }
+    }
+
+    public static Future<JsonObject> report(MongoClient mongo, int slowMs, int limit) {
+        Future<JsonObject> profileStatus =
+                profileStatus(mongo)
+                        .otherwise(
+                                error -> {
+                                    return new JsonObject()
+                                            .put("error", error.getLocalizedMessage());
+                                });
+        Future<List<JsonObject>> slowest =
+                slowest(mongo, slowMs, limit)
+                        .otherwise(
+                                error -> {
+                                    return List.of();
+                                });
+        List<Future> plans =
+                IndexMigration.indexes().stream()
+                        .map(index -> plan(mongo, index))
+                        .collect(Collectors.toList());
+        Future<Integer> version = IndexMigration.version(mongo);
+
+        return CompositeFuture.all(profileStatus, slowest, version, CompositeFuture.all(plans))
+                .compose(
+                        ret -> {
+                            JsonArray planArray = new JsonArray();
+                            for (Future plan : plans) {
+                                planArray.add(plan.result());
+                            }
+                            return Future.succeededFuture(
+                                    new JsonObject()
+                                            .put(
+                                                    "migration",
+                                                    new JsonObject()
+                                                            .put("version", version.result())
+                                                            .put(
+                                                                    "latest",
+                                                                    IndexMigration.latestVersion()))
+                                            .put("profile", profileStatus.result())
+                                            .put("slowMs", slowMs)
+                                            .put("slow", new JsonArray(slowest.result()))
+                                            .put("plans", planArray));
+                        });
+    }
+}
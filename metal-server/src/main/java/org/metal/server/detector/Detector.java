@@ -16,27 +16,39 @@ package org.metal.server.detector;
 
 import org.metal.backend.api.BackendService;
 import org.metal.server.api.BackendState;
+import org.metal.server.db.Lease;
+import org.metal.server.project.service.BackendDirectory;
 import org.metal.server.project.service.ProjectDB;
+import org.metal.server.report.Liveness;
 
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.mongo.MongoClient;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
 import static org.metal.server.project.service.ProjectDB.backendStatusCreateTimePath;
 import static org.metal.server.project.service.ProjectDB.backendStatusCurrentPath;
 import static org.metal.server.project.service.ProjectDB.backendStatusUpTimePath;
+import static org.metal.server.project.service.ProjectDB.deployIdPath;
 import static org.metal.server.project.service.ProjectDB.getTime;
-import static org.metal.server.project.service.ProjectServiceImpl.backendAddress;
 
 public class Detector extends AbstractVerticle {
 
@@ -44,7 +56,31 @@ public class Detector extends AbstractVerticle {
     public static final String CONF_METAL_SERVER_PATH = "conf/metal-server.json";
     public static final String MONGO_CONF = "mongoConf";
     public static final String DETECTOR_CONF = "detector";
+    public static final String METRICS_ADDRESS = "metal.server.detector.metrics";
+    /** Only the server instance holding this lease detects, the others stand by. */
+    public static final String LEASE_NAME = "detector";
+
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final long DEFAULT_PROBE_TIMEOUT = 5000L;
     private MongoClient mongo;
+    private BackendDirectory backends;
+    private Lease lease;
+    private MessageConsumer<JsonObject> staleConsumer;
+    private MessageConsumer<JsonObject> metricsConsumer;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private long probeTimeout = DEFAULT_PROBE_TIMEOUT;
+    private boolean detecting = false;
+    /** Stale deploys reported while one detection runs, probed right after it. */
+    private Set<String> staleDeployIds = new LinkedHashSet<>();
+
+    private long cycles = 0L;
+    private long skippedCycles = 0L;
+    private long totalProbes = 0L;
+    private long totalProbeFailures = 0L;
+    private long totalProbeTimeouts = 0L;
+    private long totalToUp = 0L;
+    private long totalToFailure = 0L;
+    private JsonObject lastCycle = new JsonObject();
     private long timerID = -1;
     private long detectorStartTime;
     private long detectorDuration = 15000l;
@@ -83,8 +119,33 @@ public class Detector extends AbstractVerticle {
                                                 MONGO_CONF, CONF_METAL_SERVER_PATH));
                             }
                             this.mongo = MongoClient.createShared(getVertx(), mongoConf);
+                            this.backends =
+                                    BackendDirectory.create(getVertx(), mongo, detectorConf);
+                            if (detectorConf != null) {
+                                this.parallelism =
+                                        detectorConf.getInteger("parallelism", DEFAULT_PARALLELISM);
+                                this.probeTimeout =
+                                        detectorConf.getLong("probeTimeout", DEFAULT_PROBE_TIMEOUT);
+                            }
+                            if (this.parallelism < 1) {
+                                return Future.failedFuture(
+                                        String.format(
+                                                "parallelism[%d] of %s is less than 1.",
+                                                this.parallelism, DETECTOR_CONF));
+                            }
+                            try {
+                                this.lease =
+                                        Lease.create(getVertx(), mongo, LEASE_NAME, detectorConf);
+                            } catch (IllegalArgumentException e) {
+                                return Future.failedFuture(e);
+                            }
+                            this.lease.leadershipHandler(this::onLeadership).start();
                             this.detectorStartTime = getTime();
                             this.timerID = getVertx().setPeriodic(detectorDuration, this::detect);
+                            this.staleConsumer =
+                                    getVertx()
+                                            .eventBus()
+                                            .consumer(Liveness.STALE_ADDRESS, this::onStale);
                             return Future.succeededFuture();
                         })
                 .onSuccess(
@@ -101,8 +162,15 @@ public class Detector extends AbstractVerticle {
     @Override
     public void stop(Promise<Void> stopPromise) throws Exception {
         getVertx().cancelTimer(this.timerID);
-        this.mongo
+        this.staleConsumer.unregister();
+        if (this.metricsConsumer != null) {
+            this.metricsConsumer.unregister();
+            this.metricsConsumer = null;
+        }
+        this.backends.close();
+        this.lease
                 .close()
+                .compose(ret -> this.mongo.close())
                 .onSuccess(
                         ret -> {
                             stopPromise.complete();
@@ -138,137 +206,305 @@ public class Detector extends AbstractVerticle {
                                                                 .put("$lt", inActiveTime))));
     }
 
+    /** Probes, updates and metrics of one detection. */
+    private static class Cycle {
+        private final long startTime = getTime();
+        private final long evictedTime;
+        private final List<JsonObject> probes = new ArrayList<>();
+        private final List<JsonObject> updates = new ArrayList<>();
+        private final List<Long> latencies = new ArrayList<>();
+        private int probeFailures = 0;
+        private int probeTimeouts = 0;
+        private int toUp = 0;
+        private int toFailure = 0;
+
+        private Cycle(long evictedTime) {
+            this.evictedTime = evictedTime;
+        }
+
+        private JsonObject metrics() {
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            return new JsonObject()
+                    .put("startTime", startTime)
+                    .put("duration", getTime() - startTime)
+                    .put("probes", probes.size())
+                    .put("probeFailures", probeFailures)
+                    .put("probeTimeouts", probeTimeouts)
+                    .put("probeLatencyP50", percentile(sorted, 0.5))
+                    .put("probeLatencyP99", percentile(sorted, 0.99))
+                    .put("probeLatencyMax", sorted.isEmpty() ? 0L : sorted.get(sorted.size() - 1))
+                    .put("toUp", toUp)
+                    .put("toFailure", toFailure);
+        }
+
+        private static long percentile(List<Long> sorted, double rank) {
+            if (sorted.isEmpty()) {
+                return 0L;
+            }
+            int idx = (int) Math.ceil(rank * sorted.size()) - 1;
+            return sorted.get(Math.max(0, Math.min(idx, sorted.size() - 1)));
+        }
+    }
+
     public void detect(long ID) {
-        JsonObject matcher = deployIsInActive();
+        if (detecting) {
+            skippedCycles++;
+            LOGGER.warn("Last detection is still running, skip this one.");
+            return;
+        }
+        if (!lease.isLeader()) {
+            return;
+        }
+        // One full detection probes the pending stale deploys as well.
+        staleDeployIds.clear();
+        guarded(deployIsInActive());
+    }
+
+    /** Liveness tables of report services tell which backend stops beating before next detect. */
+    private void onStale(Message<JsonObject> message) {
+        String deployId = message.body().getString("deployId");
+        if (deployId == null || !lease.isLeader()) {
+            return;
+        }
+        staleDeployIds.add(deployId);
+        detectStale();
+    }
+
+    private void detectStale() {
+        if (detecting || staleDeployIds.isEmpty()) {
+            return;
+        }
+        if (!lease.isLeader()) {
+            staleDeployIds.clear();
+            return;
+        }
+        JsonArray deployIds = new JsonArray(new ArrayList<>(staleDeployIds));
+        staleDeployIds.clear();
+        guarded(deployIsInActive().put(deployIdPath(), new JsonObject().put("$in", deployIds)));
+    }
+
+    /** Only one detection runs at a time, stale deploys reported meanwhile are probed after it. */
+    private void guarded(JsonObject matcher) {
+        detecting = true;
         ProjectDB.getAllOfMatcher(mongo, matcher)
-                .compose(
-                        (List<JsonObject> inActiveProjects) -> {
-                            long evictedTime = getTime() - evictedDelay;
-                            for (JsonObject proj : inActiveProjects) {
-                                try {
-                                    JsonObject deploy = proj.getJsonObject(ProjectDB.DEPLOY);
-                                    String deployId = deploy.getString(ProjectDB.DEPLOY_ID);
-                                    int epoch = deploy.getInteger(ProjectDB.DEPLOY_EPOCH);
-                                    JsonObject backend =
-                                            deploy.getJsonObject(ProjectDB.DEPLOY_BACKEND);
-                                    JsonObject status =
-                                            backend.getJsonObject(ProjectDB.DEPLOY_BACKEND_STATUS);
-                                    BackendState current =
-                                            BackendState.valueOf(status.getString("current"));
-                                    if (current.equals(BackendState.CREATED)) {
-                                        long createdTime =
-                                                status.getLong(
-                                                        ProjectDB
-                                                                .DEPLOY_BACKEND_STATUS_CREATED_TIME);
-                                        if (createdTime < detectorStartTime) {
-                                            heart(deploy, deployId, epoch, current);
-                                            continue;
-                                        }
-                                        if (createdTime < evictedTime) {
-                                            String failureMsg =
-                                                    String.format(
-                                                            "Backend[%s-%d] is %s state at %d, and has meet evicted condition[%d < %d].",
-                                                            deployId,
-                                                            epoch,
-                                                            current.toString(),
-                                                            createdTime,
-                                                            createdTime,
-                                                            evictedTime);
-                                            ProjectDB.updateBackendStatusOnFailure(
-                                                            mongo,
-                                                            deployId,
-                                                            epoch,
-                                                            current,
-                                                            failureMsg)
-                                                    .onSuccess(
-                                                            success -> {
-                                                                String msg =
-                                                                        String.format(
-                                                                                "Backend[%s-%d] is up.",
-                                                                                deployId, epoch);
-                                                                LOGGER.info(msg);
-                                                            })
-                                                    .onFailure(
-                                                            error -> {
-                                                                LOGGER.error(error);
-                                                            });
-                                            continue;
-                                        }
-                                    }
-
-                                    if (current.equals(BackendState.UP)) {
-                                        long upTime =
-                                                status.getLong(
-                                                        ProjectDB.DEPLOY_BACKEND_STATUS_UP_TIME);
-                                        if (upTime < detectorStartTime) {
-                                            heart(deploy, deployId, epoch, current);
-                                        }
-                                        if (upTime < evictedTime) {
-                                            String failureMsg =
-                                                    String.format(
-                                                            "Backend[%s-%d] is %s state at %d, and has meet evicted condition[%d < %d].",
-                                                            deployId,
-                                                            epoch,
-                                                            current.toString(),
-                                                            upTime,
-                                                            upTime,
-                                                            evictedTime);
-                                            ProjectDB.updateBackendStatusOnFailure(
-                                                            mongo,
-                                                            deployId,
-                                                            epoch,
-                                                            current,
-                                                            failureMsg)
-                                                    .onSuccess(
-                                                            success -> {
-                                                                String msg =
-                                                                        String.format(
-                                                                                "Backend[%s-%d] is failure. Failure message: %s.",
-                                                                                deployId,
-                                                                                epoch,
-                                                                                failureMsg);
-                                                                LOGGER.info(msg);
-                                                            })
-                                                    .onFailure(
-                                                            error -> {
-                                                                LOGGER.error(error);
-                                                            });
-                                            continue;
-                                        }
-                                    }
-                                    heart(deploy, deployId, epoch, current);
-                                } catch (Exception e) {
-                                    LOGGER.error(e);
-                                }
-                            }
-                            return Future.succeededFuture();
+                .compose(this::run)
+                .onComplete(
+                        ret -> {
+                            detecting = false;
+                            detectStale();
                         });
     }
 
-    private void heart(JsonObject deploy, String deployId, int epoch, BackendState current) {
-        JsonObject address = backendAddress(deploy);
-        BackendService backendService = BackendService.create(getVertx(), address);
-        backendService
-                .heart()
+    private Future<Void> run(List<JsonObject> inActiveProjects) {
+        Cycle cycle = new Cycle(getTime() - evictedDelay);
+        for (JsonObject proj : inActiveProjects) {
+            check(proj, cycle);
+        }
+        return probeAll(cycle)
+                .compose(
+                        ret -> {
+                            // The lease may be lost while probing, the new holder decides then.
+                            if (!lease.isLeader()) {
+                                LOGGER.warn("Lease is lost while detecting, drop status switches.");
+                                cycle.updates.clear();
+                                cycle.toUp = 0;
+                                cycle.toFailure = 0;
+                                return Future.succeededFuture();
+                            }
+                            return flush(cycle);
+                        })
                 .onSuccess(
                         ret -> {
-                            ProjectDB.updateBackendStatusOnUp(mongo, deployId, epoch, current)
-                                    .onSuccess(
-                                            success -> {
-                                                String msg =
-                                                        String.format(
-                                                                "Backend[%s-%d] is up.",
-                                                                deployId, epoch);
-                                                LOGGER.info(msg);
-                                            })
-                                    .onFailure(
-                                            error -> {
-                                                LOGGER.error(error);
-                                            });
+                            JsonObject metrics = cycle.metrics();
+                            lastCycle = metrics;
+                            cycles++;
+                            totalProbes += cycle.probes.size();
+                            totalProbeFailures += cycle.probeFailures;
+                            totalProbeTimeouts += cycle.probeTimeouts;
+                            totalToUp += cycle.toUp;
+                            totalToFailure += cycle.toFailure;
+                            if (!cycle.probes.isEmpty() || !cycle.updates.isEmpty()) {
+                                LOGGER.info(String.format("Detection: %s", metrics.toString()));
+                            }
                         })
                 .onFailure(
                         error -> {
                             LOGGER.error(error);
                         });
     }
+
+    private void check(JsonObject proj, Cycle cycle) {
+        try {
+            JsonObject deploy = proj.getJsonObject(ProjectDB.DEPLOY);
+            String deployId = deploy.getString(ProjectDB.DEPLOY_ID);
+            int epoch = deploy.getInteger(ProjectDB.DEPLOY_EPOCH);
+            JsonObject backend = deploy.getJsonObject(ProjectDB.DEPLOY_BACKEND);
+            JsonObject status = backend.getJsonObject(ProjectDB.DEPLOY_BACKEND_STATUS);
+            BackendState current = BackendState.valueOf(status.getString("current"));
+            if (current.equals(BackendState.CREATED)) {
+                long createdTime = status.getLong(ProjectDB.DEPLOY_BACKEND_STATUS_CREATED_TIME);
+                if (createdTime < detectorStartTime) {
+                    cycle.probes.add(deploy);
+                    return;
+                }
+                if (createdTime < cycle.evictedTime) {
+                    evict(cycle, deployId, epoch, current, createdTime);
+                    return;
+                }
+            }
+
+            if (current.equals(BackendState.UP)) {
+                long upTime = status.getLong(ProjectDB.DEPLOY_BACKEND_STATUS_UP_TIME);
+                if (upTime < cycle.evictedTime) {
+                    evict(cycle, deployId, epoch, current, upTime);
+                    return;
+                }
+            }
+            cycle.probes.add(deploy);
+        } catch (Exception e) {
+            LOGGER.error(e);
+        }
+    }
+
+    private static void evict(
+            Cycle cycle, String deployId, int epoch, BackendState current, long lastTime) {
+        String failureMsg =
+                String.format(
+                        "Backend[%s-%d] is %s state at %d, and has meet evicted condition[%d < %d].",
+                        deployId, epoch, current.toString(), lastTime, lastTime, cycle.evictedTime);
+        cycle.updates.add(
+                ProjectDB.backendStatusUpdate(
+                        deployId, epoch, current, ProjectDB.backendStatusOnFailure(failureMsg)));
+        cycle.toFailure++;
+    }
+
+    /** At most parallelism probes are in flight, each one is abandoned after probeTimeout. */
+    private Future<Void> probeAll(Cycle cycle) {
+        if (cycle.probes.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        Iterator<JsonObject> pending = cycle.probes.iterator();
+        List<Future<Void>> workers = new ArrayList<>();
+        for (int idx = 0; idx < Math.min(parallelism, cycle.probes.size()); idx++) {
+            workers.add(probeNext(cycle, pending));
+        }
+        // CompositeFuture of vertx 4.3 only takes one list of raw futures.
+        return CompositeFuture.join(new ArrayList<>(workers)).mapEmpty();
+    }
+
+    private Future<Void> probeNext(Cycle cycle, Iterator<JsonObject> pending) {
+        if (!pending.hasNext()) {
+            return Future.succeededFuture();
+        }
+        JsonObject deploy = pending.next();
+        return probe(cycle, deploy)
+                .compose(
+                        ret -> {
+                            return probeNext(cycle, pending);
+                        });
+    }
+
+    private Future<Void> probe(Cycle cycle, JsonObject deploy) {
+        String deployId = deploy.getString(ProjectDB.DEPLOY_ID);
+        int epoch = deploy.getInteger(ProjectDB.DEPLOY_EPOCH);
+        BackendState current =
+                BackendState.valueOf(
+                        deploy.getJsonObject(ProjectDB.DEPLOY_BACKEND)
+                                .getJsonObject(ProjectDB.DEPLOY_BACKEND_STATUS)
+                                .getString(ProjectDB.DEPLOY_BACKEND_STATUS_CURRENT));
+        long startTime = getTime();
+        Promise<JsonObject> promise = Promise.promise();
+        long deadline =
+                getVertx()
+                        .setTimer(
+                                probeTimeout,
+                                ID -> {
+                                    promise.tryFail(
+                                            new TimeoutException(
+                                                    String.format(
+                                                            "Probe of backend[%s-%d] is out of %d ms.",
+                                                            deployId, epoch, probeTimeout)));
+                                });
+        backends.call(
+                        deploy,
+                        (BackendService backendService) -> {
+                            return backendService.heart();
+                        })
+                .onComplete(
+                        result -> {
+                            getVertx().cancelTimer(deadline);
+                            if (result.succeeded()) {
+                                promise.tryComplete(result.result());
+                            } else {
+                                promise.tryFail(result.cause());
+                            }
+                        });
+        return promise.future()
+                .compose(
+                        ret -> {
+                            cycle.latencies.add(getTime() - startTime);
+                            cycle.updates.add(
+                                    ProjectDB.backendStatusUpdate(
+                                            deployId,
+                                            epoch,
+                                            current,
+                                            ProjectDB.backendStatusOnUp()));
+                            cycle.toUp++;
+                            return Future.<Void>succeededFuture();
+                        },
+                        error -> {
+                            cycle.latencies.add(getTime() - startTime);
+                            if (error instanceof TimeoutException) {
+                                cycle.probeTimeouts++;
+                            } else {
+                                cycle.probeFailures++;
+                            }
+                            LOGGER.error(error);
+                            return Future.<Void>succeededFuture();
+                        });
+    }
+
+    /** All status switches of one detection go out as one bulk write. */
+    private Future<Void> flush(Cycle cycle) {
+        if (cycle.updates.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        return ProjectDB.updateBackendStatusBulk(mongo, cycle.updates)
+                .compose(
+                        ret -> {
+                            for (JsonObject update : cycle.updates) {
+                                BackendDirectory.invalidate(
+                                        getVertx(), update.getString("deployId"));
+                            }
+                            return Future.succeededFuture();
+                        });
+    }
+
+    /** Only the lease holder answers metrics, so requests never land on one standby. */
+    private void onLeadership(boolean leader) {
+        if (leader && metricsConsumer == null) {
+            metricsConsumer = getVertx().eventBus().consumer(METRICS_ADDRESS, this::metrics);
+        } else if (!leader && metricsConsumer != null) {
+            metricsConsumer.unregister();
+            metricsConsumer = null;
+        }
+    }
+
+    private void metrics(Message<JsonObject> message) {
+        message.reply(
+                new JsonObject()
+                        .put("parallelism", parallelism)
+                        .put("probeTimeout", probeTimeout)
+                        .put("detecting", detecting)
+                        .put("cycles", cycles)
+                        .put("skippedCycles", skippedCycles)
+                        .put("probes", totalProbes)
+                        .put("probeFailures", totalProbeFailures)
+                        .put("probeTimeouts", totalProbeTimeouts)
+                        .put("toUp", totalToUp)
+                        .put("toFailure", totalToFailure)
+                        .put("lastCycle", lastCycle)
+                        .put("lease", lease.status()));
+    }
 }
@@ -16,6 +16,7 @@ package org.metal.server.exec;
 
 import org.metal.server.util.OnFailure;
 import org.metal.server.util.RestServiceEnd;
+import org.metal.server.util.SendJsonStream;
 
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
@@ -34,6 +35,7 @@ import io.vertx.ext.web.RoutingContext;
 import io.vertx.serviceproxy.ServiceBinder;
 
 import java.util.List;
+import java.util.Optional;
 
 public class Exec extends AbstractVerticle {
 
@@ -52,8 +54,8 @@ public class Exec extends AbstractVerticle {
         return new Exec();
     }
 
-    public static RestApi createRestApi(Vertx vertx, String provider) {
-        return new RestApi(vertx, provider);
+    public static RestApi createRestApi(Vertx vertx, String provider, MongoClient mongo) {
+        return new RestApi(vertx, provider, mongo);
     }
 
     public static class RestApi {
@@ -61,8 +63,12 @@ public class Exec extends AbstractVerticle {
         private static final Logger LOGGER = LoggerFactory.getLogger(Exec.RestApi.class);
         private ExecService service;
 
-        private RestApi(Vertx vertx, String provider) {
+        /** Pages are streamed from mongo directly, they can't pass through the service proxy. */
+        private MongoClient mongo;
+
+        private RestApi(Vertx vertx, String provider, MongoClient mongo) {
             service = ExecService.create(vertx, new JsonObject().put("address", provider));
+            this.mongo = mongo;
         }
 
         public void getOfId(RoutingContext ctx) {
@@ -97,6 +103,24 @@ public class Exec extends AbstractVerticle {
             RestServiceEnd.end(ctx, result, LOGGER);
         }
 
+        public void getProgress(RoutingContext ctx) {
+            User user = ctx.user();
+            String userId = user.get("_id");
+            String execId = ctx.request().params().get("execId");
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return execId == null || execId.isBlank();
+                    },
+                    "Fail to found exec id in request.",
+                    400)) {
+                return;
+            }
+
+            Future<JsonObject> result = service.getProgress(userId, execId);
+            RestServiceEnd.end(ctx, result, LOGGER);
+        }
+
         public void getAll(RoutingContext ctx) {
             Future<List<JsonObject>> result = service.getAll();
             RestServiceEnd.<List<JsonObject>>end(ctx, result, LOGGER);
@@ -153,6 +177,84 @@ public class Exec extends AbstractVerticle {
             RestServiceEnd.<List<JsonObject>>end(ctx, result, LOGGER);
         }
 
+        public void page(RoutingContext ctx) {
+            String after = ctx.request().params().get(SendJsonStream.PARAM_AFTER);
+            String limit = ctx.request().params().get(SendJsonStream.PARAM_LIMIT);
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return !SendJsonStream.isLimit(limit);
+                    },
+                    "Fail to parse limit in request.",
+                    400)) {
+                return;
+            }
+            int pageLimit = SendJsonStream.limitOf(limit);
+            SendJsonStream.send(
+                    ctx,
+                    ExecDB.page(mongo, Optional.ofNullable(after), pageLimit),
+                    pageLimit,
+                    ExecDB::noDetail,
+                    LOGGER);
+        }
+
+        public void pageOfUser(RoutingContext ctx) {
+            User user = ctx.user();
+            String userId = user.get("_id");
+            String after = ctx.request().params().get(SendJsonStream.PARAM_AFTER);
+            String limit = ctx.request().params().get(SendJsonStream.PARAM_LIMIT);
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return !SendJsonStream.isLimit(limit);
+                    },
+                    "Fail to parse limit in request.",
+                    400)) {
+                return;
+            }
+            int pageLimit = SendJsonStream.limitOf(limit);
+            SendJsonStream.send(
+                    ctx,
+                    ExecDB.pageOfUser(mongo, userId, Optional.ofNullable(after), pageLimit),
+                    pageLimit,
+                    ExecDB::noDetail,
+                    LOGGER);
+        }
+
+        public void pageOfProject(RoutingContext ctx) {
+            User user = ctx.user();
+            String userId = user.get("_id");
+            String projectId = ctx.request().params().get("projectId");
+            String after = ctx.request().params().get(SendJsonStream.PARAM_AFTER);
+            String limit = ctx.request().params().get(SendJsonStream.PARAM_LIMIT);
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return projectId == null || projectId.isBlank();
+                    },
+                    "Fail to found project id in request.",
+                    400)) {
+                return;
+            }
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return !SendJsonStream.isLimit(limit);
+                    },
+                    "Fail to parse limit in request.",
+                    400)) {
+                return;
+            }
+            int pageLimit = SendJsonStream.limitOf(limit);
+            SendJsonStream.send(
+                    ctx,
+                    ExecDB.pageOfProject(
+                            mongo, userId, projectId, Optional.ofNullable(after), pageLimit),
+                    pageLimit,
+                    ExecDB::noDetail,
+                    LOGGER);
+        }
+
         public void remove(RoutingContext ctx) {
             User user = ctx.user();
             String userId = user.get("_id");
@@ -22,9 +22,13 @@ import org.metal.server.util.ReadStreamCollector;
 import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.mongo.FindOptions;
 import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.UpdateOptions;
 
 import java.util.List;
+import java.util.Optional;
 
 public class ExecDB {
 
@@ -37,6 +41,9 @@ public class ExecDB {
     public static final String FIELD_FINISH_TIME = "finishTime";
     public static final String FIELD_TERMINATE_TIME = "terminateTime";
     public static final String FIELD_STATUS = "status";
+    public static final String FIELD_PROGRESS = "progress";
+    public static final String FIELD_SINKS = "sinks";
+    public static final String FIELD_PROGRESS_TIME = "progressTime";
 
     public static final String FIELD_DEPLOY = "deploy";
     public static final String FIELD_FROM_PROJECT = "fromProject";
@@ -81,15 +88,24 @@ public class ExecDB {
                 break;
             case SUBMIT:
                 update.put(FIELD_SUBMIT_TIME, execStatus.getLong("submitTime"));
+                if (execStatus.containsKey(FIELD_SINKS)) {
+                    update.put(FIELD_SINKS, execStatus.getJsonArray(FIELD_SINKS));
+                }
                 break;
             case RUNNING:
                 update.put(FIELD_BEAT_TIME, execStatus.getLong("beatTime"));
                 break;
             case FINISH:
                 update.put(FIELD_FINISH_TIME, execStatus.getLong("finishTime"));
+                if (execStatus.containsKey(FIELD_SINKS)) {
+                    update.put(FIELD_SINKS, execStatus.getJsonArray(FIELD_SINKS));
+                }
                 break;
             case FAILURE:
                 update.put(FIELD_TERMINATE_TIME, execStatus.getLong("terminateTime"));
+                if (execStatus.containsKey(FIELD_SINKS)) {
+                    update.put(FIELD_SINKS, execStatus.getJsonArray(FIELD_SINKS));
+                }
                 break;
         }
 
@@ -103,6 +119,82 @@ public class ExecDB {
                         });
     }
 
+    private static JsonObject previousOf(ExecState to) throws IllegalArgumentException {
+        switch (to) {
+            case SUBMIT:
+                return new JsonObject()
+                        .put("$in", new JsonArray().add(ExecState.CREATE.toString()));
+            case RUNNING:
+            case FINISH:
+            case FAILURE:
+                return new JsonObject()
+                        .put(
+                                "$nin",
+                                new JsonArray()
+                                        .add(ExecState.FINISH.toString())
+                                        .add(ExecState.FAILURE.toString()));
+            default:
+                throw new IllegalArgumentException(
+                        String.format("The status of exec can't switch to %s.", to.toString()));
+        }
+    }
+
+    private static JsonObject transition(boolean matched, JsonObject exec) {
+        return new JsonObject()
+                .put("matched", matched)
+                .put(FIELD_STATUS, exec.getString(FIELD_STATUS))
+                .put("epoch", exec.getJsonObject(FIELD_DEPLOY).getInteger(ProjectDB.DEPLOY_EPOCH));
+    }
+
+    /**
+     * Switch status in one round trip, the epoch and the previous status allowed are matched in the
+     * filter, so concurrent reports can't both pass one check. The result is
+     * {"matched":...,"status":...,"epoch":...}, status and epoch are the current ones if not
+     * matched.
+     */
+    public static Future<JsonObject> transitStatus(
+            MongoClient mongo, String execId, int epoch, JsonObject update) {
+        JsonObject matcher = new JsonObject();
+        try {
+            ExecState to = ExecState.valueOf(update.getString(FIELD_STATUS));
+            matcher.put(FIELD_ID, execId)
+                    .put(FIELD_DEPLOY + "." + ProjectDB.DEPLOY_EPOCH, epoch)
+                    .put(FIELD_STATUS, previousOf(to));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return Future.failedFuture(e);
+        }
+        JsonObject fields =
+                new JsonObject()
+                        .put(FIELD_STATUS, true)
+                        .put(FIELD_DEPLOY + "." + ProjectDB.DEPLOY_EPOCH, true);
+
+        return mongo.findOneAndUpdateWithOptions(
+                        DB,
+                        matcher,
+                        new JsonObject().put("$set", update),
+                        new FindOptions().setFields(fields),
+                        new UpdateOptions())
+                .compose(
+                        (JsonObject previous) -> {
+                            if (previous != null) {
+                                return Future.succeededFuture(transition(true, previous));
+                            }
+                            return mongo.findOne(DB, new JsonObject().put(FIELD_ID, execId), fields)
+                                    .compose(
+                                            (JsonObject current) -> {
+                                                if (current == null) {
+                                                    return Future.failedFuture(
+                                                            new IllegalArgumentException(
+                                                                    String.format(
+                                                                            "Exec[%s] is not found.",
+                                                                            execId)));
+                                                }
+                                                return Future.succeededFuture(
+                                                        transition(false, current));
+                                            });
+                        });
+    }
+
     public static Future<JsonObject> updateByPath(
             MongoClient mongo, String execId, JsonObject updateByPath) {
         return mongo.updateCollection(
@@ -115,6 +207,54 @@ public class ExecDB {
                         });
     }
 
+    /** Stale progress arriving out of order will not overwrite the newer one. */
+    public static Future<JsonObject> updateProgress(
+            MongoClient mongo, String execId, JsonObject progress, long progressTime) {
+        JsonObject matcher = new JsonObject();
+        matcher.put(FIELD_ID, execId)
+                .put(
+                        "$or",
+                        new JsonArray()
+                                .add(
+                                        new JsonObject()
+                                                .put(
+                                                        FIELD_PROGRESS_TIME,
+                                                        new JsonObject().put("$exists", false)))
+                                .add(
+                                        new JsonObject()
+                                                .put(
+                                                        FIELD_PROGRESS_TIME,
+                                                        new JsonObject()
+                                                                .put("$lt", progressTime))));
+        JsonObject update = new JsonObject();
+        update.put(FIELD_PROGRESS, progress).put(FIELD_PROGRESS_TIME, progressTime);
+        return mongo.updateCollection(DB, matcher, new JsonObject().put("$set", update))
+                .compose(
+                        ret -> {
+                            return Future.<JsonObject>succeededFuture(ret.toJson());
+                        });
+    }
+
+    /** Progress of execs of other users is never returned. */
+    public static Future<JsonObject> getProgress(MongoClient mongo, String userId, String execId) {
+        JsonObject fields = new JsonObject();
+        fields.put(FIELD_ID, true)
+                .put(FIELD_STATUS, true)
+                .put(FIELD_PROGRESS, true)
+                .put(FIELD_PROGRESS_TIME, true);
+        return mongo.findOne(
+                        DB,
+                        new JsonObject().put(FIELD_ID, execId).put(FIELD_USER_ID, userId),
+                        fields)
+                .compose(
+                        (JsonObject exec) -> {
+                            if (exec == null) {
+                                return Future.succeededFuture(new JsonObject());
+                            }
+                            return Future.succeededFuture(exec);
+                        });
+    }
+
     public static Future<JsonObject> getOfId(MongoClient mongo, String execId) {
         return mongo.findOne(DB, new JsonObject().put(FIELD_ID, execId), new JsonObject())
                 .compose(
@@ -138,7 +278,7 @@ public class ExecDB {
                         });
     }
 
-    private static JsonObject noDetail(JsonObject exec) {
+    public static JsonObject noDetail(JsonObject exec) {
         JsonObject deploy = exec.getJsonObject(FIELD_DEPLOY);
         String deployId = deploy.getString(ProjectDB.DEPLOY_ID);
         int epoch = deploy.getInteger(ProjectDB.DEPLOY_EPOCH);
@@ -185,6 +325,9 @@ public class ExecDB {
                         .put(FIELD_BEAT_TIME, true)
                         .put(FIELD_FINISH_TIME, true)
                         .put(FIELD_TERMINATE_TIME, true)
+                        .put(FIELD_PROGRESS, true)
+                        .put(FIELD_SINKS, true)
+                        .put(FIELD_PROGRESS_TIME, true)
                         .put(FIELD_FROM_PROJECT, true)
                         .put(
                                 "fromProjectDetail",
@@ -206,6 +349,9 @@ public class ExecDB {
                         .put(FIELD_BEAT_TIME, true)
                         .put(FIELD_FINISH_TIME, true)
                         .put(FIELD_TERMINATE_TIME, true)
+                        .put(FIELD_PROGRESS, true)
+                        .put(FIELD_SINKS, true)
+                        .put(FIELD_PROGRESS_TIME, true)
                         .put(FIELD_FROM_PROJECT, true)
                         .put("fromProjectDetail", new JsonObject().put(ProjectDB.NAME, true)));
 
@@ -258,6 +404,50 @@ public class ExecDB {
                 mongo.findBatch(DB, matcher), ExecDB::noDetail);
     }
 
+    /**
+     * Fields left out of one page, {@link #noDetail(JsonObject)} only needs deploy id and epoch.
+     */
+    private static JsonObject pageFields() {
+        return new JsonObject()
+                .put(FIELD_SPEC, false)
+                .put(FIELD_DEPLOY + "." + ProjectDB.DEPLOY_PLATFORM, false)
+                .put(FIELD_DEPLOY + "." + ProjectDB.DEPLOY_BACKEND, false)
+                .put(FIELD_DEPLOY + "." + ProjectDB.DEPLOY_PKGS, false);
+    }
+
+    /** Keyset page ordered by id, the next page starts after the last id of this one. */
+    public static ReadStream<JsonObject> pageOfMatcher(
+            MongoClient mongo, JsonObject matcher, Optional<String> after, int limit) {
+        if (after.isPresent() && !after.get().isBlank()) {
+            matcher.put(FIELD_ID, new JsonObject().put("$gt", after.get()));
+        }
+        FindOptions options =
+                new FindOptions()
+                        .setSort(new JsonObject().put(FIELD_ID, 1))
+                        .setLimit(limit)
+                        .setBatchSize(Math.min(limit, 100))
+                        .setFields(pageFields());
+        return mongo.findBatchWithOptions(DB, matcher, options);
+    }
+
+    public static ReadStream<JsonObject> pageOfUser(
+            MongoClient mongo, String userId, Optional<String> after, int limit) {
+        return pageOfMatcher(mongo, new JsonObject().put(FIELD_USER_ID, userId), after, limit);
+    }
+
+    public static ReadStream<JsonObject> pageOfProject(
+            MongoClient mongo, String userId, String projectId, Optional<String> after, int limit) {
+        JsonObject matcher = new JsonObject();
+        matcher.put(FIELD_FROM_PROJECT, projectId);
+        matcher.put(FIELD_USER_ID, userId);
+        return pageOfMatcher(mongo, matcher, after, limit);
+    }
+
+    public static ReadStream<JsonObject> page(
+            MongoClient mongo, Optional<String> after, int limit) {
+        return pageOfMatcher(mongo, new JsonObject(), after, limit);
+    }
+
     public static Future<JsonObject> forceRemove(MongoClient mongo, String userId, String execId) {
         return mongo.removeDocument(
                         DB, new JsonObject().put(FIELD_USER_ID, userId).put(FIELD_ID, execId))
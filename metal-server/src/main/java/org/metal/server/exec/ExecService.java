@@ -62,6 +62,16 @@ public interface ExecService {
 
     public Future<JsonObject> getStatus(String execId);
 
+    /**
+     * Switch status only if the exec is still in the epoch and its status may switch to the new
+     * one. The result tells whether it matched, and the status and epoch the exec had.
+     */
+    public Future<JsonObject> transitStatus(String execId, int epoch, JsonObject execStatus);
+
+    public Future<Void> updateProgress(String execId, JsonObject progress, long progressTime);
+
+    public Future<JsonObject> getProgress(String userId, String execId);
+
     public Future<JsonObject> getOfId(String execId);
 
     public Future<JsonObject> getOfIdNoDetail(String execId);
@@ -21,6 +21,7 @@ import org.metal.server.project.service.ProjectDB;
 
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.mongo.MongoClient;
 
@@ -88,6 +89,27 @@ public class ExecServiceImpl implements ExecService {
 
     @Override
     public Future<Void> updateStatus(String execId, JsonObject execStatus) {
+        return statusUpdateOf(execStatus)
+                .compose(
+                        (JsonObject update) -> {
+                            return ExecDB.updateStatus(mongo, execId, update);
+                        })
+                .compose(
+                        ret -> {
+                            return Future.succeededFuture();
+                        });
+    }
+
+    @Override
+    public Future<JsonObject> transitStatus(String execId, int epoch, JsonObject execStatus) {
+        return statusUpdateOf(execStatus)
+                .compose(
+                        (JsonObject update) -> {
+                            return ExecDB.transitStatus(mongo, execId, epoch, update);
+                        });
+    }
+
+    private static Future<JsonObject> statusUpdateOf(JsonObject execStatus) {
         String status = execStatus.getString("status");
         if (status == null) {
             IllegalArgumentException e =
@@ -131,6 +153,10 @@ public class ExecServiceImpl implements ExecService {
                                     String.format("%s lost submitTime", execStatus.toString()));
                         }
                         update.put("submitTime", submitTime);
+                        JsonArray sinks = execStatus.getJsonArray("sinks");
+                        if (sinks != null) {
+                            update.put("sinks", sinks);
+                        }
                     } catch (ClassCastException e) {
                         return Future.failedFuture(e);
                     }
@@ -185,11 +211,7 @@ public class ExecServiceImpl implements ExecService {
                 break;
         }
 
-        return ExecDB.updateStatus(mongo, execId, update)
-                .compose(
-                        ret -> {
-                            return Future.succeededFuture();
-                        });
+        return Future.succeededFuture(update);
     }
 
     @Override
@@ -211,6 +233,20 @@ public class ExecServiceImpl implements ExecService {
                         });
     }
 
+    @Override
+    public Future<Void> updateProgress(String execId, JsonObject progress, long progressTime) {
+        return ExecDB.updateProgress(mongo, execId, progress, progressTime)
+                .compose(
+                        ret -> {
+                            return Future.succeededFuture();
+                        });
+    }
+
+    @Override
+    public Future<JsonObject> getProgress(String userId, String execId) {
+        return ExecDB.getProgress(mongo, userId, execId);
+    }
+
     @Override
     public Future<JsonObject> getOfId(String execId) {
         return ExecDB.getOfId(mongo, execId);
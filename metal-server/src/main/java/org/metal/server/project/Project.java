@@ -16,10 +16,13 @@ package org.metal.server.project;
 
 import org.metal.server.exec.ExecService;
 import org.metal.server.project.service.IProjectService;
+import org.metal.server.project.service.ProjectDB;
 import org.metal.server.util.JsonConvertor;
 import org.metal.server.util.OnFailure;
 import org.metal.server.util.RestServiceEnd;
+import org.metal.server.util.SendArrow;
 import org.metal.server.util.SendJson;
+import org.metal.server.util.SendJsonStream;
 import org.metal.server.util.SpecJson;
 
 import io.vertx.config.ConfigRetriever;
@@ -40,7 +43,10 @@ import io.vertx.ext.mongo.MongoClient;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.serviceproxy.ServiceBinder;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
 
 public class Project extends AbstractVerticle {
 
@@ -164,8 +170,8 @@ public class Project extends AbstractVerticle {
                         });
     }
 
-    public static RestApi createRestApi(Vertx vertx, String provider) {
-        return new RestApi(vertx, provider);
+    public static RestApi createRestApi(Vertx vertx, String provider, MongoClient mongo) {
+        return new RestApi(vertx, provider, mongo);
     }
 
     @Override
@@ -185,10 +191,19 @@ public class Project extends AbstractVerticle {
     public static class RestApi {
 
         private static final Logger LOGGER = LoggerFactory.getLogger(RestApi.class);
+        public static final int DEFAULT_PREVIEW_LIMIT = 100;
+        public static final String DEFAULT_EXPLAIN_MODE = "formatted";
+        public static final int DEFAULT_COSTS_TOP = 10;
+        public static final String PREVIEW_FORMAT_JSON = "json";
+        public static final String PREVIEW_FORMAT_ARROW = "arrow";
         private IProjectService service;
 
-        private RestApi(Vertx vertx, String provider) {
+        /** Pages are streamed from mongo directly, they can't pass through the service proxy. */
+        private MongoClient mongo;
+
+        private RestApi(Vertx vertx, String provider, MongoClient mongo) {
             service = IProjectService.create(vertx, new JsonObject().put("address", provider));
+            this.mongo = mongo;
         }
 
         public void add(RoutingContext ctx) {
@@ -346,6 +361,180 @@ public class Project extends AbstractVerticle {
             RestServiceEnd.end(ctx, result, LOGGER);
         }
 
+        public void getSpecSchemasOfDeployId(RoutingContext ctx) {
+            String deployId = ctx.request().params().get("deployId");
+            List<String> metalIds = ctx.queryParam("metalId");
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return deployId == null || deployId.isBlank();
+                    },
+                    "Fail to found deployId in request.",
+                    400)) {
+                return;
+            }
+
+            Future<JsonObject> result = service.getSpecSchemasOfDeployId(deployId, metalIds);
+            RestServiceEnd.end(ctx, result, LOGGER);
+        }
+
+        public void explainOfMetalId(RoutingContext ctx) {
+            String deployId = ctx.request().params().get("deployId");
+            String metalId = ctx.request().params().get("metalId");
+            String mode = ctx.request().params().get("mode");
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return deployId == null || deployId.isBlank();
+                    },
+                    "Fail to found deployId in request.",
+                    400)) {
+                return;
+            }
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return metalId == null || metalId.isBlank();
+                    },
+                    "Fail to found metalId in request.",
+                    400)) {
+                return;
+            }
+
+            Future<JsonObject> result =
+                    service.explainOfMetalId(
+                            deployId, metalId, mode == null ? DEFAULT_EXPLAIN_MODE : mode);
+            RestServiceEnd.end(ctx, result, LOGGER);
+        }
+
+        public void costsOfDeployId(RoutingContext ctx) {
+            String deployId = ctx.request().params().get("deployId");
+            String topOfParam = ctx.request().params().get("top");
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return deployId == null || deployId.isBlank();
+                    },
+                    "Fail to found deployId in request.",
+                    400)) {
+                return;
+            }
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return topOfParam != null && !topOfParam.matches("\\d{1,9}");
+                    },
+                    "Fail to parse top in request.",
+                    400)) {
+                return;
+            }
+
+            int top = topOfParam == null ? DEFAULT_COSTS_TOP : Integer.parseInt(topOfParam);
+            Future<JsonObject> result = service.costsOfDeployId(deployId, top);
+            RestServiceEnd.end(ctx, result, LOGGER);
+        }
+
+        /** The request body is optional, metalIds in it select which sources to collect. */
+        public void collectStatsOfDeployId(RoutingContext ctx) {
+            User user = ctx.user();
+            String userId = user.get("_id");
+            String deployId = ctx.request().params().get("deployId");
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return deployId == null || deployId.isBlank();
+                    },
+                    "Fail to found deployId in request.",
+                    400)) {
+                return;
+            }
+
+            List<String> metalIds = null;
+            try {
+                metalIds = stringsOfBody(ctx, "metalIds");
+            } catch (ClassCastException e) {
+                SendJson.send(
+                        ctx,
+                        new JsonObject()
+                                .put("status", "FAIL")
+                                .put("msg", "Fail to parse metalIds in request."),
+                        400);
+                return;
+            }
+
+            Future<JsonObject> result = service.collectStatsOfDeployId(userId, deployId, metalIds);
+            RestServiceEnd.end(ctx, result, LOGGER);
+        }
+
+        public void previewOfMetalId(RoutingContext ctx) {
+            String deployId = ctx.request().params().get("deployId");
+            String metalId = ctx.request().params().get("metalId");
+            String limitOfParam = ctx.request().params().get("limit");
+            String format = ctx.request().params().get("format");
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return deployId == null || deployId.isBlank();
+                    },
+                    "Fail to found deployId in request.",
+                    400)) {
+                return;
+            }
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return metalId == null || metalId.isBlank();
+                    },
+                    "Fail to found metalId in request.",
+                    400)) {
+                return;
+            }
+
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return limitOfParam != null && !limitOfParam.matches("\\d{1,9}");
+                    },
+                    "Fail to parse limit in request.",
+                    400)) {
+                return;
+            }
+
+            int limit =
+                    limitOfParam == null ? DEFAULT_PREVIEW_LIMIT : Integer.parseInt(limitOfParam);
+            String previewFormat = format == null ? PREVIEW_FORMAT_JSON : format;
+
+            Future<JsonObject> result =
+                    service.previewOfMetalId(deployId, metalId, limit, previewFormat);
+            if (!PREVIEW_FORMAT_ARROW.equals(previewFormat)) {
+                RestServiceEnd.end(ctx, result, LOGGER);
+                return;
+            }
+            // Arrow IPC stream goes back as it is, clients read it with any arrow reader.
+            result.onSuccess(
+                            (JsonObject ret) -> {
+                                SendArrow.send(ctx, ret.getBinary("data"));
+                            })
+                    .onFailure(
+                            (Throwable error) -> {
+                                JsonObject resp = new JsonObject();
+                                resp.put("status", "FAIL").put("msg", error.getLocalizedMessage());
+                                ctx.response()
+                                        .setStatusCode(500)
+                                        .putHeader("content-type", "application/json")
+                                        .end(resp.toString());
+                                LOGGER.error(error);
+                            });
+        }
+
         public void getBackendServiceStatusOfDeployId(RoutingContext ctx) {
             String deployId = ctx.request().params().get("deployId");
             if (OnFailure.doTry(
@@ -390,6 +579,50 @@ public class Project extends AbstractVerticle {
             RestServiceEnd.<List<JsonObject>>end(ctx, result, LOGGER);
         }
 
+        public void page(RoutingContext ctx) {
+            String after = ctx.request().params().get(SendJsonStream.PARAM_AFTER);
+            String limit = ctx.request().params().get(SendJsonStream.PARAM_LIMIT);
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return !SendJsonStream.isLimit(limit);
+                    },
+                    "Fail to parse limit in request.",
+                    400)) {
+                return;
+            }
+            int pageLimit = SendJsonStream.limitOf(limit);
+            SendJsonStream.send(
+                    ctx,
+                    ProjectDB.page(mongo, Optional.ofNullable(after), pageLimit),
+                    pageLimit,
+                    Function.identity(),
+                    LOGGER);
+        }
+
+        public void pageOfUser(RoutingContext ctx) {
+            User user = ctx.user();
+            String userId = user.get("_id");
+            String after = ctx.request().params().get(SendJsonStream.PARAM_AFTER);
+            String limit = ctx.request().params().get(SendJsonStream.PARAM_LIMIT);
+            if (OnFailure.doTry(
+                    ctx,
+                    () -> {
+                        return !SendJsonStream.isLimit(limit);
+                    },
+                    "Fail to parse limit in request.",
+                    400)) {
+                return;
+            }
+            int pageLimit = SendJsonStream.limitOf(limit);
+            SendJsonStream.send(
+                    ctx,
+                    ProjectDB.pageOfUser(mongo, userId, Optional.ofNullable(after), pageLimit),
+                    pageLimit,
+                    Function.identity(),
+                    LOGGER);
+        }
+
         public void updateProject(RoutingContext ctx) {
             User user = ctx.user();
             String userId = user.get("_id");
@@ -915,10 +1148,18 @@ public class Project extends AbstractVerticle {
                 return;
             }
 
-            Future<JsonObject> result = service.analysis(userId, name, spec);
+            Future<JsonObject> result =
+                    withSchemasOfBody(body)
+                            ? service.analysisWithSchemas(userId, name, spec)
+                            : service.analysis(userId, name, spec);
             RestServiceEnd.end(ctx, result, LOGGER);
         }
 
+        /** Optional body field withSchemas asks for schemas of all analysed metals in reply. */
+        private static boolean withSchemasOfBody(JsonObject body) {
+            return Boolean.TRUE.equals(body.getValue("withSchemas"));
+        }
+
         public void analysisOfId(RoutingContext ctx) {
             User user = ctx.user();
             String userId = user.get("_id");
@@ -958,7 +1199,10 @@ public class Project extends AbstractVerticle {
                 return;
             }
 
-            Future<JsonObject> result = service.analysisOfId(userId, id, spec);
+            Future<JsonObject> result =
+                    withSchemasOfBody(body)
+                            ? service.analysisOfIdWithSchemas(userId, id, spec)
+                            : service.analysisOfId(userId, id, spec);
             RestServiceEnd.end(ctx, result, LOGGER);
         }
 
@@ -1129,10 +1373,45 @@ public class Project extends AbstractVerticle {
                 return;
             }
 
-            Future<JsonObject> result = service.exec(userId, name);
+            List<String> sinks = null;
+            try {
+                sinks = sinksOfBody(ctx);
+            } catch (ClassCastException e) {
+                SendJson.send(
+                        ctx,
+                        new JsonObject()
+                                .put("status", "FAIL")
+                                .put("msg", "Fail to parse sinks in request."),
+                        400);
+                return;
+            }
+
+            Future<JsonObject> result =
+                    sinks.isEmpty()
+                            ? service.exec(userId, name)
+                            : service.execSinks(userId, name, sinks);
             RestServiceEnd.end(ctx, result, LOGGER);
         }
 
+        /** The request body is optional, sinks in it select which sinks to exec. */
+        private static List<String> sinksOfBody(RoutingContext ctx) throws ClassCastException {
+            return stringsOfBody(ctx, "sinks");
+        }
+
+        private static List<String> stringsOfBody(RoutingContext ctx, String key)
+                throws ClassCastException {
+            List<String> values = new ArrayList<>();
+            JsonObject body = ctx.body().asJsonObject();
+            if (body == null) {
+                return values;
+            }
+            JsonArray valuesOfBody = body.getJsonArray(key, new JsonArray());
+            for (int idx = 0; idx < valuesOfBody.size(); idx++) {
+                values.add(valuesOfBody.getString(idx));
+            }
+            return values;
+        }
+
         public void execOfId(RoutingContext ctx) {
             User user = ctx.user();
             String userId = user.get("_id");
@@ -1147,7 +1426,23 @@ public class Project extends AbstractVerticle {
                 return;
             }
 
-            Future<JsonObject> result = service.execOfId(userId, id);
+            List<String> sinks = null;
+            try {
+                sinks = sinksOfBody(ctx);
+            } catch (ClassCastException e) {
+                SendJson.send(
+                        ctx,
+                        new JsonObject()
+                                .put("status", "FAIL")
+                                .put("msg", "Fail to parse sinks in request."),
+                        400);
+                return;
+            }
+
+            Future<JsonObject> result =
+                    sinks.isEmpty()
+                            ? service.execOfId(userId, id)
+                            : service.execSinksOfId(userId, id, sinks);
             RestServiceEnd.end(ctx, result, LOGGER);
         }
     }
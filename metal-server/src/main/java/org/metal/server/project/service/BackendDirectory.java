@@ -0,0 +1,302 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.project.service;
+
+import org.metal.backend.api.BackendService;
+import org.metal.server.api.BackendState;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Proxies of backends and their resolved addresses, cached per deploy so hot paths skip both the
+ * deploy lookup in Mongo and the proxy construction. Entries are dropped when the status or the
+ * epoch of one deploy changes, and expire after one ttl in case such a change is missed.
+ *
+ * <p>Each backend has its own send timeout and circuit breaker. After failureThreshold calls in a
+ * row fail because the backend is unreachable, calls fail fast for resetTimeout, then one call
+ * probes the backend again.
+ */
+public class BackendDirectory {
+
+    public static final String INVALIDATE_ADDRESS = "metal.server.backend.directory.invalidate";
+    public static final String CONF = "backendDirectory";
+    public static final long DEFAULT_TTL = 60000L;
+    public static final long DEFAULT_TIMEOUT = DeliveryOptions.DEFAULT_TIMEOUT;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_RESET_TIMEOUT = 10000L;
+
+    private static class Entry {
+
+        private final int epoch;
+        private final String address;
+        private final BackendService backend;
+        private volatile long loadTime;
+        private int failures = 0;
+        private long openUntil = 0L;
+        private boolean probing = false;
+
+        private Entry(int epoch, String address, BackendService backend) {
+            this.epoch = epoch;
+            this.address = address;
+            this.backend = backend;
+            this.loadTime = System.currentTimeMillis();
+        }
+
+        /** Open circuits let one probe through once the reset timeout passed. */
+        private synchronized long tryAcquire(long now) {
+            if (openUntil == 0L) {
+                return 0L;
+            }
+            if (now < openUntil || probing) {
+                return Math.max(openUntil - now, 1L);
+            }
+            probing = true;
+            return 0L;
+        }
+
+        private synchronized void onReachable() {
+            failures = 0;
+            openUntil = 0L;
+            probing = false;
+        }
+
+        private synchronized void onUnreachable(long now, int threshold, long resetTimeout) {
+            failures++;
+            probing = false;
+            if (failures >= threshold) {
+                openUntil = now + resetTimeout;
+                // The deploy may have moved to one new epoch, look it up again.
+                loadTime = 0L;
+            }
+        }
+
+        private synchronized JsonObject status() {
+            return new JsonObject()
+                    .put("epoch", epoch)
+                    .put("address", address)
+                    .put("loadTime", loadTime)
+                    .put("failures", failures)
+                    .put("open", openUntil != 0L)
+                    .put("openUntil", openUntil);
+        }
+    }
+
+    private Vertx vertx;
+    private Function<String, Future<JsonObject>> deploys;
+    private Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private MessageConsumer<JsonObject> consumer;
+    private long ttl;
+    private long timeout;
+    private int failureThreshold;
+    private long resetTimeout;
+
+    private BackendDirectory(
+            Vertx vertx, Function<String, Future<JsonObject>> deploys, JsonObject conf) {
+        this.vertx = vertx;
+        this.deploys = deploys;
+        this.ttl = conf.getLong("ttl", DEFAULT_TTL);
+        this.timeout = conf.getLong("timeout", DEFAULT_TIMEOUT);
+        this.failureThreshold = conf.getInteger("failureThreshold", DEFAULT_FAILURE_THRESHOLD);
+        this.resetTimeout = conf.getLong("resetTimeout", DEFAULT_RESET_TIMEOUT);
+        this.consumer =
+                vertx.eventBus()
+                        .consumer(
+                                INVALIDATE_ADDRESS,
+                                (Message<JsonObject> message) -> {
+                                    String deployId = message.body().getString("deployId");
+                                    if (deployId != null) {
+                                        entries.remove(deployId);
+                                    }
+                                });
+    }
+
+    /** The conf is the backendDirectory object of one service conf, defaults if absent. */
+    public static BackendDirectory create(Vertx vertx, MongoClient mongo, JsonObject conf) {
+        return create(
+                vertx,
+                (String deployId) -> {
+                    return ProjectDB.getDeployOfDeployId(mongo, deployId);
+                },
+                conf);
+    }
+
+    /** Deploys are looked up by deploy id through the function, {@link ProjectCache} for one. */
+    public static BackendDirectory create(
+            Vertx vertx, Function<String, Future<JsonObject>> deploys, JsonObject conf) {
+        return new BackendDirectory(
+                vertx,
+                deploys,
+                conf == null ? new JsonObject() : conf.getJsonObject(CONF, new JsonObject()));
+    }
+
+    /** Drop cached entries of the deploy in all directories of the cluster. */
+    public static void invalidate(Vertx vertx, String deployId) {
+        vertx.eventBus().publish(INVALIDATE_ADDRESS, new JsonObject().put("deployId", deployId));
+    }
+
+    public static boolean checkBackendUp(JsonObject deploy) throws IllegalArgumentException {
+        try {
+            JsonObject backend = deploy.getJsonObject(ProjectDB.DEPLOY_BACKEND);
+            JsonObject backendStatus = backend.getJsonObject(ProjectDB.DEPLOY_BACKEND_STATUS);
+            if (backendStatus == null || backendStatus.isEmpty()) {
+                throw new IllegalArgumentException("The backend is not UP.");
+            }
+            BackendState current =
+                    BackendState.valueOf(
+                            backendStatus.getString(ProjectDB.DEPLOY_BACKEND_STATUS_CURRENT));
+            if (!current.equals(BackendState.UP)) {
+                throw new IllegalArgumentException("The backend is not UP.");
+            }
+            return true;
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /** Fails before the caller changes anything when the backend address can't be resolved. */
+    public static boolean checkBackendAddress(JsonObject deploy) throws IllegalArgumentException {
+        return backendAddress(deploy).containsKey("address");
+    }
+
+    public static JsonObject backendAddress(JsonObject deploy) {
+        try {
+            Integer epoch = deploy.getInteger(ProjectDB.DEPLOY_EPOCH);
+            String deployId = deploy.getString(ProjectDB.DEPLOY_ID);
+            if (epoch == null) {
+                throw new IllegalArgumentException(
+                        "Fail to get address, the epoch of backend is not existed.");
+            }
+            if (deployId == null || deployId.isBlank()) {
+                throw new IllegalArgumentException(
+                        "Fail to get address, the deploy id of backend is not existed.");
+            }
+            return new JsonObject().put("address", deployId + "-" + epoch);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /** Call the UP backend of the deploy, which is looked up in Mongo only on one cache miss. */
+    public <T> Future<T> call(
+            String deployId, String action, Function<BackendService, Future<T>> call) {
+        Entry entry = entries.get(deployId);
+        if (entry != null && System.currentTimeMillis() - entry.loadTime < ttl) {
+            return call(entry, call);
+        }
+        return deploys.apply(deployId)
+                .compose(
+                        (JsonObject deploy) -> {
+                            if (deploy == null || deploy.isEmpty()) {
+                                return Future.failedFuture(
+                                        String.format("Fail to %s, no deploy found.", action));
+                            }
+                            try {
+                                checkBackendUp(deploy);
+                                return call(entryOf(deploy), call);
+                            } catch (IllegalArgumentException e) {
+                                return Future.failedFuture(e);
+                            }
+                        });
+    }
+
+    /** Call the backend of the deploy at hand, the caller checks its state. */
+    public <T> Future<T> call(JsonObject deploy, Function<BackendService, Future<T>> call) {
+        try {
+            return call(entryOf(deploy), call);
+        } catch (IllegalArgumentException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    public JsonObject status() {
+        JsonObject status = new JsonObject();
+        for (Map.Entry<String, Entry> kv : entries.entrySet()) {
+            status.put(kv.getKey(), kv.getValue().status());
+        }
+        return status;
+    }
+
+    public Future<Void> close() {
+        entries.clear();
+        return consumer.unregister();
+    }
+
+    private Entry entryOf(JsonObject deploy) throws IllegalArgumentException {
+        String address = backendAddress(deploy).getString("address");
+        String deployId = deploy.getString(ProjectDB.DEPLOY_ID);
+        int epoch = deploy.getInteger(ProjectDB.DEPLOY_EPOCH);
+        return entries.compute(
+                deployId,
+                (String id, Entry last) -> {
+                    if (last != null && last.epoch == epoch) {
+                        last.loadTime = System.currentTimeMillis();
+                        return last;
+                    }
+                    BackendService backend =
+                            BackendService.create(
+                                    vertx,
+                                    new JsonObject()
+                                            .put("address", address)
+                                            .put("timeout", timeout));
+                    return new Entry(epoch, address, backend);
+                });
+    }
+
+    private <T> Future<T> call(Entry entry, Function<BackendService, Future<T>> call) {
+        long wait = entry.tryAcquire(System.currentTimeMillis());
+        if (wait > 0L) {
+            return Future.failedFuture(
+                    String.format(
+                            "Backend[%s] is unreachable, retry after %d ms.", entry.address, wait));
+        }
+        Future<T> ret;
+        try {
+            ret = call.apply(entry.backend);
+        } catch (Exception e) {
+            entry.onReachable();
+            return Future.failedFuture(e);
+        }
+        return ret.onComplete(
+                result -> {
+                    if (result.succeeded() || !unreachable(result.cause())) {
+                        entry.onReachable();
+                    } else {
+                        entry.onUnreachable(
+                                System.currentTimeMillis(), failureThreshold, resetTimeout);
+                    }
+                });
+    }
+
+    /** Failures reported by one reachable backend don't count against its circuit. */
+    private static boolean unreachable(Throwable error) {
+        if (!(error instanceof ReplyException)) {
+            return false;
+        }
+        ReplyFailure failure = ((ReplyException) error).failureType();
+        return failure == ReplyFailure.NO_HANDLERS || failure == ReplyFailure.TIMEOUT;
+    }
+}
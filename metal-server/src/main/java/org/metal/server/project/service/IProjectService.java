@@ -110,6 +110,26 @@ public interface IProjectService {
 
     public Future<JsonObject> getSpecSchemaOfMetalId(String deployId, String metalId);
 
+    public Future<JsonObject> getSpecSchemasOfDeployId(String deployId, List<String> metalIds);
+
+    public Future<JsonObject> explainOfMetalId(String deployId, String metalId, String mode);
+
+    public Future<JsonObject> costsOfDeployId(String deployId, int top);
+
+    /**
+     * Collect statistics of sources in the deployment, all file sources if metalIds is empty. Only
+     * the owner of the deployment's project may collect them.
+     */
+    public Future<JsonObject> collectStatsOfDeployId(
+            String userId, String deployId, List<String> metalIds);
+
+    public Future<Void> putSourceStats(JsonObject stats);
+
+    public Future<JsonObject> getSourceStats(String fingerprint);
+
+    public Future<JsonObject> previewOfMetalId(
+            String deployId, String metalId, int limit, String format);
+
     public Future<JsonObject> getDeploymentOfDeployId(String deployId);
 
     public Future<JsonObject> getBackendStatusOfDeployId(String deployId);
@@ -148,6 +168,10 @@ public interface IProjectService {
 
     public Future<JsonObject> analysisOfId(String userId, String id, JsonObject spec);
 
+    public Future<JsonObject> analysisWithSchemas(String userId, String name, JsonObject spec);
+
+    public Future<JsonObject> analysisOfIdWithSchemas(String userId, String id, JsonObject spec);
+
     public Future<JsonObject> saveSpecOfId(String userId, String id, JsonObject spec);
 
     public Future<JsonObject> analysisSubSpecOfId(
@@ -156,4 +180,8 @@ public interface IProjectService {
     public Future<JsonObject> exec(String userId, String name);
 
     public Future<JsonObject> execOfId(String userId, String id);
+
+    public Future<JsonObject> execSinks(String userId, String name, List<String> sinks);
+
+    public Future<JsonObject> execSinksOfId(String userId, String id, List<String> sinks);
 }
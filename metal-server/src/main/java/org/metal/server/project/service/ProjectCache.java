@@ -0,0 +1,445 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.project.service;
+
+import org.metal.server.user.UserDB;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Project documents read by id, name or deploy id, cached in front of {@link ProjectDB}. Writes of
+ * this server drop the entries they touch before their futures complete, and are published so the
+ * other servers drop them too. Status changes published by {@link BackendDirectory} drop the
+ * deploy's entry as well, and so do upTime flushes of liveness tables. The cache keeps at most
+ * maxSize projects, least recently used first out, and entries expire after one ttl in case one
+ * invalidation is missed.
+ */
+public class ProjectCache {
+
+    public static final String INVALIDATE_ADDRESS = "metal.server.project.cache.invalidate";
+    public static final String CONF = "projectCache";
+    public static final long DEFAULT_TTL = 30000L;
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private static class Entry {
+
+        private final JsonObject proj;
+        private final long loadTime;
+
+        private Entry(JsonObject proj) {
+            this.proj = proj;
+            this.loadTime = System.currentTimeMillis();
+        }
+    }
+
+    private Vertx vertx;
+    private Function<JsonObject, Future<JsonObject>> loader;
+    private long ttl;
+    private int maxSize;
+    private LinkedHashMap<String, Entry> projects;
+    private Map<String, String> idOfName = new HashMap<>();
+    private Map<String, String> idOfDeployId = new HashMap<>();
+
+    /** Bumped by every invalidation. */
+    private long generation = 0L;
+
+    /** Last invalidation generation per key, loads started before it don't fill the cache. */
+    private Map<String, Long> invalidated = new HashMap<>();
+
+    /** Generations loads in flight started at, older invalidations can't reject any of them. */
+    private TreeMap<Long, Integer> loading = new TreeMap<>();
+
+    private long hits = 0L;
+    private long misses = 0L;
+    private MessageConsumer<JsonObject> consumer;
+    private MessageConsumer<JsonObject> backendConsumer;
+
+    private ProjectCache(
+            Vertx vertx, Function<JsonObject, Future<JsonObject>> loader, JsonObject conf) {
+        this.vertx = vertx;
+        this.loader = loader;
+        this.ttl = conf.getLong("ttl", DEFAULT_TTL);
+        this.maxSize = conf.getInteger("maxSize", DEFAULT_MAX_SIZE);
+        this.projects =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                        if (size() > ProjectCache.this.maxSize) {
+                            unindex(eldest.getKey(), eldest.getValue().proj);
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+        this.consumer =
+                vertx.eventBus()
+                        .consumer(
+                                INVALIDATE_ADDRESS,
+                                (Message<JsonObject> message) -> {
+                                    drop(message.body());
+                                });
+        this.backendConsumer =
+                vertx.eventBus()
+                        .consumer(
+                                BackendDirectory.INVALIDATE_ADDRESS,
+                                (Message<JsonObject> message) -> {
+                                    drop(message.body());
+                                });
+    }
+
+    /** The conf is the projectCache object of one service conf, defaults if absent. */
+    public static ProjectCache create(Vertx vertx, MongoClient mongo, JsonObject conf) {
+        return create(
+                vertx,
+                (JsonObject matcher) -> {
+                    return ProjectDB.getOfMatcher(mongo, matcher);
+                },
+                conf);
+    }
+
+    /** Projects are loaded by matcher through the function, empty if none matches. */
+    public static ProjectCache create(
+            Vertx vertx, Function<JsonObject, Future<JsonObject>> loader, JsonObject conf) {
+        return new ProjectCache(
+                vertx,
+                loader,
+                conf == null ? new JsonObject() : conf.getJsonObject(CONF, new JsonObject()));
+    }
+
+    public Future<JsonObject> getOfId(String userId, String projectId) {
+        return get(
+                () -> {
+                    return Optional.ofNullable(projectId)
+                            .filter(
+                                    (String id) -> {
+                                        return userId.equals(userIdOf(lookup(id)));
+                                    });
+                },
+                () -> {
+                    return loader.apply(
+                            new JsonObject()
+                                    .put(ProjectDB.ID, projectId)
+                                    .put(ProjectDB.userIdPath(), userId));
+                });
+    }
+
+    public Future<JsonObject> getOfName(String userId, String name) {
+        return get(
+                () -> {
+                    return Optional.ofNullable(idOfName.get(nameKey(userId, name)));
+                },
+                () -> {
+                    return loader.apply(
+                            new JsonObject()
+                                    .put(ProjectDB.NAME, name)
+                                    .put(ProjectDB.userIdPath(), userId));
+                });
+    }
+
+    public Future<JsonObject> getOfDeployId(String deployId) {
+        return get(
+                () -> {
+                    return Optional.ofNullable(idOfDeployId.get(deployId));
+                },
+                () -> {
+                    JsonObject matcher = new JsonObject().put(ProjectDB.deployIdPath(), deployId);
+                    return loader.apply(matcher);
+                });
+    }
+
+    public Future<JsonObject> getDeployOfDeployId(String deployId) {
+        return getOfDeployId(deployId)
+                .compose(
+                        (JsonObject proj) -> {
+                            return Future.succeededFuture(proj.getJsonObject(ProjectDB.DEPLOY));
+                        });
+    }
+
+    public Future<JsonObject> getBackendStatus(String deployId) {
+        return getOfDeployId(deployId)
+                .compose(
+                        (JsonObject proj) -> {
+                            return ProjectDB.wrapBackendStatus(
+                                    deployId, Optional.empty(), proj.isEmpty() ? null : proj);
+                        });
+    }
+
+    public Future<JsonObject> getSpecOfName(String userId, String name) {
+        return getOfName(userId, name).compose(ProjectDB::specOf);
+    }
+
+    public void invalidateOfId(String projectId) {
+        invalidate(new JsonObject().put("projectId", projectId));
+    }
+
+    public void invalidateOfName(String userId, String name) {
+        invalidate(new JsonObject().put("userId", userId).put("name", name));
+    }
+
+    public void invalidateOfDeployId(String deployId) {
+        invalidate(new JsonObject().put("deployId", deployId));
+    }
+
+    public void invalidateOfUser(String userId) {
+        invalidate(new JsonObject().put("userId", userId));
+    }
+
+    public void invalidateAll() {
+        invalidate(new JsonObject().put("all", true));
+    }
+
+    /** Drop cached projects of the deploys in all caches of the cluster. */
+    public static void invalidateOfDeployIds(Vertx vertx, List<String> deployIds) {
+        vertx.eventBus()
+                .publish(
+                        INVALIDATE_ADDRESS,
+                        new JsonObject().put("deployIds", new JsonArray(deployIds)));
+    }
+
+    public synchronized JsonObject status() {
+        return new JsonObject()
+                .put("size", projects.size())
+                .put("names", idOfName.size())
+                .put("deployIds", idOfDeployId.size())
+                .put("maxSize", maxSize)
+                .put("ttl", ttl)
+                .put("hits", hits)
+                .put("misses", misses);
+    }
+
+    public Future<Void> close() {
+        synchronized (this) {
+            projects.clear();
+            idOfName.clear();
+            idOfDeployId.clear();
+        }
+        return consumer.unregister().compose(ret -> backendConsumer.unregister());
+    }
+
+    private void invalidate(JsonObject target) {
+        drop(target);
+        vertx.eventBus().publish(INVALIDATE_ADDRESS, target);
+    }
+
+    private synchronized void drop(JsonObject target) {
+        generation++;
+        if (target.getBoolean("all", false)) {
+            mark("all");
+            projects.clear();
+            idOfName.clear();
+            idOfDeployId.clear();
+            return;
+        }
+
+        String projectId = target.getString("projectId");
+        String userId = target.getString("userId");
+        String name = target.getString("name");
+        List<String> deployIds = new ArrayList<>();
+        if (target.getString("deployId") != null) {
+            deployIds.add(target.getString("deployId"));
+        }
+        for (Object deployId : target.getJsonArray("deployIds", new JsonArray())) {
+            deployIds.add((String) deployId);
+        }
+        if (projectId != null) {
+            mark(idKey(projectId));
+            remove(projectId);
+        }
+        for (String deployId : deployIds) {
+            mark(deployKey(deployId));
+            remove(idOfDeployId.get(deployId));
+        }
+        if (userId != null && name != null) {
+            mark("name:" + nameKey(userId, name));
+            remove(idOfName.get(nameKey(userId, name)));
+        } else if (userId != null) {
+            mark(userKey(userId));
+            projects.entrySet()
+                    .removeIf(
+                            (Map.Entry<String, Entry> kv) -> {
+                                if (userId.equals(userIdOf(kv.getValue().proj))) {
+                                    unindex(kv.getKey(), kv.getValue().proj);
+                                    return true;
+                                }
+                                return false;
+                            });
+        }
+    }
+
+    private Future<JsonObject> get(
+            Supplier<Optional<String>> idOf, Supplier<Future<JsonObject>> load) {
+        long loadGeneration;
+        synchronized (this) {
+            Optional<String> id = idOf.get();
+            JsonObject proj = id.isPresent() ? lookup(id.get()) : null;
+            if (proj != null) {
+                hits++;
+                return Future.succeededFuture(proj.copy());
+            }
+            misses++;
+            loadGeneration = generation;
+            loading.merge(loadGeneration, 1, Integer::sum);
+        }
+        return load.get()
+                .onComplete(
+                        result -> {
+                            put(loadGeneration, result.succeeded() ? result.result() : null);
+                        })
+                .map(
+                        (JsonObject proj) -> {
+                            return proj == null ? null : proj.copy();
+                        });
+    }
+
+    /** Expired entries are dropped on lookup. */
+    private JsonObject lookup(String projectId) {
+        Entry entry = projects.get(projectId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.loadTime >= ttl) {
+            remove(projectId);
+            return null;
+        }
+        return entry.proj;
+    }
+
+    /** Keep the proj unless one of its keys was invalidated after the load started. */
+    private synchronized void put(long loadGeneration, JsonObject proj) {
+        try {
+            keep(loadGeneration, proj);
+        } finally {
+            // Invalidations are forgotten only after this load has been checked against them.
+            loaded(loadGeneration);
+        }
+    }
+
+    private void keep(long loadGeneration, JsonObject proj) {
+        if (proj == null || proj.isEmpty()) {
+            return;
+        }
+        String projectId = proj.getString(ProjectDB.ID);
+        String userId = userIdOf(proj);
+        if (projectId == null || userId == null) {
+            return;
+        }
+        JsonObject loadedDeploy = proj.getJsonObject(ProjectDB.DEPLOY);
+        String loadedDeployId =
+                loadedDeploy == null ? null : loadedDeploy.getString(ProjectDB.DEPLOY_ID);
+        if (invalidatedAfter(loadGeneration, "all")
+                || invalidatedAfter(loadGeneration, idKey(projectId))
+                || invalidatedAfter(loadGeneration, userKey(userId))
+                || invalidatedAfter(
+                        loadGeneration, "name:" + nameKey(userId, proj.getString(ProjectDB.NAME)))
+                || (loadedDeployId != null
+                        && invalidatedAfter(loadGeneration, deployKey(loadedDeployId)))) {
+            return;
+        }
+        remove(projectId);
+        JsonObject copy = proj.copy();
+        projects.put(projectId, new Entry(copy));
+        idOfName.put(nameKey(userId, copy.getString(ProjectDB.NAME)), projectId);
+        JsonObject deploy = copy.getJsonObject(ProjectDB.DEPLOY);
+        if (deploy != null && deploy.getString(ProjectDB.DEPLOY_ID) != null) {
+            idOfDeployId.put(deploy.getString(ProjectDB.DEPLOY_ID), projectId);
+        }
+    }
+
+    private void mark(String key) {
+        if (!loading.isEmpty()) {
+            invalidated.put(key, generation);
+        }
+    }
+
+    private boolean invalidatedAfter(long loadGeneration, String key) {
+        return invalidated.getOrDefault(key, Long.MIN_VALUE) > loadGeneration;
+    }
+
+    /** Forget invalidations no load in flight started before. */
+    private void loaded(long loadGeneration) {
+        loading.computeIfPresent(
+                loadGeneration,
+                (Long key, Integer count) -> {
+                    return count > 1 ? count - 1 : null;
+                });
+        if (loading.isEmpty()) {
+            invalidated.clear();
+        } else {
+            long oldest = loading.firstKey();
+            invalidated.values().removeIf(at -> at <= oldest);
+        }
+    }
+
+    private void remove(String projectId) {
+        if (projectId == null) {
+            return;
+        }
+        Entry entry = projects.remove(projectId);
+        if (entry != null) {
+            unindex(projectId, entry.proj);
+        }
+    }
+
+    private void unindex(String projectId, JsonObject proj) {
+        String userId = userIdOf(proj);
+        if (userId != null) {
+            idOfName.remove(nameKey(userId, proj.getString(ProjectDB.NAME)), projectId);
+        }
+        JsonObject deploy = proj.getJsonObject(ProjectDB.DEPLOY);
+        if (deploy != null && deploy.getString(ProjectDB.DEPLOY_ID) != null) {
+            idOfDeployId.remove(deploy.getString(ProjectDB.DEPLOY_ID), projectId);
+        }
+    }
+
+    private static String userIdOf(JsonObject proj) {
+        if (proj == null) {
+            return null;
+        }
+        JsonObject user = proj.getJsonObject(ProjectDB.USER);
+        return user == null ? null : user.getString(UserDB.FIELD_ID);
+    }
+
+    private static String nameKey(String userId, String name) {
+        return userId + "/" + name;
+    }
+
+    private static String idKey(String projectId) {
+        return "id:" + projectId;
+    }
+
+    private static String userKey(String userId) {
+        return "user:" + userId;
+    }
+
+    private static String deployKey(String deployId) {
+        return "deploy:" + deployId;
+    }
+}
@@ -25,11 +25,15 @@ import org.metal.server.util.SpecJson;
 import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
 import io.vertx.ext.mongo.MongoClient;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 public class ProjectDB {
 
@@ -274,6 +278,67 @@ public class ProjectDB {
         return getAllOfMatcher(mongo, new JsonObject());
     }
 
+    /**
+     * Keyset page ordered by id without spec and platform, the next page starts after the last id
+     * of this one.
+     */
+    public static ReadStream<JsonObject> pageOfMatcher(
+            MongoClient mongo, JsonObject matcher, Optional<String> after, int limit) {
+        if (after.isPresent() && !after.get().isBlank()) {
+            matcher.put(ID, new JsonObject().put("$gt", after.get()));
+        }
+        JsonObject fields =
+                new JsonObject()
+                        .put(ID, true)
+                        .put(NAME, true)
+                        .put(CREATE_TIME, true)
+                        .put(deployIdPath(), true)
+                        .put(epochPath(), true)
+                        .put(backendStatusPath(), true);
+        JsonObject project = new JsonObject().put("$project", fields.copy());
+        project.getJsonObject("$project")
+                .put(
+                        USER,
+                        new JsonObject()
+                                .put("$arrayElemAt", new JsonArray().add("$" + USER).add(0)));
+        JsonObject privateProtect = new JsonObject().put("$project", fields.copy());
+        privateProtect
+                .getJsonObject("$project")
+                .put(
+                        USER,
+                        new JsonObject()
+                                .put(UserDB.FIELD_ID, true)
+                                .put(UserDB.FIELD_USER_NAME, true));
+
+        JsonArray pipeline =
+                new JsonArray()
+                        .add(new JsonObject().put("$match", matcher))
+                        .add(new JsonObject().put("$sort", new JsonObject().put(ID, 1)))
+                        .add(new JsonObject().put("$limit", limit))
+                        .add(
+                                new JsonObject()
+                                        .put(
+                                                "$lookup",
+                                                new JsonObject()
+                                                        .put("from", UserDB.DB)
+                                                        .put("localField", userIdPath())
+                                                        .put("foreignField", UserDB.FIELD_ID)
+                                                        .put("as", USER)))
+                        .add(project)
+                        .add(privateProtect);
+        return mongo.aggregate(DB, pipeline);
+    }
+
+    public static ReadStream<JsonObject> pageOfUser(
+            MongoClient mongo, String userId, Optional<String> after, int limit) {
+        return pageOfMatcher(mongo, new JsonObject().put(userIdPath(), userId), after, limit);
+    }
+
+    public static ReadStream<JsonObject> page(
+            MongoClient mongo, Optional<String> after, int limit) {
+        return pageOfMatcher(mongo, new JsonObject(), after, limit);
+    }
+
     public static Future<JsonObject> getBackendStatus(MongoClient mongo, String deployId) {
         JsonObject matcher = new JsonObject();
         matcher.put(deployIdPath(), deployId);
@@ -295,7 +360,7 @@ public class ProjectDB {
                         });
     }
 
-    private static Future<JsonObject> wrapBackendStatus(
+    static Future<JsonObject> wrapBackendStatus(
             String deployId, Optional<Integer> epoch, JsonObject proj) {
         String epochVal = epoch.isPresent() ? epoch.get().toString() : "*";
         if (proj == null) {
@@ -332,6 +397,18 @@ public class ProjectDB {
                         });
     }
 
+    /** Whether the deployment belongs to one project of the user. */
+    public static Future<Boolean> isDeployOfUser(
+            MongoClient mongo, String userId, String deployId) {
+        JsonObject matcher = new JsonObject();
+        matcher.put(deployIdPath(), deployId).put(userIdPath(), userId);
+        return mongo.count(DB, matcher)
+                .map(
+                        (Long count) -> {
+                            return count > 0;
+                        });
+    }
+
     public static Future<JsonObject> getDeployOfDeployIdWithEpoch(
             MongoClient mongo, String deployId, int epoch) {
         JsonObject matcher = new JsonObject();
@@ -375,20 +452,20 @@ public class ProjectDB {
     public static Future<JsonObject> getSpecOfName(MongoClient mongo, String userId, String name) {
         JsonObject matcher = new JsonObject();
         matcher.put(userIdPath(), userId).put(NAME, name);
-        return getOfMatcher(mongo, matcher)
-                .compose(
-                        proj -> {
-                            if (proj == null || proj.isEmpty()) {
-                                return Future.succeededFuture(SpecJson.empty());
-                            }
-                            JsonObject spec = proj.getJsonObject(SPEC);
-                            try {
-                                SpecJson.check(spec);
-                                return Future.succeededFuture(spec);
-                            } catch (IllegalArgumentException e) {
-                                return Future.failedFuture(e);
-                            }
-                        });
+        return getOfMatcher(mongo, matcher).compose(ProjectDB::specOf);
+    }
+
+    static Future<JsonObject> specOf(JsonObject proj) {
+        if (proj == null || proj.isEmpty()) {
+            return Future.succeededFuture(SpecJson.empty());
+        }
+        JsonObject spec = proj.getJsonObject(SPEC);
+        try {
+            SpecJson.check(spec);
+            return Future.succeededFuture(spec);
+        } catch (IllegalArgumentException e) {
+            return Future.failedFuture(e);
+        }
     }
 
     public static Future<JsonObject> update(
@@ -579,13 +656,51 @@ public class ProjectDB {
         return updateBackendStatus(mongo, deployId, newStatus);
     }
 
+    public static JsonObject backendStatusOnUp() {
+        return new JsonObject()
+                .put(DEPLOY_BACKEND_STATUS_CURRENT, BackendState.UP.toString())
+                .put(DEPLOY_BACKEND_STATUS_UP_TIME, getTime());
+    }
+
     public static Future<JsonObject> updateBackendStatusOnUp(
             MongoClient mongo, String deployId, int epoch, BackendState current) {
-        JsonObject newStatus =
-                new JsonObject()
-                        .put(DEPLOY_BACKEND_STATUS_CURRENT, BackendState.UP.toString())
-                        .put(DEPLOY_BACKEND_STATUS_UP_TIME, getTime());
-        return updateBackendStatus(mongo, deployId, epoch, current, newStatus);
+        return updateBackendStatus(mongo, deployId, epoch, current, backendStatusOnUp());
+    }
+
+    /**
+     * Move upTime of many backends still UP in one bulk write, each beat is
+     * {"deployId":...,"epoch":...,"upTime":...}. upTime never moves backward.
+     */
+    public static Future<JsonObject> updateBackendUpTimes(
+            MongoClient mongo, List<JsonObject> beats) {
+        List<BulkOperation> operations =
+                beats.stream()
+                        .map(
+                                (JsonObject beat) -> {
+                                    JsonObject matcher =
+                                            new JsonObject()
+                                                    .put(deployIdPath(), beat.getString("deployId"))
+                                                    .put(epochPath(), beat.getInteger("epoch"))
+                                                    .put(
+                                                            backendStatusCurrentPath(),
+                                                            BackendState.UP.toString());
+                                    JsonObject updater =
+                                            new JsonObject()
+                                                    .put(
+                                                            "$max",
+                                                            new JsonObject()
+                                                                    .put(
+                                                                            backendStatusUpTimePath(),
+                                                                            beat.getLong(
+                                                                                    "upTime")));
+                                    return BulkOperation.createUpdate(matcher, updater);
+                                })
+                        .collect(Collectors.toList());
+        return mongo.bulkWriteWithOptions(DB, operations, new BulkWriteOptions(false))
+                .compose(
+                        result -> {
+                            return Future.succeededFuture(result.toJson());
+                        });
     }
 
     public static Future<JsonObject> updateBackendStatusOnDown(MongoClient mongo, String deployId) {
@@ -615,18 +730,67 @@ public class ProjectDB {
         return updateBackendStatus(mongo, deployId, newStatus);
     }
 
+    public static JsonObject backendStatusOnFailure(String failureMsg) {
+        return new JsonObject()
+                .put(DEPLOY_BACKEND_STATUS_CURRENT, BackendState.FAILURE.toString())
+                .put(DEPLOY_BACKEND_STATUS_FAILURE_TIME, getTime())
+                .put(DEPLOY_BACKEND_STATUS_FAILURE_MSG, failureMsg);
+    }
+
     public static Future<JsonObject> updateBackendStatusOnFailure(
             MongoClient mongo,
             String deployId,
             int epoch,
             BackendState current,
             String failureMsg) {
-        JsonObject newStatus =
-                new JsonObject()
-                        .put(DEPLOY_BACKEND_STATUS_CURRENT, BackendState.FAILURE.toString())
-                        .put(DEPLOY_BACKEND_STATUS_FAILURE_TIME, getTime())
-                        .put(DEPLOY_BACKEND_STATUS_FAILURE_MSG, failureMsg);
-        return updateBackendStatus(mongo, deployId, epoch, current, newStatus);
+        return updateBackendStatus(
+                mongo, deployId, epoch, current, backendStatusOnFailure(failureMsg));
+    }
+
+    /** One switch for {@link #updateBackendStatusBulk(MongoClient, List)}. */
+    public static JsonObject backendStatusUpdate(
+            String deployId, int epoch, BackendState current, JsonObject status) {
+        return new JsonObject()
+                .put("deployId", deployId)
+                .put("epoch", epoch)
+                .put("current", current.toString())
+                .put("status", status);
+    }
+
+    /**
+     * Switch status of many backends in one bulk write, each one only if it is still in the epoch
+     * and current status.
+     */
+    public static Future<JsonObject> updateBackendStatusBulk(
+            MongoClient mongo, List<JsonObject> updates) {
+        List<BulkOperation> operations =
+                updates.stream()
+                        .map(
+                                (JsonObject update) -> {
+                                    JsonObject matcher =
+                                            new JsonObject()
+                                                    .put(
+                                                            deployIdPath(),
+                                                            update.getString("deployId"))
+                                                    .put(epochPath(), update.getInteger("epoch"))
+                                                    .put(
+                                                            backendStatusCurrentPath(),
+                                                            update.getString("current"));
+                                    JsonObject updater =
+                                            new JsonObject()
+                                                    .put(
+                                                            "$set",
+                                                            confWithStatusPath(
+                                                                    update.getJsonObject(
+                                                                            "status")));
+                                    return BulkOperation.createUpdate(matcher, updater);
+                                })
+                        .collect(Collectors.toList());
+        return mongo.bulkWriteWithOptions(DB, operations, new BulkWriteOptions(false))
+                .compose(
+                        result -> {
+                            return Future.succeededFuture(result.toJson());
+                        });
     }
 
     public static Future<JsonObject> updateBackendStatusTracer(
@@ -50,6 +50,8 @@ public class ProjectServiceImpl implements IProjectService {
     private ExecService execService;
     private WorkerExecutor workerExecutor;
     private JsonObject conf;
+    private BackendDirectory backends;
+    private ProjectCache projects;
 
     public ProjectServiceImpl(
             Vertx vertx,
@@ -62,6 +64,8 @@ public class ProjectServiceImpl implements IProjectService {
         this.conf = conf.copy();
         this.workerExecutor = workerExecutor;
         this.execService = execService;
+        this.projects = ProjectCache.create(vertx, mongo, conf);
+        this.backends = BackendDirectory.create(vertx, projects::getDeployOfDeployId, conf);
     }
 
     @Override
@@ -146,106 +150,149 @@ public class ProjectServiceImpl implements IProjectService {
             return Future.failedFuture(e);
         }
 
-        return ProjectDB.updateProject(mongo, userId, id, name, pkgs, platform, backendArgs, spec);
+        return ProjectDB.updateProject(mongo, userId, id, name, pkgs, platform, backendArgs, spec)
+                .onSuccess(
+                        ret -> {
+                            projects.invalidateOfId(id);
+                        });
     }
 
     @Override
     public Future<JsonObject> updateName(String userId, String name, String newName) {
-        return ProjectDB.updateName(mongo, userId, name, newName);
+        return updatingOfName(userId, name, ProjectDB.updateName(mongo, userId, name, newName));
     }
 
     @Override
     public Future<JsonObject> updateSpec(String userId, String projectName, JsonObject spec) {
-        return ProjectDB.updateSpec(mongo, userId, projectName, spec);
+        return updatingOfName(
+                userId, projectName, ProjectDB.updateSpec(mongo, userId, projectName, spec));
     }
 
     @Override
     public Future<JsonObject> updatePlatform(String deployId, JsonObject platform) {
-        return ProjectDB.updatePlatform(mongo, deployId, platform);
+        return updatingOfDeployId(deployId, ProjectDB.updatePlatform(mongo, deployId, platform));
     }
 
     @Override
     public Future<JsonObject> updateBackendArgs(String deployId, List<String> backendArgs) {
-        return ProjectDB.updateBackendArgs(mongo, deployId, backendArgs);
+        return updatingOfDeployId(
+                deployId, ProjectDB.updateBackendArgs(mongo, deployId, backendArgs));
     }
 
     @Override
     public Future<JsonObject> updatePkgs(String deployId, List<String> pkgs) {
-        return ProjectDB.updatePkgs(mongo, deployId, pkgs);
+        return updatingOfDeployId(deployId, ProjectDB.updatePkgs(mongo, deployId, pkgs));
     }
 
     @Override
     public Future<JsonObject> updateDeployConfsByPath(String deployId, JsonObject updateConfs) {
-        return ProjectDB.updateDeployConfs(mongo, deployId, updateConfs);
+        return updatingOfDeployId(
+                deployId, ProjectDB.updateDeployConfs(mongo, deployId, updateConfs));
+    }
+
+    /** Cached backends of the deploy are stale once its status or epoch changed. */
+    private <T> Future<T> invalidating(String deployId, Future<T> update) {
+        return updatingOfDeployId(deployId, update)
+                .onSuccess(
+                        ret -> {
+                            BackendDirectory.invalidate(vertx, deployId);
+                        });
+    }
+
+    /** Cached projects are dropped before any later stage of the update may read them. */
+    private <T> Future<T> updatingOfDeployId(String deployId, Future<T> update) {
+        return update.onSuccess(
+                ret -> {
+                    projects.invalidateOfDeployId(deployId);
+                });
+    }
+
+    private <T> Future<T> updatingOfName(String userId, String name, Future<T> update) {
+        return update.onSuccess(
+                ret -> {
+                    projects.invalidateOfName(userId, name);
+                });
     }
 
     @Override
     public Future<JsonObject> updateBackendStatus(String deployId, JsonObject updateStatus) {
-        return ProjectDB.updateBackendStatus(mongo, deployId, updateStatus);
+        return invalidating(deployId, ProjectDB.updateBackendStatus(mongo, deployId, updateStatus));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnUndeploy(String deployId) {
-        return ProjectDB.updateBackendStatusOnUndeploy(mongo, deployId);
+        return invalidating(deployId, ProjectDB.updateBackendStatusOnUndeploy(mongo, deployId));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnCreated(String deployId) {
-        return ProjectDB.updateBackendStatusOnCreated(mongo, deployId);
+        return invalidating(deployId, ProjectDB.updateBackendStatusOnCreated(mongo, deployId));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnCreatedWith(
             String deployId, int epoch, BackendState current) {
-        return ProjectDB.updateBackendStatusOnCreated(mongo, deployId, epoch, current);
+        return invalidating(
+                deployId, ProjectDB.updateBackendStatusOnCreated(mongo, deployId, epoch, current));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnUp(String deployId) {
-        return ProjectDB.updateBackendStatusOnUp(mongo, deployId);
+        return invalidating(deployId, ProjectDB.updateBackendStatusOnUp(mongo, deployId));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnUpWith(
             String deployId, int epoch, BackendState current) {
-        return ProjectDB.updateBackendStatusOnUp(mongo, deployId, epoch, current);
+        if (current.equals(BackendState.UP)) {
+            // Only upTime moves, backend directories and liveness tables keep their entries.
+            return updatingOfDeployId(
+                    deployId, ProjectDB.updateBackendStatusOnUp(mongo, deployId, epoch, current));
+        }
+        return invalidating(
+                deployId, ProjectDB.updateBackendStatusOnUp(mongo, deployId, epoch, current));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnDown(String deployId) {
-        return ProjectDB.updateBackendStatusOnDown(mongo, deployId);
+        return invalidating(deployId, ProjectDB.updateBackendStatusOnDown(mongo, deployId));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnDownWith(
             String deployId, int epoch, BackendState current) {
-        return ProjectDB.updateBackendStatusOnDown(mongo, deployId, epoch, current);
+        return invalidating(
+                deployId, ProjectDB.updateBackendStatusOnDown(mongo, deployId, epoch, current));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnFailure(String deployId, String failureMsg) {
-        return ProjectDB.updateBackendStatusOnFailure(mongo, deployId, failureMsg);
+        return invalidating(
+                deployId, ProjectDB.updateBackendStatusOnFailure(mongo, deployId, failureMsg));
     }
 
     @Override
     public Future<JsonObject> updateBackendStatusOnFailureWith(
             String deployId, int epoch, BackendState current, String failureMsg) {
-        return ProjectDB.updateBackendStatusOnFailure(mongo, deployId, epoch, current, failureMsg);
+        return invalidating(
+                deployId,
+                ProjectDB.updateBackendStatusOnFailure(
+                        mongo, deployId, epoch, current, failureMsg));
     }
 
     @Override
     public Future<JsonObject> getOfId(String userId, String projectId) {
-        return ProjectDB.getOfId(mongo, userId, projectId);
+        return projects.getOfId(userId, projectId);
     }
 
     @Override
     public Future<JsonObject> getOfName(String userId, String projectName) {
-        return ProjectDB.getOfName(mongo, userId, projectName);
+        return projects.getOfName(userId, projectName);
     }
 
     @Override
     public Future<JsonObject> getDeploymentOfDeployId(String deployId) {
-        return ProjectDB.getDeployOfDeployId(mongo, deployId);
+        return projects.getDeployOfDeployId(deployId);
     }
 
     @Override
@@ -255,7 +302,7 @@ public class ProjectServiceImpl implements IProjectService {
 
     @Override
     public Future<JsonObject> getBackendStatusOfDeployId(String deployId) {
-        return ProjectDB.getBackendStatus(mongo, deployId);
+        return projects.getBackendStatus(deployId);
     }
 
     @Override
@@ -265,70 +312,111 @@ public class ProjectServiceImpl implements IProjectService {
 
     @Override
     public Future<JsonObject> getSpecOfName(String userId, String name) {
-        return ProjectDB.getSpecOfName(mongo, userId, name);
+        return projects.getSpecOfName(userId, name);
     }
 
     @Override
     public Future<JsonObject> getSpecSchemaOfMetalId(String deployId, String metalId) {
-        return ProjectDB.getDeployOfDeployId(mongo, deployId)
-                .compose(
-                        (JsonObject deploy) -> {
-                            if (deploy == null || deploy.isEmpty()) {
-                                return Future.failedFuture("Fail to get schema, no deploy found.");
-                            }
-                            try {
-                                checkBackendUp(deploy);
-                            } catch (IllegalArgumentException e) {
-                                return Future.failedFuture(e);
-                            }
+        return backends.call(
+                deployId,
+                "get schema",
+                (BackendService backendService) -> {
+                    return backendService.schema(metalId);
+                });
+    }
 
-                            JsonObject address = backendAddress(deploy);
-                            BackendService backendService = BackendService.create(vertx, address);
-                            return backendService.schema(metalId);
-                        });
+    @Override
+    public Future<JsonObject> getSpecSchemasOfDeployId(String deployId, List<String> metalIds) {
+        return backends.call(
+                deployId,
+                "get schemas",
+                (BackendService backendService) -> {
+                    return backendService.schemas(metalIds);
+                });
     }
 
     @Override
-    public Future<JsonObject> heartOfDeployId(String deployId) {
-        return ProjectDB.getDeployOfDeployId(mongo, deployId)
-                .compose(
-                        (JsonObject deploy) -> {
-                            if (deploy == null || deploy.isEmpty()) {
-                                return Future.failedFuture("Fail to get schema, no deploy found.");
-                            }
-                            try {
-                                checkBackendUp(deploy);
-                            } catch (IllegalArgumentException e) {
-                                return Future.failedFuture(e);
-                            }
+    public Future<JsonObject> explainOfMetalId(String deployId, String metalId, String mode) {
+        return backends.call(
+                deployId,
+                "explain",
+                (BackendService backendService) -> {
+                    return backendService.explain(metalId, mode);
+                });
+    }
 
-                            JsonObject address = backendAddress(deploy);
-                            BackendService backendService = BackendService.create(vertx, address);
-                            return backendService.heart();
-                        });
+    @Override
+    public Future<JsonObject> costsOfDeployId(String deployId, int top) {
+        return backends.call(
+                deployId,
+                "get costs",
+                (BackendService backendService) -> {
+                    return backendService.costs(top);
+                });
     }
 
     @Override
-    public Future<JsonObject> getBackendServiceStatusOfDeployId(String deployId) {
-        return ProjectDB.getDeployOfDeployId(mongo, deployId)
+    public Future<JsonObject> collectStatsOfDeployId(
+            String userId, String deployId, List<String> metalIds) {
+        return ProjectDB.isDeployOfUser(mongo, userId, deployId)
                 .compose(
-                        (JsonObject deploy) -> {
-                            if (deploy == null || deploy.isEmpty()) {
-                                return Future.failedFuture("Fail to get schema, no deploy found.");
-                            }
-                            try {
-                                checkBackendUp(deploy);
-                            } catch (IllegalArgumentException e) {
-                                return Future.failedFuture(e);
+                        (Boolean owned) -> {
+                            if (!owned) {
+                                return Future.failedFuture(
+                                        String.format(
+                                                "Fail to collect statistics, deployment[%s] is not found in projects of user.",
+                                                deployId));
                             }
-
-                            JsonObject address = backendAddress(deploy);
-                            BackendService backendService = BackendService.create(vertx, address);
-                            /** TODO */
-                            return backendService.status();
+                            return backends.call(
+                                    deployId,
+                                    "collect statistics",
+                                    (BackendService backendService) -> {
+                                        return backendService.collectStats(metalIds);
+                                    });
                         });
     }
 
+    @Override
+    public Future<Void> putSourceStats(JsonObject stats) {
+        return StatsDB.put(mongo, stats);
+    }
+
+    @Override
+    public Future<JsonObject> getSourceStats(String fingerprint) {
+        return StatsDB.get(mongo, fingerprint);
+    }
+
+    @Override
+    public Future<JsonObject> previewOfMetalId(
+            String deployId, String metalId, int limit, String format) {
+        return backends.call(
+                deployId,
+                "preview",
+                (BackendService backendService) -> {
+                    return backendService.preview(metalId, limit, format);
+                });
+    }
+
+    @Override
+    public Future<JsonObject> heartOfDeployId(String deployId) {
+        return backends.call(
+                deployId,
+                "check heart",
+                (BackendService backendService) -> {
+                    return backendService.heart();
+                });
+    }
+
+    @Override
+    public Future<JsonObject> getBackendServiceStatusOfDeployId(String deployId) {
+        return backends.call(
+                deployId,
+                "get backend status",
+                (BackendService backendService) -> {
+                    return backendService.status();
+                });
+    }
+
     @Override
     public Future<List<JsonObject>> getAllOfUser(String userId) {
         return ProjectDB.getAllOfUser(mongo, userId);
@@ -341,22 +429,34 @@ public class ProjectServiceImpl implements IProjectService {
 
     @Override
     public Future<JsonObject> removeOfId(String userId, String id) {
-        return ProjectDB.removeOfId(mongo, userId, id);
+        return ProjectDB.removeOfId(mongo, userId, id)
+                .onSuccess(
+                        ret -> {
+                            projects.invalidateOfId(id);
+                        });
     }
 
     @Override
     public Future<JsonObject> removeOfName(String userId, String name) {
-        return ProjectDB.removeOfName(mongo, userId, name);
+        return updatingOfName(userId, name, ProjectDB.removeOfName(mongo, userId, name));
     }
 
     @Override
     public Future<JsonObject> removeAllOfUser(String userId) {
-        return ProjectDB.removeAllOfUser(mongo, userId);
+        return ProjectDB.removeAllOfUser(mongo, userId)
+                .onSuccess(
+                        ret -> {
+                            projects.invalidateOfUser(userId);
+                        });
     }
 
     @Override
     public Future<JsonObject> removeAll() {
-        return ProjectDB.removeAll(mongo);
+        return ProjectDB.removeAll(mongo)
+                .onSuccess(
+                        ret -> {
+                            projects.invalidateAll();
+                        });
     }
 
     @Override
@@ -389,8 +489,10 @@ public class ProjectServiceImpl implements IProjectService {
                                 BackendState current =
                                         BackendState.valueOf(lastStatus.getString("current"));
                                 maybeCreatedOrUp(lastStatus);
-                                return ProjectDB.increaseDeployEpoch(
-                                                mongo, deployId, epoch, current)
+                                return invalidating(
+                                                deployId,
+                                                ProjectDB.increaseDeployEpoch(
+                                                        mongo, deployId, epoch, current))
                                         .compose(
                                                 ret -> {
                                                     return getDeploymentOfDeployId(deployId);
@@ -582,8 +684,10 @@ public class ProjectServiceImpl implements IProjectService {
                                 }
                                 String driverId = resp.getString("submissionId");
                                 JsonObject tracer = new JsonObject().put("driverId", driverId);
-                                return ProjectDB.updateBackendStatusTracer(
-                                                mongo, deployId, epoch, tracer)
+                                return updatingOfDeployId(
+                                                deployId,
+                                                ProjectDB.updateBackendStatusTracer(
+                                                        mongo, deployId, epoch, tracer))
                                         .compose(
                                                 ret -> {
                                                     return Future.succeededFuture(resp);
@@ -596,7 +700,7 @@ public class ProjectServiceImpl implements IProjectService {
 
     @Override
     public Future<JsonObject> forceKillBackend(String deployId) {
-        return ProjectDB.getDeployOfDeployId(mongo, deployId)
+        return projects.getDeployOfDeployId(deployId)
                 .compose(
                         (JsonObject deploy) -> {
                             try {
@@ -667,65 +771,45 @@ public class ProjectServiceImpl implements IProjectService {
                         });
     }
 
-    private boolean checkBackendUp(JsonObject deploy) throws IllegalArgumentException {
-        try {
-            JsonObject backend = deploy.getJsonObject(ProjectDB.DEPLOY_BACKEND);
-            JsonObject backendStatus = backend.getJsonObject(ProjectDB.DEPLOY_BACKEND_STATUS);
-            if (backendStatus == null || backendStatus.isEmpty()) {
-                throw new IllegalArgumentException("The backend is not UP.");
-            }
-            BackendState current =
-                    BackendState.valueOf(
-                            backendStatus.getString(ProjectDB.DEPLOY_BACKEND_STATUS_CURRENT));
-            if (!current.equals(BackendState.UP)) {
-                throw new IllegalArgumentException("The backend is not UP.");
-            }
-            return true;
-        } catch (Exception e) {
-            throw new IllegalArgumentException(e);
-        }
-    }
-
-    public static JsonObject backendAddress(JsonObject deploy) {
-        try {
-            JsonObject backend = deploy.getJsonObject(ProjectDB.DEPLOY_BACKEND);
-            Integer epoch = deploy.getInteger(ProjectDB.DEPLOY_EPOCH);
-            String deployId = deploy.getString(ProjectDB.DEPLOY_ID);
-            if (epoch == null) {
-                throw new IllegalArgumentException(
-                        "Fail to get address, the epoch of backend is not existed.");
-            }
-            if (deployId == null || deployId.isBlank()) {
-                throw new IllegalArgumentException(
-                        "Fail to get address, the deploy id of backend is not existed.");
-            }
-            return new JsonObject().put("address", deployId + "-" + epoch);
-        } catch (Exception e) {
-            throw new IllegalArgumentException(e);
-        }
+    @Override
+    public Future<JsonObject> analysis(String userId, String name, JsonObject spec) {
+        return projects.getOfName(userId, name)
+                .compose(
+                        (JsonObject proj) -> {
+                            return analysisSpec(userId, spec, proj, false);
+                        });
     }
 
     @Override
-    public Future<JsonObject> analysis(String userId, String name, JsonObject spec) {
-        return ProjectDB.getOfName(mongo, userId, name)
+    public Future<JsonObject> analysisWithSchemas(String userId, String name, JsonObject spec) {
+        return projects.getOfName(userId, name)
                 .compose(
                         (JsonObject proj) -> {
-                            return analysisSpec(userId, spec, proj);
+                            return analysisSpec(userId, spec, proj, true);
                         });
     }
 
-    private Future<JsonObject> analysisSpec(String userId, JsonObject spec, JsonObject proj) {
+    private Future<JsonObject> analysisSpec(
+            String userId, JsonObject spec, JsonObject proj, boolean withSchemas) {
         try {
             String projectName = proj.getString(ProjectDB.NAME);
             JsonObject deploy = proj.getJsonObject(ProjectDB.DEPLOY);
-            checkBackendUp(deploy);
-            JsonObject address = backendAddress(deploy);
-            return ProjectDB.updateSpec(mongo, userId, projectName, spec)
+            BackendDirectory.checkBackendUp(deploy);
+            BackendDirectory.checkBackendAddress(deploy);
+            return updatingOfName(
+                            userId,
+                            projectName,
+                            ProjectDB.updateSpec(mongo, userId, projectName, spec))
                     .compose(
                             (JsonObject ret) -> {
-                                BackendService backendService =
-                                        BackendService.create(vertx, address);
-                                return backendService.analyse(spec);
+                                return backends.call(
+                                        deploy,
+                                        (BackendService backendService) -> {
+                                            if (withSchemas) {
+                                                return backendService.analyseWithSchemas(spec);
+                                            }
+                                            return backendService.analyse(spec);
+                                        });
                             });
         } catch (Exception e) {
             return Future.failedFuture(e);
@@ -734,21 +818,33 @@ public class ProjectServiceImpl implements IProjectService {
 
     @Override
     public Future<JsonObject> analysisOfId(String userId, String id, JsonObject spec) {
-        return ProjectDB.getOfId(mongo, userId, id)
+        return projects.getOfId(userId, id)
+                .compose(
+                        (JsonObject proj) -> {
+                            return analysisSpec(userId, spec, proj, false);
+                        });
+    }
+
+    @Override
+    public Future<JsonObject> analysisOfIdWithSchemas(String userId, String id, JsonObject spec) {
+        return projects.getOfId(userId, id)
                 .compose(
                         (JsonObject proj) -> {
-                            return analysisSpec(userId, spec, proj);
+                            return analysisSpec(userId, spec, proj, true);
                         });
     }
 
     @Override
     public Future<JsonObject> saveSpecOfId(String userId, String id, JsonObject spec) {
-        return ProjectDB.getOfId(mongo, userId, id)
+        return projects.getOfId(userId, id)
                 .compose(
                         (JsonObject proj) -> {
                             try {
                                 String projectName = proj.getString(ProjectDB.NAME);
-                                return ProjectDB.updateSpec(mongo, userId, projectName, spec);
+                                return updatingOfName(
+                                        userId,
+                                        projectName,
+                                        ProjectDB.updateSpec(mongo, userId, projectName, spec));
                             } catch (Exception e) {
                                 return Future.failedFuture(e);
                             }
@@ -758,20 +854,27 @@ public class ProjectServiceImpl implements IProjectService {
     @Override
     public Future<JsonObject> analysisSubSpecOfId(
             String userId, String id, JsonObject spec, JsonObject subSpec) {
-        return ProjectDB.getOfId(mongo, userId, id)
+        return projects.getOfId(userId, id)
                 .compose(
                         (JsonObject proj) -> {
                             try {
                                 String projectName = proj.getString(ProjectDB.NAME);
                                 JsonObject deploy = proj.getJsonObject(ProjectDB.DEPLOY);
-                                checkBackendUp(deploy);
-                                JsonObject address = backendAddress(deploy);
-                                return ProjectDB.updateSpec(mongo, userId, projectName, spec)
+                                BackendDirectory.checkBackendUp(deploy);
+                                BackendDirectory.checkBackendAddress(deploy);
+                                return updatingOfName(
+                                                userId,
+                                                projectName,
+                                                ProjectDB.updateSpec(
+                                                        mongo, userId, projectName, spec))
                                         .compose(
                                                 (JsonObject ret) -> {
-                                                    BackendService backendService =
-                                                            BackendService.create(vertx, address);
-                                                    return backendService.analyse(subSpec);
+                                                    return backends.call(
+                                                            deploy,
+                                                            (BackendService backendService) -> {
+                                                                return backendService.analyse(
+                                                                        subSpec);
+                                                            });
                                                 });
                             } catch (Exception e) {
                                 return Future.failedFuture(e);
@@ -781,7 +884,7 @@ public class ProjectServiceImpl implements IProjectService {
 
     @Override
     public Future<JsonObject> exec(String userId, String name) {
-        return ProjectDB.getOfName(mongo, userId, name)
+        return projects.getOfName(userId, name)
                 .compose(
                         (JsonObject proj) -> {
                             return execProject(userId, proj);
@@ -790,28 +893,52 @@ public class ProjectServiceImpl implements IProjectService {
 
     @Override
     public Future<JsonObject> execOfId(String userId, String id) {
-        return ProjectDB.getOfId(mongo, userId, id)
+        return projects.getOfId(userId, id)
                 .compose(
                         (JsonObject proj) -> {
                             return execProject(userId, proj);
                         });
     }
 
+    @Override
+    public Future<JsonObject> execSinks(String userId, String name, List<String> sinks) {
+        return projects.getOfName(userId, name)
+                .compose(
+                        (JsonObject proj) -> {
+                            return execProject(userId, proj, sinks);
+                        });
+    }
+
+    @Override
+    public Future<JsonObject> execSinksOfId(String userId, String id, List<String> sinks) {
+        return projects.getOfId(userId, id)
+                .compose(
+                        (JsonObject proj) -> {
+                            return execProject(userId, proj, sinks);
+                        });
+    }
+
     private Future<JsonObject> execProject(String userId, JsonObject proj) {
+        return execProject(userId, proj, new ArrayList<>());
+    }
+
+    /** Only the given sinks and sinks they wait for will run, all sinks if sinks is empty. */
+    private Future<JsonObject> execProject(String userId, JsonObject proj, List<String> sinks) {
         try {
             JsonObject deploy = proj.getJsonObject(ProjectDB.DEPLOY);
-            checkBackendUp(deploy);
-            JsonObject address = backendAddress(deploy);
+            BackendDirectory.checkBackendUp(deploy);
+            BackendDirectory.checkBackendAddress(deploy);
             return execService
                     .add(userId, proj)
                     .compose(
                             (String execId) -> {
-                                BackendService backendService =
-                                        BackendService.create(vertx, address);
                                 JsonObject execArgs = new JsonObject();
-                                execArgs.put("id", execId);
-                                return backendService
-                                        .exec(execArgs)
+                                execArgs.put("id", execId).put("sinks", new JsonArray(sinks));
+                                return backends.call(
+                                                deploy,
+                                                (BackendService backendService) -> {
+                                                    return backendService.exec(execArgs);
+                                                })
                                         .compose(
                                                 r -> {
                                                     return Future.succeededFuture(
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.project.service;
+
+import org.metal.server.util.JsonKeyReplacer;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.UpdateOptions;
+
+/** Statistics of sources, shared by all deployments reading the same files. */
+public class StatsDB {
+
+    public static final String DB = "stats";
+    public static final String FIELD_ID = "_id";
+    public static final String FIELD_FINGERPRINT = "fingerprint";
+    public static final String FIELD_COLUMNS = "columns";
+    public static final String FIELD_COLLECT_TIME = "collectTime";
+
+    /** The latest statistics of one fingerprint win, columns may have any name. */
+    public static Future<Void> put(MongoClient mongo, JsonObject stats) {
+        String fingerprint = stats.getString(FIELD_FINGERPRINT);
+        JsonObject doc = stats.copy();
+        JsonObject columns = doc.getJsonObject(FIELD_COLUMNS);
+        if (columns != null) {
+            doc.put(FIELD_COLUMNS, JsonKeyReplacer.compatBson(columns));
+        }
+        doc.put(FIELD_ID, fingerprint);
+        return mongo.replaceDocumentsWithOptions(
+                        DB,
+                        new JsonObject().put(FIELD_ID, fingerprint),
+                        doc,
+                        new UpdateOptions().setUpsert(true))
+                .mapEmpty();
+    }
+
+    public static Future<JsonObject> get(MongoClient mongo, String fingerprint) {
+        return mongo.findOne(DB, new JsonObject().put(FIELD_ID, fingerprint), new JsonObject())
+                .compose(
+                        (JsonObject stats) -> {
+                            if (stats == null || stats.isEmpty()) {
+                                return Future.succeededFuture(new JsonObject());
+                            }
+                            stats.remove(FIELD_ID);
+                            JsonObject columns = stats.getJsonObject(FIELD_COLUMNS);
+                            if (columns != null) {
+                                stats.put(FIELD_COLUMNS, JsonKeyReplacer.compatJson(columns));
+                            }
+                            return Future.succeededFuture(stats);
+                        });
+    }
+}
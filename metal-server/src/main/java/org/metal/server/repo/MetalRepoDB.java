@@ -33,6 +33,7 @@ public class MetalRepoDB {
         SOURCE,
         MAPPER,
         FUSION,
+        SPLITTER,
         SINK,
         SETUP
     }
@@ -142,6 +143,16 @@ public class MetalRepoDB {
                         })
                 .forEach(operations::add);
 
+        // Manifests built before splitters existed don't list any.
+        JsonArray splitters = manifest.getJsonArray("splitters", new JsonArray());
+        splitters.stream()
+                .map(obj -> (JsonObject) obj)
+                .map(
+                        (JsonObject metalRaw) -> {
+                            return wrapBulkOperation(metalRaw, userId, MetalType.SPLITTER, scope);
+                        })
+                .forEach(operations::add);
+
         JsonArray sinks = manifest.getJsonArray("sinks");
         sinks.stream()
                 .map(obj -> (JsonObject) obj)
@@ -80,7 +80,8 @@ public class MetalRepoServiceImpl implements IMetalRepoService {
     }
 
     private boolean checkManifest(JsonObject manifest) throws IllegalArgumentException {
-        String[] metalTypes = new String[] {"sources", "mappers", "fusions", "sinks", "setups"};
+        String[] metalTypes =
+                new String[] {"sources", "mappers", "fusions", "splitters", "sinks", "setups"};
 
         for (String metalType : metalTypes) {
             JsonArray metals = manifest.getJsonArray(metalType, new JsonArray());
@@ -27,6 +27,7 @@ import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
 import io.vertx.serviceproxy.ServiceBinder;
 
 public class BackendReport extends AbstractVerticle {
@@ -43,6 +44,8 @@ public class BackendReport extends AbstractVerticle {
     public static final String BACKEND_REPORT_SERVICE_CONF = "backendReportService";
     public static final String BACKEND_REPORT_SERVICE_ADDRESS_CONF = "address";
 
+    private MongoClient mongo;
+    private Liveness liveness;
     private ExecService execService;
     private IProjectService projectService;
     private BackendReportService report;
@@ -69,6 +72,7 @@ public class BackendReport extends AbstractVerticle {
                 .getConfig()
                 .compose(
                         (JsonObject conf) -> {
+                            JsonObject mongoConf = conf.getJsonObject(MONGO_CONF);
                             JsonObject backendReportConf = conf.getJsonObject(BACKEND_REPORT_CONF);
                             JsonObject execServiceConf =
                                     backendReportConf.getJsonObject(EXEC_SERVICE_CONF);
@@ -80,6 +84,12 @@ public class BackendReport extends AbstractVerticle {
                                     backendReportServiceConf.getString(
                                             BACKEND_REPORT_SERVICE_ADDRESS_CONF);
 
+                            if (mongoConf == null) {
+                                return Future.failedFuture(
+                                        String.format(
+                                                "%s is not configured in %s.",
+                                                MONGO_CONF, CONF_METAL_SERVER_PATH));
+                            }
                             if (execServiceConf == null) {
                                 return Future.failedFuture(
                                         String.format(
@@ -111,7 +121,11 @@ public class BackendReport extends AbstractVerticle {
 
                             execService = ExecService.create(getVertx(), execServiceConf);
                             projectService = IProjectService.create(getVertx(), projectServiceConf);
-                            report = new BackendReportServiceImpl(execService, projectService);
+                            mongo = MongoClient.createShared(getVertx(), mongoConf);
+                            liveness = Liveness.create(getVertx(), mongo, backendReportConf);
+                            report =
+                                    new BackendReportServiceImpl(
+                                            execService, projectService, liveness);
                             ServiceBinder binder = new ServiceBinder(getVertx());
                             binder.setAddress(backendReportServiceAddress);
                             consumer = binder.register(BackendReportService.class, report);
@@ -131,6 +145,14 @@ public class BackendReport extends AbstractVerticle {
     @Override
     public void stop(Promise<Void> stopPromise) throws Exception {
         consumer.unregister()
+                .compose(
+                        ret -> {
+                            return liveness.close();
+                        })
+                .compose(
+                        ret -> {
+                            return mongo.close();
+                        })
                 .onSuccess(
                         ret -> {
                             stopPromise.complete();
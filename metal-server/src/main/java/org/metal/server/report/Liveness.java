@@ -0,0 +1,260 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.report;
+
+import org.metal.server.project.service.BackendDirectory;
+import org.metal.server.project.service.ProjectCache;
+import org.metal.server.project.service.ProjectDB;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory liveness of backends already known UP. Their heartbeats only touch this table, upTime
+ * is flushed to mongo in one bulk write per flush interval, which drops those deploys from project
+ * caches, and one hashed timing wheel finds the backends not beating any more.
+ *
+ * <p>All methods run on the event loop of the verticle creating it.
+ */
+public class Liveness {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Liveness.class);
+
+    public static final String CONF = "liveness";
+    public static final String STALE_ADDRESS = "metal.server.backend.liveness.stale";
+    public static final long DEFAULT_FLUSH_INTERVAL = 5000L;
+    public static final long DEFAULT_TICK = 1000L;
+    public static final int DEFAULT_WHEEL_SIZE = 64;
+    public static final long DEFAULT_STALE_AFTER = 30000L;
+
+    private static class Beat {
+        private final String deployId;
+        private final int epoch;
+        private long lastBeat;
+
+        private Beat(String deployId, int epoch, long lastBeat) {
+            this.deployId = deployId;
+            this.epoch = epoch;
+            this.lastBeat = lastBeat;
+        }
+
+        private JsonObject toJson() {
+            return new JsonObject()
+                    .put("deployId", deployId)
+                    .put("epoch", epoch)
+                    .put("upTime", lastBeat);
+        }
+    }
+
+    /** Hashed timing wheel, one bucket is expired per tick whatever the number of beats. */
+    static class TimingWheel<T> {
+
+        private static class Timeout<T> {
+            private final T task;
+            private long rounds;
+
+            private Timeout(T task, long rounds) {
+                this.task = task;
+                this.rounds = rounds;
+            }
+        }
+
+        private final List<ArrayDeque<Timeout<T>>> buckets;
+        private final long tick;
+        private int cursor = 0;
+
+        TimingWheel(int size, long tick) {
+            this.buckets = new ArrayList<>(size);
+            for (int idx = 0; idx < size; idx++) {
+                buckets.add(new ArrayDeque<>());
+            }
+            this.tick = tick;
+        }
+
+        void schedule(T task, long delay) {
+            long ticks = Math.max(1L, (delay + tick - 1) / tick);
+            int size = buckets.size();
+            int bucket = (int) ((cursor + ticks) % size);
+            buckets.get(bucket).add(new Timeout<>(task, (ticks - 1) / size));
+        }
+
+        List<T> advance() {
+            cursor = (cursor + 1) % buckets.size();
+            List<T> expired = new ArrayList<>();
+            Iterator<Timeout<T>> iterator = buckets.get(cursor).iterator();
+            while (iterator.hasNext()) {
+                Timeout<T> timeout = iterator.next();
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                    continue;
+                }
+                iterator.remove();
+                expired.add(timeout.task);
+            }
+            return expired;
+        }
+    }
+
+    private Vertx vertx;
+    private MongoClient mongo;
+    private long staleAfter;
+    private Map<String, Beat> beats = new HashMap<>();
+    private Map<String, Beat> dirty = new HashMap<>();
+    private TimingWheel<Beat> wheel;
+    private long flushTimerID;
+    private long tickTimerID;
+    private boolean flushing = false;
+    private MessageConsumer<JsonObject> consumer;
+
+    private Liveness(Vertx vertx, MongoClient mongo, JsonObject conf) {
+        this.vertx = vertx;
+        this.mongo = mongo;
+        this.staleAfter = conf.getLong("staleAfter", DEFAULT_STALE_AFTER);
+        long tick = conf.getLong("tick", DEFAULT_TICK);
+        this.wheel = new TimingWheel<>(conf.getInteger("wheelSize", DEFAULT_WHEEL_SIZE), tick);
+        this.tickTimerID = vertx.setPeriodic(tick, this::expire);
+        this.flushTimerID =
+                vertx.setPeriodic(
+                        conf.getLong("flushInterval", DEFAULT_FLUSH_INTERVAL),
+                        (ID) -> {
+                            flush();
+                        });
+        // Any status switch elsewhere, e.g. marked failure by Detector, has to be checked again.
+        this.consumer =
+                vertx.eventBus()
+                        .consumer(
+                                BackendDirectory.INVALIDATE_ADDRESS,
+                                (Message<JsonObject> message) -> {
+                                    String deployId = message.body().getString("deployId");
+                                    if (deployId != null) {
+                                        drop(deployId);
+                                    }
+                                });
+    }
+
+    /** The conf is the backendReport conf, defaults if absent. */
+    public static Liveness create(Vertx vertx, MongoClient mongo, JsonObject conf) {
+        return new Liveness(
+                vertx,
+                mongo,
+                conf == null ? new JsonObject() : conf.getJsonObject(CONF, new JsonObject()));
+    }
+
+    /** Return false if the backend isn't known UP in the epoch, it must be checked in mongo. */
+    public boolean beat(String deployId, int epoch) {
+        Beat beat = beats.get(deployId);
+        if (beat == null || beat.epoch != epoch) {
+            return false;
+        }
+        beat.lastBeat = ProjectDB.getTime();
+        dirty.put(deployId, beat);
+        return true;
+    }
+
+    /** The backend has been checked and switched UP in mongo. */
+    public void up(String deployId, int epoch) {
+        Beat beat = new Beat(deployId, epoch, ProjectDB.getTime());
+        beats.put(deployId, beat);
+        wheel.schedule(beat, staleAfter);
+    }
+
+    public void drop(String deployId) {
+        beats.remove(deployId);
+        dirty.remove(deployId);
+    }
+
+    private void expire(long ID) {
+        long now = ProjectDB.getTime();
+        for (Beat beat : wheel.advance()) {
+            if (beats.get(beat.deployId) != beat) {
+                continue;
+            }
+            long elapsed = now - beat.lastBeat;
+            if (elapsed < staleAfter) {
+                wheel.schedule(beat, staleAfter - elapsed);
+                continue;
+            }
+            beats.remove(beat.deployId);
+            LOGGER.info(
+                    String.format(
+                            "Backend[%s-%d] has no heartbeat in %d ms.",
+                            beat.deployId, beat.epoch, elapsed));
+            vertx.eventBus().publish(STALE_ADDRESS, beat.toJson());
+        }
+    }
+
+    private Future<Void> flush() {
+        if (flushing || dirty.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        List<JsonObject> flushed = new ArrayList<>(dirty.size());
+        for (Beat beat : dirty.values()) {
+            flushed.add(beat.toJson());
+        }
+        Map<String, Beat> pending = dirty;
+        dirty = new HashMap<>();
+        flushing = true;
+        return ProjectDB.updateBackendUpTimes(mongo, flushed)
+                .onSuccess(
+                        ret -> {
+                            LOGGER.debug(
+                                    String.format(
+                                            "Success to flush upTime of %d backends.",
+                                            flushed.size()));
+                        })
+                .onFailure(
+                        error -> {
+                            LOGGER.error(
+                                    String.format(
+                                            "Fail to flush upTime of %d backends.", flushed.size()),
+                                    error);
+                            for (Map.Entry<String, Beat> kv : pending.entrySet()) {
+                                if (beats.get(kv.getKey()) == kv.getValue()) {
+                                    dirty.putIfAbsent(kv.getKey(), kv.getValue());
+                                }
+                            }
+                        })
+                .onComplete(
+                        ret -> {
+                            flushing = false;
+                            // Even one failed bulk may have written some upTimes.
+                            ProjectCache.invalidateOfDeployIds(
+                                    vertx, new ArrayList<>(pending.keySet()));
+                        })
+                .<Void>mapEmpty()
+                .otherwiseEmpty();
+    }
+
+    /** Flush the last beats, mongo must not be closed before it completes. */
+    public Future<Void> close() {
+        vertx.cancelTimer(tickTimerID);
+        vertx.cancelTimer(flushTimerID);
+        consumer.unregister();
+        return flush();
+    }
+}
@@ -20,10 +20,12 @@ import org.metal.server.api.BackendState;
 import org.metal.server.api.ExecState;
 import org.metal.server.exec.ExecService;
 import org.metal.server.project.service.IProjectService;
+import org.metal.server.report.Liveness;
 
 import io.vertx.core.Future;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 public class BackendReportServiceImpl implements BackendReportService {
@@ -32,10 +34,13 @@ public class BackendReportServiceImpl implements BackendReportService {
 
     private ExecService execService;
     private IProjectService projectService;
+    private Liveness liveness;
 
-    public BackendReportServiceImpl(ExecService execService, IProjectService projectService) {
+    public BackendReportServiceImpl(
+            ExecService execService, IProjectService projectService, Liveness liveness) {
         this.execService = execService;
         this.projectService = projectService;
+        this.liveness = liveness;
     }
 
     @Override
@@ -54,31 +59,19 @@ public class BackendReportServiceImpl implements BackendReportService {
         String deployId = submit.getString("deployId");
         int epoch = submit.getInteger("epoch");
         long submitTime = submit.getLong(timeName);
+        JsonArray sinks = null;
+        try {
+            sinks = submit.getJsonArray("sinks");
+        } catch (ClassCastException e) {
+            return Future.failedFuture(new IllegalArgumentException(e));
+        }
 
-        return execService
-                .getStatus(execId)
-                .compose(
-                        (JsonObject lastStatus) -> {
-                            try {
-                                maybeEpochIllegal(deployId, epoch, lastStatus);
-                            } catch (Exception e) {
-                                return Future.failedFuture(e);
-                            }
-
-                            ExecState lastState = ExecState.valueOf(lastStatus.getString("status"));
-                            if (!lastState.equals(ExecState.CREATE)) {
-                                String msg =
-                                        String.format(
-                                                "The status of exec can\'t switch from %s to %s.",
-                                                lastState.toString(), ExecState.SUBMIT.toString());
-                                return Future.failedFuture(msg);
-                            }
-
-                            JsonObject update = new JsonObject();
-                            update.put("status", ExecState.SUBMIT.toString())
-                                    .put(timeName, submitTime);
-                            return execService.updateStatus(execId, update);
-                        });
+        JsonObject update = new JsonObject();
+        update.put("status", ExecState.SUBMIT.toString()).put(timeName, submitTime);
+        if (sinks != null) {
+            update.put("sinks", sinks);
+        }
+        return transit(execId, deployId, epoch, update);
     }
 
     private static boolean checkBackendStatus(JsonObject report, BackendState expect)
@@ -208,31 +201,9 @@ public class BackendReportServiceImpl implements BackendReportService {
         int epoch = running.getInteger("epoch");
         long beatTime = running.getLong(timeName);
 
-        return execService
-                .getStatus(execId)
-                .compose(
-                        (JsonObject lastStatus) -> {
-                            try {
-                                maybeEpochIllegal(deployId, epoch, lastStatus);
-                            } catch (Exception e) {
-                                return Future.failedFuture(e);
-                            }
-
-                            ExecState lastState = ExecState.valueOf(lastStatus.getString("status"));
-                            if (lastState.equals(ExecState.FAILURE)
-                                    || lastState.equals(ExecState.FINISH)) {
-                                String msg =
-                                        String.format(
-                                                "The status of exec is %s and terminated.",
-                                                lastState.toString());
-                                return Future.failedFuture(msg);
-                            }
-
-                            JsonObject update = new JsonObject();
-                            update.put("status", ExecState.RUNNING.toString())
-                                    .put(timeName, beatTime);
-                            return execService.updateStatus(execId, update);
-                        });
+        JsonObject update = new JsonObject();
+        update.put("status", ExecState.RUNNING.toString()).put(timeName, beatTime);
+        return transit(execId, deployId, epoch, update);
     }
 
     @Override
@@ -251,32 +222,19 @@ public class BackendReportServiceImpl implements BackendReportService {
         String deployId = finish.getString("deployId");
         int epoch = finish.getInteger("epoch");
         long finishTime = finish.getLong(timeName);
+        JsonArray sinks = null;
+        try {
+            sinks = finish.getJsonArray("sinks");
+        } catch (ClassCastException e) {
+            return Future.failedFuture(new IllegalArgumentException(e));
+        }
 
-        return execService
-                .getStatus(execId)
-                .compose(
-                        (JsonObject lastStatus) -> {
-                            try {
-                                maybeEpochIllegal(deployId, epoch, lastStatus);
-                            } catch (Exception e) {
-                                return Future.failedFuture(e);
-                            }
-
-                            ExecState lastState = ExecState.valueOf(lastStatus.getString("status"));
-                            if (lastState.equals(ExecState.FAILURE)
-                                    || lastState.equals(ExecState.FINISH)) {
-                                String msg =
-                                        String.format(
-                                                "The status of exec is %s and terminated.",
-                                                lastState.toString());
-                                return Future.failedFuture(msg);
-                            }
-
-                            JsonObject update = new JsonObject();
-                            update.put("status", ExecState.FINISH.toString())
-                                    .put(timeName, finishTime);
-                            return execService.updateStatus(execId, update);
-                        });
+        JsonObject update = new JsonObject();
+        update.put("status", ExecState.FINISH.toString()).put(timeName, finishTime);
+        if (sinks != null) {
+            update.put("sinks", sinks);
+        }
+        return transit(execId, deployId, epoch, update);
     }
 
     @Override
@@ -296,6 +254,42 @@ public class BackendReportServiceImpl implements BackendReportService {
         int epoch = failure.getInteger("epoch");
         long terminateTime = failure.getLong(timeName);
         String failureMsg = failure.getString("msg");
+        JsonArray sinks = null;
+        try {
+            sinks = failure.getJsonArray("sinks");
+        } catch (ClassCastException e) {
+            return Future.failedFuture(new IllegalArgumentException(e));
+        }
+
+        JsonObject update = new JsonObject();
+        update.put("status", ExecState.FAILURE.toString())
+                .put(timeName, terminateTime)
+                .put("msg", failureMsg);
+        if (sinks != null) {
+            update.put("sinks", sinks);
+        }
+        return transit(execId, deployId, epoch, update);
+    }
+
+    @Override
+    public Future<Void> reportExecProgress(JsonObject progress) {
+        String timeName = "progressTime";
+        try {
+            checkExecReport(progress);
+            checkTime(progress, timeName);
+            if (progress.getJsonObject("progress") == null) {
+                throw new IllegalArgumentException(
+                        String.format("The parameter %s lost progress.", progress.toString()));
+            }
+        } catch (IllegalArgumentException | ClassCastException e) {
+            return Future.failedFuture(e);
+        }
+
+        String execId = progress.getString("id");
+        String deployId = progress.getString("deployId");
+        int epoch = progress.getInteger("epoch");
+        long progressTime = progress.getLong(timeName);
+        JsonObject execProgress = progress.getJsonObject("progress");
 
         return execService
                 .getStatus(execId)
@@ -307,24 +301,30 @@ public class BackendReportServiceImpl implements BackendReportService {
                                 return Future.failedFuture(e);
                             }
 
-                            ExecState lastState = ExecState.valueOf(lastStatus.getString("status"));
-                            if (lastState.equals(ExecState.FAILURE)
-                                    || lastState.equals(ExecState.FINISH)) {
-                                String msg =
-                                        String.format(
-                                                "The status of exec is %s and terminated.",
-                                                lastState.toString());
-                                return Future.failedFuture(msg);
-                            }
-
-                            JsonObject update = new JsonObject();
-                            update.put("status", ExecState.FAILURE.toString())
-                                    .put(timeName, terminateTime)
-                                    .put("msg", failureMsg);
-                            return execService.updateStatus(execId, update);
+                            // The last progress of one exec may arrive after it has terminated.
+                            return execService.updateProgress(execId, execProgress, progressTime);
                         });
     }
 
+    @Override
+    public Future<Void> reportSourceStats(JsonObject stats) {
+        try {
+            if (stats.getString("fingerprint") == null) {
+                throw new IllegalArgumentException(
+                        String.format("The parameter %s lost fingerprint.", stats.toString()));
+            }
+            checkTime(stats, "collectTime");
+        } catch (IllegalArgumentException | ClassCastException e) {
+            return Future.failedFuture(e);
+        }
+        return projectService.putSourceStats(stats);
+    }
+
+    @Override
+    public Future<JsonObject> getSourceStats(String fingerprint) {
+        return projectService.getSourceStats(fingerprint);
+    }
+
     @Override
     public Future<Void> reportBackendUp(JsonObject up) {
         String timeName = "upTime";
@@ -340,6 +340,10 @@ public class BackendReportServiceImpl implements BackendReportService {
         int epoch = up.getInteger("epoch");
         long upTime = up.getLong(timeName);
 
+        if (liveness.beat(deployId, epoch)) {
+            return Future.succeededFuture();
+        }
+
         return projectService
                 .getBackendStatusOfDeployId(deployId)
                 .compose(
@@ -354,6 +358,7 @@ public class BackendReportServiceImpl implements BackendReportService {
                                         .updateBackendStatusOnUpWith(deployId, epoch, current)
                                         .compose(
                                                 ret -> {
+                                                    liveness.up(deployId, epoch);
                                                     LOGGER.info(
                                                             String.format(
                                                                     "Backend[%s-%d] has up.",
@@ -384,6 +389,7 @@ public class BackendReportServiceImpl implements BackendReportService {
         String deployId = down.getString("deployId");
         int epoch = down.getInteger("epoch");
         long downTime = down.getLong(timeName);
+        liveness.drop(deployId);
 
         return projectService
                 .getBackendStatusOfDeployId(deployId)
@@ -426,6 +432,7 @@ public class BackendReportServiceImpl implements BackendReportService {
         int epoch = failure.getInteger("epoch");
         long failureTime = failure.getLong(timeName);
         String failureMsg = failure.getString("msg");
+        liveness.drop(deployId);
 
         return projectService
                 .getBackendStatusOfDeployId(deployId)
@@ -455,6 +462,42 @@ public class BackendReportServiceImpl implements BackendReportService {
                         });
     }
 
+    /**
+     * The epoch and status checks are done by the filter of one update, the current status is only
+     * read back to explain a rejected report.
+     */
+    private Future<Void> transit(String execId, String deployId, int epoch, JsonObject update) {
+        ExecState state = ExecState.valueOf(update.getString("status"));
+        return execService
+                .transitStatus(execId, epoch, update)
+                .compose(
+                        (JsonObject transition) -> {
+                            if (transition.getBoolean("matched", false)) {
+                                return Future.succeededFuture();
+                            }
+                            try {
+                                maybeEpochIllegal(deployId, epoch, transition);
+                            } catch (Exception e) {
+                                return Future.failedFuture(e);
+                            }
+
+                            ExecState lastState = ExecState.valueOf(transition.getString("status"));
+                            if (lastState.equals(ExecState.FAILURE)
+                                    || lastState.equals(ExecState.FINISH)) {
+                                String msg =
+                                        String.format(
+                                                "The status of exec is %s and terminated.",
+                                                lastState.toString());
+                                return Future.failedFuture(msg);
+                            }
+                            String msg =
+                                    String.format(
+                                            "The status of exec can\'t switch from %s to %s.",
+                                            lastState.toString(), state.toString());
+                            return Future.failedFuture(msg);
+                        });
+    }
+
     private static void maybeEpochIllegal(String deployId, int epoch, JsonObject lastStatus)
             throws Exception {
         int lastEpoch = lastStatus.getInteger("epoch");
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.util;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.function.Function;
+
+/**
+ * Send one page of documents as {"status":"OK","data":[...],"next":cursor} while reading them, so
+ * no page is buffered in the gateway. The read stream is paused whenever the response write queue
+ * is full. The cursor is the last "_id" of the page, null if no more pages.
+ */
+public class SendJsonStream {
+
+    public static final String FIELD_ID = "_id";
+    public static final String PARAM_AFTER = "after";
+    public static final String PARAM_LIMIT = "limit";
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+    public static final int MAX_PAGE_LIMIT = 1000;
+
+    public static boolean isLimit(String limit) {
+        if (limit == null) {
+            return true;
+        }
+        try {
+            int value = Integer.parseInt(limit);
+            return value > 0 && value <= MAX_PAGE_LIMIT;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public static int limitOf(String limit) {
+        return limit == null ? DEFAULT_PAGE_LIMIT : Integer.parseInt(limit);
+    }
+
+    public static void send(
+            RoutingContext ctx,
+            ReadStream<JsonObject> stream,
+            int limit,
+            Function<JsonObject, JsonObject> map,
+            Logger logger) {
+        HttpServerResponse response = ctx.response();
+        Page page = new Page();
+
+        response.closeHandler(
+                v -> {
+                    if (!page.ended) {
+                        page.ended = true;
+                        stream.handler(null);
+                    }
+                });
+
+        stream.handler(
+                        (JsonObject doc) -> {
+                            if (page.ended) {
+                                return;
+                            }
+                            page.last = doc.getValue(FIELD_ID);
+                            Buffer buffer = Buffer.buffer();
+                            if (page.count == 0) {
+                                response.setStatusCode(200)
+                                        .setChunked(true)
+                                        .putHeader("content-type", ctx.getAcceptableContentType());
+                                buffer.appendString("{\"status\":\"OK\",\"data\":[");
+                            } else {
+                                buffer.appendString(",");
+                            }
+                            buffer.appendString(map.apply(doc).encode());
+                            page.count++;
+                            response.write(buffer);
+                            if (response.writeQueueFull()) {
+                                stream.pause();
+                                response.drainHandler(
+                                        drained -> {
+                                            stream.resume();
+                                        });
+                            }
+                        })
+                .endHandler(
+                        v -> {
+                            if (page.ended) {
+                                return;
+                            }
+                            page.ended = true;
+                            Object next = page.count < limit ? null : page.last;
+                            if (page.count == 0) {
+                                SendJson.send(
+                                        ctx,
+                                        new JsonObject()
+                                                .put("status", "OK")
+                                                .put("data", new JsonArray())
+                                                .putNull("next"));
+                                return;
+                            }
+                            response.end("],\"next\":" + Json.encode(next) + "}");
+                        })
+                .exceptionHandler(
+                        error -> {
+                            logger.error(error);
+                            if (page.ended) {
+                                return;
+                            }
+                            page.ended = true;
+                            if (page.count == 0) {
+                                JsonObject resp = new JsonObject();
+                                resp.put("status", "FAIL").put("msg", error.getLocalizedMessage());
+                                SendJson.send(ctx, resp, 500);
+                            } else {
+                                // Status has been sent, the only way to tell client is breaking
+                                // the truncated body.
+                                response.reset();
+                            }
+                        });
+    }
+
+    private static class Page {
+        private long count = 0L;
+        private Object last;
+        private boolean ended = false;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.auth;
+
+import org.metal.server.user.UserDB;
+
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.authorization.RoleBasedAuthorization;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AttachRolesTest {
+
+    /** Every findOne waits for the test to complete it. */
+    private static class Loads {
+
+        private final List<Promise<JsonObject>> pending = new ArrayList<>();
+
+        private MongoClient client() {
+            return (MongoClient)
+                    Proxy.newProxyInstance(
+                            MongoClient.class.getClassLoader(),
+                            new Class<?>[] {MongoClient.class},
+                            (proxy, method, args) -> {
+                                if ("findOne".equals(method.getName())) {
+                                    Promise<JsonObject> promise = Promise.promise();
+                                    pending.add(promise);
+                                    return promise.future();
+                                }
+                                throw new UnsupportedOperationException(method.getName());
+                            });
+        }
+
+        private void complete(int idx, String... roles) {
+            JsonArray array = new JsonArray();
+            for (String role : roles) {
+                array.add(role);
+            }
+            pending.get(idx).complete(new JsonObject().put(UserDB.FIELD_ROLES, array));
+        }
+    }
+
+    private static User user(String userId) {
+        return User.create(new JsonObject().put(UserDB.FIELD_ID, userId));
+    }
+
+    private static boolean hasRole(User user, String role) {
+        return RoleBasedAuthorization.create(role).match(user);
+    }
+
+    @org.junit.Test
+    public void rolesAreCachedOfUserId() {
+        Loads loads = new Loads();
+        AttachRoles attachRoles = AttachRoles.create(loads.client());
+
+        attachRoles.roles(user("u-0"));
+        loads.complete(0, "user");
+
+        User user = user("u-0");
+        assertTrue(attachRoles.roles(user).succeeded());
+        assertTrue(hasRole(user, "user"));
+        assertEquals(1, loads.pending.size());
+    }
+
+    @org.junit.Test
+    public void claimedRolesNeedNoLoad() {
+        Loads loads = new Loads();
+        AttachRoles attachRoles = AttachRoles.create(loads.client());
+
+        User user =
+                User.create(
+                        new JsonObject()
+                                .put(UserDB.FIELD_ID, "u-0")
+                                .put(AttachRoles.ROLES_CLAIM, new JsonArray().add("admin")));
+        assertTrue(attachRoles.roles(user).succeeded());
+        assertTrue(hasRole(user, "admin"));
+        assertTrue(loads.pending.isEmpty());
+    }
+
+    @org.junit.Test
+    public void invalidateDuringLoadPreventsPut() {
+        Loads loads = new Loads();
+        AttachRoles attachRoles = AttachRoles.create(loads.client());
+
+        attachRoles.roles(user("u-0"));
+        attachRoles.invalidate("u-0");
+        loads.complete(0, "admin");
+
+        User user = user("u-0");
+        attachRoles.roles(user);
+        assertEquals(2, loads.pending.size());
+        loads.complete(1, "user");
+        assertTrue(hasRole(user, "user"));
+        assertFalse(hasRole(user, "admin"));
+    }
+
+    @org.junit.Test
+    public void invalidateOfOtherUserKeepsPut() {
+        Loads loads = new Loads();
+        AttachRoles attachRoles = AttachRoles.create(loads.client());
+
+        attachRoles.roles(user("u-0"));
+        attachRoles.invalidate("u-1");
+        loads.complete(0, "user");
+
+        attachRoles.roles(user("u-0"));
+        assertEquals(1, loads.pending.size());
+    }
+
+    @org.junit.Test
+    public void loadStartedAfterInvalidateIsCached() {
+        Loads loads = new Loads();
+        AttachRoles attachRoles = AttachRoles.create(loads.client());
+
+        attachRoles.roles(user("u-0"));
+        attachRoles.invalidate("u-0");
+        attachRoles.roles(user("u-0"));
+        loads.complete(1, "user");
+        loads.complete(0, "admin");
+
+        User user = user("u-0");
+        assertTrue(attachRoles.roles(user).succeeded());
+        assertEquals(2, loads.pending.size());
+        assertTrue(hasRole(user, "user"));
+        assertFalse(hasRole(user, "admin"));
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.exec;
+
+import org.metal.server.api.ExecState;
+import org.metal.server.project.service.ProjectDB;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecDBTest {
+
+    /** Holds one exec, and matches by equality, $in and $nin on dotted paths. */
+    private static class OneExec {
+
+        private final JsonObject exec;
+
+        private OneExec(JsonObject exec) {
+            this.exec = exec;
+        }
+
+        private MongoClient client() {
+            return (MongoClient)
+                    Proxy.newProxyInstance(
+                            MongoClient.class.getClassLoader(),
+                            new Class<?>[] {MongoClient.class},
+                            (proxy, method, args) -> {
+                                switch (method.getName()) {
+                                    case "findOneAndUpdateWithOptions":
+                                        return findOneAndUpdate(
+                                                (JsonObject) args[1], (JsonObject) args[2]);
+                                    case "findOne":
+                                        return Future.succeededFuture(
+                                                matches((JsonObject) args[1]) ? exec.copy() : null);
+                                    default:
+                                        throw new UnsupportedOperationException(method.getName());
+                                }
+                            });
+        }
+
+        private Future<JsonObject> findOneAndUpdate(JsonObject matcher, JsonObject update) {
+            if (!matches(matcher)) {
+                return Future.succeededFuture(null);
+            }
+            JsonObject previous = exec.copy();
+            exec.mergeIn(update.getJsonObject("$set"));
+            return Future.succeededFuture(previous);
+        }
+
+        private boolean matches(JsonObject matcher) {
+            for (Map.Entry<String, Object> kv : matcher) {
+                Object value = valueOf(kv.getKey());
+                Object expected = kv.getValue();
+                if (expected instanceof JsonObject) {
+                    JsonObject op = (JsonObject) expected;
+                    JsonArray in = op.getJsonArray("$in");
+                    JsonArray nin = op.getJsonArray("$nin");
+                    if (in != null && !in.contains(value)) {
+                        return false;
+                    }
+                    if (nin != null && nin.contains(value)) {
+                        return false;
+                    }
+                } else if (!expected.equals(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Object valueOf(String path) {
+            Object value = exec;
+            for (String field : path.split("\\.")) {
+                if (!(value instanceof JsonObject)) {
+                    return null;
+                }
+                value = ((JsonObject) value).getValue(field);
+            }
+            return value;
+        }
+    }
+
+    private static OneExec exec(ExecState status, int epoch) {
+        return new OneExec(
+                new JsonObject()
+                        .put(ExecDB.FIELD_ID, "exec-0")
+                        .put(ExecDB.FIELD_STATUS, status.toString())
+                        .put(
+                                ExecDB.FIELD_DEPLOY,
+                                new JsonObject().put(ProjectDB.DEPLOY_EPOCH, epoch)));
+    }
+
+    private static JsonObject to(ExecState status) {
+        return new JsonObject().put(ExecDB.FIELD_STATUS, status.toString());
+    }
+
+    private static JsonObject transit(OneExec exec, int epoch, ExecState status) {
+        Future<JsonObject> ret = ExecDB.transitStatus(exec.client(), "exec-0", epoch, to(status));
+        assertTrue(ret.succeeded());
+        return ret.result();
+    }
+
+    @org.junit.Test
+    public void switchInOrder() {
+        OneExec exec = exec(ExecState.CREATE, 1);
+
+        for (ExecState status :
+                new ExecState[] {ExecState.SUBMIT, ExecState.RUNNING, ExecState.FINISH}) {
+            JsonObject ret = transit(exec, 1, status);
+            assertTrue(ret.getBoolean("matched"));
+            assertEquals(status.toString(), exec.exec.getString(ExecDB.FIELD_STATUS));
+        }
+    }
+
+    @org.junit.Test
+    public void rejectSubmitAfterRunning() {
+        OneExec exec = exec(ExecState.RUNNING, 1);
+
+        JsonObject ret = transit(exec, 1, ExecState.SUBMIT);
+        assertFalse(ret.getBoolean("matched"));
+        assertEquals(ExecState.RUNNING.toString(), ret.getString(ExecDB.FIELD_STATUS));
+        assertEquals(ExecState.RUNNING.toString(), exec.exec.getString(ExecDB.FIELD_STATUS));
+    }
+
+    @org.junit.Test
+    public void rejectRunningAfterTerminated() {
+        for (ExecState terminated : new ExecState[] {ExecState.FINISH, ExecState.FAILURE}) {
+            OneExec exec = exec(terminated, 1);
+
+            for (ExecState status :
+                    new ExecState[] {ExecState.RUNNING, ExecState.FINISH, ExecState.FAILURE}) {
+                JsonObject ret = transit(exec, 1, status);
+                assertFalse(ret.getBoolean("matched"));
+                assertEquals(terminated.toString(), ret.getString(ExecDB.FIELD_STATUS));
+            }
+            assertEquals(terminated.toString(), exec.exec.getString(ExecDB.FIELD_STATUS));
+        }
+    }
+
+    @org.junit.Test
+    public void rejectOldEpoch() {
+        OneExec exec = exec(ExecState.SUBMIT, 2);
+
+        JsonObject ret = transit(exec, 1, ExecState.RUNNING);
+        assertFalse(ret.getBoolean("matched"));
+        assertEquals(ExecState.SUBMIT.toString(), ret.getString(ExecDB.FIELD_STATUS));
+        assertEquals(2, (int) ret.getInteger("epoch"));
+        assertEquals(ExecState.SUBMIT.toString(), exec.exec.getString(ExecDB.FIELD_STATUS));
+
+        ret = transit(exec, 2, ExecState.RUNNING);
+        assertTrue(ret.getBoolean("matched"));
+        assertEquals(ExecState.RUNNING.toString(), exec.exec.getString(ExecDB.FIELD_STATUS));
+    }
+
+    @org.junit.Test
+    public void failOnMissingExec() {
+        OneExec exec = exec(ExecState.CREATE, 1);
+
+        Future<JsonObject> ret =
+                ExecDB.transitStatus(exec.client(), "exec-1", 1, to(ExecState.SUBMIT));
+        assertTrue(ret.failed());
+        assertTrue(ret.cause() instanceof IllegalArgumentException);
+        assertTrue(ret.cause().getMessage().contains("Exec[exec-1] is not found."));
+    }
+
+    @org.junit.Test
+    public void failOnSwitchBackToCreate() {
+        OneExec exec = exec(ExecState.SUBMIT, 1);
+
+        Future<JsonObject> ret =
+                ExecDB.transitStatus(exec.client(), "exec-0", 1, to(ExecState.CREATE));
+        assertTrue(ret.failed());
+        assertTrue(ret.cause() instanceof IllegalArgumentException);
+        assertEquals(ExecState.SUBMIT.toString(), exec.exec.getString(ExecDB.FIELD_STATUS));
+    }
+}
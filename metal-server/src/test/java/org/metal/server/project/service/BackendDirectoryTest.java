@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.project.service;
+
+import org.metal.backend.api.BackendService;
+import org.metal.server.api.BackendState;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BackendDirectoryTest {
+
+    private static JsonObject deploy(String deployId, int epoch) {
+        return new JsonObject()
+                .put(ProjectDB.DEPLOY_ID, deployId)
+                .put(ProjectDB.DEPLOY_EPOCH, epoch)
+                .put(
+                        ProjectDB.DEPLOY_BACKEND,
+                        new JsonObject()
+                                .put(
+                                        ProjectDB.DEPLOY_BACKEND_STATUS,
+                                        new JsonObject()
+                                                .put(
+                                                        ProjectDB.DEPLOY_BACKEND_STATUS_CURRENT,
+                                                        BackendState.UP.toString())));
+    }
+
+    private static JsonObject conf(int failureThreshold, long resetTimeout) {
+        return new JsonObject()
+                .put(
+                        BackendDirectory.CONF,
+                        new JsonObject()
+                                .put("timeout", 1000L)
+                                .put("failureThreshold", failureThreshold)
+                                .put("resetTimeout", resetTimeout));
+    }
+
+    private static <T> Throwable failure(Future<T> future) throws InterruptedException {
+        try {
+            future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        throw new AssertionError("The call should fail.");
+    }
+
+    private static <T> T result(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    private static Future<JsonObject> heart(BackendService backendService) {
+        return backendService.heart();
+    }
+
+    @org.junit.Test
+    public void openAfterUnreachableInARow() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            JsonObject deploy = deploy("d-0", 0);
+            BackendDirectory backends =
+                    BackendDirectory.create(
+                            vertx, id -> Future.succeededFuture(deploy), conf(2, 60000L));
+
+            for (int i = 0; i < 2; i++) {
+                Throwable error = failure(backends.call(deploy, BackendDirectoryTest::heart));
+                assertEquals(ReplyFailure.NO_HANDLERS, ((ReplyException) error).failureType());
+            }
+
+            AtomicInteger received = new AtomicInteger();
+            vertx.eventBus()
+                    .consumer(
+                            "d-0-0",
+                            (Message<JsonObject> message) -> {
+                                received.incrementAndGet();
+                                message.reply(new JsonObject());
+                            });
+            Throwable error = failure(backends.call(deploy, BackendDirectoryTest::heart));
+            assertTrue(error.getMessage().contains("Backend[d-0-0] is unreachable"));
+            assertEquals(0, received.get());
+            assertTrue(backends.status().getJsonObject("d-0").getBoolean("open"));
+        } finally {
+            result(vertx.close());
+        }
+    }
+
+    @org.junit.Test
+    public void keepClosedOnFailuresOfReachableBackend() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            JsonObject deploy = deploy("d-1", 0);
+            vertx.eventBus()
+                    .consumer(
+                            "d-1-0",
+                            (Message<JsonObject> message) -> {
+                                message.fail(500, "Fail in backend.");
+                            });
+            BackendDirectory backends =
+                    BackendDirectory.create(
+                            vertx, id -> Future.succeededFuture(deploy), conf(2, 60000L));
+
+            for (int i = 0; i < 4; i++) {
+                Throwable error = failure(backends.call(deploy, BackendDirectoryTest::heart));
+                assertEquals("Fail in backend.", error.getMessage());
+            }
+            JsonObject status = backends.status().getJsonObject("d-1");
+            assertFalse(status.getBoolean("open"));
+            assertEquals(0, (int) status.getInteger("failures"));
+        } finally {
+            result(vertx.close());
+        }
+    }
+
+    @org.junit.Test
+    public void closeAfterProbeOnReset() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            JsonObject deploy = deploy("d-2", 0);
+            BackendDirectory backends =
+                    BackendDirectory.create(
+                            vertx, id -> Future.succeededFuture(deploy), conf(1, 200L));
+
+            failure(backends.call(deploy, BackendDirectoryTest::heart));
+            assertTrue(backends.status().getJsonObject("d-2").getBoolean("open"));
+
+            vertx.eventBus()
+                    .consumer(
+                            "d-2-0",
+                            (Message<JsonObject> message) -> {
+                                message.reply(new JsonObject().put("heart", true));
+                            });
+            Thread.sleep(300L);
+            JsonObject ret = result(backends.call(deploy, BackendDirectoryTest::heart));
+            assertTrue(ret.getBoolean("heart"));
+            assertFalse(backends.status().getJsonObject("d-2").getBoolean("open"));
+        } finally {
+            result(vertx.close());
+        }
+    }
+
+    @org.junit.Test
+    public void lookupDeployOnlyOnMiss() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            JsonObject deploy = deploy("d-3", 0);
+            vertx.eventBus()
+                    .consumer(
+                            "d-3-0",
+                            (Message<JsonObject> message) -> {
+                                message.reply(new JsonObject());
+                            });
+            AtomicInteger lookups = new AtomicInteger();
+            BackendDirectory backends =
+                    BackendDirectory.create(
+                            vertx,
+                            id -> {
+                                lookups.incrementAndGet();
+                                return Future.succeededFuture(deploy);
+                            },
+                            conf(2, 60000L));
+
+            result(backends.call("d-3", "check heart", BackendDirectoryTest::heart));
+            result(backends.call("d-3", "check heart", BackendDirectoryTest::heart));
+            assertEquals(1, lookups.get());
+
+            BackendDirectory.invalidate(vertx, "d-3");
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (backends.status().containsKey("d-3") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            result(backends.call("d-3", "check heart", BackendDirectoryTest::heart));
+            assertEquals(2, lookups.get());
+        } finally {
+            result(vertx.close());
+        }
+    }
+}
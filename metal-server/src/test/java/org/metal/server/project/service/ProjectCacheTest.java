@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.project.service;
+
+import org.metal.server.user.UserDB;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProjectCacheTest {
+
+    private Vertx vertx;
+    private Context context;
+    private List<JsonObject> matchers;
+    private List<Promise<JsonObject>> loads;
+
+    @org.junit.Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        matchers = new ArrayList<>();
+        loads = new ArrayList<>();
+    }
+
+    @org.junit.After
+    public void tearDown() throws Exception {
+        result(vertx.close());
+    }
+
+    private static <T> T result(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    /** Consumers of the cache are registered on the context, every load waits for the test. */
+    private ProjectCache cache(int maxSize, long ttl) throws Exception {
+        JsonObject conf =
+                new JsonObject()
+                        .put(
+                                ProjectCache.CONF,
+                                new JsonObject().put("maxSize", maxSize).put("ttl", ttl));
+        Promise<ProjectCache> created = Promise.promise();
+        context.runOnContext(
+                v -> {
+                    created.complete(
+                            ProjectCache.create(
+                                    vertx,
+                                    (JsonObject matcher) -> {
+                                        Promise<JsonObject> load = Promise.promise();
+                                        synchronized (loads) {
+                                            matchers.add(matcher);
+                                            loads.add(load);
+                                        }
+                                        return load.future();
+                                    },
+                                    conf));
+                });
+        return result(created.future());
+    }
+
+    /** Published invalidations reached the consumers of the cache once this returns. */
+    private void settle() throws Exception {
+        Promise<Void> barrier = Promise.promise();
+        context.runOnContext(v -> barrier.complete());
+        result(barrier.future());
+    }
+
+    private int loaded() {
+        synchronized (loads) {
+            return loads.size();
+        }
+    }
+
+    private void complete(int idx, JsonObject proj) {
+        Promise<JsonObject> load;
+        synchronized (loads) {
+            load = loads.get(idx);
+        }
+        load.complete(proj);
+    }
+
+    private static JsonObject proj(String projectId, String userId, String name, String deployId) {
+        return new JsonObject()
+                .put(ProjectDB.ID, projectId)
+                .put(ProjectDB.NAME, name)
+                .put(ProjectDB.USER, new JsonObject().put(UserDB.FIELD_ID, userId))
+                .put(ProjectDB.DEPLOY, new JsonObject().put(ProjectDB.DEPLOY_ID, deployId));
+    }
+
+    private void load(ProjectCache cache, JsonObject proj) throws Exception {
+        int idx = loaded();
+        Future<JsonObject> future =
+                cache.getOfId(
+                        proj.getJsonObject(ProjectDB.USER).getString(UserDB.FIELD_ID),
+                        proj.getString(ProjectDB.ID));
+        complete(idx, proj);
+        assertEquals(proj, result(future));
+    }
+
+    @org.junit.Test
+    public void loadedProjectIsIndexed() throws Exception {
+        ProjectCache cache = cache(16, 60000L);
+        JsonObject proj = proj("p-0", "u-0", "n-0", "d-0");
+        load(cache, proj);
+
+        assertEquals(proj, result(cache.getOfId("u-0", "p-0")));
+        assertEquals(proj, result(cache.getOfName("u-0", "n-0")));
+        assertEquals(proj, result(cache.getOfDeployId("d-0")));
+        assertEquals(1, loaded());
+        assertEquals("p-0", matchers.get(0).getString(ProjectDB.ID));
+        assertEquals(3L, (long) cache.status().getLong("hits"));
+        assertEquals(1L, (long) cache.status().getLong("misses"));
+    }
+
+    @org.junit.Test
+    public void otherUserMissesProjectOfId() throws Exception {
+        ProjectCache cache = cache(16, 60000L);
+        load(cache, proj("p-0", "u-0", "n-0", "d-0"));
+
+        cache.getOfId("u-1", "p-0");
+        assertEquals(2, loaded());
+    }
+
+    /** Each invalidation lands while the load is in flight, and must keep the proj out. */
+    private void assertInvalidateDuringLoad(Consumer<ProjectCache> invalidate) throws Exception {
+        ProjectCache cache = cache(16, 60000L);
+        JsonObject proj = proj("p-0", "u-0", "n-0", "d-0");
+        Future<JsonObject> future = cache.getOfId("u-0", "p-0");
+        invalidate.accept(cache);
+        complete(0, proj);
+        assertEquals(proj, result(future));
+        settle();
+
+        assertEquals(0, (int) cache.status().getInteger("size"));
+        cache.getOfId("u-0", "p-0");
+        cache.getOfName("u-0", "n-0");
+        cache.getOfDeployId("d-0");
+        assertEquals(4, loaded());
+    }
+
+    @org.junit.Test
+    public void invalidateOfIdDuringLoadPreventsPut() throws Exception {
+        assertInvalidateDuringLoad(cache -> cache.invalidateOfId("p-0"));
+    }
+
+    @org.junit.Test
+    public void invalidateOfNameDuringLoadPreventsPut() throws Exception {
+        assertInvalidateDuringLoad(cache -> cache.invalidateOfName("u-0", "n-0"));
+    }
+
+    @org.junit.Test
+    public void invalidateOfDeployIdDuringLoadPreventsPut() throws Exception {
+        assertInvalidateDuringLoad(cache -> cache.invalidateOfDeployId("d-0"));
+    }
+
+    @org.junit.Test
+    public void invalidateOfUserDuringLoadPreventsPut() throws Exception {
+        assertInvalidateDuringLoad(cache -> cache.invalidateOfUser("u-0"));
+    }
+
+    @org.junit.Test
+    public void invalidateOfOtherDuringLoadKeepsPut() throws Exception {
+        ProjectCache cache = cache(16, 60000L);
+        JsonObject proj = proj("p-0", "u-0", "n-0", "d-0");
+        Future<JsonObject> future = cache.getOfId("u-0", "p-0");
+        cache.invalidateOfId("p-1");
+        cache.invalidateOfName("u-0", "n-1");
+        cache.invalidateOfDeployId("d-1");
+        cache.invalidateOfUser("u-1");
+        complete(0, proj);
+        assertEquals(proj, result(future));
+        settle();
+
+        assertEquals(proj, result(cache.getOfId("u-0", "p-0")));
+        assertEquals(1, loaded());
+    }
+
+    @org.junit.Test
+    public void loadStartedAfterInvalidateIsKept() throws Exception {
+        ProjectCache cache = cache(16, 60000L);
+        JsonObject stale = proj("p-0", "u-0", "n-0", "d-0");
+        JsonObject fresh = proj("p-0", "u-0", "n-1", "d-0");
+        Future<JsonObject> before = cache.getOfId("u-0", "p-0");
+        cache.invalidateOfId("p-0");
+        settle();
+        Future<JsonObject> after = cache.getOfId("u-0", "p-0");
+        complete(1, fresh);
+        complete(0, stale);
+        result(before);
+        result(after);
+
+        assertEquals(fresh, result(cache.getOfId("u-0", "p-0")));
+        assertEquals(fresh, result(cache.getOfName("u-0", "n-1")));
+        assertEquals(2, loaded());
+    }
+
+    @org.junit.Test
+    public void leastRecentlyUsedIsEvictedAndUnindexed() throws Exception {
+        ProjectCache cache = cache(2, 60000L);
+        JsonObject p0 = proj("p-0", "u-0", "n-0", "d-0");
+        JsonObject p1 = proj("p-1", "u-0", "n-1", "d-1");
+        JsonObject p2 = proj("p-2", "u-0", "n-2", "d-2");
+        load(cache, p0);
+        load(cache, p1);
+        assertEquals(p0, result(cache.getOfName("u-0", "n-0")));
+        load(cache, p2);
+
+        JsonObject status = cache.status();
+        assertEquals(2, (int) status.getInteger("size"));
+        assertEquals(2, (int) status.getInteger("names"));
+        assertEquals(2, (int) status.getInteger("deployIds"));
+        assertEquals(p0, result(cache.getOfDeployId("d-0")));
+        assertEquals(p2, result(cache.getOfName("u-0", "n-2")));
+        assertEquals(3, loaded());
+
+        cache.getOfDeployId("d-1");
+        assertEquals(4, loaded());
+    }
+
+    @org.junit.Test
+    public void expiredProjectIsLoadedAgain() throws Exception {
+        ProjectCache cache = cache(16, 50L);
+        JsonObject proj = proj("p-0", "u-0", "n-0", "d-0");
+        load(cache, proj);
+        assertEquals(proj, result(cache.getOfId("u-0", "p-0")));
+
+        Thread.sleep(100L);
+        cache.getOfName("u-0", "n-0");
+        assertEquals(2, loaded());
+        JsonObject status = cache.status();
+        assertEquals(0, (int) status.getInteger("size"));
+        assertEquals(0, (int) status.getInteger("names"));
+        assertEquals(0, (int) status.getInteger("deployIds"));
+        assertEquals(2L, (long) status.getLong("misses"));
+    }
+}
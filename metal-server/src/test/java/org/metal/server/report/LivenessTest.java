@@ -0,0 +1,221 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.report;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LivenessTest {
+
+    private static final long TICK = 20L;
+    private static final long STALE_AFTER = 300L;
+
+    /** Advance until the task expires, return the number of ticks it took. */
+    private static int ticksUntilExpired(Liveness.TimingWheel<String> wheel, String task) {
+        for (int ticks = 1; ticks <= 1000; ticks++) {
+            List<String> expired = wheel.advance();
+            if (expired.contains(task)) {
+                return ticks;
+            }
+            assertTrue(expired.isEmpty());
+        }
+        throw new AssertionError(task + " never expires.");
+    }
+
+    @org.junit.Test
+    public void expireAfterDelayInTicks() {
+        Liveness.TimingWheel<String> wheel = new Liveness.TimingWheel<>(8, 10L);
+        wheel.schedule("a", 30L);
+        assertEquals(3, ticksUntilExpired(wheel, "a"));
+    }
+
+    @org.junit.Test
+    public void roundUpPartialTicks() {
+        Liveness.TimingWheel<String> wheel = new Liveness.TimingWheel<>(8, 10L);
+        wheel.schedule("a", 25L);
+        assertEquals(3, ticksUntilExpired(wheel, "a"));
+
+        wheel.schedule("b", 0L);
+        assertEquals(1, ticksUntilExpired(wheel, "b"));
+    }
+
+    @org.junit.Test
+    public void expireAfterRoundsBeyondWheelSize() {
+        Liveness.TimingWheel<String> wheel = new Liveness.TimingWheel<>(4, 10L);
+        wheel.schedule("a", 100L);
+        assertEquals(10, ticksUntilExpired(wheel, "a"));
+
+        wheel.advance();
+        wheel.schedule("b", 40L);
+        assertEquals(4, ticksUntilExpired(wheel, "b"));
+    }
+
+    @org.junit.Test
+    public void expireTasksOfOneBucketTogether() {
+        Liveness.TimingWheel<String> wheel = new Liveness.TimingWheel<>(4, 10L);
+        wheel.schedule("a", 20L);
+        wheel.schedule("b", 60L);
+        wheel.schedule("c", 20L);
+
+        List<List<String>> expired = new ArrayList<>();
+        for (int tick = 0; tick < 6; tick++) {
+            expired.add(wheel.advance());
+        }
+        assertEquals(List.of(), expired.get(0));
+        assertEquals(List.of("a", "c"), expired.get(1));
+        assertEquals(List.of(), expired.get(2));
+        assertEquals(List.of("b"), expired.get(5));
+    }
+
+    private static MongoClient mongo() {
+        return (MongoClient)
+                Proxy.newProxyInstance(
+                        MongoClient.class.getClassLoader(),
+                        new Class<?>[] {MongoClient.class},
+                        (proxy, method, args) -> {
+                            return Future.succeededFuture();
+                        });
+    }
+
+    private static JsonObject conf() {
+        return new JsonObject()
+                .put(
+                        Liveness.CONF,
+                        new JsonObject()
+                                .put("tick", TICK)
+                                .put("wheelSize", 8)
+                                .put("staleAfter", STALE_AFTER)
+                                .put("flushInterval", 60000L));
+    }
+
+    /** Liveness runs on one event loop, the test only talks to it through that loop. */
+    private static Liveness create(Vertx vertx, BlockingQueue<Long> stales) throws Exception {
+        BlockingQueue<Liveness> created = new ArrayBlockingQueue<>(1);
+        vertx.eventBus()
+                .consumer(
+                        Liveness.STALE_ADDRESS,
+                        (Message<JsonObject> message) -> {
+                            stales.add(System.currentTimeMillis());
+                        });
+        vertx.runOnContext(
+                v -> {
+                    created.add(Liveness.create(vertx, mongo(), conf()));
+                });
+        return created.poll(5, TimeUnit.SECONDS);
+    }
+
+    @org.junit.Test
+    public void staleAfterLastBeat() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            BlockingQueue<Long> stales = new ArrayBlockingQueue<>(8);
+            Liveness liveness = create(vertx, stales);
+            long up = System.currentTimeMillis();
+            vertx.runOnContext(
+                    v -> {
+                        liveness.up("d-0", 0);
+                    });
+
+            Long stale = stales.poll(5, TimeUnit.SECONDS);
+            assertTrue(stale != null);
+            long elapsed = stale - up;
+            assertTrue("Stale after " + elapsed + " ms.", elapsed >= STALE_AFTER);
+            assertTrue("Stale after " + elapsed + " ms.", elapsed < STALE_AFTER + 10 * TICK);
+            assertEquals(null, stales.poll(3 * STALE_AFTER, TimeUnit.MILLISECONDS));
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @org.junit.Test
+    public void beatsPostponeStale() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            BlockingQueue<Long> stales = new ArrayBlockingQueue<>(8);
+            BlockingQueue<Boolean> beats = new ArrayBlockingQueue<>(16);
+            Liveness liveness = create(vertx, stales);
+            vertx.runOnContext(
+                    v -> {
+                        liveness.up("d-0", 0);
+                    });
+
+            long lastBeat = 0L;
+            for (int beat = 0; beat < 10; beat++) {
+                Thread.sleep(STALE_AFTER / 3);
+                lastBeat = System.currentTimeMillis();
+                vertx.runOnContext(
+                        v -> {
+                            beats.add(liveness.beat("d-0", 0));
+                        });
+            }
+            assertTrue(stales.isEmpty());
+            for (int beat = 0; beat < 10; beat++) {
+                assertEquals(true, beats.poll(1, TimeUnit.SECONDS));
+            }
+
+            Long stale = stales.poll(5, TimeUnit.SECONDS);
+            assertTrue(stale != null);
+            long elapsed = stale - lastBeat;
+            assertTrue("Stale after " + elapsed + " ms.", elapsed >= STALE_AFTER - TICK);
+            assertTrue("Stale after " + elapsed + " ms.", elapsed < STALE_AFTER + 10 * TICK);
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @org.junit.Test
+    public void ignoreBeatsOfOtherEpochs() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            BlockingQueue<Long> stales = new ArrayBlockingQueue<>(8);
+            BlockingQueue<Boolean> beats = new ArrayBlockingQueue<>(8);
+            Liveness liveness = create(vertx, stales);
+            long up = System.currentTimeMillis();
+            vertx.runOnContext(
+                    v -> {
+                        liveness.up("d-0", 1);
+                    });
+
+            for (int beat = 0; beat < 5; beat++) {
+                Thread.sleep(STALE_AFTER / 3);
+                vertx.runOnContext(
+                        v -> {
+                            beats.add(liveness.beat("d-0", 0));
+                        });
+            }
+            Long stale = stales.poll(5, TimeUnit.SECONDS);
+            assertTrue(stale != null);
+            assertTrue(stale - up < STALE_AFTER + 10 * TICK);
+            for (int beat = 0; beat < 5; beat++) {
+                assertEquals(false, beats.poll(1, TimeUnit.SECONDS));
+            }
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        }
+    }
+}
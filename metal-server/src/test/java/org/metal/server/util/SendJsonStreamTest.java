@@ -0,0 +1,299 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.metal.server.util;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.web.Router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SendJsonStreamTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SendJsonStreamTest.class);
+
+    /** Emits the docs on the event loop as long as there is demand, then fails or ends. */
+    private static class ListStream implements ReadStream<JsonObject> {
+
+        private final Vertx vertx;
+        private final List<JsonObject> docs;
+        private final Throwable error;
+        private Handler<JsonObject> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+        private int cursor = 0;
+        private boolean paused = false;
+        private int pauses = 0;
+
+        private ListStream(Vertx vertx, List<JsonObject> docs, Throwable error) {
+            this.vertx = vertx;
+            this.docs = docs;
+            this.error = error;
+        }
+
+        @Override
+        public ListStream exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ListStream handler(Handler<JsonObject> handler) {
+            boolean start = this.handler == null && handler != null;
+            this.handler = handler;
+            if (start) {
+                vertx.runOnContext(v -> emit());
+            }
+            return this;
+        }
+
+        @Override
+        public ListStream pause() {
+            paused = true;
+            pauses++;
+            return this;
+        }
+
+        @Override
+        public ListStream resume() {
+            paused = false;
+            vertx.runOnContext(v -> emit());
+            return this;
+        }
+
+        @Override
+        public ListStream fetch(long amount) {
+            return resume();
+        }
+
+        @Override
+        public ListStream endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+
+        private void emit() {
+            while (!paused && handler != null && cursor < docs.size()) {
+                handler.handle(docs.get(cursor++));
+            }
+            if (paused || handler == null || cursor > docs.size()) {
+                return;
+            }
+            cursor++;
+            if (error != null) {
+                exceptionHandler.handle(error);
+            } else {
+                endHandler.handle(null);
+            }
+        }
+    }
+
+    private Vertx vertx;
+    private HttpServer server;
+    private HttpClient client;
+    private ListStream stream;
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private static List<JsonObject> docs(int size, int padding) {
+        List<JsonObject> docs = new ArrayList<>();
+        for (int idx = 0; idx < size; idx++) {
+            docs.add(new JsonObject().put("_id", idx).put("pad", "x".repeat(padding)));
+        }
+        return docs;
+    }
+
+    private void serve(List<JsonObject> docs, Throwable error, int limit, int writeQueueMaxSize)
+            throws Exception {
+        vertx = Vertx.vertx();
+        Router router = Router.router(vertx);
+        router.get("/list")
+                .produces("application/json")
+                .handler(
+                        ctx -> {
+                            if (writeQueueMaxSize > 0) {
+                                ctx.response().setWriteQueueMaxSize(writeQueueMaxSize);
+                            }
+                            stream = new ListStream(vertx, docs, error);
+                            SendJsonStream.send(
+                                    ctx,
+                                    stream,
+                                    limit,
+                                    (JsonObject doc) -> {
+                                        return new JsonObject()
+                                                .put("id", doc.getValue("_id"))
+                                                .put("pad", doc.getValue("pad"));
+                                    },
+                                    LOGGER);
+                        });
+        server = await(vertx.createHttpServer().requestHandler(router).listen(0));
+        client = vertx.createHttpClient();
+    }
+
+    private static class Reply {
+        private int statusCode;
+        private Buffer body;
+        private Throwable error;
+    }
+
+    /** The body is read on the event loop, before any of it may be dropped. */
+    private Reply request() throws Exception {
+        Reply reply = new Reply();
+        await(
+                client.request(HttpMethod.GET, server.actualPort(), "localhost", "/list")
+                        .compose(
+                                request -> {
+                                    return request.putHeader("accept", "application/json").send();
+                                })
+                        .compose(
+                                (HttpClientResponse response) -> {
+                                    reply.statusCode = response.statusCode();
+                                    return response.body();
+                                })
+                        .onSuccess(
+                                body -> {
+                                    reply.body = body;
+                                })
+                        .otherwise(
+                                error -> {
+                                    reply.error = error;
+                                    return null;
+                                }));
+        return reply;
+    }
+
+    private void close() throws Exception {
+        if (vertx != null) {
+            await(vertx.close());
+        }
+    }
+
+    @org.junit.Test
+    public void fullPageHasNextCursor() throws Exception {
+        try {
+            serve(docs(3, 0), null, 3, 0);
+            Reply reply = request();
+            JsonObject body = reply.body.toJsonObject();
+
+            assertEquals(200, reply.statusCode);
+            assertEquals("OK", body.getString("status"));
+            assertEquals(
+                    new JsonArray()
+                            .add(new JsonObject().put("id", 0).put("pad", ""))
+                            .add(new JsonObject().put("id", 1).put("pad", ""))
+                            .add(new JsonObject().put("id", 2).put("pad", "")),
+                    body.getJsonArray("data"));
+            assertEquals(2, (int) body.getInteger("next"));
+        } finally {
+            close();
+        }
+    }
+
+    @org.junit.Test
+    public void shortPageHasNoNext() throws Exception {
+        try {
+            serve(docs(2, 0), null, 3, 0);
+            JsonObject body = request().body.toJsonObject();
+
+            assertEquals(2, body.getJsonArray("data").size());
+            assertTrue(body.containsKey("next"));
+            assertEquals(null, body.getValue("next"));
+        } finally {
+            close();
+        }
+    }
+
+    @org.junit.Test
+    public void emptyPage() throws Exception {
+        try {
+            serve(docs(0, 0), null, 3, 0);
+            Reply reply = request();
+            JsonObject body = reply.body.toJsonObject();
+
+            assertEquals(200, reply.statusCode);
+            assertEquals(new JsonArray(), body.getJsonArray("data"));
+            assertEquals(null, body.getValue("next"));
+        } finally {
+            close();
+        }
+    }
+
+    @org.junit.Test
+    public void failBeforeFirstDoc() throws Exception {
+        try {
+            serve(docs(0, 0), new IllegalStateException("Fail to read."), 3, 0);
+            Reply reply = request();
+            JsonObject body = reply.body.toJsonObject();
+
+            assertEquals(500, reply.statusCode);
+            assertEquals("FAIL", body.getString("status"));
+            assertEquals("Fail to read.", body.getString("msg"));
+        } finally {
+            close();
+        }
+    }
+
+    @org.junit.Test
+    public void resetOnFailureAfterFirstDoc() throws Exception {
+        try {
+            serve(docs(2, 0), new IllegalStateException("Fail to read."), 3, 0);
+            Reply reply = request();
+
+            assertEquals(200, reply.statusCode);
+            // The truncated body must not pass for one complete page.
+            assertTrue(reply.error != null);
+        } finally {
+            close();
+        }
+    }
+
+    @org.junit.Test
+    public void pauseOnFullWriteQueue() throws Exception {
+        try {
+            int size = 1000;
+            serve(docs(size, 16 * 1024), null, size, 64 * 1024);
+            JsonObject body = request().body.toJsonObject();
+
+            assertEquals(size, body.getJsonArray("data").size());
+            assertEquals(size - 1, (int) body.getInteger("next"));
+            assertTrue(stream.pauses > 0);
+        } finally {
+            close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+#!/usr/bin/env bash
+# Load REST api of metal-server gateway with wrk, and print one summary row per run.
+# Run it once per gateway.instances in conf/metal-server.json (e.g. 1, 2, 4, core count) with
+# INSTANCES set to that count, restarting the server in between, then compare the rows.
+#
+# The loaded endpoint is /api/v1/something. It costs JWT validation, roles read from the signed
+# claim and one small response, without any mongo access, so the rows show how the event loops of
+# the gateway scale. Only the token is created through mongo, once before the load.
+#
+# Run wrk on another host than the server, otherwise both compete for the same cores and the rows
+# stop growing long before the gateway is saturated.
+#
+# Usage: INSTANCES=<n> gateway-load-test.sh <host:port> <username> <password> [duration] [connections] [threads]
+
+gateway=$1
+username=$2
+password=$3
+duration=${4:-30s}
+connections=${5:-256}
+threads=${6:-$(nproc)}
+instances=${INSTANCES:-unknown}
+
+if [ -z "$gateway" ] || [ -z "$username" ] || [ -z "$password" ]; then
+  echo "Usage: INSTANCES=<n> $0 <host:port> <username> <password> [duration] [connections] [threads]"
+  exit 1
+fi
+
+if ! command -v wrk > /dev/null; then
+  echo "wrk is not found in PATH."
+  exit 1
+fi
+
+token=$(curl -s -X POST -u "$username:$password" \
+  -H "Content-Type: application/json" -d '{}' \
+  http://$gateway/api/v1/tokens | sed -n 's/.*"jwt"[ ]*:[ ]*"\([^"]*\)".*/\1/p')
+
+if [ -z "$token" ]; then
+  echo "Fail to create token of $username."
+  exit 1
+fi
+
+report=$(wrk -t "$threads" -c "$connections" -d "$duration" --latency \
+  -H "Authorization: Bearer $token" \
+  http://$gateway/api/v1/something)
+echo "$report"
+
+rps=$(echo "$report" | awk '/^Requests\/sec:/ {print $2}')
+p50=$(echo "$report" | awk '$1 == "50%" {print $2}')
+p99=$(echo "$report" | awk '$1 == "99%" {print $2}')
+errors=$(echo "$report" | awk '/Non-2xx or 3xx responses:/ {print $NF}')
+
+echo
+printf "%-10s %-12s %-10s %-10s %s\n" "instances" "requests/s" "p50" "p99" "non-2xx"
+printf "%-10s %-12s %-10s %-10s %s\n" "$instances" "$rps" "$p50" "$p99" "${errors:-0}"